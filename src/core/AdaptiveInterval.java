@@ -0,0 +1,198 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.List;
+
+/**
+ * <P>
+ * Selects the length of the next update interval so that no connection can
+ * come up or go down in the middle of the interval. The interval is the
+ * smallest time any pair of hosts needs to cover the gap between their
+ * distance and their (smaller) range when moving towards (or away from) each
+ * other at their current speeds, limited between the minimum and maximum
+ * interval. The interval is also shortened so that it ends when the next
+ * ongoing message transfer is done.
+ * </P>
+ * <P>
+ * During one update interval a host moves at most its current speed times
+ * the interval (see {@link DTNHost#getNextMoveSpeed()}) so with the selected
+ * interval the connections change at the same update as with the minimum
+ * interval, as long as the speeds don't change.
+ * </P>
+ * <P>
+ * Pairs that can't meet within the maximum interval are skipped by sorting
+ * the hosts by their x coordinates (using insertion sort since the order
+ * changes only little between updates) and only checking the pairs that are
+ * close enough along the x axis.
+ * </P>
+ */
+public class AdaptiveInterval {
+	private List<DTNHost> hosts;
+	private double minInterval;
+	private double maxInterval;
+	private boolean checkContacts;
+
+	private double[] xs;
+	private double[] ys;
+	private double[] speeds;
+	private double[] ranges;
+	/** host indexes ordered by {@link #xs} */
+	private int[] order;
+
+	/**
+	 * Creates a new interval selector
+	 *
+	 * @param hosts
+	 *            All hosts of the world
+	 * @param minInterval
+	 *            The shortest interval to select
+	 * @param maxInterval
+	 *            The longest interval to select
+	 * @param checkContacts
+	 *            If true, the intervals are limited by the hosts' gaps. If
+	 *            false, only the transfers limit the intervals.
+	 */
+	public AdaptiveInterval(List<DTNHost> hosts, double minInterval,
+			double maxInterval, boolean checkContacts) {
+		int n = hosts.size();
+		this.hosts = hosts;
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+		this.checkContacts = checkContacts;
+		this.xs = new double[n];
+		this.ys = new double[n];
+		this.speeds = new double[n];
+		this.ranges = new double[n];
+		this.order = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			this.order[i] = i;
+		}
+	}
+
+	/**
+	 * Returns the length of the next update interval
+	 *
+	 * @return The length of the interval; between the minimum and maximum
+	 *         intervals
+	 */
+	public double getInterval() {
+		double interval = getTransferLimit(this.maxInterval);
+
+		if (this.checkContacts && interval > this.minInterval) {
+			interval = getContactLimit(interval);
+		}
+
+		return (interval < this.minInterval ? this.minInterval : interval);
+	}
+
+	/**
+	 * Returns the time until the next ongoing transfer is done
+	 *
+	 * @param limit
+	 *            The longest time to return
+	 * @return The time until the next transfer is done or the limit if there
+	 *         are no transfers done before it
+	 */
+	private double getTransferLimit(double limit) {
+		double now = SimClock.getTime();
+
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			for (Connection c : hosts.get(i).getConnections()) {
+				if (c.getMessage() == null) {
+					continue;
+				}
+				double left = c.getTransferDoneTime() - now;
+				if (left > 0 && left < limit) {
+					limit = left;
+				}
+			}
+		}
+
+		return limit;
+	}
+
+	/**
+	 * Returns the smallest time any pair of hosts needs to come within or to
+	 * go out of each other's range
+	 *
+	 * @param limit
+	 *            The longest time to return
+	 * @return The smallest time or the limit, if none of the pairs can change
+	 *         their state before it
+	 */
+	private double getContactLimit(double limit) {
+		int n = hosts.size();
+		double maxSpeed = 0;
+		double maxRange = 0;
+
+		for (int i = 0; i < n; i++) {
+			DTNHost host = hosts.get(i);
+			Coord c = host.getLocation();
+			xs[i] = c.getX();
+			ys[i] = c.getY();
+			speeds[i] = host.getNextMoveSpeed();
+			ranges[i] = host.getTransmitRange();
+
+			if (speeds[i] == Double.MAX_VALUE) {
+				return this.minInterval; // speed not known yet
+			}
+			if (speeds[i] > maxSpeed) {
+				maxSpeed = speeds[i];
+			}
+			if (ranges[i] > maxRange) {
+				maxRange = ranges[i];
+			}
+		}
+
+		sortByX();
+
+		for (int a = 0; a < n; a++) {
+			int i = order[a];
+			/* pairs further away along x can't meet before the limit */
+			double reach = maxRange + limit * (speeds[i] + maxSpeed);
+
+			for (int b = a + 1; b < n && xs[order[b]] - xs[i] <= reach; b++) {
+				int j = order[b];
+				double speed = speeds[i] + speeds[j];
+				if (speed == 0) {
+					continue; // neither of the hosts moves
+				}
+
+				double dx = xs[i] - xs[j];
+				double dy = ys[i] - ys[j];
+				double range = (ranges[i] < ranges[j] ? ranges[i] : ranges[j]);
+				double gap = Math.abs(Math.sqrt(dx * dx + dy * dy) - range);
+
+				if (gap < limit * speed) {
+					limit = gap / speed;
+					if (limit <= this.minInterval) {
+						return this.minInterval;
+					}
+					reach = maxRange + limit * (speeds[i] + maxSpeed);
+				}
+			}
+		}
+
+		return limit;
+	}
+
+	/**
+	 * Sorts the host indexes by the hosts' x coordinates
+	 */
+	private void sortByX() {
+		for (int a = 1; a < order.length; a++) {
+			int i = order[a];
+			double key = xs[i];
+			int b = a - 1;
+			while (b >= 0 && xs[order[b]] > key) {
+				order[b + 1] = order[b];
+				b--;
+			}
+			order[b + 1] = i;
+		}
+	}
+}
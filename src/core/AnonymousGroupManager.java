@@ -4,17 +4,15 @@
  */
 package core;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Hashtable;
-import java.util.Random;
 import java.util.TreeSet;
 
 public class AnonymousGroupManager {
 	public static final String GM_STRING_FORMAT = "# node_id, [group_names], num_groups_found, time_found_all, [groups_found]";
 	public static final String GROUP_BASENAME = "g";
-	public static Hashtable<String, AnonymousGroup> definedGroups = new Hashtable<String, AnonymousGroup>();
-	private static Random rng = new Random();
-	private static boolean defined = false;
-	private static int definedIndex = 0;
 
 	// the host this manager is managing for
 	private DTNHost host;
@@ -33,10 +31,10 @@ public class AnonymousGroupManager {
 		this.metAllGroups = false;
 		this.timeMetAllGroups = Double.NaN;
 		AnonymousGroup g = null;
-		if (SimScenario.anonymitySystem.equals(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT)) {
+		if (SimScenario.getAnonymitySystem().equals(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT)) {
 			// join a group uniformly, for one node per group situations
 			g = joinNextGroup();
-		} else if (SimScenario.anonymitySystem.equals(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT)) {
+		} else if (SimScenario.getAnonymitySystem().equals(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT)) {
 			// join a random group, they should have been defined before hosts created
 			g = joinRandomGroup();
 		}
@@ -67,7 +65,7 @@ public class AnonymousGroupManager {
 		// keep track of groups met of all defined
 		if (!this.metAllGroups && !groupsMet.contains(otherGroup)) {
 			groupsMet.add(otherGroup);
-			if (groupsMet.size() >= definedGroups.size()) {
+			if (groupsMet.size() >= getDefinedGroups().size()) {
 				metAllGroups = true;
 				timeMetAllGroups = SimClock.getTime();
 			}
@@ -87,29 +85,32 @@ public class AnonymousGroupManager {
 	}
 	
 	public static AnonymousGroup getRandomGroup() {
+		Hashtable<String, AnonymousGroup> definedGroups = getDefinedGroups();
 		int n = definedGroups.size();
 		if (n < 1) {
 			// no groups defined yet!
 			return null;
 		}
-		int index = AnonymousGroupManager.rng.nextInt(n);
+		int index = SimulationContext.current().anonRng.nextInt(n);
 		AnonymousGroup g = (AnonymousGroup) definedGroups.values().toArray()[index];
 		return g;
 	}
 	
 	public AnonymousGroup joinNextGroup(){
+		SimulationContext context = SimulationContext.current();
+		Hashtable<String, AnonymousGroup> definedGroups = context.anonGroups;
 		int n = definedGroups.size();
 		if (n < 1) {
 			// no groups defined yet!
 			return null;
 		}
-		int index = definedIndex;
+		int index = context.anonDefinedIndex;
 		AnonymousGroup g = (AnonymousGroup) definedGroups.values().toArray()[index];
 		g.join(host);
 		this.groups.add(g);
-		definedIndex++;
-		if(definedIndex >= definedGroups.size()){
-			definedIndex = 0;
+		context.anonDefinedIndex++;
+		if(context.anonDefinedIndex >= definedGroups.size()){
+			context.anonDefinedIndex = 0;
 		}
 		return g;
 	}
@@ -120,6 +121,7 @@ public class AnonymousGroupManager {
 	 * @return true if join was successful, false if group does not exist
 	 */
 	public boolean joinGroup(String groupName) {
+		Hashtable<String, AnonymousGroup> definedGroups = getDefinedGroups();
 		if (definedGroups.containsKey(groupName)) {
 			AnonymousGroup g = definedGroups.get(groupName);
 			g.join(host);
@@ -150,14 +152,15 @@ public class AnonymousGroupManager {
 	 *         define any new groups since they have already been defined
 	 */
 	public static boolean defineGroups() {
-		int n = SimScenario.numAnonGroups;
-		if (!defined && n > 0) {
+		SimulationContext context = SimulationContext.current();
+		int n = context.numAnonGroups;
+		if (!context.anonGroupsDefined && n > 0) {
 			for (int i = 0; i < n; i++) {
 				String name = GROUP_BASENAME + i;
 				AnonymousGroup g = new AnonymousGroup(name);
-				definedGroups.put(name, g);
+				context.anonGroups.put(name, g);
 			}
-			defined = true;
+			context.anonGroupsDefined = true;
 			return true;
 		}
 		return false;
@@ -168,8 +171,18 @@ public class AnonymousGroupManager {
 	 * re-defined for the next run of the sim.
 	 */
 	public static void resetGroups() {
-		definedGroups.clear();
-		defined = false;
+		SimulationContext context = SimulationContext.current();
+		context.anonGroups.clear();
+		context.anonGroupsDefined = false;
+	}
+
+	/**
+	 * Returns the groups defined in the current simulation
+	 * 
+	 * @return the defined groups mapped by their names
+	 */
+	public static Hashtable<String, AnonymousGroup> getDefinedGroups() {
+		return SimulationContext.current().anonGroups;
 	}
 
 	/**
@@ -177,12 +190,69 @@ public class AnonymousGroupManager {
 	 */
 	public static void printGroupsSizes() {
 		String msg = "# group sizes:";
-		for (AnonymousGroup g : definedGroups.values()) {
+		for (AnonymousGroup g : getDefinedGroups().values()) {
 			msg += " " + g.getName() + "=" + g.getMemberSet().size();
 		}
 		System.out.println(msg);
 	}
 
+	/**
+	 * Writes the groups of the host and the groups it has met to a
+	 * checkpoint
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	void writeState(DataOutput out) throws IOException {
+		writeGroups(out, this.groups);
+		writeGroups(out, this.groupsMet);
+		out.writeBoolean(this.metAllGroups);
+		out.writeDouble(this.timeMetAllGroups);
+	}
+
+	/**
+	 * Restores the state written with {@link #writeState(DataOutput)}. The
+	 * host leaves the groups it has joined and joins the written groups.
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @param cp
+	 *            The checkpoint that is read
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	void readState(DataInput in, SimCheckpoint cp) throws IOException {
+		for (AnonymousGroup g : this.groups) {
+			g.leave(this.host);
+		}
+		this.groups = readGroups(in, cp);
+		for (AnonymousGroup g : this.groups) {
+			g.join(this.host);
+		}
+		this.groupsMet = readGroups(in, cp);
+		this.metAllGroups = in.readBoolean();
+		this.timeMetAllGroups = in.readDouble();
+	}
+
+	private void writeGroups(DataOutput out, TreeSet<AnonymousGroup> set)
+			throws IOException {
+		out.writeInt(set.size());
+		for (AnonymousGroup g : set) {
+			out.writeUTF(g.getName());
+		}
+	}
+
+	private TreeSet<AnonymousGroup> readGroups(DataInput in, SimCheckpoint cp)
+			throws IOException {
+		TreeSet<AnonymousGroup> set = new TreeSet<AnonymousGroup>();
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			set.add(cp.readGroup(in));
+		}
+		return set;
+	}
+
 	/**
 	 * Gets the Anonymous groups this manager belongs to.
 	 * @return groups as a TreeSet
@@ -0,0 +1,337 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps track of the hosts whose connectivity may have changed since the
+ * previous connection check: the hosts that have moved, whose radio range,
+ * scan interval or activeness has changed, or whose connections have been
+ * forced up or down. The hosts report their changes themselves (see
+ * {@link DTNHost#connectivityChanged()}), the moves are checked when the
+ * hosts are moved and the activeness only when it may change, so nothing is
+ * done for the hosts that stay unchanged. Two unchanged (static) hosts can't
+ * become connected or disconnected, so a connection check needs to look only
+ * at the pairs with a changed host. Hosts that scan only at intervals are
+ * changed on every check.
+ * <P>
+ * The tracker can also move the hosts so that the hosts that are waiting for
+ * their next path or are inactive are skipped until their wait or inactive
+ * period ends (see {@link #moveHosts(double, ConnectivityGrid)}).
+ * </P>
+ *
+ * @see World#SKIP_STATIC_PAIRS_S
+ */
+public class ChangedHosts {
+	/** the tracked hosts */
+	private List<DTNHost> hosts;
+	/** number of the next connection check */
+	private int round;
+	/** hosts that have changed since the latest check */
+	private List<DTNHost> next;
+	/** hosts that had changed on the latest check */
+	private List<DTNHost> changed;
+	/** hosts that scanned at intervals on the latest check */
+	private List<DTNHost> scanners;
+
+	/** locations of the hosts after their latest moves */
+	private double[] movedX;
+	private double[] movedY;
+	/** indexes of the hosts that are moved on every update, in order */
+	private int[] movers;
+	private int nrofMovers;
+	/** buffers for merging the woken hosts to the movers */
+	private int[] woken;
+	private int[] merged;
+	/** the times when the skipped hosts are moved again */
+	private double[] wakeTimes;
+	/** the hosts that are not moved before their wake up times */
+	private PriorityQueue<Integer> sleepers;
+
+	/** activeness of the hosts on their latest activeness checks */
+	private boolean[] wasActive;
+	/** the times when the activeness of the hosts is checked next */
+	private double[] activenessTimes;
+	/** the hosts whose activeness may change, ordered by the check times */
+	private PriorityQueue<Integer> activenessChecks;
+
+	/**
+	 * Creates a tracker for the hosts. All the hosts are changed on the first
+	 * check.
+	 *
+	 * @param hosts
+	 *            The hosts to track
+	 */
+	public ChangedHosts(List<DTNHost> hosts) {
+		int nrofHosts = hosts.size();
+		this.hosts = hosts;
+		this.round = 0;
+		this.next = new ArrayList<DTNHost>();
+		this.changed = new ArrayList<DTNHost>();
+		this.scanners = new ArrayList<DTNHost>();
+
+		this.movedX = new double[nrofHosts];
+		this.movedY = new double[nrofHosts];
+		this.movers = new int[nrofHosts];
+		this.woken = new int[nrofHosts];
+		this.merged = new int[nrofHosts];
+		this.wakeTimes = new double[nrofHosts];
+		this.sleepers = new PriorityQueue<Integer>(11, new TimeOrder(
+				this.wakeTimes));
+
+		this.wasActive = new boolean[nrofHosts];
+		this.activenessTimes = new double[nrofHosts];
+		this.activenessChecks = new PriorityQueue<Integer>(11, new TimeOrder(
+				this.activenessTimes));
+		for (int i = 0; i < nrofHosts; i++) {
+			/* all the hosts are checked on the first check */
+			this.activenessTimes[i] = Double.NEGATIVE_INFINITY;
+			this.activenessChecks.add(i);
+		}
+
+		for (DTNHost host : hosts) {
+			host.setChangeTracker(this);
+		}
+		resetMovement();
+	}
+
+	/**
+	 * Resets the movement state so that all the hosts are moved on the next
+	 * update and changed on the next check. Must be called if the hosts'
+	 * movement is changed by other means than moving them (e.g., restored
+	 * from a checkpoint).
+	 */
+	public void resetMovement() {
+		this.sleepers.clear();
+		this.nrofMovers = this.hosts.size();
+		for (int i = 0; i < this.nrofMovers; i++) {
+			DTNHost host = this.hosts.get(i);
+			this.movers[i] = i;
+			this.movedX[i] = host.getLocation().getX();
+			this.movedY[i] = host.getLocation().getY();
+			hostChanged(host);
+		}
+	}
+
+	/**
+	 * Marks that the connectivity of a host may have changed
+	 *
+	 * @param host
+	 *            The host that changed
+	 */
+	void hostChanged(DTNHost host) {
+		if (host.changedRound != this.round) {
+			host.changedRound = this.round;
+			this.next.add(host);
+		}
+	}
+
+	/**
+	 * Checks if a host has moved since the latest check and marks it changed
+	 * if it has. The host's cell in the grid is updated if it moved.
+	 *
+	 * @param index
+	 *            Index of the host in the host list
+	 * @param grid
+	 *            The connectivity grid or null if no grid is in use
+	 */
+	public void checkMoved(int index, ConnectivityGrid grid) {
+		DTNHost host = this.hosts.get(index);
+		Coord c = host.getLocation();
+		if (c.getX() != this.movedX[index] || c.getY() != this.movedY[index]) {
+			this.movedX[index] = c.getX();
+			this.movedY[index] = c.getY();
+			hostChanged(host);
+			if (grid != null) {
+				grid.updateLocation(host);
+			}
+		}
+	}
+
+	/**
+	 * Moves the hosts for a given amount of time like moving every host with
+	 * {@link DTNHost#move(double)} in the order of the host list would. The
+	 * hosts that are waiting for their next path or are inactive are skipped
+	 * until the time when they may move again or their activeness may change,
+	 * since moving them would do nothing. Must not be used if the hosts'
+	 * moves are traced (see {@link DTNHost#setMoveTrace(MoveTrace)}), since
+	 * every move is traced.
+	 *
+	 * @param timeIncrement
+	 *            The time how long the hosts should move
+	 * @param grid
+	 *            The connectivity grid whose cells are updated or null
+	 */
+	public void moveHosts(double timeIncrement, ConnectivityGrid grid) {
+		double now = SimClock.getTime();
+
+		/* the waits of these hosts end; move them in the order of the list */
+		int nrofWoken = 0;
+		while (!this.sleepers.isEmpty()
+				&& this.wakeTimes[this.sleepers.peek()] <= now) {
+			this.woken[nrofWoken++] = this.sleepers.poll();
+		}
+		if (nrofWoken > 0) {
+			Arrays.sort(this.woken, 0, nrofWoken);
+			mergeWoken(nrofWoken);
+		}
+
+		int nrofKept = 0;
+		for (int k = 0; k < this.nrofMovers; k++) {
+			int i = this.movers[k];
+			DTNHost host = this.hosts.get(i);
+			host.move(timeIncrement);
+			checkMoved(i, grid);
+
+			double wakeTime = getWakeTime(host, now);
+			if (wakeTime > now) {
+				this.wakeTimes[i] = wakeTime;
+				this.sleepers.add(i);
+			} else {
+				this.movers[nrofKept++] = i;
+			}
+		}
+		this.nrofMovers = nrofKept;
+	}
+
+	/**
+	 * Merges the woken hosts to the (ordered) movers
+	 *
+	 * @param nrofWoken
+	 *            Number of woken hosts in {@link #woken}
+	 */
+	private void mergeWoken(int nrofWoken) {
+		int m = 0;
+		int w = 0;
+		int k = 0;
+		while (m < this.nrofMovers || w < nrofWoken) {
+			if (w == nrofWoken
+					|| (m < this.nrofMovers && this.movers[m] < this.woken[w])) {
+				this.merged[k++] = this.movers[m++];
+			} else {
+				this.merged[k++] = this.woken[w++];
+			}
+		}
+		int[] tmp = this.movers;
+		this.movers = this.merged;
+		this.merged = tmp;
+		this.nrofMovers = k;
+	}
+
+	/**
+	 * Returns the time when a host that was just moved must be moved again:
+	 * the current time if it is moving, otherwise the end of its wait or the
+	 * next change of its activeness, whichever comes first
+	 *
+	 * @param host
+	 *            The host
+	 * @param now
+	 *            The time of the move
+	 * @return The time when the host may move next
+	 */
+	private double getWakeTime(DTNHost host, double now) {
+		double activenessChange = host.getNextActivenessChange();
+		if (!host.isActive()) {
+			return activenessChange;
+		}
+		double nextTimeToMove = host.getNextTimeToMove();
+		if (nextTimeToMove <= now) {
+			return now; // moving
+		}
+		return Math.min(nextTimeToMove, activenessChange);
+	}
+
+	/**
+	 * Starts a new connection check. The hosts whose activeness may have
+	 * changed are checked first. The hosts that have changed since the
+	 * previous check are returned (in the order they changed) and they are
+	 * not static until the check after this one starts.
+	 *
+	 * @return The changed hosts. The list is valid until the next call.
+	 */
+	public List<DTNHost> startCheck() {
+		checkActiveness();
+		for (int i = 0, n = this.scanners.size(); i < n; i++) {
+			hostChanged(this.scanners.get(i));
+		}
+
+		List<DTNHost> latest = this.changed;
+		this.changed = this.next;
+		this.next = latest;
+		this.next.clear();
+		this.round++;
+
+		this.scanners.clear();
+		for (int i = 0, n = this.changed.size(); i < n; i++) {
+			DTNHost host = this.changed.get(i);
+			if (host.scansAtIntervals()) {
+				this.scanners.add(host);
+			}
+		}
+		return this.changed;
+	}
+
+	/**
+	 * Checks the activeness of the hosts whose activeness may have changed
+	 * since their latest check and marks the hosts changed if it has
+	 */
+	private void checkActiveness() {
+		double now = SimClock.getTime();
+		int nrofDue = 0;
+		while (!this.activenessChecks.isEmpty()
+				&& this.activenessTimes[this.activenessChecks.peek()] <= now) {
+			this.woken[nrofDue++] = this.activenessChecks.poll();
+		}
+
+		for (int k = 0; k < nrofDue; k++) {
+			int i = this.woken[k];
+			DTNHost host = this.hosts.get(i);
+			boolean active = host.isActive();
+			if (active != this.wasActive[i]) {
+				this.wasActive[i] = active;
+				hostChanged(host);
+			}
+			this.activenessTimes[i] = host.getNextActivenessChange();
+			if (this.activenessTimes[i] != Double.MAX_VALUE) {
+				this.activenessChecks.add(i);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the host hasn't changed since the latest check started
+	 * and it hadn't changed before it either, i.e., if the host is static in
+	 * the latest check
+	 *
+	 * @param host
+	 *            The host to check
+	 * @return true if the host is static
+	 */
+	public boolean isStatic(DTNHost host) {
+		return host.changedRound < this.round - 1;
+	}
+
+	/**
+	 * Orders host indexes by the times in an array (and by the index if the
+	 * times are the same)
+	 */
+	private static class TimeOrder implements Comparator<Integer> {
+		private double[] times;
+
+		public TimeOrder(double[] times) {
+			this.times = times;
+		}
+
+		public int compare(Integer i1, Integer i2) {
+			int c = Double.compare(this.times[i1], this.times[i2]);
+			return (c != 0 ? c : i1.intValue() - i2.intValue());
+		}
+	}
+}
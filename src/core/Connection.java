@@ -4,6 +4,10 @@
  */
 package core;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import routing.MessageRouter;
 
 /**
@@ -214,6 +218,15 @@ public class Connection {
 		}
 	}
 
+	/**
+	 * Returns the transfer speed of the connection
+	 * 
+	 * @return the transfer speed of the connection (Bps)
+	 */
+	public int getSpeed() {
+		return this.speed;
+	}
+
 	/**
 	 * Returns the node in the other end of the connection
 	 * 
@@ -229,6 +242,57 @@ public class Connection {
 		}
 	}
 
+	/**
+	 * Writes the state of this connection (including the message on fly) to
+	 * a checkpoint
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @param cp
+	 *            The checkpoint that is written
+	 * @throws IOException
+	 *             if writing failed
+	 * @see SimCheckpoint#writeConnection(DataOutput, Connection)
+	 */
+	void writeState(DataOutput out, SimCheckpoint cp) throws IOException {
+		cp.writeHost(out, this.fromNode);
+		cp.writeHost(out, this.toNode);
+		cp.writeHost(out, this.msgFromNode);
+		out.writeBoolean(this.isUp);
+		out.writeInt(this.speed);
+		cp.writeMessage(out, this.msgOnFly);
+		out.writeDouble(this.transferDoneTime);
+		out.writeInt(this.bytesTransferred);
+	}
+
+	/**
+	 * Reads a connection written with {@link #writeState(DataOutput,
+	 * SimCheckpoint)}. The connection is registered to the checkpoint before
+	 * the message on fly is read.
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @param cp
+	 *            The checkpoint that is read
+	 * @return The connection
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	static Connection readState(DataInput in, SimCheckpoint cp)
+			throws IOException {
+		DTNHost from = cp.readHost(in);
+		DTNHost to = cp.readHost(in);
+		Connection con = new Connection(from, to, 0);
+		cp.register(con);
+		con.msgFromNode = cp.readHost(in);
+		con.isUp = in.readBoolean();
+		con.speed = in.readInt();
+		con.msgOnFly = cp.readMessage(in);
+		con.transferDoneTime = in.readDouble();
+		con.bytesTransferred = in.readInt();
+		return con;
+	}
+
 	/**
 	 * Returns a String presentation of the connection.
 	 */
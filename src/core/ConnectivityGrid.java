@@ -4,9 +4,14 @@
  */
 package core;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * <P>
@@ -30,11 +35,28 @@ import java.util.List;
  * Also, it makes sense to normalize the coordinates to start from zero to
  * conserve memory.
  */
-public class ConnectivityGrid {
+public class ConnectivityGrid implements SpatialIndex {
+	/**
+	 * turns near changed nodes are sorted if there are less of them than the
+	 * number of addresses divided by this
+	 */
+	private static final int SORTED_TURNS_DIVISOR = 16;
 	private GridCell[][] cells;
 	private int cellSize;
 	private int rows;
 	private int cols;
+	/** nodes of the grid indexed by their network address */
+	private DTNHost[] nodesByAddress;
+	/** tasks for scanning the grid concurrently (null until needed) */
+	private List<PairScanTask> scanTasks;
+	/** buffer for merging the candidate pairs found by the scan tasks */
+	private long[] mergedPairs;
+	/** addresses of the nodes to connect near changed nodes */
+	private int[] turns = new int[16];
+	/** marks of the turns by address (if there are many turns) */
+	private boolean[] isTurn;
+	/** number of the latest search near changed nodes */
+	private int markRound;
 
 	/**
 	 * Creates a new overlay connectivity grid
@@ -72,6 +94,78 @@ public class ConnectivityGrid {
 			GridCell c = cellFromCoord(n.getLocation());
 			c.addNode(n);
 			n.setCurCell(c);
+			addToAddressIndex(n);
+		}
+	}
+
+	/**
+	 * Adds a node to the address-indexed node array
+	 * 
+	 * @param node
+	 *            The node to add
+	 */
+	private void addToAddressIndex(DTNHost node) {
+		int address = node.getAddress();
+		if (this.nodesByAddress == null) {
+			this.nodesByAddress = new DTNHost[address + 1];
+		} else if (address >= this.nodesByAddress.length) {
+			this.nodesByAddress = Arrays.copyOf(this.nodesByAddress, Math.max(
+					address + 1, this.nodesByAddress.length * 2));
+		}
+		this.nodesByAddress[address] = node;
+	}
+
+	/**
+	 * Writes the nodes of every cell, in the order they are in the cells, to
+	 * a checkpoint. The order of the nodes affects the order in which the
+	 * nodes are connected.
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		for (int i = 0; i < rows + 2; i++) {
+			for (int j = 0; j < cols + 2; j++) {
+				List<DTNHost> nodes = cells[i][j].getNodes();
+				out.writeInt(nodes.size());
+				for (int k = 0, n = nodes.size(); k < n; k++) {
+					out.writeInt(nodes.get(k).getAddress());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restores the nodes of the cells from a checkpoint written with
+	 * {@link #writeState(DataOutput)}. All the nodes must have been added to
+	 * the grid and their locations restored.
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readState(DataInput in) throws IOException {
+		for (int i = 0; i < rows + 2; i++) {
+			for (int j = 0; j < cols + 2; j++) {
+				GridCell cell = cells[i][j];
+				cell.getNodes().clear();
+				for (int k = 0, n = in.readInt(); k < n; k++) {
+					DTNHost node = nodesByAddress[in.readInt()];
+					cell.addNode(node);
+					node.setCurCell(cell);
+				}
+			}
+		}
+
+		for (DTNHost node : nodesByAddress) {
+			if (node != null
+					&& node.getCurCell() != cellFromCoord(node.getLocation())) {
+				throw new SimError("Checkpoint's grid cell of " + node
+						+ " doesn't match its location");
+			}
 		}
 	}
 
@@ -102,11 +196,120 @@ public class ConnectivityGrid {
 	 * @see #connectAllNearNodes()
 	 */
 	public void connectToNearNodes(DTNHost node) {
-		GridCell[] neighbors = getNeighborCellsByCoord(node.getLocation());
-		for (int i = 0; i < neighbors.length; i++) {
-			List<DTNHost> l = neighbors[i].getNodes();
-			for (int j = 0; j < l.size(); j++) {
-				node.connect(l.get(j));
+		Coord c = node.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int) (c.getY() / cellSize) + 1;
+		int col = (int) (c.getX() / cellSize) + 1;
+		connectToNodesInNeighborCells(node, row, col);
+	}
+
+	/**
+	 * Connects the nodes that are near the given (changed) nodes like calling
+	 * {@link #connectToNearNodes(DTNHost)} for all the nodes in the order of
+	 * their addresses would connect them, if the pairs of two static nodes
+	 * are skipped (see {@link DTNHost#isStatic()}). Only the nodes that are
+	 * in the same or adjacent cells with a changed node are gone through, and
+	 * the static ones of them are connected only to the changed nodes.
+	 * 
+	 * @param changedNodes
+	 *            The changed nodes, i.e., the nodes that are not static
+	 * @return The number of nodes whose near nodes were connected
+	 */
+	public int connectToNodesNear(List<DTNHost> changedNodes) {
+		this.markRound++;
+
+		/* the changed nodes of every cell in the order of the cell's list */
+		for (int k = 0, n = changedNodes.size(); k < n; k++) {
+			GridCell cell = cellFromCoord(changedNodes.get(k).getLocation());
+			if (cell.changedRound != this.markRound) {
+				cell.changedRound = this.markRound;
+				cell.changedNodes.clear();
+				List<DTNHost> nodes = cell.getNodes();
+				for (int m = 0, size = nodes.size(); m < size; m++) {
+					if (!nodes.get(m).isStatic()) {
+						cell.changedNodes.add(nodes.get(m));
+					}
+				}
+			}
+		}
+
+		/* the nodes in and next to those cells take their turns */
+		int nrofTurns = 0;
+		for (int k = 0, n = changedNodes.size(); k < n; k++) {
+			Coord c = changedNodes.get(k).getLocation();
+			int row = (int) (c.getY() / cellSize) + 1;
+			int col = (int) (c.getX() / cellSize) + 1;
+			for (int i = row - 1; i <= row + 1; i++) {
+				for (int j = col - 1; j <= col + 1; j++) {
+					GridCell cell = this.cells[i][j];
+					if (cell.markRound == this.markRound) {
+						continue; // near another changed node too
+					}
+					cell.markRound = this.markRound;
+					List<DTNHost> nodes = cell.getNodes();
+					if (nrofTurns + nodes.size() > this.turns.length) {
+						this.turns = Arrays.copyOf(this.turns, Math.max(
+								nrofTurns + nodes.size(), 2 * this.turns.length));
+					}
+					for (int m = 0, size = nodes.size(); m < size; m++) {
+						this.turns[nrofTurns++] = nodes.get(m).getAddress();
+					}
+				}
+			}
+		}
+
+		if (nrofTurns < this.nodesByAddress.length / SORTED_TURNS_DIVISOR) {
+			Arrays.sort(this.turns, 0, nrofTurns);
+			for (int i = 0; i < nrofTurns; i++) {
+				connectToChangedNearNodes(this.nodesByAddress[this.turns[i]]);
+			}
+			return nrofTurns;
+		}
+
+		/* many turns; cheaper to go through the addresses than to sort */
+		if (this.isTurn == null
+				|| this.isTurn.length != this.nodesByAddress.length) {
+			this.isTurn = new boolean[this.nodesByAddress.length];
+		}
+		for (int i = 0; i < nrofTurns; i++) {
+			this.isTurn[this.turns[i]] = true;
+		}
+		for (int a = 0; a < this.isTurn.length; a++) {
+			if (this.isTurn[a]) {
+				this.isTurn[a] = false;
+				connectToChangedNearNodes(this.nodesByAddress[a]);
+			}
+		}
+		return nrofTurns;
+	}
+
+	/**
+	 * Connects a node to the nodes near it like
+	 * {@link #connectToNearNodes(DTNHost)}, but a static node only to the
+	 * changed nodes collected by {@link #connectToNodesNear(List)}
+	 * 
+	 * @param node
+	 *            Node to connect
+	 */
+	private void connectToChangedNearNodes(DTNHost node) {
+		if (!node.isStatic()) {
+			connectToNearNodes(node);
+			return;
+		}
+
+		Coord c = node.getLocation();
+		int row = (int) (c.getY() / cellSize) + 1;
+		int col = (int) (c.getX() / cellSize) + 1;
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				GridCell cell = this.cells[i][j];
+				if (cell.changedRound != this.markRound) {
+					continue; // no changed nodes
+				}
+				List<DTNHost> list = cell.changedNodes;
+				for (int k = 0, n = list.size(); k < n; k++) {
+					node.connect(list.get(k));
+				}
 			}
 		}
 	}
@@ -126,57 +329,103 @@ public class ConnectivityGrid {
 				if (nodes.size() == 0) {
 					continue; // skip empty cells
 				}
-				GridCell[] neighbors = getNeighborCells(i, j);
 				for (int k = 0, n = nodes.size(); k < n; k++) {
-					connectNodesInCells(nodes.get(k), neighbors);
+					connectToNodesInNeighborCells(nodes.get(k), i, j);
 				}
 			}
 		}
 	}
 
 	/**
-	 * Connects a node to all other nodes in a cell array
+	 * Connects all nodes, that are in adjacent cells, to each other using
+	 * worker threads. Works in two phases: first the worker threads scan
+	 * blocks of grid rows and collect the pairs of nodes that are within each
+	 * other's radio range. Then the pairs are sorted to (lower address, higher
+	 * address) order and {@link DTNHost#connect(DTNHost)} is called for both
+	 * nodes of every pair in that order. Thus, the order of the connection
+	 * events does not depend on the number of threads.
 	 * 
-	 * @param node
-	 *            Node to connect
-	 * @param cells
-	 *            Cell array where the other nodes are looked from
+	 * @param workers
+	 *            The worker threads to use
+	 * @see #connectAllNearNodes()
 	 */
-	private void connectNodesInCells(DTNHost node, GridCell[] cells) {
-		for (int i = 0; i < cells.length; i++) {
-			List<DTNHost> list = cells[i].getNodes();
-			for (int j = 0, n = list.size(); j < n; j++) {
-				node.connect(list.get(j));
+	public void connectAllNearNodes(WorkerPool workers) {
+		if (this.nodesByAddress == null) {
+			return; // no nodes
+		}
+		if (this.scanTasks == null) {
+			int nrofTasks = workers.getNrofTasks(this.rows);
+			this.scanTasks = new ArrayList<PairScanTask>(nrofTasks);
+			for (int i = 0; i < nrofTasks; i++) {
+				scanTasks.add(new PairScanTask(1 + i * rows / nrofTasks, 1
+						+ (i + 1) * rows / nrofTasks));
 			}
+			this.mergedPairs = new long[0];
+		}
+
+		workers.runAll(this.scanTasks);
+
+		int nrofPairs = 0;
+		for (PairScanTask t : this.scanTasks) {
+			nrofPairs += t.nrofPairs;
+		}
+		if (nrofPairs > this.mergedPairs.length) {
+			this.mergedPairs = new long[nrofPairs + nrofPairs / 2];
+		}
+		int pos = 0;
+		for (PairScanTask t : this.scanTasks) {
+			System.arraycopy(t.pairs, 0, this.mergedPairs, pos, t.nrofPairs);
+			pos += t.nrofPairs;
+		}
+		Arrays.sort(this.mergedPairs, 0, nrofPairs);
+
+		for (int i = 0; i < nrofPairs; i++) {
+			DTNHost lower = nodesByAddress[(int) (mergedPairs[i] >>> 32)];
+			DTNHost higher = nodesByAddress[(int) mergedPairs[i]];
+			lower.connect(higher);
+			higher.connect(lower);
 		}
 	}
 
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int) (c.getY() / cellSize) + 1;
-		int col = (int) (c.getX() / cellSize) + 1;
-		return getNeighborCells(row, col);
+	/**
+	 * Returns true if the two nodes are within each other's radio range (i.e.
+	 * the distance is at most the smaller of the ranges)
+	 * 
+	 * @param n1
+	 *            The first node
+	 * @param n2
+	 *            The second node
+	 * @return true if the nodes are within range
+	 */
+	private static boolean isWithinRange(DTNHost n1, DTNHost n2) {
+		double smallerRange = n1.getTransmitRange();
+		if (n2.getTransmitRange() < smallerRange) {
+			smallerRange = n2.getTransmitRange();
+		}
+		return n1.getLocation().distance(n2.getLocation()) <= smallerRange;
 	}
 
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain cell
-	 * and the cell itself.
+	 * Connects a node to all other nodes in a cell and in its neighboring
+	 * cells. The cells are gone through row by row, starting from the upper
+	 * left neighbor.
 	 * 
+	 * @param node
+	 *            Node to connect
 	 * @param row
-	 *            Row index of the cell
+	 *            Row index of the (center) cell
 	 * @param col
-	 *            Column index of the cell
-	 * @return Array of neighboring Cells
+	 *            Column index of the (center) cell
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] { cells[row - 1][col - 1],
-				cells[row - 1][col],
-				cells[row - 1][col + 1],// 1st row
-				cells[row][col - 1], cells[row][col],
-				cells[row][col + 1],// 2nd row
-				cells[row + 1][col - 1], cells[row + 1][col],
-				cells[row + 1][col + 1] // 3rd row
-		};
+	private void connectToNodesInNeighborCells(DTNHost node, int row, int col) {
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				List<DTNHost> list = this.cells[i][j].getNodes();
+				for (int k = 0, n = list.size(); k < n; k++) {
+					node.connect(list.get(k));
+				}
+			}
+		}
 	}
 
 	private GridCell cellFromCoord(Coord c) {
@@ -200,6 +449,90 @@ public class ConnectivityGrid {
 				+ this.rows + ", cell size=" + this.cellSize;
 	}
 
+	/**
+	 * Task that finds the pairs of nodes that are within range of each other
+	 * from a block of grid rows. Every pair is reported only by the node with
+	 * the lower address, so each pair is found exactly once. The pairs are
+	 * stored as (lower address, higher address) packed to a long.
+	 */
+	private class PairScanTask implements Callable<Object> {
+		private static final int INITIAL_SIZE = 64;
+		private int firstRow;
+		private int endRow;
+		private long[] pairs;
+		private int nrofPairs;
+
+		/**
+		 * Creates a new task for scanning the given rows
+		 * 
+		 * @param firstRow
+		 *            Index of the first row to scan (inclusive)
+		 * @param endRow
+		 *            Index of the last row to scan (exclusive)
+		 */
+		public PairScanTask(int firstRow, int endRow) {
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+			this.pairs = new long[INITIAL_SIZE];
+		}
+
+		public Object call() {
+			this.nrofPairs = 0;
+			for (int i = firstRow; i < endRow; i++) {
+				for (int j = 1; j <= cols; j++) {
+					List<DTNHost> nodes = cells[i][j].getNodes();
+					if (nodes.size() == 0) {
+						continue; // skip empty cells
+					}
+					for (int k = 0, n = nodes.size(); k < n; k++) {
+						scanNode(nodes.get(k), i, j);
+					}
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Adds all the nodes within range (and with higher address) of a
+		 * node to the pair buffer
+		 * 
+		 * @param node
+		 *            The node
+		 * @param row
+		 *            Row index of the node's cell
+		 * @param col
+		 *            Column index of the node's cell
+		 */
+		private void scanNode(DTNHost node, int row, int col) {
+			long address = node.getAddress();
+			for (int i = row - 1; i <= row + 1; i++) {
+				for (int j = col - 1; j <= col + 1; j++) {
+					List<DTNHost> list = cells[i][j].getNodes();
+					for (int k = 0, n = list.size(); k < n; k++) {
+						DTNHost other = list.get(k);
+						if (other.getAddress() > address
+								&& isWithinRange(node, other)) {
+							addPair((address << 32) | other.getAddress());
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Adds a packed pair to the buffer (growing it if needed)
+		 * 
+		 * @param pair
+		 *            The pair to add
+		 */
+		private void addPair(long pair) {
+			if (nrofPairs == pairs.length) {
+				pairs = Arrays.copyOf(pairs, pairs.length * 2);
+			}
+			pairs[nrofPairs++] = pair;
+		}
+	}
+
 	/**
 	 * A single cell in the cell grid. Contains the nodes that are currently in
 	 * that part of the grid.
@@ -208,9 +541,16 @@ public class ConnectivityGrid {
 		// how large array is initially chosen
 		private static final int EXPECTED_NODE_COUNT = 5;
 		private ArrayList<DTNHost> nodes;
+		/** search round that marked this cell as near a changed node */
+		private int markRound;
+		/** search round that collected the changed nodes of this cell */
+		private int changedRound;
+		/** changed nodes of this cell on the search round (in cell order) */
+		private List<DTNHost> changedNodes;
 
 		private GridCell() {
 			this.nodes = new ArrayList<DTNHost>(EXPECTED_NODE_COUNT);
+			this.changedNodes = new ArrayList<DTNHost>(0);
 		}
 
 		/**
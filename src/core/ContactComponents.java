@@ -0,0 +1,187 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.List;
+
+/**
+ * <P>
+ * Connected components of the contact graph, i.e., the groups of hosts that
+ * are connected to each other directly or through other hosts. Hosts in
+ * different components can't affect each other's routers, so the components
+ * can be updated concurrently.
+ * </P>
+ * <P>
+ * The components are found with a union-find structure over the hosts'
+ * current connections (using union by size and path halving), and the hosts
+ * of a given update order are then grouped by their components. The
+ * components are numbered in the order their first host appears in the update
+ * order and the hosts of every component keep their relative order, so
+ * updating the components one after another in any interleaving gives every
+ * component the same updates as updating the hosts in the original order.
+ * </P>
+ */
+public class ContactComponents {
+	private List<DTNHost> hosts;
+	/** parent of every host in the union-find forest (indexed by address) */
+	private int[] parents;
+	/** size of the tree of every root host (indexed by address) */
+	private int[] sizes;
+	/** component number of every root host (indexed by address) */
+	private int[] numbers;
+	/** the hosts' addresses grouped by components */
+	private int[] grouped;
+	/** start positions of the components in {@link #grouped} (+ the end) */
+	private int[] starts;
+	private int nrofComponents;
+
+	/**
+	 * Creates a new component finder for the given hosts
+	 *
+	 * @param hosts
+	 *            The hosts (indexed by their network addresses)
+	 */
+	public ContactComponents(List<DTNHost> hosts) {
+		int n = hosts.size();
+		this.hosts = hosts;
+		this.parents = new int[n];
+		this.sizes = new int[n];
+		this.numbers = new int[n];
+		this.grouped = new int[n];
+		this.starts = new int[n + 1];
+		this.nrofComponents = 0;
+	}
+
+	/**
+	 * Finds the components of the current contact graph and groups the hosts
+	 * by their components.
+	 *
+	 * @param order
+	 *            The addresses of all hosts in the update order
+	 */
+	public void compute(int[] order) {
+		int n = this.hosts.size();
+		for (int i = 0; i < n; i++) {
+			parents[i] = i;
+			sizes[i] = 1;
+			numbers[i] = -1;
+		}
+
+		for (int i = 0; i < n; i++) {
+			List<Connection> connections = hosts.get(i).getConnections();
+			for (int j = 0, m = connections.size(); j < m; j++) {
+				DTNHost other = connections.get(j).getOtherNode(hosts.get(i));
+				union(i, other.getAddress());
+			}
+		}
+
+		/* number the components and count their sizes */
+		this.nrofComponents = 0;
+		for (int i = 0; i < n; i++) {
+			int root = find(order[i]);
+			if (numbers[root] < 0) {
+				numbers[root] = nrofComponents;
+				starts[nrofComponents] = 0;
+				nrofComponents++;
+			}
+			starts[numbers[root]]++;
+		}
+
+		/* sizes to start positions */
+		int pos = 0;
+		for (int c = 0; c < nrofComponents; c++) {
+			int size = starts[c];
+			starts[c] = pos;
+			pos += size;
+		}
+		starts[nrofComponents] = pos;
+
+		/* fill in the hosts in the update order (moves starts to the ends) */
+		for (int i = 0; i < n; i++) {
+			int c = numbers[find(order[i])];
+			grouped[starts[c]++] = order[i];
+		}
+		for (int c = nrofComponents; c > 0; c--) {
+			starts[c] = starts[c - 1];
+		}
+		starts[0] = 0;
+	}
+
+	/**
+	 * Returns the number of components found by the last
+	 * {@link #compute(int[])}
+	 *
+	 * @return the number of components
+	 */
+	public int getNrofComponents() {
+		return this.nrofComponents;
+	}
+
+	/**
+	 * Returns the position of the first host of a component in the grouped
+	 * order (see {@link #getHost(int)})
+	 *
+	 * @param component
+	 *            Number of the component; the number of components gives the
+	 *            end of the last component
+	 * @return The position of the component's first host
+	 */
+	public int getStart(int component) {
+		return this.starts[component];
+	}
+
+	/**
+	 * Returns the address of the host at a position of the grouped order
+	 *
+	 * @param position
+	 *            The position
+	 * @return The address of the host
+	 */
+	public int getHost(int position) {
+		return this.grouped[position];
+	}
+
+	/**
+	 * Returns true if the two hosts were in the same component
+	 *
+	 * @param address1
+	 *            Address of the first host
+	 * @param address2
+	 *            Address of the second host
+	 * @return true if the hosts were in the same component
+	 */
+	public boolean inSameComponent(int address1, int address2) {
+		return find(address1) == find(address2);
+	}
+
+	/**
+	 * Returns the root of a host's tree
+	 */
+	private int find(int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]]; // path halving
+			i = parents[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Merges the trees of two hosts
+	 */
+	private void union(int a, int b) {
+		int ra = find(a);
+		int rb = find(b);
+		if (ra == rb) {
+			return;
+		}
+		if (sizes[ra] < sizes[rb]) {
+			int tmp = ra;
+			ra = rb;
+			rb = tmp;
+		}
+		parents[rb] = ra;
+		sizes[ra] += sizes[rb];
+	}
+}
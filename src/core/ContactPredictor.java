@@ -0,0 +1,330 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <P>
+ * Kinetic contact engine that solves the exact times when hosts come within
+ * and go out of each other's range during an update interval. The hosts'
+ * moves are recorded to {@link MoveTrace}s; since hosts move along straight
+ * lines at constant speeds between the points of the traces, the distance of
+ * two hosts is a quadratic function of time between any two (merged) points
+ * of their traces and the range crossings are its roots.
+ * </P>
+ * <P>
+ * The crossings are given out as contact events in time order (see
+ * {@link #nextEventTime()} and {@link #processNextEvent()}). This way
+ * connections can be created and destroyed at their exact times (and e.g.,
+ * reports see the exact contact times) even with long update intervals;
+ * contacts that start and end within the same interval are also detected.
+ * </P>
+ * <P>
+ * Candidate pairs are found by sorting the hosts by the bounding boxes of
+ * their traces (extended by half of the hosts' ranges) along the x axis and
+ * sweeping through them. Since the hosts' order changes only little between
+ * intervals, the sorting is done using insertion sort.
+ * </P>
+ */
+public class ContactPredictor {
+	private List<DTNHost> hosts;
+	private MoveTrace[] traces;
+	/** bounding boxes of the traces (extended by half of the ranges) */
+	private double[] minX;
+	private double[] maxX;
+	private double[] minY;
+	private double[] maxY;
+	/** host indexes ordered by {@link #minX} */
+	private int[] order;
+	/** contact events of the current interval in time order */
+	private List<ContactEvent> events;
+	/** index of the next event to process */
+	private int nextEvent;
+
+	/**
+	 * Creates a new contact predictor and starts tracing the moves of the
+	 * given hosts.
+	 *
+	 * @param hosts
+	 *            The hosts whose contacts are predicted (indexed by their
+	 *            network addresses)
+	 */
+	public ContactPredictor(List<DTNHost> hosts) {
+		int n = hosts.size();
+		this.hosts = hosts;
+		this.traces = new MoveTrace[n];
+		this.minX = new double[n];
+		this.maxX = new double[n];
+		this.minY = new double[n];
+		this.maxY = new double[n];
+		this.order = new int[n];
+		this.events = new ArrayList<ContactEvent>();
+		this.nextEvent = 0;
+
+		for (int i = 0; i < n; i++) {
+			DTNHost host = hosts.get(i);
+			this.traces[i] = new MoveTrace();
+			this.traces[i].start(SimClock.getTime(), host.getLocation());
+			host.setMoveTrace(this.traces[i]);
+			this.order[i] = i;
+		}
+	}
+
+	/**
+	 * Solves the contact events of an update interval. The hosts must have
+	 * been moved for the interval (i.e., their traces must cover it) before
+	 * calling this. Events of the previous interval that have not been
+	 * processed are discarded.
+	 *
+	 * @param startTime
+	 *            Start time of the interval
+	 * @param endTime
+	 *            End time of the interval
+	 */
+	public void predict(double startTime, double endTime) {
+		int n = this.traces.length;
+		this.events.clear();
+		this.nextEvent = 0;
+
+		for (int i = 0; i < n; i++) {
+			setBoundingBox(i);
+		}
+		sortByMinX();
+
+		/* sweep along the x axis; only overlapping boxes may have contacts */
+		for (int a = 0; a < n; a++) {
+			int i = order[a];
+			for (int b = a + 1; b < n && minX[order[b]] <= maxX[i]; b++) {
+				int j = order[b];
+				if (minY[j] <= maxY[i] && minY[i] <= maxY[j]) {
+					solvePair(i, j, startTime, endTime);
+				}
+			}
+		}
+
+		Collections.sort(this.events);
+	}
+
+	/**
+	 * Returns the time of the next contact event
+	 *
+	 * @return the time of the next contact event or Double.MAX_VALUE if there
+	 *         are no more events in the current interval
+	 */
+	public double nextEventTime() {
+		if (this.nextEvent >= this.events.size()) {
+			return Double.MAX_VALUE;
+		}
+		return this.events.get(this.nextEvent).time;
+	}
+
+	/**
+	 * Processes the next contact event, i.e., creates or destroys the
+	 * connection of its hosts. A connection is created only if both hosts are
+	 * active and the host with the lower address is the initiator.
+	 */
+	public void processNextEvent() {
+		ContactEvent e = this.events.get(this.nextEvent++);
+		DTNHost from = hosts.get(e.from);
+		DTNHost to = hosts.get(e.to);
+
+		if (!e.up) {
+			from.forceConnection(to, false);
+		} else if (from.isActive() && to.isActive()) {
+			from.forceConnection(to, true);
+		}
+	}
+
+	/**
+	 * Sets the bounding box of a host's trace
+	 *
+	 * @param i
+	 *            Index of the host
+	 */
+	private void setBoundingBox(int i) {
+		MoveTrace t = this.traces[i];
+		double margin = hosts.get(i).getTransmitRange() / 2;
+		double x1 = t.getX(0);
+		double x2 = x1;
+		double y1 = t.getY(0);
+		double y2 = y1;
+
+		for (int k = 1, n = t.size(); k < n; k++) {
+			double x = t.getX(k);
+			double y = t.getY(k);
+			if (x < x1) {
+				x1 = x;
+			} else if (x > x2) {
+				x2 = x;
+			}
+			if (y < y1) {
+				y1 = y;
+			} else if (y > y2) {
+				y2 = y;
+			}
+		}
+
+		minX[i] = x1 - margin;
+		maxX[i] = x2 + margin;
+		minY[i] = y1 - margin;
+		maxY[i] = y2 + margin;
+	}
+
+	/**
+	 * Sorts the host indexes by the left edges of their bounding boxes
+	 */
+	private void sortByMinX() {
+		for (int a = 1; a < order.length; a++) {
+			int i = order[a];
+			double key = minX[i];
+			int b = a - 1;
+			while (b >= 0 && minX[order[b]] > key) {
+				order[b + 1] = order[b];
+				b--;
+			}
+			order[b + 1] = i;
+		}
+	}
+
+	/**
+	 * Solves the range crossings of two hosts during an interval and adds
+	 * them to the event list
+	 *
+	 * @param i
+	 *            Index of the first host
+	 * @param j
+	 *            Index of the second host
+	 * @param startTime
+	 *            Start time of the interval
+	 * @param endTime
+	 *            End time of the interval
+	 */
+	private void solvePair(int i, int j, double startTime, double endTime) {
+		MoveTrace ti = this.traces[i];
+		MoveTrace tj = this.traces[j];
+		double r1 = hosts.get(i).getTransmitRange();
+		double r2 = hosts.get(j).getTransmitRange();
+		double range = (r1 < r2 ? r1 : r2);
+		double rangeSq = range * range;
+		int si = 0; // segments the current time is in
+		int sj = 0;
+		boolean inRange = false;
+		double time = startTime;
+
+		for (boolean first = true; time < endTime; first = false) {
+			double next = endTime;
+			if (si + 1 < ti.size() && ti.getTime(si + 1) < next) {
+				next = ti.getTime(si + 1);
+			}
+			if (sj + 1 < tj.size() && tj.getTime(sj + 1) < next) {
+				next = tj.getTime(sj + 1);
+			}
+
+			/* relative location at the start and end of the part */
+			double dx0 = ti.getXAt(si, time) - tj.getXAt(sj, time);
+			double dy0 = ti.getYAt(si, time) - tj.getYAt(sj, time);
+			double dx1 = ti.getXAt(si, next) - tj.getXAt(sj, next);
+			double dy1 = ti.getYAt(si, next) - tj.getYAt(sj, next);
+			double wx = dx1 - dx0;
+			double wy = dy1 - dy0;
+
+			/* |d0 + s*w|^2 - r^2 = a*s^2 + b*s + c, s in [0,1] */
+			double a = wx * wx + wy * wy;
+			double b = 2 * (dx0 * wx + dy0 * wy);
+			double c = dx0 * dx0 + dy0 * dy0 - rangeSq;
+			boolean inAtStart = (c <= 0);
+
+			if (first) {
+				/* e.g., hosts that were in range but not active */
+				if (inAtStart != isConnected(i, j)) {
+					addEvent(i, j, time, inAtStart);
+				}
+				inRange = inAtStart;
+			} else if (inRange != inAtStart) { // rounding at a part's border
+				addEvent(i, j, time, inAtStart);
+				inRange = inAtStart;
+			}
+
+			double disc = b * b - 4 * a * c;
+			if (a > 0 && disc > 0) {
+				double sq = Math.sqrt(disc);
+				double s1 = (-b - sq) / (2 * a); // comes within range
+				double s2 = (-b + sq) / (2 * a); // goes out of range
+				double duration = next - time;
+
+				if (!inRange && s1 > 0 && s1 <= 1) {
+					addEvent(i, j, time + s1 * duration, true);
+					inRange = true;
+				}
+				if (inRange && s2 >= 0 && s2 < 1) {
+					addEvent(i, j, time + s2 * duration, false);
+					inRange = false;
+				}
+			}
+
+			time = next;
+			if (si + 1 < ti.size() && ti.getTime(si + 1) <= time) {
+				si++;
+			}
+			if (sj + 1 < tj.size() && tj.getTime(sj + 1) <= time) {
+				sj++;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the two hosts are currently connected
+	 */
+	private boolean isConnected(int i, int j) {
+		DTNHost host = hosts.get(i);
+		DTNHost other = hosts.get(j);
+		for (Connection c : host.getConnections()) {
+			if (c.getOtherNode(host) == other) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addEvent(int i, int j, double time, boolean up) {
+		if (i < j) {
+			this.events.add(new ContactEvent(i, j, time, up));
+		} else {
+			this.events.add(new ContactEvent(j, i, time, up));
+		}
+	}
+
+	/**
+	 * A contact (up or down) event of two hosts
+	 */
+	private static class ContactEvent implements Comparable<ContactEvent> {
+		private int from;
+		private int to;
+		private double time;
+		private boolean up;
+
+		public ContactEvent(int from, int to, double time, boolean up) {
+			this.from = from;
+			this.to = to;
+			this.time = time;
+			this.up = up;
+		}
+
+		/**
+		 * Orders the events by time and then by the hosts' indexes
+		 */
+		public int compareTo(ContactEvent other) {
+			if (this.time != other.time) {
+				return (this.time < other.time ? -1 : 1);
+			} else if (this.from != other.from) {
+				return this.from - other.from;
+			}
+			return this.to - other.to;
+		}
+	}
+}
@@ -0,0 +1,368 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <P>
+ * Replays a contact trace recorded with {@link Recorder}. The connections are
+ * created and destroyed exactly as in the recorded run, so the hosts don't
+ * have to be moved and their connections don't have to be checked: a run
+ * that replays the trace costs only the work of the routers. Since the
+ * connections of a run depend only on the movement and the radio settings,
+ * the same trace can be used with any router settings.
+ * </P>
+ * <P>
+ * The connections that were created in the connection phase of an update
+ * (see {@link World#update()}) are created in the same phase and the
+ * connections a host tore down when it was updated are torn down when the
+ * host is updated next time, so the replay is exact if the update interval
+ * and the update order settings are the same as in the recorded run. The
+ * connections created by external events are created after the events of
+ * the same time have been processed.
+ * </P>
+ * <P>
+ * Format (in {@link java.io.DataOutput} format): magic number, format
+ * version, number of hosts and records. A record is a type byte
+ * ({@link #UP}, {@link #DOWN}, {@link #CONNECT_PHASE} or {@link #END})
+ * followed by the time (a double) and, for {@link #UP} and {@link #DOWN},
+ * the addresses of the host that created or destroyed the connection and
+ * the other host.
+ * </P>
+ */
+public class ContactTrace {
+	/** Identifier in the beginning of contact trace files ("ONEC") */
+	public static final int MAGIC = 0x4F4E4543;
+	/** Version of the contact trace format */
+	public static final int VERSION = 1;
+	/** Record type: a connection was torn down */
+	public static final int DOWN = 0;
+	/** Record type: a connection was created */
+	public static final int UP = 1;
+	/** Record type: the connection phase of an update started */
+	public static final int CONNECT_PHASE = 2;
+	/** Record type: end of the trace */
+	public static final int END = 3;
+
+	/** name of the trace (for error messages) */
+	private String name;
+	private DataInputStream in;
+	private List<DTNHost> hosts;
+	/** addresses of the hosts whose connections are torn down (by host) */
+	private List<List<Integer>> downs;
+
+	/** type of the next record */
+	private int nextType;
+	/** time of the next record */
+	private double nextTime;
+	private int nextFrom;
+	private int nextTo;
+
+	/**
+	 * Opens a contact trace for replaying
+	 *
+	 * @param fileName
+	 *            Path of the trace file
+	 * @param hosts
+	 *            The hosts of the simulation (indexed by their address)
+	 */
+	public ContactTrace(String fileName, List<DTNHost> hosts) {
+		this(openFile(fileName), fileName, hosts);
+	}
+
+	/**
+	 * Opens a contact trace stream for replaying
+	 *
+	 * @param in
+	 *            The stream where the trace is read from
+	 * @param name
+	 *            Name of the trace (for error messages)
+	 * @param hosts
+	 *            The hosts of the simulation (indexed by their address)
+	 */
+	public ContactTrace(InputStream in, String name, List<DTNHost> hosts) {
+		this.name = name;
+		this.hosts = hosts;
+		this.downs = new ArrayList<List<Integer>>(hosts.size());
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			this.downs.add(new ArrayList<Integer>());
+		}
+
+		try {
+			this.in = new DataInputStream(new BufferedInputStream(in));
+			if (this.in.readInt() != MAGIC) {
+				throw new SettingsError("'" + name + "' is not a "
+						+ "contact trace");
+			}
+			int version = this.in.readInt();
+			if (version != VERSION) {
+				throw new SettingsError("Unsupported version " + version
+						+ " of contact trace '" + name + "'");
+			}
+			int nrofHosts = this.in.readInt();
+			if (nrofHosts != hosts.size()) {
+				throw new SettingsError("Contact trace '" + name
+						+ "' has " + nrofHosts + " hosts but the scenario has "
+						+ hosts.size());
+			}
+			readNext();
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read contact trace '"
+					+ name + "'\n" + e.getMessage());
+		}
+	}
+
+	private static InputStream openFile(String fileName) {
+		try {
+			return new FileInputStream(fileName);
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read contact trace '"
+					+ fileName + "'\n" + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the next record of the trace
+	 */
+	private void readNext() {
+		try {
+			this.nextType = in.readUnsignedByte();
+			if (this.nextType == END) {
+				in.close();
+				return;
+			}
+			this.nextTime = in.readDouble();
+			if (this.nextType == UP || this.nextType == DOWN) {
+				this.nextFrom = in.readInt();
+				this.nextTo = in.readInt();
+			} else if (this.nextType != CONNECT_PHASE) {
+				throw new SimError("Corrupted contact trace '" + name
+						+ "'");
+			}
+		} catch (IOException e) {
+			throw new SimError("Couldn't read contact trace '" + name
+					+ "'", e);
+		}
+	}
+
+	/**
+	 * Replays the records of the trace up to the given time, but not the
+	 * records of the next connection phase. The connections that were
+	 * created are created right away and the connections that were torn
+	 * down are torn down when their host is updated (see
+	 * {@link #disconnect(DTNHost)}).
+	 *
+	 * @param now
+	 *            The current simulation time
+	 */
+	public void advance(double now) {
+		while (this.nextType != END && this.nextType != CONNECT_PHASE
+				&& this.nextTime <= now) {
+			if (this.nextType == UP) {
+				hosts.get(nextFrom).forceConnection(hosts.get(nextTo), true);
+			} else {
+				downs.get(nextFrom).add(nextTo);
+			}
+			readNext();
+		}
+	}
+
+	/**
+	 * Replays the connection phase of an update: creates the connections
+	 * that were created in the phase and reads the records after it up to
+	 * the given time
+	 *
+	 * @param now
+	 *            The current simulation time
+	 */
+	public void connect(double now) {
+		advance(now);
+		while (this.nextType == CONNECT_PHASE && this.nextTime <= now) {
+			readNext();
+			advance(now);
+		}
+	}
+
+	/**
+	 * Tears down the connections the host tore down when it was updated in
+	 * the recorded run
+	 *
+	 * @param host
+	 *            The host that is updated
+	 */
+	public void disconnect(DTNHost host) {
+		List<Integer> hostDowns = this.downs.get(host.getAddress());
+		if (hostDowns.isEmpty()) {
+			return;
+		}
+		for (int i = 0, n = hostDowns.size(); i < n; i++) {
+			host.forceConnection(hosts.get(hostDowns.get(i)), false);
+		}
+		hostDowns.clear();
+	}
+
+	/**
+	 * Closes the trace file
+	 */
+	public void close() {
+		try {
+			this.in.close();
+		} catch (IOException e) {
+			// nothing to do; the trace was only read
+		}
+	}
+
+	/**
+	 * Records the connection events of a run to a contact trace file or
+	 * stream. A file is first written to a temporary file that is renamed
+	 * when the recorder is closed.
+	 */
+	public static class Recorder implements ConnectionListener {
+		/** the trace file or null if the trace is recorded to a stream */
+		private File file;
+		private File tmpFile;
+		/** name of the trace (for error messages) */
+		private String name;
+		private DataOutputStream out;
+		/** time of the connection phase that is not written yet (or -1) */
+		private double connectPhase;
+
+		/**
+		 * Starts recording a contact trace
+		 *
+		 * @param fileName
+		 *            Path of the trace file
+		 * @param nrofHosts
+		 *            Number of hosts in the simulation
+		 */
+		public Recorder(String fileName, int nrofHosts) {
+			this.file = new File(fileName);
+			this.tmpFile = new File(fileName + ".tmp");
+			this.name = fileName;
+			try {
+				init(new FileOutputStream(this.tmpFile), nrofHosts);
+			} catch (IOException e) {
+				throw new SettingsError("Couldn't create contact trace '"
+						+ file + "'\n" + e.getMessage());
+			}
+		}
+
+		/**
+		 * Starts recording a contact trace to a stream. The recorded records
+		 * are flushed to the stream on every connection phase, so the trace
+		 * can be replayed while it is being recorded.
+		 *
+		 * @param out
+		 *            The stream where the trace is written to
+		 * @param name
+		 *            Name of the trace (for error messages)
+		 * @param nrofHosts
+		 *            Number of hosts in the simulation
+		 */
+		public Recorder(OutputStream out, String name, int nrofHosts) {
+			this.name = name;
+			try {
+				init(out, nrofHosts);
+			} catch (IOException e) {
+				throw new SimError("Couldn't write contact trace '" + name
+						+ "'", e);
+			}
+		}
+
+		private void init(OutputStream stream, int nrofHosts)
+				throws IOException {
+			this.connectPhase = -1;
+			this.out = new DataOutputStream(new BufferedOutputStream(stream));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nrofHosts);
+		}
+
+		/**
+		 * Marks the start of the connection phase of an update. The mark is
+		 * written only if some connection events follow it before the next
+		 * connection phase.
+		 *
+		 * @param time
+		 *            The current simulation time
+		 */
+		public synchronized void connectPhase(double time) {
+			this.connectPhase = time;
+			if (this.file == null) {
+				try {
+					out.flush(); // let the replays see the earlier records
+				} catch (IOException e) {
+					throw new SimError("Couldn't write contact trace '"
+							+ name + "'", e);
+				}
+			}
+		}
+
+		public synchronized void hostsConnected(DTNHost host1, DTNHost host2) {
+			write(UP, host1, host2);
+		}
+
+		public synchronized void hostsDisconnected(DTNHost host1,
+				DTNHost host2) {
+			write(DOWN, host1, host2);
+		}
+
+		private void write(int type, DTNHost host1, DTNHost host2) {
+			try {
+				if (this.connectPhase >= 0) {
+					out.writeByte(CONNECT_PHASE);
+					out.writeDouble(this.connectPhase);
+					this.connectPhase = -1;
+				}
+				out.writeByte(type);
+				out.writeDouble(SimClock.getTime());
+				out.writeInt(host1.getAddress());
+				out.writeInt(host2.getAddress());
+			} catch (IOException e) {
+				throw new SimError("Couldn't write contact trace '" + name
+						+ "'", e);
+			}
+		}
+
+		/**
+		 * Ends the trace and, if the trace is recorded to a file, renames
+		 * the temporary file to the trace file
+		 */
+		public synchronized void close() {
+			try {
+				out.writeByte(END);
+				out.close();
+			} catch (IOException e) {
+				if (tmpFile != null) {
+					tmpFile.delete();
+				}
+				throw new SimError("Couldn't write contact trace '" + name
+						+ "'\n" + e.getMessage(), e);
+			}
+			if (this.file == null) {
+				return;
+			}
+
+			file.delete();
+			if (!tmpFile.renameTo(file)) {
+				tmpFile.delete();
+				throw new SimError("Couldn't rename contact trace to '" + file
+						+ "'");
+			}
+		}
+	}
+}
@@ -6,6 +6,10 @@ package core;
 
 import core.ConnectivityGrid.GridCell;
 import movement.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 import routing.*;
@@ -25,10 +29,26 @@ public class DTNHost implements Comparable<DTNHost> {
 	private double speed;
 	private double nextTimeToMove;
 	private String name;
+	private String groupId;
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
 	private ModuleCommunicationBus comBus;
 	private AnonymousGroupManager gm;
+	/**
+	 * destinations (and speeds) whose movement listener notifications are
+	 * postponed, or null if listeners are informed right away
+	 */
+	private List<Tuple<Coord, Double>> deferredDestinations;
+	/** trace of the last move or null if the moves are not traced */
+	private MoveTrace moveTrace;
+	/** recording of the movement or null if the movement is not recorded */
+	private MovementRecorder.HostRecording movementRecording;
+	/** tracker of the changed hosts or null if changes are not tracked */
+	private ChangedHosts changeTracker;
+	/** how many times the next waypoint has been set (or tried to set) */
+	private int nrofWaypointChanges;
+	/** connection check round of the latest change (see ChangedHosts) */
+	int changedRound = -1;
 
 	/**
 	 * Creates a new DTNHost.
@@ -53,6 +73,7 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.comBus = comBus;
 		this.net = new NetworkLayer(this, conLs, comBus);
 		this.name = groupId + net.getAddress();
+		this.groupId = groupId;
 		this.msgListeners = msgLs;
 		this.movListeners = movLs;
 
@@ -75,6 +96,15 @@ public class DTNHost implements Comparable<DTNHost> {
 		gm = new AnonymousGroupManager(this);
 	}
 
+	/**
+	 * Returns the ID of the group this host belongs to
+	 * 
+	 * @return the group ID of this host
+	 */
+	public String getGroupId() {
+		return this.groupId;
+	}
+
 	public AnonymousGroupManager getGroupManager() {
 		return gm;
 	}
@@ -210,6 +240,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 */
 	public void setLocation(Coord location) {
 		this.location = location.clone();
+		connectivityChanged();
 	}
 
 	/**
@@ -266,25 +297,141 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * Updates node's network layer and router.
 	 */
 	public void update() {
+		update(true);
+	}
+
+	/**
+	 * Updates node's router and, optionally, its network layer.
+	 * 
+	 * @param checkConnections
+	 *            If true, the connections that are out of range are torn down.
+	 *            If false, only the router is updated.
+	 */
+	public void update(boolean checkConnections) {
 		if (!isActive()) {
 			return;
 		}
 
-		this.net.update();
+		if (checkConnections) {
+			this.net.update();
+		}
 		this.router.update();
 	}
 
+	/**
+	 * Updates node's network layer only, i.e., tears down the connections that
+	 * are out of range.
+	 */
+	public void updateConnections() {
+		if (!isActive()) {
+			return;
+		}
+
+		this.net.update();
+	}
+
+	/**
+	 * Sets the trace where the following moves of this host are recorded to
+	 * 
+	 * @param trace
+	 *            The trace to record the moves to or null to stop tracing
+	 * @see #move(double)
+	 */
+	public void setMoveTrace(MoveTrace trace) {
+		this.moveTrace = trace;
+	}
+
+	/**
+	 * Sets the recording where the results of this host's movement model are
+	 * recorded to. The recording starts with the time when the host may
+	 * start moving.
+	 * 
+	 * @param recording
+	 *            The recording
+	 * @see MovementRecorder
+	 */
+	public void setMovementRecording(MovementRecorder.HostRecording recording) {
+		this.movementRecording = recording;
+		recording.nextPathAvailable(this.nextTimeToMove);
+	}
+
+	/**
+	 * Returns the speed this host moves at during the next call to
+	 * {@link #move(double)}. A host moves the whole move at the speed it had
+	 * at the start of the move, so the distance it moves is at most the
+	 * returned speed times the time increment.
+	 * 
+	 * @return The speed of the next move, 0 if the host won't move (it is not
+	 *         active or it is waiting for its next path), or Double.MAX_VALUE
+	 *         if the speed is not known yet (the host hasn't had any path)
+	 */
+	public double getNextMoveSpeed() {
+		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
+			return 0;
+		}
+		if (this.destination == null) {
+			return Double.MAX_VALUE;
+		}
+		return this.speed;
+	}
+
+	/**
+	 * Returns the destination (the next waypoint) this host is moving to
+	 * 
+	 * @return The destination or null if the host hasn't had any path yet
+	 */
+	public Coord getDestination() {
+		return this.destination;
+	}
+
+	/**
+	 * Returns the time when the movement of this host changes next: the time
+	 * when it reaches its current destination or, if it is waiting, the time
+	 * when it may start moving along a new path. Until then the host moves
+	 * along a straight line towards its destination at a constant speed (or
+	 * stays still).
+	 * 
+	 * @return The time of the next change (the current time if the host
+	 *         should get a new waypoint right away) or Double.MAX_VALUE if
+	 *         the movement doesn't change (e.g., the host is not active)
+	 */
+	public double getNextMovementChange() {
+		double now = SimClock.getTime();
+		if (!isActive()) {
+			return Double.MAX_VALUE;
+		}
+		if (now < this.nextTimeToMove) {
+			return this.nextTimeToMove;
+		}
+		if (this.destination == null) {
+			return now; // no path yet
+		}
+
+		double distance = this.location.distance(this.destination);
+		if (distance == 0) {
+			return now;
+		}
+		return (this.speed > 0 ? now + distance / this.speed
+				: Double.MAX_VALUE);
+	}
+
 	/**
 	 * Moves the node towards the next waypoint or waits if it is not time to
-	 * move yet
+	 * move yet. If a move trace is set, the move is recorded to it.
 	 * 
 	 * @param timeIncrement
 	 *            How long time the node moves
 	 */
 	public void move(double timeIncrement) {
 		double possibleMovement;
+		double totalMovement;
 		double distance;
 		double dx, dy;
+		double startTime = SimClock.getTime();
+
+		if (this.moveTrace != null) {
+			this.moveTrace.start(startTime, this.location);
+		}
 
 		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
 			return;
@@ -296,12 +443,20 @@ public class DTNHost implements Comparable<DTNHost> {
 		}
 
 		possibleMovement = timeIncrement * speed;
+		totalMovement = possibleMovement;
 		distance = this.location.distance(this.destination);
 
 		while (possibleMovement >= distance) {
 			// node can move past its next destination
 			this.location.setLocation(this.destination); // snap to destination
 			possibleMovement -= distance;
+			if (this.moveTrace != null) {
+				/* the whole distance is covered at the speed of the start */
+				double fraction = (totalMovement > 0 ? (totalMovement -
+						possibleMovement) / totalMovement : 0);
+				this.moveTrace.addPoint(startTime + fraction * timeIncrement,
+						this.location);
+			}
 			if (!setNextWaypoint()) { // get a new waypoint
 				return; // no more waypoints left
 			}
@@ -314,6 +469,169 @@ public class DTNHost implements Comparable<DTNHost> {
 		dy = (possibleMovement / distance)
 				* (this.destination.getY() - this.location.getY());
 		this.location.translate(dx, dy);
+
+		if (this.moveTrace != null) {
+			this.moveTrace.addPoint(startTime + timeIncrement, this.location);
+		}
+	}
+
+	/**
+	 * Returns the movement model of this host
+	 * 
+	 * @return the movement model of this host
+	 */
+	public MovementModel getMovement() {
+		return this.movement;
+	}
+
+	/**
+	 * Returns the time when this host may start moving again if it is
+	 * waiting, i.e., the time until which {@link #move(double)} does nothing
+	 * while the host is active
+	 * 
+	 * @return The time when the host may move next
+	 */
+	public double getNextTimeToMove() {
+		return this.nextTimeToMove;
+	}
+
+	/**
+	 * Returns the next time when the activeness of this host may change
+	 * 
+	 * @return The time of the next change or Double.MAX_VALUE if it doesn't
+	 *         change anymore
+	 * @see MovementModel#nextActivenessChange()
+	 */
+	public double getNextActivenessChange() {
+		return this.movement.nextActivenessChange();
+	}
+
+	/**
+	 * Writes the movement state of this host (location, path, speed etc. and
+	 * the state of the movement model) to a checkpoint
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @throws IOException
+	 *             if writing failed
+	 * @see MovementCheckpoint
+	 */
+	public void writeMovementState(DataOutput out) throws IOException {
+		MovementCheckpoint.writeCoord(out, this.location);
+		out.writeBoolean(this.destination != null);
+		if (this.destination != null) {
+			MovementCheckpoint.writeCoord(out, this.destination);
+		}
+		out.writeBoolean(this.path != null);
+		if (this.path != null) {
+			this.path.writeState(out);
+		}
+		out.writeDouble(this.speed);
+		out.writeDouble(this.nextTimeToMove);
+		this.movement.writeState(out);
+	}
+
+	/**
+	 * Restores the movement state of this host from a checkpoint written with
+	 * {@link #writeMovementState(DataOutput)}
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readMovementState(DataInput in) throws IOException {
+		this.location = MovementCheckpoint.readCoord(in);
+		this.destination = null;
+		if (in.readBoolean()) {
+			this.destination = MovementCheckpoint.readCoord(in);
+		}
+		this.path = null;
+		if (in.readBoolean()) {
+			this.path = Path.readState(in);
+		}
+		this.speed = in.readDouble();
+		this.nextTimeToMove = in.readDouble();
+		this.movement.readState(in);
+		connectivityChanged();
+	}
+
+	/**
+	 * Writes the rest of the state of this host (connections, anonymity
+	 * groups and router) to a checkpoint. The movement state is written
+	 * separately with {@link #writeMovementState(DataOutput)}.
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @param cp
+	 *            The checkpoint that is written
+	 * @throws IOException
+	 *             if writing failed
+	 * @see SimCheckpoint
+	 */
+	public void writeState(DataOutput out, SimCheckpoint cp)
+			throws IOException {
+		this.net.writeState(out, cp);
+		this.gm.writeState(out);
+		this.router.writeState(out, cp);
+	}
+
+	/**
+	 * Restores the state of this host from a checkpoint written with
+	 * {@link #writeState(DataOutput, SimCheckpoint)}
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @param cp
+	 *            The checkpoint that is read
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readState(DataInput in, SimCheckpoint cp) throws IOException {
+		this.net.readState(in, cp);
+		this.gm.readState(in, cp);
+		this.router.readState(in, cp);
+		connectivityChanged();
+	}
+
+	/**
+	 * Prepares this host for being moved concurrently with other hosts. The
+	 * movement model is switched to a random number stream of its own (see
+	 * {@link MovementModel#useOwnRandomStream(int)}) and, if the model can be
+	 * used from a worker thread, notifications to movement listeners are
+	 * postponed until {@link #flushMovementEvents()} is called.
+	 * 
+	 * @return True if this host can be moved concurrently with other hosts,
+	 *         false if it must be moved by the simulation thread
+	 */
+	public boolean initConcurrentMovement() {
+		this.movement.useOwnRandomStream(getAddress());
+		if (!this.movement.isConcurrentSafe()) {
+			return false;
+		}
+		if (this.movListeners != null && this.movListeners.size() > 0) {
+			this.deferredDestinations = new ArrayList<Tuple<Coord, Double>>(1);
+		}
+		return true;
+	}
+
+	/**
+	 * Informs the movement listeners about the destinations that were set
+	 * during the last concurrent movement phase.
+	 * 
+	 * @see #initConcurrentMovement()
+	 */
+	public void flushMovementEvents() {
+		if (this.deferredDestinations == null
+				|| this.deferredDestinations.size() == 0) {
+			return;
+		}
+		for (Tuple<Coord, Double> t : this.deferredDestinations) {
+			for (MovementListener l : this.movListeners) {
+				l.newDestination(this, t.getKey(), t.getValue());
+			}
+		}
+		this.deferredDestinations.clear();
 	}
 
 	/**
@@ -324,12 +642,19 @@ public class DTNHost implements Comparable<DTNHost> {
 	 *         should wait
 	 */
 	private boolean setNextWaypoint() {
+		this.nrofWaypointChanges++;
 		if (path == null) {
 			path = movement.getPath();
+			if (this.movementRecording != null) {
+				this.movementRecording.path(path);
+			}
 		}
 
 		if (path == null || !path.hasNext()) {
 			this.nextTimeToMove = movement.nextPathAvailable();
+			if (this.movementRecording != null) {
+				this.movementRecording.nextPathAvailable(this.nextTimeToMove);
+			}
 			this.path = null;
 			return false;
 		}
@@ -337,7 +662,10 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.destination = path.getNextWaypoint();
 		this.speed = path.getSpeed();
 
-		if (this.movListeners != null) {
+		if (this.deferredDestinations != null) {
+			this.deferredDestinations.add(new Tuple<Coord, Double>(
+					this.destination, this.speed));
+		} else if (this.movListeners != null) {
 			for (MovementListener l : this.movListeners) {
 				l.newDestination(this, this.destination, this.speed);
 			}
@@ -346,6 +674,78 @@ public class DTNHost implements Comparable<DTNHost> {
 		return true;
 	}
 
+	/**
+	 * Returns how many times this host has set its next waypoint or tried to
+	 * set it. The path, destination, speed, waiting time and movement model
+	 * state of the host change only when this value changes, so the movement
+	 * state saved with {@link #writeMovementState(DataOutput)} needs to be
+	 * saved again only then (the location changes on every move).
+	 * 
+	 * @return The number of waypoint changes
+	 * @see TimeWarpStateLog
+	 */
+	int getNrofWaypointChanges() {
+		return this.nrofWaypointChanges;
+	}
+
+	/**
+	 * Returns true if the movement of this host is recorded (see
+	 * {@link #setMovementRecording(MovementRecorder.HostRecording)})
+	 * 
+	 * @return true if the movement is recorded
+	 */
+	boolean isMovementRecorded() {
+		return this.movementRecording != null;
+	}
+
+	/**
+	 * Sets the tracker that this host reports its connectivity changes to
+	 * 
+	 * @param tracker
+	 *            The tracker or null to stop reporting the changes
+	 */
+	void setChangeTracker(ChangedHosts tracker) {
+		this.changeTracker = tracker;
+	}
+
+	/**
+	 * Reports that something that affects the connectivity of this host (its
+	 * location, range, scan interval, activeness or a forced connection) has
+	 * changed, if the changes are tracked
+	 * 
+	 * @see ChangedHosts
+	 */
+	void connectivityChanged() {
+		if (this.changeTracker != null) {
+			this.changeTracker.hostChanged(this);
+		}
+	}
+
+	/**
+	 * Returns true if the changes of this host are tracked and its
+	 * connectivity hasn't changed since the previous connection check. Two
+	 * static hosts can't become connected or disconnected, so
+	 * {@link #connect(DTNHost)} and the network layer's update skip the pairs
+	 * of static hosts.
+	 * 
+	 * @return true if the host is static
+	 * @see ChangedHosts
+	 */
+	public boolean isStatic() {
+		return this.changeTracker != null
+				&& this.changeTracker.isStatic(this);
+	}
+
+	/**
+	 * Returns true if this host's network layer scans for other hosts only
+	 * at intervals
+	 * 
+	 * @return true if the host scans at intervals
+	 */
+	boolean scansAtIntervals() {
+		return this.net.hasScanInterval();
+	}
+
 	/**
 	 * Creates a connection to another host (if it is within range)
 	 * 
@@ -354,6 +754,8 @@ public class DTNHost implements Comparable<DTNHost> {
 	public void connect(DTNHost anotherHost) {
 		if (!isActive() || this == anotherHost) {
 			return; // cannot connect self
+		} else if (isStatic() && anotherHost.isStatic()) {
+			return; // connectivity of static hosts can't change
 		} else {
 			net.connect(anotherHost);
 		}
@@ -371,6 +773,8 @@ public class DTNHost implements Comparable<DTNHost> {
 	 *            connection is destroyed.
 	 */
 	public void forceConnection(DTNHost anotherHost, boolean up) {
+		connectivityChanged();
+		anotherHost.connectivityChanged();
 		if (up) {
 			this.net.createConnection(anotherHost);
 		} else {
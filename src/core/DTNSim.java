@@ -6,6 +6,11 @@ package core;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.lang.reflect.*;
 
 import ui.DTNSimTextUI;
@@ -22,6 +27,43 @@ public class DTNSim {
 	public static final String BATCH_MODE_FLAG = "-b";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
+	/**
+	 * If this option ({@value} ) is given right after the batch mode's
+	 * number of runs, the runs are run concurrently. The option must be
+	 * followed by the number of runs to run at the same time.
+	 */
+	public static final String PARALLEL_FLAG = "-p";
+	/**
+	 * If this option ({@value} ) is given right after the batch mode's
+	 * number of runs, the runs are run as routing variants of the first run:
+	 * only the first run moves the hosts and the others replay its contacts
+	 * (see {@link RoutingVariants}). Can be followed by
+	 * {@link #PARALLEL_FLAG}.
+	 */
+	public static final String VARIANTS_FLAG = "-v";
+	/**
+	 * If this option ({@value} ) is given to program, all the combinations
+	 * of the run array values are run in worker processes (see
+	 * {@link SweepRunner}). The option must be followed by the sweep
+	 * directory and optionally by {@link #PARALLEL_FLAG} and the number of
+	 * worker processes.
+	 */
+	public static final String SWEEP_FLAG = "-s";
+	/**
+	 * If this option ({@value} ) is given to program, a simulation is resumed
+	 * from a checkpoint (see {@link SimCheckpoint}) in the text UI. The option
+	 * must be followed by the checkpoint file and optionally by the run index
+	 * of the simulation that wrote the checkpoint.
+	 */
+	public static final String RESUME_FLAG = "-resume";
+	/**
+	 * If this option ({@value} ) is given to program, the simulation is run
+	 * as a worker of a distributed run (see {@link DistributedWorker}) in the
+	 * text UI. The option must be followed by the coordinator's port on the
+	 * loopback interface and the index of the worker. The coordinator starts
+	 * the workers; see {@link World#DISTRIBUTED_S}.
+	 */
+	public static final String WORKER_FLAG = "-worker";
 
 	/**
 	 * Name of the static method that all resettable classes must have
@@ -29,8 +71,12 @@ public class DTNSim {
 	 * @see #registerForReset(String)
 	 */
 	public static final String RESET_METHOD_NAME = "reset";
-	/** List of class names that should be reset between batch runs */
-	private static List<Class<?>> resetList = new ArrayList<Class<?>>();
+	/**
+	 * List of class names that should be reset between batch runs. Classes
+	 * may register while concurrent runs are resetting.
+	 */
+	private static List<Class<?>> resetList =
+		new CopyOnWriteArrayList<Class<?>>();
 
 	/**
 	 * Starts the user interface with given arguments. If first argument is
@@ -38,10 +84,15 @@ public class DTNSim {
 	 * batch mode option must be followed by the number of runs, or a with a
 	 * combination of starting run and the number of runs, delimited with a
 	 * {@value #RANGE_DELIMETER}. Different settings from run arrays are used
-	 * for different runs (see {@link Settings#setRunIndex(int)}). Following
-	 * arguments are the settings files for the simulation run (if any). For GUI
-	 * mode, the number before settings files (if given) is the run index to use
-	 * for that run.
+	 * for different runs (see {@link Settings#setRunIndex(int)}). The number
+	 * of runs can be followed by {@link #PARALLEL_FLAG} and the number of runs
+	 * to run concurrently, optionally preceded by {@link #VARIANTS_FLAG}. If
+	 * the first argument is {@link #SWEEP_FLAG}, a parameter sweep is run
+	 * instead, and if it is {@link #RESUME_FLAG}, a simulation is resumed from
+	 * a checkpoint. {@link #WORKER_FLAG} starts a worker of a distributed
+	 * run. Following arguments are the settings files for the
+	 * simulation run (if any). For GUI and resume modes, the number before
+	 * settings files (if given) is the run index to use for that run.
 	 * 
 	 * @param args
 	 *            Command line arguments
@@ -52,6 +103,12 @@ public class DTNSim {
 		String confFiles[];
 		int firstConfIndex = 0;
 		int guiIndex = 0;
+		int nrofParallel = 1;
+		boolean variants = false;
+		String sweepDir = null;
+		String resumeFile = null;
+		int workerPort = -1;
+		int workerIndex = 0;
 
 		/* set US locale to parse decimals in consistent way */
 		java.util.Locale.setDefault(java.util.Locale.US);
@@ -61,6 +118,43 @@ public class DTNSim {
 				batchMode = true;
 				nrofRuns = parseNrofRuns(args[1]);
 				firstConfIndex = 2;
+				if (args.length > 2 && args[2].equals(VARIANTS_FLAG)) {
+					variants = true;
+					firstConfIndex = 3;
+				}
+				if (args.length > firstConfIndex + 1
+						&& args[firstConfIndex].equals(PARALLEL_FLAG)) {
+					nrofParallel = parseNrofParallel(args[firstConfIndex + 1]);
+					firstConfIndex += 2;
+				}
+			} else if (args[0].equals(SWEEP_FLAG) && args.length > 1) {
+				sweepDir = args[1];
+				nrofParallel = 0;
+				firstConfIndex = 2;
+				if (args.length > 3 && args[2].equals(PARALLEL_FLAG)) {
+					nrofParallel = parseNrofParallel(args[3]);
+					firstConfIndex = 4;
+				}
+			} else if (args[0].equals(RESUME_FLAG) && args.length > 1) {
+				resumeFile = args[1];
+				firstConfIndex = 2;
+				if (args.length > 2) {
+					try { /* is there a run index ? */
+						guiIndex = Integer.parseInt(args[2]);
+						firstConfIndex = 3;
+					} catch (NumberFormatException e) {
+						firstConfIndex = 2;
+					}
+				}
+			} else if (args[0].equals(WORKER_FLAG) && args.length > 2) {
+				try {
+					workerPort = Integer.parseInt(args[1]);
+					workerIndex = Integer.parseInt(args[2]);
+				} catch (NumberFormatException e) {
+					System.err.println("Invalid worker port or index");
+					System.exit(-1);
+				}
+				firstConfIndex = 3;
 			} else { /* GUI mode */
 				try { /* is there a run index for the GUI mode ? */
 					guiIndex = Integer.parseInt(args[0]);
@@ -76,14 +170,35 @@ public class DTNSim {
 
 		initSettings(confFiles, firstConfIndex);
 
-		if (batchMode) {
+		if (sweepDir != null) {
+			runSweep(sweepDir, confFiles, firstConfIndex, nrofParallel);
+		} else if (workerPort >= 0) {
+			try {
+				DistributedWorker.connect(workerPort, workerIndex);
+			} catch (SimError er) {
+				System.err.println(er.getMessage());
+				System.exit(-1);
+			}
+			new DTNSimTextUI().start();
+		} else if (resumeFile != null) {
+			Settings.setRunIndex(guiIndex);
+			new DTNSimTextUI(resumeFile).start();
+		} else if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i = nrofRuns[0]; i < nrofRuns[1]; i++) {
-				print("Run " + (i + 1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			if (variants) {
+				RoutingVariants.start(nrofRuns[0]);
 			}
+			if (nrofParallel > 1) {
+				runConcurrently(nrofRuns, nrofParallel);
+			} else {
+				for (int i = nrofRuns[0]; i < nrofRuns[1]; i++) {
+					print("Run " + (i + 1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					resetForNextRun();
+					new DTNSimTextUI().start();
+				}
+			}
+			RoutingVariants.stop();
 			double duration = (System.currentTimeMillis() - startTime) / 1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
 		} else {
@@ -92,6 +207,86 @@ public class DTNSim {
 		}
 	}
 
+	/**
+	 * Runs the batch runs concurrently in a pool of threads. Every run gets a
+	 * {@link SimulationContext} of its own.
+	 * 
+	 * @param nrofRuns
+	 *            The first and (last_run_index - 1) of the runs
+	 * @param nrofParallel
+	 *            How many runs are run at the same time
+	 */
+	private static void runConcurrently(final int[] nrofRuns,
+			int nrofParallel) {
+		ExecutorService pool = Executors.newFixedThreadPool(nrofParallel);
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+
+		for (int i = nrofRuns[0]; i < nrofRuns[1]; i++) {
+			final int runIndex = i;
+			runs.add(pool.submit(new Runnable() {
+				public void run() {
+					SimulationContext.setCurrent(new SimulationContext());
+					print("Run " + (runIndex + 1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(runIndex);
+					resetForNextRun();
+					new DTNSimTextUI().start();
+				}
+			}));
+		}
+		pool.shutdown();
+
+		for (Future<?> run : runs) {
+			try {
+				run.get();
+			} catch (InterruptedException e) {
+				System.err.println("Interrupted while waiting for the runs");
+				System.exit(-1);
+			} catch (ExecutionException e) {
+				System.err.println("Simulation run failed: " + e.getCause());
+				e.getCause().printStackTrace();
+				System.exit(-1);
+			}
+		}
+	}
+
+	/**
+	 * Runs a parameter sweep in worker processes and exits with a non-zero
+	 * status if some runs failed
+	 * 
+	 * @param sweepDir
+	 *            Directory for the results of the sweep
+	 * @param confFiles
+	 *            The command line arguments with the settings files
+	 * @param firstIndex
+	 *            Index of the first config file name
+	 * @param nrofWorkers
+	 *            Number of worker processes or 0 for the default
+	 */
+	private static void runSweep(String sweepDir, String[] confFiles,
+			int firstIndex, int nrofWorkers) {
+		List<String> files = new ArrayList<String>();
+		for (int i = firstIndex; i < confFiles.length; i++) {
+			files.add(confFiles[i]);
+		}
+
+		long startTime = System.currentTimeMillis();
+		int nrofFailed;
+		try {
+			nrofFailed = new SweepRunner(sweepDir, files, nrofWorkers).run();
+		} catch (SettingsError er) {
+			System.err.println("Can't run the sweep: " + er.getMessage());
+			System.exit(-1);
+			return;
+		}
+		double duration = (System.currentTimeMillis() - startTime) / 1000.0;
+		print("---\nSweep done in " + String.format("%.2f", duration) + "s");
+		if (nrofFailed > 0) {
+			System.err.println(nrofFailed + " runs failed; see the output "
+					+ "files of the runs in " + sweepDir);
+			System.exit(-1);
+		}
+	}
+
 	/**
 	 * Initializes Settings
 	 * 
@@ -212,6 +407,30 @@ public class DTNSim {
 		return val;
 	}
 
+	/**
+	 * Parses the number of concurrent runs from a command line argument
+	 * 
+	 * @param arg
+	 *            The argument to parse
+	 * @return The number of runs to run at the same time
+	 */
+	private static int parseNrofParallel(String arg) {
+		int val = 0;
+		try {
+			val = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			val = 0;
+		}
+
+		if (val < 1) {
+			System.err.println("Invalid argument '" + arg + "' for"
+					+ " number of concurrent runs");
+			System.exit(-1);
+		}
+
+		return val;
+	}
+
 	/**
 	 * Prints text to stdout
 	 * 
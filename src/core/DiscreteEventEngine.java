@@ -0,0 +1,658 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <P>
+ * Discrete-event simulation engine. Instead of moving all hosts, checking all
+ * connections and updating all routers on every update interval, everything
+ * that changes the state of the simulation is an event on one calendar:
+ * <UL>
+ * <LI>movement changes: a host reaches a waypoint of its path or the time
+ * given by {@link movement.MovementModel#nextPathAvailable()} passes (see
+ * {@link DTNHost#getNextMovementChange()})</LI>
+ * <LI>connections going up and down: between two movement changes hosts move
+ * along straight lines at constant speeds, so the times when they come within
+ * and go out of each other's range are solved exactly when the movement of
+ * either host changes</LI>
+ * <LI>router updates: routers are updated only when something affects them or
+ * when they request a timed update (e.g., a transfer is done, see
+ * {@link RouterScheduler})</LI>
+ * </UL>
+ * External events are merged with the calendar by the {@link World}. Hosts are
+ * moved lazily: a host's location is brought up to date when its movement
+ * changes, when it gets a connection event, and at the end of every update
+ * interval (so that e.g., reports and the GUI see the current locations).
+ * </P>
+ * <P>
+ * Whether a host is active is checked once per update interval. Routers that
+ * are not event-driven (see {@link routing.MessageRouter#isEventDriven()})
+ * are updated once per update interval.
+ * </P>
+ * <P>
+ * When a host's movement changes, its connection events are solved only with
+ * the hosts whose current segments may come within range of its new segment
+ * and with its current peers. The candidates are found from a grid where
+ * every host is in the cells of its segment's bounding box (extended by half
+ * of its range, like in {@link ContactPredictor}), so the cost of a movement
+ * change depends on the number of nearby hosts instead of all the hosts.
+ * </P>
+ */
+public class DiscreteEventEngine {
+	/** events of the same host at the same time before postponing them */
+	private static final int MAX_SAME_TIME_MOVES = 10;
+	/** time increment for finishing a move that rounding left unfinished */
+	private static final double ROUNDING_STEP = 0.000001;
+	/** relative tolerance of the range when checking a pair's state */
+	private static final double RANGE_TOLERANCE = 0.000000001;
+
+	private static final int MOVE_EVENT = 0;
+	private static final int UP_EVENT = 1;
+	private static final int DOWN_EVENT = 2;
+
+	private List<DTNHost> hosts;
+	private RouterScheduler routerScheduler;
+	/** shortest delay of a postponed movement change */
+	private double minDelay;
+	/** are the connections simulated */
+	private boolean simulateConnections;
+	private PriorityQueue<SimEvent> calendar;
+	/** number of events created so far; used for ordering equal times */
+	private long nrofEvents;
+
+	/* the current movement segments of the hosts (indexed by address) */
+	/** version of each host's segment; events of old versions are ignored */
+	private int[] versions;
+	/** locations of the hosts at the start of their segments */
+	private double[] xs;
+	private double[] ys;
+	/** velocities of the hosts during their segments */
+	private double[] vxs;
+	private double[] vys;
+	/** start and end times of the segments */
+	private double[] startTimes;
+	private double[] endTimes;
+	/** time until which each host has been moved */
+	private double[] movedUntil;
+	/** how many times the host's movement changed at the current time */
+	private int[] sameTimeMoves;
+	private boolean[] wasActive;
+
+	/** hosts of every cell by the bounding boxes of their segments */
+	private SegmentGrid grid;
+	/** number of pairs solved so far */
+	private long nrofSolvedPairs;
+
+	/**
+	 * Creates a new engine and schedules the first movement changes of the
+	 * hosts.
+	 *
+	 * @param hosts
+	 *            The hosts of the simulation (indexed by their addresses)
+	 * @param routerScheduler
+	 *            Scheduler for the router updates; must list the hosts
+	 *            needing an update
+	 * @param minDelay
+	 *            Delay of movement changes that keep happening at the same
+	 *            time (e.g., when a movement model doesn't give a path and
+	 *            tells that a new one is available right away)
+	 * @param simulateConnections
+	 *            If false, no connection events are solved
+	 * @param worldSizeX
+	 *            Width of the world
+	 * @param worldSizeY
+	 *            Height of the world
+	 * @param cellSize
+	 *            Edge length of the cells of the candidate grid (hosts
+	 *            outside the world are in the cells on its edges)
+	 */
+	public DiscreteEventEngine(List<DTNHost> hosts,
+			RouterScheduler routerScheduler, double minDelay,
+			boolean simulateConnections, int worldSizeX, int worldSizeY,
+			int cellSize) {
+		int n = hosts.size();
+		this.hosts = hosts;
+		this.routerScheduler = routerScheduler;
+		this.minDelay = minDelay;
+		this.simulateConnections = simulateConnections;
+		this.calendar = new PriorityQueue<SimEvent>();
+		this.nrofEvents = 0;
+		this.versions = new int[n];
+		this.xs = new double[n];
+		this.ys = new double[n];
+		this.vxs = new double[n];
+		this.vys = new double[n];
+		this.startTimes = new double[n];
+		this.endTimes = new double[n];
+		this.movedUntil = new double[n];
+		this.sameTimeMoves = new int[n];
+		this.wasActive = new boolean[n];
+		this.grid = new SegmentGrid(worldSizeX, worldSizeY, cellSize, n);
+		this.nrofSolvedPairs = 0;
+
+		double now = SimClock.getTime();
+		for (int i = 0; i < n; i++) {
+			DTNHost host = hosts.get(i);
+			Coord c = host.getLocation();
+			this.xs[i] = c.getX();
+			this.ys[i] = c.getY();
+			this.startTimes[i] = now;
+			this.endTimes[i] = now;
+			this.movedUntil[i] = now;
+			this.wasActive[i] = host.isActive();
+			updateBox(i);
+			addEvent(new SimEvent(now, MOVE_EVENT, i, -1));
+		}
+	}
+
+	/**
+	 * Returns the time of the next event
+	 *
+	 * @return The time of the next event or Double.MAX_VALUE if there are no
+	 *         events
+	 */
+	public double nextEventTime() {
+		double next = routerScheduler.nextTimedUpdate();
+		if (!calendar.isEmpty() && calendar.peek().time <= next) {
+			next = calendar.peek().time;
+		}
+		return next;
+	}
+
+	/**
+	 * Processes the next event and updates the routers that it affected. The
+	 * simulation clock must be set to the time of the event (see
+	 * {@link #nextEventTime()}).
+	 */
+	public void processNextEvent() {
+		double now = SimClock.getTime();
+
+		if (calendar.isEmpty() || calendar.peek().time > now) {
+			routerScheduler.wakeDueHosts(now); // a timed router update
+		} else {
+			SimEvent e = calendar.poll();
+			if (e.type == MOVE_EVENT) {
+				if (e.version1 == versions[e.host1]) {
+					moveChanged(e.host1, now);
+				}
+			} else if (e.version1 == versions[e.host1]
+					&& e.version2 == versions[e.host2]) {
+				contactChanged(e, now);
+			}
+		}
+
+		routerScheduler.updateDirtyHosts();
+	}
+
+	/**
+	 * Updates the routers that are affected by something that was not done by
+	 * this engine (e.g., external events)
+	 */
+	public void updateRouters() {
+		routerScheduler.updateDirtyHosts();
+	}
+
+	/**
+	 * Checks which hosts have become active or inactive since the previous
+	 * check and updates their movement and connections accordingly
+	 */
+	public void checkActiveness() {
+		double now = SimClock.getTime();
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			DTNHost host = hosts.get(i);
+			boolean active = host.isActive();
+			if (active != wasActive[i]) {
+				wasActive[i] = active;
+				moveChanged(i, now);
+				routerScheduler.markDirty(host);
+			}
+		}
+		routerScheduler.updateDirtyHosts();
+	}
+
+	/**
+	 * Finishes an update interval: moves all hosts to their current locations
+	 * and updates the routers that are not event-driven
+	 */
+	public void finishInterval() {
+		double now = SimClock.getTime();
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			DTNHost host = hosts.get(i);
+			moveHost(i, now);
+			if (!host.getRouter().isEventDriven()) {
+				routerScheduler.markDirty(host);
+			}
+		}
+		routerScheduler.updateDirtyHosts();
+	}
+
+	/**
+	 * Moves a host along its current segment to the given time
+	 */
+	private void moveHost(int i, double time) {
+		double dt = time - movedUntil[i];
+		if (dt > 0 && (vxs[i] != 0 || vys[i] != 0)) {
+			hosts.get(i).move(dt);
+		}
+		movedUntil[i] = time;
+	}
+
+	/**
+	 * Handles a movement change of a host: moves the host, starts its new
+	 * segment and solves the host's connection events during the segment
+	 */
+	private void moveChanged(int i, double now) {
+		DTNHost host = hosts.get(i);
+		moveHost(i, now);
+		host.move(0); // gets the next waypoint if the host is at its target
+
+		double next = host.getNextMovementChange();
+		for (int k = 0; k < MAX_SAME_TIME_MOVES && next <= now
+				&& host.getDestination() != null
+				&& host.getLocation().distance(host.getDestination()) > 0; k++) {
+			host.move(ROUNDING_STEP); // rounding left the host just short
+			next = host.getNextMovementChange();
+		}
+
+		if (startTimes[i] == now) {
+			sameTimeMoves[i]++;
+		} else {
+			sameTimeMoves[i] = 0;
+		}
+		if (next <= now && sameTimeMoves[i] >= MAX_SAME_TIME_MOVES) {
+			next = now + minDelay; // e.g., a model that never gives a path
+		}
+
+		Coord loc = host.getLocation();
+		Coord dest = host.getDestination();
+		double speed = host.getNextMoveSpeed();
+		versions[i]++;
+		xs[i] = loc.getX();
+		ys[i] = loc.getY();
+		vxs[i] = 0;
+		vys[i] = 0;
+		startTimes[i] = now;
+		endTimes[i] = next;
+
+		if (next > now && next < Double.MAX_VALUE && dest != null
+				&& speed > 0 && speed < Double.MAX_VALUE) {
+			double distance = loc.distance(dest);
+			if (distance > 0) {
+				vxs[i] = (dest.getX() - xs[i]) / distance * speed;
+				vys[i] = (dest.getY() - ys[i]) / distance * speed;
+			}
+		}
+
+		if (next < Double.MAX_VALUE) {
+			addEvent(new SimEvent(next, MOVE_EVENT, i, -1));
+		}
+
+		updateBox(i);
+		if (!simulateConnections) {
+			return;
+		}
+
+		/* peers that are not candidates must still be solved (to go down) */
+		int[] candidates = grid.candidates(i);
+		int nrofCandidates = grid.getNrofCandidates();
+		List<Connection> connections = host.getConnections();
+		for (int k = 0, n = connections.size(); k < n; k++) {
+			int j = connections.get(k).getOtherNode(host).getAddress();
+			if (!grid.isCandidate(j)) {
+				solvePair(i, j, now, false);
+			}
+		}
+		for (int k = 0; k < nrofCandidates; k++) {
+			solvePair(i, candidates[k], now, false);
+		}
+	}
+
+	/**
+	 * Puts a host to the cells of its current segment's bounding box,
+	 * extended by half of its range
+	 */
+	private void updateBox(int i) {
+		double margin = hosts.get(i).getTransmitRange() / 2;
+		double duration = (endTimes[i] > startTimes[i] ? endTimes[i]
+				- startTimes[i] : 0);
+		double x2 = xs[i] + vxs[i] * duration;
+		double y2 = ys[i] + vys[i] * duration;
+		grid.setBox(i, Math.min(xs[i], x2) - margin, Math.min(ys[i], y2)
+				- margin, Math.max(xs[i], x2) + margin, Math.max(ys[i], y2)
+				+ margin);
+	}
+
+	/**
+	 * Returns the number of host pairs whose connection events have been
+	 * solved so far
+	 *
+	 * @return the number of solved pairs
+	 */
+	public long getNrofSolvedPairs() {
+		return this.nrofSolvedPairs;
+	}
+
+	/**
+	 * Handles a connection event of a pair of hosts
+	 */
+	private void contactChanged(SimEvent e, double now) {
+		DTNHost from = hosts.get(e.host1);
+		DTNHost to = hosts.get(e.host2);
+		moveHost(e.host1, now);
+		moveHost(e.host2, now);
+
+		boolean connected = isConnected(from, to);
+		if (e.type == UP_EVENT && !connected && from.isActive()
+				&& to.isActive()) {
+			from.forceConnection(to, true);
+		} else if (e.type == DOWN_EVENT && connected) {
+			from.forceConnection(to, false);
+		}
+
+		solvePair(e.host1, e.host2, now, true);
+	}
+
+	/**
+	 * Solves the next connection event of two hosts during their current
+	 * segments and adds it to the calendar.
+	 *
+	 * @param i
+	 *            Index of one host
+	 * @param j
+	 *            Index of the other host
+	 * @param now
+	 *            The current time
+	 * @param justChanged
+	 *            True if the pair's connection state was just handled; then
+	 *            only crossings later than now are considered
+	 */
+	private void solvePair(int i, int j, double now, boolean justChanged) {
+		this.nrofSolvedPairs++;
+		DTNHost hi = hosts.get(i);
+		DTNHost hj = hosts.get(j);
+		double ri = hi.getTransmitRange();
+		double rj = hj.getTransmitRange();
+		double range = (ri < rj ? ri : rj);
+		double end = (endTimes[i] < endTimes[j] ? endTimes[i] : endTimes[j]);
+
+		double dx = (xs[i] + vxs[i] * (now - startTimes[i]))
+				- (xs[j] + vxs[j] * (now - startTimes[j]));
+		double dy = (ys[i] + vys[i] * (now - startTimes[i]))
+				- (ys[j] + vys[j] * (now - startTimes[j]));
+		double wx = vxs[i] - vxs[j];
+		double wy = vys[i] - vys[j];
+		double distSq = dx * dx + dy * dy;
+		double rangeSq = range * range;
+		boolean connected = isConnected(hi, hj);
+
+		/* the state doesn't match the locations (e.g., host was activated) */
+		if (!justChanged) {
+			double tolerance = rangeSq * RANGE_TOLERANCE;
+			if (connected && distSq > rangeSq + tolerance) {
+				addContactEvent(i, j, now, false);
+				return;
+			} else if (!connected && distSq <= rangeSq && hi.isActive()
+					&& hj.isActive()) {
+				addContactEvent(i, j, now, true);
+				return;
+			}
+		}
+
+		/* |d + s*w|^2 - r^2 = a*s^2 + b*s + c */
+		double a = wx * wx + wy * wy;
+		if (a == 0) {
+			return; // the distance doesn't change
+		}
+		double b = 2 * (dx * wx + dy * wy);
+		double c = distSq - rangeSq;
+		double disc = b * b - 4 * a * c;
+		if (disc < 0) {
+			return; // never within range
+		}
+
+		double sq = Math.sqrt(disc);
+		double s = (connected ? (-b + sq) / (2 * a) : (-b - sq) / (2 * a));
+		double minS = (justChanged ? ROUNDING_STEP : 0);
+		if (s > minS && now + s <= end) {
+			addContactEvent(i, j, now + s, !connected);
+		}
+	}
+
+	/**
+	 * Returns true if the two hosts are currently connected
+	 */
+	private boolean isConnected(DTNHost host, DTNHost other) {
+		List<Connection> connections = host.getConnections();
+		for (int i = 0, n = connections.size(); i < n; i++) {
+			if (connections.get(i).getOtherNode(host) == other) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addContactEvent(int i, int j, double time, boolean up) {
+		int type = (up ? UP_EVENT : DOWN_EVENT);
+		if (i < j) {
+			addEvent(new SimEvent(time, type, i, j));
+		} else {
+			addEvent(new SimEvent(time, type, j, i));
+		}
+	}
+
+	private void addEvent(SimEvent e) {
+		e.order = this.nrofEvents++;
+		e.version1 = versions[e.host1];
+		e.version2 = (e.host2 >= 0 ? versions[e.host2] : 0);
+		calendar.add(e);
+	}
+
+	/**
+	 * Grid of the hosts' segment bounding boxes. Every host is listed in all
+	 * the cells its box overlaps. The candidates of a host are the hosts
+	 * whose boxes overlap its box.
+	 */
+	private static class SegmentGrid {
+		private int cellSize;
+		private int rows;
+		private int cols;
+		/** hosts of every cell (rows * cols lists) */
+		private int[][] cellHosts;
+		private int[] cellSizes;
+		/** boxes of the hosts */
+		private double[] minX;
+		private double[] minY;
+		private double[] maxX;
+		private double[] maxY;
+		/** cell ranges of the hosts' boxes (inclusive) */
+		private int[] minRow;
+		private int[] maxRow;
+		private int[] minCol;
+		private int[] maxCol;
+		/** the hosts found by the latest query */
+		private int[] candidates;
+		private int nrofCandidates;
+		/** query number that last saw every host (to skip duplicates) */
+		private int[] marks;
+		/** query number that last found every host as a candidate */
+		private int[] found;
+		private int query;
+
+		private SegmentGrid(int worldSizeX, int worldSizeY, int cellSize,
+				int nrofHosts) {
+			this.cellSize = Math.max(cellSize, 1);
+			this.rows = worldSizeY / this.cellSize + 1;
+			this.cols = worldSizeX / this.cellSize + 1;
+			this.cellHosts = new int[rows * cols][];
+			this.cellSizes = new int[rows * cols];
+			this.minX = new double[nrofHosts];
+			this.minY = new double[nrofHosts];
+			this.maxX = new double[nrofHosts];
+			this.maxY = new double[nrofHosts];
+			this.minRow = new int[nrofHosts];
+			this.maxRow = new int[nrofHosts];
+			this.minCol = new int[nrofHosts];
+			this.maxCol = new int[nrofHosts];
+			Arrays.fill(this.minRow, -1); // not in any cell yet
+			this.candidates = new int[nrofHosts];
+			this.marks = new int[nrofHosts];
+			this.found = new int[nrofHosts];
+			this.query = 0;
+		}
+
+		/**
+		 * Sets the box of a host and moves the host to the cells of the box
+		 */
+		private void setBox(int i, double x1, double y1, double x2,
+				double y2) {
+			int r1 = row(y1);
+			int r2 = row(y2);
+			int c1 = col(x1);
+			int c2 = col(x2);
+			minX[i] = x1;
+			minY[i] = y1;
+			maxX[i] = x2;
+			maxY[i] = y2;
+			if (r1 == minRow[i] && r2 == maxRow[i] && c1 == minCol[i]
+					&& c2 == maxCol[i]) {
+				return; // still in the same cells
+			}
+
+			if (minRow[i] >= 0) {
+				for (int r = minRow[i]; r <= maxRow[i]; r++) {
+					for (int c = minCol[i]; c <= maxCol[i]; c++) {
+						remove(r * cols + c, i);
+					}
+				}
+			}
+			for (int r = r1; r <= r2; r++) {
+				for (int c = c1; c <= c2; c++) {
+					add(r * cols + c, i);
+				}
+			}
+			minRow[i] = r1;
+			maxRow[i] = r2;
+			minCol[i] = c1;
+			maxCol[i] = c2;
+		}
+
+		/**
+		 * Finds the other hosts whose boxes overlap the box of a host. The
+		 * hosts are in {@link #candidates} until the next query (see also
+		 * {@link #isCandidate(int)}).
+		 *
+		 * @return the array of the candidates (see
+		 *         {@link #getNrofCandidates()})
+		 */
+		private int[] candidates(int i) {
+			this.query++;
+			this.nrofCandidates = 0;
+			marks[i] = query;
+			for (int r = minRow[i]; r <= maxRow[i]; r++) {
+				for (int c = minCol[i]; c <= maxCol[i]; c++) {
+					int cell = r * cols + c;
+					int[] list = cellHosts[cell];
+					for (int k = 0, n = cellSizes[cell]; k < n; k++) {
+						int j = list[k];
+						if (marks[j] == query) {
+							continue;
+						}
+						marks[j] = query;
+						if (minX[j] <= maxX[i] && minX[i] <= maxX[j]
+								&& minY[j] <= maxY[i] && minY[i] <= maxY[j]) {
+							candidates[nrofCandidates++] = j;
+							found[j] = query;
+						}
+					}
+				}
+			}
+			return this.candidates;
+		}
+
+		private int getNrofCandidates() {
+			return this.nrofCandidates;
+		}
+
+		/**
+		 * Returns true if the host was found by the latest query
+		 */
+		private boolean isCandidate(int i) {
+			return found[i] == query;
+		}
+
+		private void add(int cell, int i) {
+			int[] list = cellHosts[cell];
+			int n = cellSizes[cell];
+			if (list == null) {
+				list = new int[4];
+				cellHosts[cell] = list;
+			} else if (n == list.length) {
+				list = Arrays.copyOf(list, n * 2);
+				cellHosts[cell] = list;
+			}
+			list[n] = i;
+			cellSizes[cell] = n + 1;
+		}
+
+		private void remove(int cell, int i) {
+			int[] list = cellHosts[cell];
+			int last = --cellSizes[cell];
+			for (int k = 0; k <= last; k++) {
+				if (list[k] == i) {
+					list[k] = list[last];
+					return;
+				}
+			}
+		}
+
+		private int row(double y) {
+			int r = (int) (y / cellSize);
+			return (y < 0 ? 0 : Math.min(r, rows - 1));
+		}
+
+		private int col(double x) {
+			int c = (int) (x / cellSize);
+			return (x < 0 ? 0 : Math.min(c, cols - 1));
+		}
+	}
+
+	/**
+	 * An event on the calendar
+	 */
+	private static class SimEvent implements Comparable<SimEvent> {
+		private double time;
+		private int type;
+		private int host1;
+		private int host2;
+		/** versions of the hosts' segments when the event was created */
+		private int version1;
+		private int version2;
+		/** creation order of the event */
+		private long order;
+
+		public SimEvent(double time, int type, int host1, int host2) {
+			this.time = time;
+			this.type = type;
+			this.host1 = host1;
+			this.host2 = host2;
+		}
+
+		/**
+		 * Orders the events by time and then by their creation order
+		 */
+		public int compareTo(SimEvent other) {
+			if (this.time != other.time) {
+				return (this.time < other.time ? -1 : 1);
+			} else if (this.order != other.order) {
+				return (this.order < other.order ? -1 : 1);
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,704 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <P>
+ * Coordinator of a distributed run (see {@link World#DISTRIBUTED_S}). The
+ * world is split into rectangular regions (see {@link DistributedRegions})
+ * and every region is owned by a worker JVM (see {@link DistributedWorker})
+ * that is started on the same machine and connected to the coordinator
+ * through the loopback interface. The workers execute the update intervals
+ * (ticks) of the hosts they own, and the coordinator keeps them in step and
+ * gives their listener events to the reports of this JVM, so the reports
+ * are written once, as in a run of one JVM.
+ * </P>
+ * <P>
+ * On every tick the coordinator collects the halos of the workers: their
+ * hosts that are outside their region or near a border to another region.
+ * Every worker gets the halo hosts of the other workers near its own hosts
+ * as ghosts and tells which of its hosts are within range of them. The
+ * clusters of hosts (hosts that are connected or within range of each
+ * other, directly or through other hosts) that span several workers are
+ * then moved to one worker, so that hosts can only connect to hosts of the
+ * same worker. A cluster moves to the region where the host with the
+ * smallest address is located, which also moves the hosts that
+ * have crossed a border to the worker of their new region. After the tick
+ * the events of all the workers are sorted to the order they have in a
+ * sequential run (see {@link TimeWarpRecorder}), and the results are the
+ * same as with {@link World#PARALLEL_MOVEMENT_S}.
+ * </P>
+ */
+public class DistributedCoordinator {
+	/** how long to wait for the workers to connect (milliseconds) */
+	private static final int CONNECT_TIMEOUT = 60000;
+	/** how long to wait for the workers to exit (seconds) */
+	private static final int EXIT_TIMEOUT = 10;
+
+	private List<DTNHost> hosts;
+	private DistributedRegions regions;
+	private int nrofWorkers;
+	/** maximum heap size of the worker JVMs (megabytes) */
+	private int workerMemory;
+	private double interval;
+	private List<ConnectionListener> cListeners;
+	private List<MessageListener> mListeners;
+
+	private boolean started;
+	private Process[] processes;
+	/** output files of the workers */
+	private File[] logs;
+	private File settingsFile;
+	private Socket[] sockets;
+	private DataInputStream[] ins;
+	private DataOutputStream[] outs;
+	/** the latest committed tick */
+	private int tick;
+	/** end time of the latest committed tick */
+	private double tickTime;
+
+	/* state of the current tick's halo exchange, indexed by address */
+	/** cluster root of each halo host */
+	private int[] entryRoots;
+	/** is the host in a halo (and its location known) */
+	private boolean[] inHalo;
+	private double[] entryXs;
+	private double[] entryYs;
+	/** the worker that owns each cluster root */
+	private int[] rootOwners;
+	/** parent of each cluster root in the sets to join (or -1) */
+	private int[] parents;
+	/** the cluster roots of the tick */
+	private List<Integer> roots;
+
+	private AtomicLong nrofReceivedBytes;
+	private AtomicLong nrofSentBytes;
+	private long nrofExchanges;
+	private long nrofHaloEntries;
+	private long nrofGhosts;
+	private long nrofPairs;
+	private long nrofMigrations;
+	private long nrofMigratedHosts;
+	private long nrofMigratedBytes;
+	private long nrofEvents;
+
+	/**
+	 * Creates a new coordinator. The workers are started on the first
+	 * {@link #update()}.
+	 *
+	 * @param scen
+	 *            The scenario of the world
+	 * @param regions
+	 *            The regions of the workers
+	 * @param workerMemory
+	 *            Maximum heap size of the worker JVMs (megabytes)
+	 */
+	public DistributedCoordinator(SimScenario scen,
+			DistributedRegions regions, int workerMemory) {
+		this.hosts = scen.getHosts();
+		this.regions = regions;
+		this.nrofWorkers = regions.size();
+		this.workerMemory = workerMemory;
+		this.interval = scen.getUpdateInterval();
+		this.cListeners = scen.getConnectionListeners();
+		this.mListeners = scen.getMessageListeners();
+
+		int n = this.hosts.size();
+		this.entryRoots = new int[n];
+		this.inHalo = new boolean[n];
+		this.entryXs = new double[n];
+		this.entryYs = new double[n];
+		this.rootOwners = new int[n];
+		this.parents = new int[n];
+		Arrays.fill(this.parents, -1);
+		this.roots = new ArrayList<Integer>();
+		this.nrofReceivedBytes = new AtomicLong();
+		this.nrofSentBytes = new AtomicLong();
+
+		SimulationContext.current().setState(DistributedCoordinator.class,
+				this);
+	}
+
+	/**
+	 * Returns the coordinator of the current simulation run
+	 *
+	 * @return the coordinator or null if the run is not distributed
+	 */
+	public static DistributedCoordinator getCurrent() {
+		return (DistributedCoordinator) SimulationContext.current().getState(
+				DistributedCoordinator.class);
+	}
+
+	/**
+	 * Starts the worker JVMs with the settings of the current run and waits
+	 * until they have connected
+	 */
+	private void start() {
+		this.tickTime = SimClock.getTime();
+		this.processes = new Process[this.nrofWorkers];
+		this.logs = new File[this.nrofWorkers];
+		this.sockets = new Socket[this.nrofWorkers];
+		this.ins = new DataInputStream[this.nrofWorkers];
+		this.outs = new DataOutputStream[this.nrofWorkers];
+		this.started = true;
+
+		ServerSocket server = null;
+		try {
+			this.settingsFile = writeSettings();
+			server = new ServerSocket(0, this.nrofWorkers, InetAddress
+					.getLoopbackAddress());
+			server.setSoTimeout(CONNECT_TIMEOUT);
+			for (int i = 0; i < this.nrofWorkers; i++) {
+				this.logs[i] = File.createTempFile("one-worker" + i + "-",
+						".txt");
+				this.processes[i] = startWorker(i, server.getLocalPort());
+			}
+
+			for (int i = 0; i < this.nrofWorkers; i++) {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				DataInputStream in = DistributedWire.input(socket,
+						this.nrofReceivedBytes);
+				int index = -1;
+				if (in.readInt() == DistributedWire.MAGIC
+						&& in.readInt() == DistributedWire.VERSION) {
+					index = in.readInt();
+				}
+				if (index < 0 || index >= this.nrofWorkers
+						|| this.sockets[index] != null) {
+					socket.close();
+					throw new SimError("Invalid worker connection");
+				}
+				this.sockets[index] = socket;
+				this.ins[index] = in;
+				this.outs[index] = DistributedWire.output(socket,
+						this.nrofSentBytes);
+			}
+		} catch (SocketTimeoutException e) {
+			throw new SimError("The workers didn't connect in "
+					+ CONNECT_TIMEOUT / 1000 + " seconds; see their output "
+					+ "in " + Arrays.toString(this.logs));
+		} catch (IOException e) {
+			throw new SimError("Couldn't start the workers: " + e.getMessage(),
+					e);
+		} finally {
+			if (server != null) {
+				try {
+					server.close();
+				} catch (IOException e) {
+					// all the workers have connected or the start failed
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the settings of the current run to a temporary file for the
+	 * workers
+	 */
+	private File writeSettings() throws IOException {
+		Properties props = new Properties();
+		for (Map.Entry<String, String> e : Settings.getResolvedSettings()
+				.entrySet()) {
+			props.setProperty(e.getKey(), e.getValue());
+		}
+		File file = File.createTempFile("one-worker-settings", ".txt");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			props.store(out, "settings of a distributed run");
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Starts a worker JVM
+	 */
+	private Process startWorker(int index, int port) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		command.add("-Xmx" + this.workerMemory + "M");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(DTNSim.class.getName());
+		command.add(DTNSim.WORKER_FLAG);
+		command.add(String.valueOf(port));
+		command.add(String.valueOf(index));
+		command.add(this.settingsFile.getPath());
+
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectErrorStream(true);
+		pb.redirectOutput(ProcessBuilder.Redirect.appendTo(this.logs[index]));
+		return pb.start();
+	}
+
+	/**
+	 * Executes the next tick with the workers, gives the listener events of
+	 * the tick to the listeners and sets the simulation clock to the end of
+	 * the tick
+	 */
+	public void update() {
+		if (!this.started) {
+			start();
+		}
+		int t = this.tick + 1;
+		List<TimeWarpRecorder.Event> events =
+			new ArrayList<TimeWarpRecorder.Event>();
+		int worker = 0;
+
+		try {
+			for (worker = 0; worker < this.nrofWorkers; worker++) {
+				this.outs[worker].writeByte(DistributedWire.TICK);
+				this.outs[worker].writeInt(t);
+				flush(worker);
+			}
+			List<List<double[]>> halos = new ArrayList<List<double[]>>();
+			for (worker = 0; worker < this.nrofWorkers; worker++) {
+				halos.add(readHalo(worker));
+			}
+			exchange(halos);
+			clearHalos(halos);
+
+			for (worker = 0; worker < this.nrofWorkers; worker++) {
+				readEvents(worker, events);
+			}
+		} catch (IOException e) {
+			throw new SimError("Lost distributed worker " + worker + " on "
+					+ "tick " + t + " (" + e.getMessage() + "); see its "
+					+ "output in " + this.logs[worker], e);
+		}
+
+		Collections.sort(events);
+		this.nrofEvents += events.size();
+		TimeWarpRecorder.replay(events, this.cListeners, this.mListeners);
+		this.tick = t;
+		this.tickTime += this.interval;
+		SimClock.getInstance().setTime(this.tickTime);
+	}
+
+	/**
+	 * Reads the halo of a worker. Every entry is {address, x, y, range,
+	 * worker}.
+	 */
+	private List<double[]> readHalo(int worker) throws IOException {
+		DataInputStream in = this.ins[worker];
+		DistributedWire.expect(in, DistributedWire.HALO);
+		int n = in.readInt();
+		List<double[]> halo = new ArrayList<double[]>(n);
+		for (int i = 0; i < n; i++) {
+			int a = in.readInt();
+			double[] entry = new double[] { a, in.readDouble(),
+					in.readDouble(), in.readDouble(), worker };
+			int root = in.readInt();
+			this.entryRoots[a] = root;
+			this.inHalo[a] = true;
+			this.entryXs[a] = entry[1];
+			this.entryYs[a] = entry[2];
+			addRoot(root, worker);
+			halo.add(entry);
+		}
+		this.nrofHaloEntries += n;
+		return halo;
+	}
+
+	/**
+	 * Sends the ghosts to the workers, reads the pairs of hosts within range
+	 * and moves the clusters that must be executed by another worker.
+	 * Nothing is exchanged if no ghosts or migrations are needed.
+	 */
+	private void exchange(List<List<double[]>> halos) throws IOException {
+		List<List<double[]>> ghosts = new ArrayList<List<double[]>>();
+		boolean needed = false;
+		for (int p = 0; p < this.nrofWorkers; p++) {
+			ghosts.add(findGhosts(p, halos));
+			needed |= !ghosts.get(p).isEmpty();
+		}
+		for (int root : this.roots) {
+			needed |= targetOf(root) != this.rootOwners[root];
+		}
+		if (!needed) {
+			for (int p = 0; p < this.nrofWorkers; p++) {
+				this.outs[p].writeByte(DistributedWire.SKIP);
+				flush(p);
+			}
+			return;
+		}
+
+		this.nrofExchanges++;
+		for (int p = 0; p < this.nrofWorkers; p++) {
+			DataOutputStream out = this.outs[p];
+			out.writeByte(DistributedWire.GHOSTS);
+			out.writeInt(ghosts.get(p).size());
+			for (double[] g : ghosts.get(p)) {
+				out.writeInt((int) g[0]);
+				out.writeDouble(g[1]);
+				out.writeDouble(g[2]);
+				out.writeDouble(g[3]);
+			}
+			flush(p);
+			this.nrofGhosts += ghosts.get(p).size();
+		}
+
+		for (int p = 0; p < this.nrofWorkers; p++) {
+			DataInputStream in = this.ins[p];
+			DistributedWire.expect(in, DistributedWire.PAIRS);
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				int root = in.readInt();
+				int ghost = in.readInt();
+				addRoot(root, p);
+				union(root, this.entryRoots[ghost]);
+			}
+			this.nrofPairs += n;
+		}
+
+		migrate();
+	}
+
+	/**
+	 * Returns the halo entries of the other workers that may be within range
+	 * of a worker's hosts: the hosts in its region or halo
+	 */
+	private List<double[]> findGhosts(int p, List<List<double[]>> halos) {
+		double[] bounds = this.regions.getBounds(p);
+		for (double[] entry : halos.get(p)) {
+			bounds[0] = Math.min(bounds[0], entry[1]);
+			bounds[1] = Math.min(bounds[1], entry[2]);
+			bounds[2] = Math.max(bounds[2], entry[1]);
+			bounds[3] = Math.max(bounds[3], entry[2]);
+		}
+		double range = this.regions.getMaxRange();
+		List<double[]> ghosts = new ArrayList<double[]>();
+		for (int q = 0; q < this.nrofWorkers; q++) {
+			if (q == p) {
+				continue;
+			}
+			for (double[] entry : halos.get(q)) {
+				if (entry[1] >= bounds[0] - range
+						&& entry[2] >= bounds[1] - range
+						&& entry[1] <= bounds[2] + range
+						&& entry[2] <= bounds[3] + range) {
+					ghosts.add(entry);
+				}
+			}
+		}
+		return ghosts;
+	}
+
+	/**
+	 * Orders the clusters whose hosts are within range of each other to
+	 * the same worker (the one of the region of their smallest address) and
+	 * forwards the state of the moved clusters
+	 */
+	private void migrate() throws IOException {
+		List<List<int[]>> exports = new ArrayList<List<int[]>>();
+		int[] nrofImports = new int[this.nrofWorkers];
+		for (int p = 0; p < this.nrofWorkers; p++) {
+			exports.add(new ArrayList<int[]>());
+		}
+		for (int root : this.roots) {
+			int target = targetOf(find(root));
+			int owner = this.rootOwners[root];
+			if (owner != target) {
+				exports.get(owner).add(new int[] { root, target });
+				nrofImports[target]++;
+			}
+		}
+
+		for (int p = 0; p < this.nrofWorkers; p++) {
+			DataOutputStream out = this.outs[p];
+			out.writeByte(DistributedWire.ORDERS);
+			out.writeInt(exports.get(p).size());
+			for (int[] export : exports.get(p)) {
+				out.writeInt(export[0]);
+				out.writeInt(export[1]);
+			}
+			out.writeInt(nrofImports[p]);
+			flush(p);
+		}
+
+		List<List<byte[]>> imports = new ArrayList<List<byte[]>>();
+		for (int p = 0; p < this.nrofWorkers; p++) {
+			imports.add(new ArrayList<byte[]>());
+		}
+		for (int p = 0; p < this.nrofWorkers; p++) {
+			DataInputStream in = this.ins[p];
+			for (int i = 0, n = exports.get(p).size(); i < n; i++) {
+				DistributedWire.expect(in, DistributedWire.EXPORT);
+				int target = in.readInt();
+				this.nrofMigratedHosts += in.readInt();
+				byte[] state = new byte[in.readInt()];
+				in.readFully(state);
+				imports.get(target).add(state);
+				this.nrofMigrations++;
+				this.nrofMigratedBytes += state.length;
+			}
+		}
+		for (int p = 0; p < this.nrofWorkers; p++) {
+			DataOutputStream out = this.outs[p];
+			for (byte[] state : imports.get(p)) {
+				out.writeByte(DistributedWire.IMPORT);
+				out.writeInt(state.length);
+				out.write(state);
+			}
+			flush(p);
+		}
+	}
+
+	/**
+	 * Adds a cluster root of a worker to the roots of the tick
+	 */
+	private void addRoot(int root, int worker) {
+		if (this.parents[root] < 0) {
+			this.parents[root] = root;
+			this.rootOwners[root] = worker;
+			this.roots.add(root);
+		}
+	}
+
+	/**
+	 * Returns the worker that should own the cluster of a root host: the
+	 * worker of the root's region if the root's location is known (it's in
+	 * a halo), otherwise the current owner (the root is in its region)
+	 */
+	private int targetOf(int root) {
+		if (!this.inHalo[root]) {
+			return this.rootOwners[root];
+		}
+		return this.regions.regionOf(this.entryXs[root], this.entryYs[root]);
+	}
+
+	/**
+	 * Returns the smallest root of the set of a root
+	 */
+	private int find(int a) {
+		while (this.parents[a] != a) {
+			this.parents[a] = this.parents[this.parents[a]];
+			a = this.parents[a];
+		}
+		return a;
+	}
+
+	/**
+	 * Joins the sets of two roots; the smaller root becomes the set's root
+	 */
+	private void union(int a, int b) {
+		int ra = find(a);
+		int rb = find(b);
+		if (ra < rb) {
+			this.parents[rb] = ra;
+		} else if (rb < ra) {
+			this.parents[ra] = rb;
+		}
+	}
+
+	/**
+	 * Clears the halo exchange state of the tick
+	 */
+	private void clearHalos(List<List<double[]>> halos) {
+		for (List<double[]> halo : halos) {
+			for (double[] entry : halo) {
+				this.inHalo[(int) entry[0]] = false;
+			}
+		}
+		for (int root : this.roots) {
+			this.parents[root] = -1;
+		}
+		this.roots.clear();
+	}
+
+	/**
+	 * Reads the events and the moved hosts' locations of a worker
+	 */
+	private void readEvents(int worker, List<TimeWarpRecorder.Event> events)
+			throws IOException {
+		DataInputStream in = this.ins[worker];
+		DistributedWire.expect(in, DistributedWire.EVENTS);
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			events.add(TimeWarpRecorder.Event.read(in, this.hosts));
+		}
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			DTNHost host = this.hosts.get(in.readInt());
+			host.setLocation(new Coord(in.readDouble(), in.readDouble()));
+		}
+	}
+
+	private void flush(int worker) throws IOException {
+		this.outs[worker].flush();
+	}
+
+	/**
+	 * Disconnects the workers and waits until they have exited
+	 */
+	public void stop() {
+		if (!this.started) {
+			return;
+		}
+		this.started = false;
+		boolean failed = false;
+		for (int i = 0; i < this.nrofWorkers; i++) {
+			try {
+				if (this.sockets[i] != null) {
+					this.sockets[i].close();
+				}
+				if (this.processes[i] != null
+						&& !this.processes[i].waitFor(EXIT_TIMEOUT,
+								TimeUnit.SECONDS)) {
+					this.processes[i].destroy();
+					failed = true;
+				} else if (this.processes[i] != null
+						&& this.processes[i].exitValue() != 0) {
+					failed = true;
+				}
+			} catch (IOException e) {
+				failed = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failed = true;
+			}
+		}
+		if (this.settingsFile != null) {
+			this.settingsFile.delete();
+		}
+		if (failed) {
+			System.err.println("Some distributed workers didn't finish "
+					+ "normally; see their output in "
+					+ Arrays.toString(this.logs));
+			return;
+		}
+		for (File log : this.logs) {
+			log.delete();
+		}
+	}
+
+	/**
+	 * Returns the number of worker JVMs
+	 *
+	 * @return the number of workers
+	 */
+	public int getNrofWorkers() {
+		return this.nrofWorkers;
+	}
+
+	/**
+	 * Returns the number of executed ticks
+	 *
+	 * @return the number of ticks
+	 */
+	public int getNrofTicks() {
+		return this.tick;
+	}
+
+	/**
+	 * Returns the number of ticks where ghosts or migrations were exchanged
+	 *
+	 * @return the number of exchanges
+	 */
+	public long getNrofExchanges() {
+		return this.nrofExchanges;
+	}
+
+	/**
+	 * Returns the number of halo entries the workers sent
+	 *
+	 * @return the number of halo entries
+	 */
+	public long getNrofHaloEntries() {
+		return this.nrofHaloEntries;
+	}
+
+	/**
+	 * Returns the number of ghosts sent to the workers
+	 *
+	 * @return the number of ghosts
+	 */
+	public long getNrofGhosts() {
+		return this.nrofGhosts;
+	}
+
+	/**
+	 * Returns the number of host pairs within range across the workers
+	 *
+	 * @return the number of pairs
+	 */
+	public long getNrofPairs() {
+		return this.nrofPairs;
+	}
+
+	/**
+	 * Returns the number of clusters moved to another worker
+	 *
+	 * @return the number of migrations
+	 */
+	public long getNrofMigrations() {
+		return this.nrofMigrations;
+	}
+
+	/**
+	 * Returns the number of hosts moved to another worker
+	 *
+	 * @return the number of migrated hosts
+	 */
+	public long getNrofMigratedHosts() {
+		return this.nrofMigratedHosts;
+	}
+
+	/**
+	 * Returns the size of the state of the moved clusters
+	 *
+	 * @return the number of migrated bytes
+	 */
+	public long getNrofMigratedBytes() {
+		return this.nrofMigratedBytes;
+	}
+
+	/**
+	 * Returns the number of listener events received from the workers
+	 *
+	 * @return the number of events
+	 */
+	public long getNrofEvents() {
+		return this.nrofEvents;
+	}
+
+	/**
+	 * Returns the number of bytes received from the workers
+	 *
+	 * @return the number of received bytes
+	 */
+	public long getNrofReceivedBytes() {
+		return this.nrofReceivedBytes.get();
+	}
+
+	/**
+	 * Returns the number of bytes sent to the workers
+	 *
+	 * @return the number of sent bytes
+	 */
+	public long getNrofSentBytes() {
+		return this.nrofSentBytes.get();
+	}
+}
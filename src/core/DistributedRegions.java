@@ -0,0 +1,134 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+/**
+ * Splits the world into a grid of equal sized rectangular regions for a
+ * distributed run (see {@link World#DISTRIBUTED_S}). Every region is owned
+ * by one worker process; region (and worker) indexes grow first along the
+ * columns and then along the rows. Locations outside the world belong to
+ * the nearest region.
+ */
+public class DistributedRegions {
+	private int cols;
+	private int rows;
+	private double width;
+	private double height;
+	/** the largest range of the hosts */
+	private double maxRange;
+
+	/**
+	 * Creates a new grid of regions
+	 *
+	 * @param worldSizeX
+	 *            Width of the world
+	 * @param worldSizeY
+	 *            Height of the world
+	 * @param cols
+	 *            Number of region columns
+	 * @param rows
+	 *            Number of region rows
+	 * @param maxRange
+	 *            The largest range of the hosts
+	 */
+	public DistributedRegions(double worldSizeX, double worldSizeY, int cols,
+			int rows, double maxRange) {
+		this.cols = cols;
+		this.rows = rows;
+		this.width = worldSizeX / cols;
+		this.height = worldSizeY / rows;
+		this.maxRange = maxRange;
+	}
+
+	/**
+	 * Returns the number of regions
+	 *
+	 * @return the number of regions
+	 */
+	public int size() {
+		return this.cols * this.rows;
+	}
+
+	/**
+	 * Returns the largest range of the hosts
+	 *
+	 * @return the largest range of the hosts
+	 */
+	public double getMaxRange() {
+		return this.maxRange;
+	}
+
+	/**
+	 * Returns the region of a location
+	 *
+	 * @param x
+	 *            The x coordinate
+	 * @param y
+	 *            The y coordinate
+	 * @return index of the region
+	 */
+	public int regionOf(double x, double y) {
+		return rowOf(y) * this.cols + colOf(x);
+	}
+
+	private int colOf(double x) {
+		int col = (int) (x / this.width);
+		return Math.max(0, Math.min(this.cols - 1, col));
+	}
+
+	private int rowOf(double y) {
+		int row = (int) (y / this.height);
+		return Math.max(0, Math.min(this.rows - 1, row));
+	}
+
+	/**
+	 * Returns true if a host of a region that is located at the given
+	 * location may be within range of a host of another region: the
+	 * location is outside the region or within the largest range from a
+	 * border between the region and another region
+	 *
+	 * @param region
+	 *            Index of the region
+	 * @param x
+	 *            The x coordinate
+	 * @param y
+	 *            The y coordinate
+	 * @return true if the location belongs to the region's halo
+	 */
+	public boolean isInHalo(int region, double x, double y) {
+		if (regionOf(x, y) != region) {
+			return true;
+		}
+		int col = region % this.cols;
+		int row = region / this.cols;
+		return (col > 0 && x - col * this.width <= this.maxRange)
+				|| (col < this.cols - 1
+						&& (col + 1) * this.width - x <= this.maxRange)
+				|| (row > 0 && y - row * this.height <= this.maxRange)
+				|| (row < this.rows - 1
+						&& (row + 1) * this.height - y <= this.maxRange);
+	}
+
+	/**
+	 * Returns the bounds of a region: the smallest and largest x and y
+	 * coordinates. The regions at the edges of the grid extend to infinity
+	 * on the outer side.
+	 *
+	 * @param region
+	 *            Index of the region
+	 * @return The bounds {minX, minY, maxX, maxY}
+	 */
+	public double[] getBounds(int region) {
+		int col = region % this.cols;
+		int row = region / this.cols;
+		return new double[] {
+				(col == 0 ? Double.NEGATIVE_INFINITY : col * this.width),
+				(row == 0 ? Double.NEGATIVE_INFINITY : row * this.height),
+				(col == this.cols - 1 ? Double.POSITIVE_INFINITY : (col + 1)
+						* this.width),
+				(row == this.rows - 1 ? Double.POSITIVE_INFINITY : (row + 1)
+						* this.height) };
+	}
+}
@@ -0,0 +1,191 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <P>
+ * The binary protocol between the coordinator ({@link DistributedCoordinator})
+ * and the workers ({@link DistributedWorker}) of a distributed run. Every
+ * worker has one loopback socket to the coordinator. A message is a tag
+ * followed by big-endian values (see {@link java.io.DataOutput}); host
+ * references are addresses and locations are two doubles.
+ * </P>
+ * <P>
+ * After the worker has sent {@link #MAGIC}, {@link #VERSION} and its index,
+ * every update interval (tick) goes like this:
+ * </P>
+ * <OL>
+ * <LI>{@link #TICK}: the coordinator starts the tick. The workers execute the
+ * first half of the tick (external events and movement).</LI>
+ * <LI>{@link #HALO}: every worker sends its halo.</LI>
+ * <LI>{@link #SKIP} if no host can be within range of a host of another
+ * worker or outside its region; the rest of the exchange is skipped.</LI>
+ * <LI>{@link #GHOSTS}: the halo entries of the other workers near the
+ * worker's hosts.</LI>
+ * <LI>{@link #PAIRS}: the worker's hosts that are within range of the
+ * ghosts.</LI>
+ * <LI>{@link #ORDERS}: which clusters of hosts the worker must give to
+ * which workers and how many it gets.</LI>
+ * <LI>{@link #EXPORT}: the state of a cluster the worker gives away. The
+ * coordinator forwards it to the receiving worker in an {@link #IMPORT}.</LI>
+ * <LI>{@link #EVENTS}: after the second half of the tick (connections and
+ * host updates) the worker sends the listener events of the tick and the
+ * new locations of its hosts.</LI>
+ * </OL>
+ */
+public final class DistributedWire {
+	/** Identifier in the beginning of a worker's connection ("ONEW") */
+	public static final int MAGIC = 0x4F4E4557;
+	/** Version of the protocol */
+	public static final int VERSION = 1;
+
+	/** start of a tick: the tick */
+	public static final int TICK = 1;
+	/** halo: count, and address, x, y, range and cluster root of each */
+	public static final int HALO = 2;
+	/** no ghosts or migrations on this tick */
+	public static final int SKIP = 3;
+	/** ghosts: count, and address, x, y and range of each */
+	public static final int GHOSTS = 4;
+	/** pairs: count, and own cluster root and ghost address of each */
+	public static final int PAIRS = 5;
+	/** orders: count, root and target worker of each export; imports */
+	public static final int ORDERS = 6;
+	/** exported cluster: target worker, hosts, length and state bytes */
+	public static final int EXPORT = 7;
+	/** imported cluster: length and the state bytes */
+	public static final int IMPORT = 8;
+	/** events: count and the events, count and address, x and y of hosts */
+	public static final int EVENTS = 9;
+
+	private DistributedWire() {
+		// only static members
+	}
+
+	/**
+	 * Returns a buffered input stream for a socket
+	 *
+	 * @param socket
+	 *            The socket
+	 * @param counter
+	 *            Where to count the read bytes or null
+	 * @return the input stream
+	 * @throws IOException
+	 *             if the socket's stream can't be opened
+	 */
+	public static DataInputStream input(Socket socket, AtomicLong counter)
+			throws IOException {
+		InputStream in = socket.getInputStream();
+		if (counter != null) {
+			in = new CountingInputStream(in, counter);
+		}
+		return new DataInputStream(new BufferedInputStream(in));
+	}
+
+	/**
+	 * Returns a buffered output stream for a socket
+	 *
+	 * @param socket
+	 *            The socket
+	 * @param counter
+	 *            Where to count the written bytes or null
+	 * @return the output stream
+	 * @throws IOException
+	 *             if the socket's stream can't be opened
+	 */
+	public static DataOutputStream output(Socket socket, AtomicLong counter)
+			throws IOException {
+		OutputStream out = socket.getOutputStream();
+		if (counter != null) {
+			out = new CountingOutputStream(out, counter);
+		}
+		return new DataOutputStream(new BufferedOutputStream(out));
+	}
+
+	/**
+	 * Reads the tag of the next message and checks that it is the expected
+	 * one
+	 *
+	 * @param in
+	 *            Where to read the tag from
+	 * @param tag
+	 *            The expected tag
+	 * @throws IOException
+	 *             if reading failed or the tag is wrong
+	 */
+	public static void expect(DataInputStream in, int tag) throws IOException {
+		int read = in.readByte();
+		if (read != tag) {
+			throw new IOException("Expected message " + tag + " but got "
+					+ read);
+		}
+	}
+
+	/**
+	 * Input stream that counts the bytes read from it
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private AtomicLong counter;
+
+		private CountingInputStream(InputStream in, AtomicLong counter) {
+			super(in);
+			this.counter = counter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				this.counter.incrementAndGet();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				this.counter.addAndGet(n);
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Output stream that counts the bytes written to it
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private AtomicLong counter;
+
+		private CountingOutputStream(OutputStream out, AtomicLong counter) {
+			super(out);
+			this.counter = counter;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.counter.incrementAndGet();
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.counter.addAndGet(len);
+		}
+	}
+}
@@ -0,0 +1,600 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <P>
+ * A worker process of a distributed run (see {@link World#DISTRIBUTED_S}).
+ * The worker builds the same scenario as the coordinator (see
+ * {@link DistributedCoordinator}) but owns only the hosts of one region of
+ * the world (see {@link DistributedRegions}); the other hosts are ghosts
+ * that are never moved or updated and hold no messages. Connected hosts are
+ * always owned by the same worker.
+ * </P>
+ * <P>
+ * The worker executes the ticks of its hosts when the coordinator tells it
+ * to (see {@link DistributedWire}). After the first half of a tick it sends
+ * its halo, finds which of its hosts are within range of the other workers'
+ * halo hosts, and gives away and receives the clusters of hosts the
+ * coordinator orders it to (see {@link #rootOf(int)}). The state of a
+ * cluster is written like the state of a checkpoint (see
+ * {@link SimCheckpoint}), and a host that was given away is reset to its
+ * state at the start of the run so that its messages are freed. After the second half of the tick the recorded
+ * listener events and the changed locations of the hosts are sent to the
+ * coordinator, which gives them to the reports.
+ * </P>
+ */
+public class DistributedWorker {
+	/** index of the worker (and its region) */
+	private int index;
+	private Socket socket;
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	private List<DTNHost> hosts;
+	private DistributedRegions regions;
+	/** executes the ticks of the worker's hosts */
+	private TickRunner runner;
+	private TimeWarpRecorder recorder;
+	private TimeWarpRecorder.Sink sink;
+	private List<ConnectionListener> cListeners;
+	private List<MessageListener> mListeners;
+
+	private boolean started;
+	/** the latest executed tick */
+	private int tick;
+	/** addresses of the worker's hosts (in address order) */
+	private int[] members;
+	/** which hosts the worker owns (indexed by address) */
+	private boolean[] isMember;
+	/** state of every host at the start (indexed by address) */
+	private byte[][] initialStates;
+	/** the latest locations sent to the coordinator (indexed by address) */
+	private double[] sentXs;
+	private double[] sentYs;
+	/**
+	 * cluster root of the hosts on the current tick (see
+	 * {@link #rootOf(int)}); parents of the hosts while the clusters are
+	 * found
+	 */
+	private int[] roots;
+	/** have the clusters of the current tick been found */
+	private boolean clustered;
+
+	/**
+	 * Creates a worker that is connected to its coordinator
+	 */
+	private DistributedWorker(int index, Socket socket) throws IOException {
+		this.index = index;
+		this.socket = socket;
+		this.socket.setTcpNoDelay(true);
+		this.in = DistributedWire.input(socket, null);
+		this.out = DistributedWire.output(socket, null);
+	}
+
+	/**
+	 * Connects this JVM to the coordinator of a distributed run. The
+	 * simulation run of the current context is then executed as the
+	 * coordinator's worker.
+	 *
+	 * @param port
+	 *            The coordinator's port on the loopback interface
+	 * @param index
+	 *            Index of the worker
+	 * @throws SimError
+	 *             if the coordinator can't be reached
+	 */
+	public static void connect(int port, int index) {
+		try {
+			DistributedWorker worker = new DistributedWorker(index,
+					new Socket(InetAddress.getLoopbackAddress(), port));
+			worker.out.writeInt(DistributedWire.MAGIC);
+			worker.out.writeInt(DistributedWire.VERSION);
+			worker.out.writeInt(index);
+			worker.out.flush();
+			SimulationContext.current().setState(DistributedWorker.class,
+					worker);
+		} catch (IOException e) {
+			throw new SimError("Worker " + index + " can't connect to the "
+					+ "coordinator at port " + port, e);
+		}
+	}
+
+	/**
+	 * Returns the worker of the current simulation run
+	 *
+	 * @return the worker or null if this is not a worker of a distributed
+	 *         run
+	 */
+	public static DistributedWorker getCurrent() {
+		return (DistributedWorker) SimulationContext.current().getState(
+				DistributedWorker.class);
+	}
+
+	/**
+	 * Sets the world whose hosts the worker executes. The worker starts on
+	 * the first {@link #update()}.
+	 *
+	 * @param world
+	 *            The world
+	 * @param scen
+	 *            The scenario of the world
+	 * @param regions
+	 *            The regions of the workers
+	 * @param cellSize
+	 *            Size of the connectivity grid cells or 0 if the hosts are
+	 *            connected like with connection algorithm 1
+	 * @param updateOrder
+	 *            The world's update order or null if it's not randomized
+	 */
+	void init(World world, SimScenario scen, DistributedRegions regions,
+			int cellSize, UpdateOrder updateOrder) {
+		if (this.index >= regions.size()) {
+			throw new SimError("Worker " + this.index + " has no region");
+		}
+		this.hosts = scen.getHosts();
+		this.regions = regions;
+		this.runner = new TickRunner(world, scen, cellSize, updateOrder);
+		this.recorder = new TimeWarpRecorder(this.hosts);
+		this.sink = new TimeWarpRecorder.Sink();
+		this.cListeners = scen.getConnectionListeners();
+		this.mListeners = scen.getMessageListeners();
+	}
+
+	/**
+	 * Takes the hosts located in the worker's region, saves the initial
+	 * state of all the hosts and starts recording the listener events
+	 */
+	private void start() {
+		int n = this.hosts.size();
+		this.runner.start();
+		this.isMember = new boolean[n];
+		this.initialStates = new byte[n][];
+		this.sentXs = new double[n];
+		this.sentYs = new double[n];
+		this.roots = new int[n];
+		for (int a = 0; a < n; a++) {
+			DTNHost host = this.hosts.get(a);
+			if (host.isMovementRecorded()) {
+				throw new SimError("Movement of " + host + " can't be "
+						+ "recorded in a distributed run");
+			}
+			Coord loc = host.getLocation();
+			this.isMember[a] = this.regions.regionOf(loc.getX(), loc
+					.getY()) == this.index;
+			this.sentXs[a] = loc.getX();
+			this.sentYs[a] = loc.getY();
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream state = new DataOutputStream(bytes);
+				host.writeState(state, new SimCheckpoint(this.hosts));
+				state.close();
+				this.initialStates[a] = bytes.toByteArray();
+			} catch (IOException e) {
+				throw new SimError("Couldn't save the state of " + host, e);
+			}
+		}
+		updateMembers();
+
+		/* the coordinator gives the events to the listeners */
+		this.cListeners.clear();
+		this.cListeners.add(this.recorder);
+		this.mListeners.clear();
+		this.mListeners.add(this.recorder);
+		this.recorder.setSink(this.sink);
+		this.started = true;
+	}
+
+	/**
+	 * Executes the next tick with the coordinator and sets the simulation
+	 * clock to its end
+	 */
+	public void update() {
+		if (!this.started) {
+			start();
+		}
+		int t = this.tick + 1;
+		List<TimeWarpRecorder.Event> events =
+			new ArrayList<TimeWarpRecorder.Event>();
+		SimClock clock = SimClock.getInstance();
+
+		try {
+			DistributedWire.expect(this.in, DistributedWire.TICK);
+			int coordTick = this.in.readInt();
+			if (coordTick != t) {
+				throw new SimError("Worker " + this.index + " is at tick " + t
+						+ " but the coordinator is at tick " + coordTick);
+			}
+
+			this.sink.setEvents(events);
+			this.runner.firstHalf(t, this.members, this.isMember, this.sink,
+					clock);
+			this.clustered = false;
+			sendHalo();
+
+			int tag = this.in.readByte();
+			if (tag == DistributedWire.GHOSTS) {
+				sendPairs();
+				exchangeClusters();
+			} else if (tag != DistributedWire.SKIP) {
+				throw new IOException("Unexpected message " + tag);
+			}
+
+			this.runner.secondHalf(t, this.members, this.isMember, this.sink);
+			this.sink.setEvents(null);
+			sendEvents(events);
+		} catch (IOException e) {
+			throw new SimError("Worker " + this.index + " lost the "
+					+ "coordinator on tick " + t, e);
+		}
+
+		this.runner.forget(t);
+		this.tick = t;
+		clock.setTime(this.runner.getTickTime(t));
+	}
+
+	/**
+	 * Sends the halo: the locations of the hosts that are outside the region
+	 * or within the largest range from a border to another region
+	 */
+	private void sendHalo() throws IOException {
+		List<Integer> halo = new ArrayList<Integer>();
+		for (int a : this.members) {
+			Coord loc = this.hosts.get(a).getLocation();
+			if (this.regions.isInHalo(this.index, loc.getX(), loc.getY())) {
+				halo.add(a);
+			}
+		}
+
+		this.out.writeByte(DistributedWire.HALO);
+		this.out.writeInt(halo.size());
+		for (int a : halo) {
+			DTNHost host = this.hosts.get(a);
+			this.out.writeInt(a);
+			this.out.writeDouble(host.getLocation().getX());
+			this.out.writeDouble(host.getLocation().getY());
+			this.out.writeDouble(host.getTransmitRange());
+			this.out.writeInt(rootOf(a));
+		}
+		this.out.flush();
+	}
+
+	/**
+	 * Reads the ghosts (halo hosts of the other workers) and sends the
+	 * cluster roots of the worker's hosts that are within range of them
+	 */
+	private void sendPairs() throws IOException {
+		int n = this.in.readInt();
+		final double[][] ghosts = new double[n][];
+		for (int i = 0; i < n; i++) {
+			ghosts[i] = new double[] { this.in.readInt(),
+					this.in.readDouble(), this.in.readDouble(),
+					this.in.readDouble() };
+		}
+		Arrays.sort(ghosts, new Comparator<double[]>() {
+			public int compare(double[] g1, double[] g2) {
+				return Double.compare(g1[1], g2[1]);
+			}
+		});
+
+		List<int[]> pairs = new ArrayList<int[]>();
+		double maxRange = this.regions.getMaxRange();
+		for (int a : this.members) {
+			DTNHost host = this.hosts.get(a);
+			double x = host.getLocation().getX();
+			double y = host.getLocation().getY();
+			int i = lowerBound(ghosts, x - maxRange);
+			for (; i < n && ghosts[i][1] - x <= maxRange; i++) {
+				double dx = x - ghosts[i][1];
+				double dy = y - ghosts[i][2];
+				if (Math.sqrt(dx * dx + dy * dy) <= Math.min(host
+						.getTransmitRange(), ghosts[i][3])) {
+					pairs.add(new int[] { rootOf(a), (int) ghosts[i][0] });
+				}
+			}
+		}
+
+		this.out.writeByte(DistributedWire.PAIRS);
+		this.out.writeInt(pairs.size());
+		for (int[] pair : pairs) {
+			this.out.writeInt(pair[0]);
+			this.out.writeInt(pair[1]);
+		}
+		this.out.flush();
+	}
+
+	/**
+	 * Returns the index of the first ghost whose x coordinate is at least
+	 * the given value
+	 */
+	private static int lowerBound(double[][] ghosts, double x) {
+		int low = 0;
+		int high = ghosts.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (ghosts[mid][1] < x) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Reads the orders of the coordinator, gives away the ordered clusters and
+	 * receives the clusters given to this worker
+	 */
+	private void exchangeClusters() throws IOException {
+		DistributedWire.expect(this.in, DistributedWire.ORDERS);
+		int nrofExports = this.in.readInt();
+		int[][] exports = new int[nrofExports][];
+		for (int i = 0; i < nrofExports; i++) {
+			exports[i] = new int[] { this.in.readInt(), this.in.readInt() };
+		}
+		int nrofImports = this.in.readInt();
+
+		for (int[] export : exports) {
+			List<DTNHost> cluster = getCluster(export[0]);
+			byte[] state = writeCluster(cluster);
+			this.out.writeByte(DistributedWire.EXPORT);
+			this.out.writeInt(export[1]);
+			this.out.writeInt(cluster.size());
+			this.out.writeInt(state.length);
+			this.out.write(state);
+			for (DTNHost host : cluster) {
+				evict(host);
+			}
+		}
+		this.out.flush();
+
+		for (int i = 0; i < nrofImports; i++) {
+			DistributedWire.expect(this.in, DistributedWire.IMPORT);
+			byte[] state = new byte[this.in.readInt()];
+			this.in.readFully(state);
+			readCluster(state);
+		}
+		if (nrofExports > 0 || nrofImports > 0) {
+			updateMembers();
+		}
+	}
+
+	/**
+	 * Returns the root (smallest address) of a host's cluster: the hosts
+	 * that are connected or within range of each other, directly or through
+	 * other hosts. Clusters move between the workers as a whole, so hosts
+	 * that connect on this tick are never split between workers.
+	 */
+	private int rootOf(int a) {
+		if (!this.clustered) {
+			findClusters();
+		}
+		return this.roots[a];
+	}
+
+	/**
+	 * Finds the clusters of the worker's hosts (see {@link #rootOf(int)})
+	 */
+	private void findClusters() {
+		for (int a : this.members) {
+			this.roots[a] = a;
+		}
+		for (int a : this.members) {
+			DTNHost host = this.hosts.get(a);
+			for (Connection con : host.getConnections()) {
+				DTNHost other = con.getOtherNode(host);
+				if (!this.isMember[other.getAddress()]) {
+					throw new SimError("Host " + host + " is connected to "
+							+ other + " of another worker");
+				}
+				join(a, other.getAddress());
+			}
+		}
+
+		Integer[] sorted = new Integer[this.members.length];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = this.members[i];
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(hosts.get(a).getLocation().getX(),
+						hosts.get(b).getLocation().getX());
+			}
+		});
+		double maxRange = this.regions.getMaxRange();
+		for (int i = 0; i < sorted.length; i++) {
+			DTNHost h1 = this.hosts.get(sorted[i]);
+			Coord c1 = h1.getLocation();
+			for (int j = i + 1; j < sorted.length; j++) {
+				DTNHost h2 = this.hosts.get(sorted[j]);
+				Coord c2 = h2.getLocation();
+				if (c2.getX() - c1.getX() > maxRange) {
+					break;
+				}
+				if (c1.distance(c2) <= Math.min(h1.getTransmitRange(), h2
+						.getTransmitRange())) {
+					join(sorted[i], sorted[j]);
+				}
+			}
+		}
+
+		for (int a : this.members) {
+			this.roots[a] = find(a);
+		}
+		this.clustered = true;
+	}
+
+	/**
+	 * Returns the current root of a host's set while the clusters are found
+	 */
+	private int find(int a) {
+		while (this.roots[a] != a) {
+			this.roots[a] = this.roots[this.roots[a]];
+			a = this.roots[a];
+		}
+		return a;
+	}
+
+	/**
+	 * Joins the sets of two hosts; the smaller root becomes the set's root
+	 */
+	private void join(int a, int b) {
+		int ra = find(a);
+		int rb = find(b);
+		if (ra < rb) {
+			this.roots[rb] = ra;
+		} else if (rb < ra) {
+			this.roots[ra] = rb;
+		}
+	}
+
+	/**
+	 * Returns the worker's hosts in the cluster of a root
+	 */
+	private List<DTNHost> getCluster(int root) {
+		List<DTNHost> cluster = new ArrayList<DTNHost>();
+		for (int a : this.members) {
+			if (rootOf(a) == root) {
+				cluster.add(this.hosts.get(a));
+			}
+		}
+		return cluster;
+	}
+
+	/**
+	 * Writes the state of a cluster: the movement, location and
+	 * grid cell of every host followed by the rest of their state
+	 */
+	private byte[] writeCluster(List<DTNHost> cluster) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream state = new DataOutputStream(bytes);
+		state.writeInt(cluster.size());
+		for (DTNHost host : cluster) {
+			int a = host.getAddress();
+			state.writeInt(a);
+			state.writeDouble(host.getLocation().getX());
+			state.writeDouble(host.getLocation().getY());
+			state.writeInt(this.runner.enterTicks[a]);
+			state.writeInt(this.runner.enterSeqs[a]);
+			host.writeMovementState(state);
+		}
+		SimCheckpoint cp = new SimCheckpoint(this.hosts);
+		for (DTNHost host : cluster) {
+			host.writeState(state, cp);
+		}
+		state.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads the state of a cluster written with
+	 * {@link #writeCluster(List)} and takes its hosts
+	 */
+	private void readCluster(byte[] bytes) throws IOException {
+		DataInputStream state = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		int[] addresses = new int[state.readInt()];
+		for (int i = 0; i < addresses.length; i++) {
+			int a = state.readInt();
+			DTNHost host = this.hosts.get(a);
+			Coord loc = new Coord(state.readDouble(), state.readDouble());
+			int enterTick = state.readInt();
+			int enterSeq = state.readInt();
+			host.readMovementState(state);
+			host.setLocation(loc);
+			this.runner.setCell(a, enterTick, enterSeq);
+			addresses[i] = a;
+		}
+		SimCheckpoint cp = new SimCheckpoint(this.hosts);
+		for (int a : addresses) {
+			this.hosts.get(a).readState(state, cp);
+			this.isMember[a] = true;
+			this.sentXs[a] = Double.NaN; // the new location is always sent
+		}
+	}
+
+	/**
+	 * Makes a host that was given to another worker a ghost: resets the
+	 * rest of its state (e.g., its messages) to the state at the start
+	 */
+	private void evict(DTNHost host) throws IOException {
+		int a = host.getAddress();
+		host.readState(new DataInputStream(new ByteArrayInputStream(
+				this.initialStates[a])), new SimCheckpoint(this.hosts));
+		this.isMember[a] = false;
+	}
+
+	/**
+	 * Sends the recorded listener events of the tick and the locations of
+	 * the hosts that have moved since the previous tick
+	 */
+	private void sendEvents(List<TimeWarpRecorder.Event> events)
+			throws IOException {
+		this.out.writeByte(DistributedWire.EVENTS);
+		this.out.writeInt(events.size());
+		for (TimeWarpRecorder.Event e : events) {
+			e.write(this.out, this.hosts);
+		}
+
+		List<Integer> moved = new ArrayList<Integer>();
+		for (int a : this.members) {
+			Coord loc = this.hosts.get(a).getLocation();
+			if (loc.getX() != this.sentXs[a] || loc.getY() != this.sentYs[a]) {
+				this.sentXs[a] = loc.getX();
+				this.sentYs[a] = loc.getY();
+				moved.add(a);
+			}
+		}
+		this.out.writeInt(moved.size());
+		for (int a : moved) {
+			this.out.writeInt(a);
+			this.out.writeDouble(this.sentXs[a]);
+			this.out.writeDouble(this.sentYs[a]);
+		}
+		this.out.flush();
+	}
+
+	/**
+	 * Updates the member list from {@link #isMember}
+	 */
+	private void updateMembers() {
+		int count = 0;
+		for (boolean member : this.isMember) {
+			if (member) {
+				count++;
+			}
+		}
+		this.members = new int[count];
+		count = 0;
+		for (int a = 0; a < this.isMember.length; a++) {
+			if (this.isMember[a]) {
+				this.members[count++] = a;
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection to the coordinator
+	 */
+	public void close() {
+		try {
+			this.socket.close();
+		} catch (IOException e) {
+			// the run has ended anyway
+		}
+	}
+}
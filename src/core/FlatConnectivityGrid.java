@@ -0,0 +1,271 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * <P>
+ * Overlay grid of the world stored in flat integer arrays. Works like
+ * {@link ConnectivityGrid} (nodes in the same or adjacent cells are checked
+ * for connectivity) but does not allocate anything after the nodes have been
+ * added and checks every pair of nodes only once.
+ * </P>
+ * <P>
+ * The cell of every node is re-computed on every connection check and the
+ * nodes are ordered by their cells using counting sort: <CODE>cellStart[c]
+ * </CODE> is the index of cell <CODE>c</CODE>'s first node in the
+ * <CODE>cellNodes</CODE> array and <CODE>cellStart[c+1]</CODE> is the index
+ * after its last node. Moving a node from a cell to another is just an update
+ * of the node's cell index, so there is no per-cell membership to maintain.
+ * </P>
+ * <P>
+ * Pairs are found using a half stencil: nodes of a cell are checked against
+ * the other nodes of the same cell and against the nodes of the east,
+ * south-west, south, and south-east neighbor cells. Together the cells cover
+ * all the 3x3 neighborhoods of {@link ConnectivityGrid} so the resulting
+ * connections are the same, but the order of connection events is different.
+ * </P>
+ * <P>
+ * <strong>Note:</strong> this class does NOT support negative coordinates.
+ * </P>
+ */
+public class FlatConnectivityGrid implements SpatialIndex {
+	private int cellSize;
+	private int rows;
+	private int cols;
+	/** length of a row in the flat cell arrays (including the empty cells) */
+	private int stride;
+
+	/** the nodes of the grid */
+	protected DTNHost[] nodes;
+	/** the cell index of every node (indexed like {@link #nodes}) */
+	private int[] cellOf;
+	/** index of the first node of every cell in {@link #cellNodes} */
+	private int[] cellStart;
+	/** node indexes ordered by their cells */
+	private int[] cellNodes;
+	/**
+	 * node coordinates and ranges copied for the pair checks (on the latest
+	 * {@link #rebuild()})
+	 */
+	protected double[] xs;
+	protected double[] ys;
+	protected double[] ranges;
+
+	/**
+	 * Creates a new flat overlay connectivity grid
+	 *
+	 * @param worldSizeX
+	 *            Width of the world (biggest possible x coordinate)
+	 * @param worldSizeY
+	 *            Height of the world (biggest possible y coordinate)
+	 * @param cellSize
+	 *            Cell's edge's length (must be larger than the largest radio
+	 *            coverage's diameter)
+	 */
+	public FlatConnectivityGrid(int worldSizeX, int worldSizeY, int cellSize) {
+		this.rows = worldSizeY / cellSize + 1;
+		this.cols = worldSizeX / cellSize + 1;
+		this.cellSize = cellSize;
+		// leave empty cells on both sides to make neighbor search easier
+		this.stride = cols + 2;
+		this.cellStart = new int[(rows + 2) * stride + 1];
+		this.nodes = new DTNHost[0];
+		setArraySizes(0);
+	}
+
+	/**
+	 * Adds nodes to overlay grid
+	 *
+	 * @param nodes
+	 *            Collection of nodes to add
+	 */
+	public void addNodes(Collection<DTNHost> nodes) {
+		int oldSize = this.nodes.length;
+		this.nodes = Arrays.copyOf(this.nodes, oldSize + nodes.size());
+		for (DTNHost n : nodes) {
+			this.nodes[oldSize++] = n;
+		}
+		setArraySizes(this.nodes.length);
+	}
+
+	/**
+	 * Sets the sizes of the per-node arrays
+	 *
+	 * @param size
+	 *            The new size
+	 */
+	private void setArraySizes(int size) {
+		this.cellOf = new int[size];
+		this.cellNodes = new int[size];
+		this.xs = new double[size];
+		this.ys = new double[size];
+		this.ranges = new double[size];
+	}
+
+	/**
+	 * Connects all nodes that are within range of each other. The cells of
+	 * the nodes are updated first so the nodes can move freely between the
+	 * calls.
+	 */
+	public void connectAllNearNodes() {
+		rebuild();
+		checkNearPairs();
+	}
+
+	/**
+	 * Checks all the pairs of nodes in the same or adjacent cells with
+	 * {@link #checkPair(int, int)}
+	 */
+	protected void checkNearPairs() {
+		for (int i = 1; i <= this.rows; i++) {
+			for (int j = 1; j <= this.cols; j++) {
+				int cell = i * stride + j;
+				int start = cellStart[cell];
+				int end = cellStart[cell + 1];
+				if (start == end) {
+					continue; // skip empty cells
+				}
+
+				for (int k = start; k < end; k++) { // pairs within the cell
+					for (int l = k + 1; l < end; l++) {
+						checkPair(cellNodes[k], cellNodes[l]);
+					}
+				}
+
+				connectToCell(start, end, cell + 1); // east
+				connectToCell(start, end, cell + stride - 1); // south-west
+				connectToCell(start, end, cell + stride); // south
+				connectToCell(start, end, cell + stride + 1); // south-east
+			}
+		}
+	}
+
+	/**
+	 * Checks the pairs between a range of nodes and the nodes of another cell
+	 *
+	 * @param start
+	 *            Index of the first node in {@link #cellNodes}
+	 * @param end
+	 *            Index after the last node in {@link #cellNodes}
+	 * @param otherCell
+	 *            Index of the other cell
+	 */
+	private void connectToCell(int start, int end, int otherCell) {
+		int otherStart = cellStart[otherCell];
+		int otherEnd = cellStart[otherCell + 1];
+		for (int k = start; k < end; k++) {
+			for (int l = otherStart; l < otherEnd; l++) {
+				checkPair(cellNodes[k], cellNodes[l]);
+			}
+		}
+	}
+
+	/**
+	 * Connects two nodes if they are within each other's radio range. The node
+	 * with the lower address tries to connect first.
+	 *
+	 * @param i
+	 *            Index of the first node
+	 * @param j
+	 *            Index of the second node
+	 */
+	protected void checkPair(int i, int j) {
+		double dx = xs[i] - xs[j];
+		double dy = ys[i] - ys[j];
+		double smallerRange = (ranges[i] < ranges[j] ? ranges[i] : ranges[j]);
+
+		if (Math.sqrt(dx * dx + dy * dy) > smallerRange) {
+			return;
+		}
+
+		connectPair(i, j);
+	}
+
+	/**
+	 * Connects two nodes (without checking their distance). The node with the
+	 * lower address tries to connect first.
+	 *
+	 * @param i
+	 *            Index of the first node
+	 * @param j
+	 *            Index of the second node
+	 */
+	protected void connectPair(int i, int j) {
+		DTNHost n1 = nodes[i];
+		DTNHost n2 = nodes[j];
+		if (n1.getAddress() > n2.getAddress()) {
+			n1 = nodes[j];
+			n2 = nodes[i];
+		}
+		n1.connect(n2);
+		n2.connect(n1);
+	}
+
+	/**
+	 * Re-computes the cells of all nodes and orders the nodes by their cells
+	 * using counting sort.
+	 */
+	protected void rebuild() {
+		int nrofNodes = this.nodes.length;
+		Arrays.fill(this.cellStart, 0);
+
+		for (int i = 0; i < nrofNodes; i++) {
+			DTNHost n = nodes[i];
+			Coord c = n.getLocation();
+			xs[i] = c.getX();
+			ys[i] = c.getY();
+			ranges[i] = n.getTransmitRange();
+			cellOf[i] = cellFromCoord(xs[i], ys[i]);
+			cellStart[cellOf[i] + 1]++;
+		}
+
+		for (int c = 1; c < cellStart.length; c++) { // prefix sums
+			cellStart[c] += cellStart[c - 1];
+		}
+
+		/* place the nodes; cellStart[c] is used as the next free slot of c */
+		for (int i = 0; i < nrofNodes; i++) {
+			cellNodes[cellStart[cellOf[i]]++] = i;
+		}
+		/* ...which shifted every start to the next cell's start; undo it */
+		for (int c = cellStart.length - 1; c > 0; c--) {
+			cellStart[c] = cellStart[c - 1];
+		}
+		cellStart[0] = 0;
+	}
+
+	/**
+	 * Returns the index of the cell of the given coordinates
+	 *
+	 * @param x
+	 *            The x coordinate
+	 * @param y
+	 *            The y coordinate
+	 * @return Index of the cell in the flat cell arrays
+	 */
+	private int cellFromCoord(double x, double y) {
+		// +1 due empty cells on both sides of the matrix
+		int row = (int) (y / cellSize) + 1;
+		int col = (int) (x / cellSize) + 1;
+
+		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location ("
+				+ x + "," + y + ") is out of world's bounds";
+
+		return row * stride + col;
+	}
+
+	/**
+	 * Returns a string representation of the grid
+	 *
+	 * @return a string representation of the grid
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " + this.cols + "x"
+				+ this.rows + ", cell size=" + this.cellSize;
+	}
+}
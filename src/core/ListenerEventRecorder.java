@@ -0,0 +1,168 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the connection and message listener events that happen while hosts
+ * are updated in worker threads, so that the real listeners (e.g., reports)
+ * can be informed afterwards by the simulation thread in a deterministic
+ * order. The events are recorded per host: every worker thread tells the
+ * recorder which host it is updating (see {@link #setCurrentHost(int)}) and
+ * the events are replayed host by host (see
+ * {@link #replay(int, List, List)}).
+ */
+public class ListenerEventRecorder implements ConnectionListener,
+		MessageListener {
+	private static final int CONNECTED = 0;
+	private static final int DISCONNECTED = 1;
+	private static final int NEW_MESSAGE = 2;
+	private static final int TRANSFER_STARTED = 3;
+	private static final int DELETED = 4;
+	private static final int TRANSFER_ABORTED = 5;
+	private static final int TRANSFERRED = 6;
+
+	/** recorded events of every host (indexed by address) */
+	private List<List<Event>> events;
+	/** the events of the host the thread is updating */
+	private ThreadLocal<List<Event>> current;
+
+	/**
+	 * Creates a new recorder
+	 *
+	 * @param nrofHosts
+	 *            Number of hosts (addresses 0 to nrofHosts - 1)
+	 */
+	public ListenerEventRecorder(int nrofHosts) {
+		this.events = new ArrayList<List<Event>>(nrofHosts);
+		for (int i = 0; i < nrofHosts; i++) {
+			this.events.add(new ArrayList<Event>(0));
+		}
+		this.current = new ThreadLocal<List<Event>>();
+	}
+
+	/**
+	 * Sets the host the calling thread is updating. The following events
+	 * from the thread are recorded for that host.
+	 *
+	 * @param address
+	 *            Address of the host
+	 */
+	public void setCurrentHost(int address) {
+		this.current.set(this.events.get(address));
+	}
+
+	/**
+	 * Informs the given listeners of the events recorded for a host, in the
+	 * order they happened, and forgets the events.
+	 *
+	 * @param address
+	 *            Address of the host
+	 * @param cListeners
+	 *            The connection listeners to inform
+	 * @param mListeners
+	 *            The message listeners to inform
+	 */
+	public void replay(int address, List<ConnectionListener> cListeners,
+			List<MessageListener> mListeners) {
+		List<Event> hostEvents = this.events.get(address);
+		for (int i = 0, n = hostEvents.size(); i < n; i++) {
+			Event e = hostEvents.get(i);
+			if (e.type == CONNECTED || e.type == DISCONNECTED) {
+				for (ConnectionListener cl : cListeners) {
+					if (e.type == CONNECTED) {
+						cl.hostsConnected(e.host1, e.host2);
+					} else {
+						cl.hostsDisconnected(e.host1, e.host2);
+					}
+				}
+				continue;
+			}
+
+			for (MessageListener ml : mListeners) {
+				switch (e.type) {
+				case NEW_MESSAGE:
+					ml.newMessage(e.message);
+					break;
+				case TRANSFER_STARTED:
+					ml.messageTransferStarted(e.message, e.host1, e.host2);
+					break;
+				case DELETED:
+					ml.messageDeleted(e.message, e.host1, e.flag);
+					break;
+				case TRANSFER_ABORTED:
+					ml.messageTransferAborted(e.message, e.host1, e.host2);
+					break;
+				case TRANSFERRED:
+					ml.messageTransferred(e.message, e.host1, e.host2, e.flag);
+					break;
+				default:
+					assert false : e.type; // invalid type
+				}
+			}
+		}
+		hostEvents.clear();
+	}
+
+	private void record(int type, Message m, DTNHost h1, DTNHost h2,
+			boolean flag) {
+		List<Event> hostEvents = this.current.get();
+		if (hostEvents == null) {
+			throw new SimError("Listener event outside of a host update");
+		}
+		hostEvents.add(new Event(type, m, h1, h2, flag));
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		record(CONNECTED, null, host1, host2, false);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		record(DISCONNECTED, null, host1, host2, false);
+	}
+
+	public void newMessage(Message m) {
+		record(NEW_MESSAGE, m, null, null, false);
+	}
+
+	public void messageTransferStarted(Message m, DTNHost from, DTNHost to) {
+		record(TRANSFER_STARTED, m, from, to, false);
+	}
+
+	public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+		record(DELETED, m, where, null, dropped);
+	}
+
+	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
+		record(TRANSFER_ABORTED, m, from, to, false);
+	}
+
+	public void messageTransferred(Message m, DTNHost from, DTNHost to,
+			boolean firstDelivery) {
+		record(TRANSFERRED, m, from, to, firstDelivery);
+	}
+
+	/**
+	 * A recorded listener event
+	 */
+	private static class Event {
+		private int type;
+		private Message message;
+		private DTNHost host1;
+		private DTNHost host2;
+		private boolean flag;
+
+		public Event(int type, Message message, DTNHost host1, DTNHost host2,
+				boolean flag) {
+			this.type = type;
+			this.message = message;
+			this.host1 = host1;
+			this.host2 = host2;
+			this.flag = flag;
+		}
+	}
+}
@@ -4,6 +4,9 @@
  */
 package core;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -26,7 +29,6 @@ public class Message implements Comparable<Message> {
 	/** List of nodes this message has passed */
 	private List<DTNHost> path;
 	/** Next unique identifier to be given */
-	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
 	/** The time this message was received */
@@ -113,7 +115,7 @@ public class Message implements Comparable<Message> {
 		this.id = id;
 		this.size = size;
 		this.path = new ArrayList<DTNHost>();
-		this.uniqueId = nextUniqueId;
+		this.uniqueId = SimulationContext.current().nextMessageId();
 
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
@@ -125,24 +127,30 @@ public class Message implements Comparable<Message> {
 		this.requestMsg = null;
 		this.properties = null;
 
-		Message.nextUniqueId++;
 		addNodeOnPath(from);
 
 		this.groups = new TreeSet<AnonymousGroup>();
 		mostRecentHop = from;
 		isAnonymous = false;
 		
-		if (SimScenario.anonymitySystem.equals(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT)) {
+		if (SimScenario.getAnonymitySystem().equals(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT)) {
 			//assign pivot randomly
 			//should be only member of a group
 			//group chosen randomly
 			pivotNode = AnonymousGroupManager.getRandomGroup().getMemberSet().first();
-		} else if (SimScenario.anonymitySystem.equals(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT)) {
+		} else if (SimScenario.getAnonymitySystem().equals(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT)) {
 			//pivot nodes are not chosen beforehand -- they are opportunistically encountered
 			pivotNode = null;
 		}
 	}
 
+	/**
+	 * Creates an empty message whose fields are read from a checkpoint (see
+	 * {@link #readState(DataInput, SimCheckpoint)})
+	 */
+	private Message() {
+	}
+
 	/**
 	 * Returns the node this message is originally from
 	 * 
@@ -465,15 +473,125 @@ public class Message implements Comparable<Message> {
 		return toString().compareTo(m.toString());
 	}
 
+	/**
+	 * Writes all the fields of this message to a checkpoint. The property
+	 * values must be integers, doubles, booleans or strings.
+	 * 
+	 * @param out
+	 *            Where to write the message
+	 * @param cp
+	 *            The checkpoint that is written
+	 * @throws IOException
+	 *             if writing failed
+	 * @see SimCheckpoint#writeMessage(DataOutput, Message)
+	 */
+	void writeState(DataOutput out, SimCheckpoint cp) throws IOException {
+		cp.writeHost(out, this.from);
+		cp.writeHost(out, this.to);
+		out.writeUTF(this.id);
+		out.writeInt(this.size);
+		out.writeInt(this.path.size());
+		for (DTNHost h : this.path) {
+			cp.writeHost(out, h);
+		}
+		out.writeInt(this.uniqueId);
+		out.writeDouble(this.timeReceived);
+		out.writeDouble(this.timeCreated);
+		out.writeInt(this.initTtl);
+		out.writeInt(this.responseSize);
+		cp.writeMessage(out, this.requestMsg);
+
+		out.writeInt(this.groups.size());
+		for (AnonymousGroup g : this.groups) {
+			out.writeUTF(g.getName());
+		}
+		out.writeDouble(this.timeDecrypted);
+		out.writeBoolean(this.isDecrypted);
+		out.writeDouble(this.timeDelivered);
+		cp.writeHost(out, this.mostRecentHop);
+		cp.writeHost(out, this.exitNode);
+		out.writeBoolean(this.isAnonymous);
+		cp.writeHost(out, this.pivotNode);
+
+		out.writeInt(this.properties == null ? -1 : this.properties.size());
+		if (this.properties != null) {
+			for (Map.Entry<String, Object> e : this.properties.entrySet()) {
+				out.writeUTF(e.getKey());
+				cp.writeValue(out, e.getValue());
+			}
+		}
+		cp.writeValue(out, this.eclidDistFromSource);
+	}
+
+	/**
+	 * Reads a message written with {@link #writeState(DataOutput,
+	 * SimCheckpoint)}. The message is registered to the checkpoint before its
+	 * fields are read, so the fields may refer to it.
+	 * 
+	 * @param in
+	 *            Where to read the message from
+	 * @param cp
+	 *            The checkpoint that is read
+	 * @return The message
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	static Message readState(DataInput in, SimCheckpoint cp)
+			throws IOException {
+		Message m = new Message();
+		cp.register(m);
+		m.from = cp.readHost(in);
+		m.to = cp.readHost(in);
+		m.id = in.readUTF();
+		m.size = in.readInt();
+		int nrofHops = in.readInt();
+		m.path = new ArrayList<DTNHost>(nrofHops);
+		for (int i = 0; i < nrofHops; i++) {
+			m.path.add(cp.readHost(in));
+		}
+		m.uniqueId = in.readInt();
+		m.timeReceived = in.readDouble();
+		m.timeCreated = in.readDouble();
+		m.initTtl = in.readInt();
+		m.responseSize = in.readInt();
+		m.requestMsg = cp.readMessage(in);
+
+		m.groups = new TreeSet<AnonymousGroup>();
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			m.groups.add(cp.readGroup(in));
+		}
+		m.timeDecrypted = in.readDouble();
+		m.isDecrypted = in.readBoolean();
+		m.timeDelivered = in.readDouble();
+		m.mostRecentHop = cp.readHost(in);
+		m.exitNode = cp.readHost(in);
+		m.isAnonymous = in.readBoolean();
+		m.pivotNode = cp.readHost(in);
+
+		int nrofProperties = in.readInt();
+		if (nrofProperties >= 0) {
+			m.properties = new HashMap<String, Object>();
+			for (int i = 0; i < nrofProperties; i++) {
+				String key = in.readUTF();
+				m.properties.put(key, cp.readValue(in));
+			}
+		}
+		m.eclidDistFromSource = cp.readValue(in);
+		return m;
+	}
+
 	/**
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		nextUniqueId = 0;
+		SimulationContext.current().nextMessageId = 0;
 	}
 
 	public void log(String string) {
-		System.out.println("MSGINFO: " + getId() + ", " + string);
+		String line = "MSGINFO: " + getId() + ", " + string;
+		if (!TimeWarpRecorder.recordLog(line)) {
+			System.out.println(line);
+		}
 	}
 
 	public void setAnonymous(boolean anon) {
@@ -524,12 +642,12 @@ public class Message implements Comparable<Message> {
 		}
 		
 		// a defining what it means to be "decrypted" is system specific
-		if (SimScenario.anonymitySystem.equals(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT)) {
+		if (SimScenario.getAnonymitySystem().equals(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT)) {
 			// single pivot node decypts and will become exit node
 			if(node == pivotNode) {
 				notifyDecrypted(node);
 			}
-		} else if (SimScenario.anonymitySystem.equals(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT)) {
+		} else if (SimScenario.getAnonymitySystem().equals(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT)) {
 			// each group of the node this message is currently at
 			// can decrypt a layer
 			for (AnonymousGroup g : hostGroups) {
@@ -541,7 +659,7 @@ public class Message implements Comparable<Message> {
 					//groups, the message is decrypted
 					//if (groups.size() >= AnonymousGroupManager.definedGroups.size()) {
 					// UPDATE - we now have a threshold setting instead of requiring message through all groups!
-					if (groups.size() >= SimScenario.anonThreshold) {
+					if (groups.size() >= SimScenario.getAnonThreshold()) {
 						notifyDecrypted(node);
 					}
 				}
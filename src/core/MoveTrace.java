@@ -0,0 +1,150 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Trace of a host's movement during one call to
+ * {@link DTNHost#move(double)}. The trace is a list of timed points; between
+ * two consecutive points the host moved along a straight line at a constant
+ * speed and after the last point the host stayed still until the end of the
+ * move.
+ */
+public class MoveTrace {
+	private static final int INITIAL_SIZE = 4;
+
+	private double[] times;
+	private double[] xs;
+	private double[] ys;
+	private int size;
+
+	/**
+	 * Creates a new, empty, trace
+	 */
+	public MoveTrace() {
+		this.times = new double[INITIAL_SIZE];
+		this.xs = new double[INITIAL_SIZE];
+		this.ys = new double[INITIAL_SIZE];
+		this.size = 0;
+	}
+
+	/**
+	 * Clears the trace and sets its first point
+	 *
+	 * @param time
+	 *            The time when the move starts
+	 * @param location
+	 *            The location where the move starts
+	 */
+	public void start(double time, Coord location) {
+		this.size = 0;
+		addPoint(time, location);
+	}
+
+	/**
+	 * Adds a new point to the end of the trace
+	 *
+	 * @param time
+	 *            The time when the host was at the point
+	 * @param location
+	 *            The location of the point
+	 */
+	public void addPoint(double time, Coord location) {
+		if (this.size == this.times.length) {
+			int newSize = this.size * 2;
+			this.times = Arrays.copyOf(this.times, newSize);
+			this.xs = Arrays.copyOf(this.xs, newSize);
+			this.ys = Arrays.copyOf(this.ys, newSize);
+		}
+		this.times[size] = time;
+		this.xs[size] = location.getX();
+		this.ys[size] = location.getY();
+		this.size++;
+	}
+
+	/**
+	 * Returns the number of points in the trace
+	 *
+	 * @return the number of points in the trace
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the time of a point
+	 *
+	 * @param index
+	 *            Index of the point
+	 * @return the time of the point
+	 */
+	public double getTime(int index) {
+		return this.times[index];
+	}
+
+	/**
+	 * Returns the x coordinate of a point
+	 *
+	 * @param index
+	 *            Index of the point
+	 * @return the x coordinate of the point
+	 */
+	public double getX(int index) {
+		return this.xs[index];
+	}
+
+	/**
+	 * Returns the y coordinate of a point
+	 *
+	 * @param index
+	 *            Index of the point
+	 * @return the y coordinate of the point
+	 */
+	public double getY(int index) {
+		return this.ys[index];
+	}
+
+	/**
+	 * Returns the x coordinate of the host at the given time
+	 *
+	 * @param segment
+	 *            Index of the point that starts the segment the time is in
+	 * @param time
+	 *            The time (must be within the segment)
+	 * @return The x coordinate at the given time
+	 */
+	public double getXAt(int segment, double time) {
+		return interpolate(this.xs, segment, time);
+	}
+
+	/**
+	 * Returns the y coordinate of the host at the given time
+	 *
+	 * @param segment
+	 *            Index of the point that starts the segment the time is in
+	 * @param time
+	 *            The time (must be within the segment)
+	 * @return The y coordinate at the given time
+	 */
+	public double getYAt(int segment, double time) {
+		return interpolate(this.ys, segment, time);
+	}
+
+	private double interpolate(double[] values, int segment, double time) {
+		if (segment + 1 >= this.size) {
+			return values[segment]; // stays still after the last point
+		}
+
+		double duration = this.times[segment + 1] - this.times[segment];
+		if (duration <= 0) {
+			return values[segment + 1];
+		}
+
+		double fraction = (time - this.times[segment]) / duration;
+		return values[segment]
+				+ fraction * (values[segment + 1] - values[segment]);
+	}
+}
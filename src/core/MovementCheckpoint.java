@@ -0,0 +1,241 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import movement.MovementModel;
+
+/**
+ * <P>
+ * Binary checkpoints of the movement state of a world after the movement
+ * model warmup. A checkpoint contains the locations, paths, speeds etc. of
+ * all hosts, the state of their movement models (including the random number
+ * generators) and the order of the hosts in the connectivity grid, so a
+ * simulation started from a checkpoint continues exactly like the simulation
+ * that wrote the checkpoint. Simulations that differ only in settings that
+ * don't affect the movement (e.g., routing) can all start from the same
+ * checkpoint instead of running the warmup every time.
+ * </P>
+ * <P>
+ * All hosts' movement models must support checkpoints (see
+ * {@link MovementModel#isCheckpointable()}). A checkpoint is checked to match
+ * the number of hosts, their movement models, the warmup time and the rng
+ * seed of the current settings; it is up to the user to make sure that other
+ * movement settings have not changed since the checkpoint was written.
+ * </P>
+ * <P>
+ * Format (all values in {@link DataOutput} format): magic number, format
+ * version, warmup time, number of hosts, the movement model class name of
+ * every host, the common movement rng state, the state of every host, the
+ * connectivity grid state and the magic number again.
+ * </P>
+ */
+public class MovementCheckpoint {
+	/** Identifier in the beginning and end of checkpoint files ("ONEM") */
+	public static final int MAGIC = 0x4F4E454D;
+	/** Version of the checkpoint format */
+	public static final int VERSION = 1;
+
+	/** lock for concurrent runs that use the same checkpoint file */
+	private static final Object fileLock = new Object();
+
+	/**
+	 * Warms up the movement model of the world using a checkpoint file. If
+	 * the file exists, the movement state is read from it; otherwise the
+	 * warmup is run and its result is written to the file.
+	 *
+	 * @param world
+	 *            The world to warm up
+	 * @param warmupTime
+	 *            The warmup time (see {@link World#warmupMovementModel(double)})
+	 * @param fileName
+	 *            Path of the checkpoint file
+	 */
+	public static void warmup(World world, double warmupTime, String fileName) {
+		if (warmupTime <= 0) {
+			world.warmupMovementModel(warmupTime);
+			return;
+		}
+
+		File file = new File(fileName);
+		synchronized (fileLock) {
+			if (file.exists()) {
+				read(world, warmupTime, file);
+			} else {
+				checkCheckpointable(world.getHosts());
+				world.warmupMovementModel(warmupTime);
+				write(world, warmupTime, file);
+			}
+		}
+	}
+
+	/**
+	 * Writes a checkpoint of the world's movement state. The checkpoint is
+	 * first written to a temporary file that is then renamed, so a failed
+	 * write never leaves a partial checkpoint behind.
+	 *
+	 * @param world
+	 *            The world whose state to write
+	 * @param warmupTime
+	 *            The warmup time the state is the result of
+	 * @param file
+	 *            The checkpoint file
+	 */
+	public static void write(World world, double warmupTime, File file) {
+		List<DTNHost> hosts = world.getHosts();
+		checkCheckpointable(hosts);
+		File tmpFile = new File(file.getPath() + ".tmp");
+
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeDouble(warmupTime);
+				out.writeInt(hosts.size());
+				for (DTNHost host : hosts) {
+					out.writeUTF(host.getMovement().getClass().getName());
+				}
+				MovementModel.writeCommonState(out);
+				world.writeMovementState(out);
+				out.writeInt(MAGIC);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw new SimError("Couldn't write checkpoint '" + file + "'\n"
+					+ e.getMessage(), e);
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			throw new SimError("Couldn't rename checkpoint to '" + file + "'");
+		}
+	}
+
+	/**
+	 * Restores the world's movement state from a checkpoint and sets the
+	 * simulation clock to zero (the end of the warmup)
+	 *
+	 * @param world
+	 *            The world whose state to restore
+	 * @param warmupTime
+	 *            The warmup time of the current settings
+	 * @param file
+	 *            The checkpoint file
+	 */
+	public static void read(World world, double warmupTime, File file) {
+		List<DTNHost> hosts = world.getHosts();
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC) {
+					throw new SimError("'" + file + "' is not a checkpoint");
+				}
+				int version = in.readInt();
+				if (version != VERSION) {
+					throw new SimError("Unsupported version " + version
+							+ " of checkpoint '" + file + "'");
+				}
+				double time = in.readDouble();
+				if (time != warmupTime) {
+					throw new SettingsError("Checkpoint '" + file + "' has "
+							+ "warmup time " + time + " but the setting is "
+							+ warmupTime);
+				}
+				int nrofHosts = in.readInt();
+				if (nrofHosts != hosts.size()) {
+					throw new SettingsError("Checkpoint '" + file + "' has "
+							+ nrofHosts + " hosts but the settings have "
+							+ hosts.size());
+				}
+				for (DTNHost host : hosts) {
+					String mmClass = in.readUTF();
+					if (!mmClass.equals(host.getMovement().getClass()
+							.getName())) {
+						throw new SettingsError("Checkpoint '" + file + "' "
+								+ "has movement model " + mmClass + " for "
+								+ host + " but the settings have "
+								+ host.getMovement());
+					}
+				}
+				MovementModel.readCommonState(in);
+				world.readMovementState(in);
+				if (in.readInt() != MAGIC) {
+					throw new SimError("Corrupted checkpoint '" + file + "'");
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SimError("Couldn't read checkpoint '" + file + "'\n"
+					+ e.getMessage(), e);
+		}
+
+		SimClock.getInstance().setTime(0);
+	}
+
+	/**
+	 * Checks that all hosts' movement models support checkpoints
+	 *
+	 * @param hosts
+	 *            The hosts to check
+	 * @throws SettingsError
+	 *             if some model doesn't support checkpoints
+	 */
+	private static void checkCheckpointable(List<DTNHost> hosts) {
+		for (DTNHost host : hosts) {
+			if (!host.getMovement().isCheckpointable()) {
+				throw new SettingsError("Movement model "
+						+ host.getMovement() + " of " + host + " doesn't "
+						+ "support checkpoints");
+			}
+		}
+	}
+
+	/**
+	 * Writes a coordinate to a checkpoint
+	 *
+	 * @param out
+	 *            Where to write the coordinate
+	 * @param c
+	 *            The coordinate
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public static void writeCoord(DataOutput out, Coord c) throws IOException {
+		out.writeDouble(c.getX());
+		out.writeDouble(c.getY());
+	}
+
+	/**
+	 * Reads a coordinate written with {@link #writeCoord(DataOutput, Coord)}
+	 *
+	 * @param in
+	 *            Where to read the coordinate from
+	 * @return The coordinate
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public static Coord readCoord(DataInput in) throws IOException {
+		double x = in.readDouble();
+		double y = in.readDouble();
+		return new Coord(x, y);
+	}
+}
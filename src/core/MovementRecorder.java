@@ -0,0 +1,171 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import movement.Path;
+import movement.RecordedMovement;
+
+/**
+ * <P>
+ * Records the movement of hosts to a file that can be replayed with
+ * {@link RecordedMovement}. For every host, the recording has its initial
+ * location and, in order, every path its movement model gave to it and
+ * every time when the next path was available. Since the hosts move the
+ * same way whenever the movement model gives the same results, a replay
+ * moves the hosts exactly like the recorded run (if the update interval and
+ * the warmup time are the same), but without the work of the movement
+ * models, e.g., path finding on maps.
+ * </P>
+ * <P>
+ * The recording is kept in memory and written to the file by
+ * {@link #write(String)}. Format (in {@link java.io.DataOutput} format):
+ * magic number, format version, number of hosts and for every host its
+ * group ID, address, initial location, the number of bytes of its records
+ * and the records. A record is a type byte ({@link #NO_PATH},
+ * {@link #PATH} or {@link #PATH_AVAILABLE}) followed by the path (see
+ * {@link Path#writeState(java.io.DataOutput)}) or the time (a double).
+ * </P>
+ */
+public class MovementRecorder {
+	/** Identifier in the beginning and end of recording files ("ONER") */
+	public static final int MAGIC = 0x4F4E4552;
+	/** Version of the recording format */
+	public static final int VERSION = 1;
+	/** Record type: the movement model gave no path */
+	public static final int NO_PATH = 0;
+	/** Record type: a path given by the movement model */
+	public static final int PATH = 1;
+	/** Record type: the time when the next path is available */
+	public static final int PATH_AVAILABLE = 2;
+
+	private List<HostRecording> recordings;
+
+	/**
+	 * Starts recording the movement of hosts. The recording starts from the
+	 * current state of the hosts, so the hosts must not have moved yet.
+	 *
+	 * @param hosts
+	 *            The hosts whose movement to record
+	 */
+	public MovementRecorder(List<DTNHost> hosts) {
+		this.recordings = new ArrayList<HostRecording>(hosts.size());
+		for (DTNHost host : hosts) {
+			HostRecording r = new HostRecording(host);
+			this.recordings.add(r);
+			host.setMovementRecording(r);
+		}
+	}
+
+	/**
+	 * Writes the recording to a file. The recording is first written to a
+	 * temporary file that is then renamed.
+	 *
+	 * @param fileName
+	 *            Path of the file
+	 */
+	public void write(String fileName) {
+		File file = new File(fileName);
+		File tmpFile = new File(fileName + ".tmp");
+
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(this.recordings.size());
+				for (HostRecording r : this.recordings) {
+					r.write(out);
+				}
+				out.writeInt(MAGIC);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw new SimError("Couldn't write movement recording '" + file
+					+ "'\n" + e.getMessage(), e);
+		}
+
+		file.delete();
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			throw new SimError("Couldn't rename movement recording to '"
+					+ file + "'");
+		}
+	}
+
+	/**
+	 * The recorded movement of one host. The host gives the results of its
+	 * movement model to the recording (see
+	 * {@link DTNHost#setMovementRecording(HostRecording)}).
+	 */
+	public static class HostRecording {
+		private String groupId;
+		private int address;
+		private Coord initialLocation;
+		private ByteArrayOutputStream bytes;
+		private DataOutputStream out;
+
+		private HostRecording(DTNHost host) {
+			this.groupId = host.getGroupId();
+			this.address = host.getAddress();
+			this.initialLocation = host.getLocation().clone();
+			this.bytes = new ByteArrayOutputStream();
+			this.out = new DataOutputStream(this.bytes);
+		}
+
+		/**
+		 * Records a path given by the movement model
+		 *
+		 * @param path
+		 *            The path (or null if the model gave no path)
+		 */
+		public void path(Path path) {
+			try {
+				if (path == null) {
+					this.out.writeByte(NO_PATH);
+				} else {
+					this.out.writeByte(PATH);
+					path.writeState(this.out);
+				}
+			} catch (IOException e) {
+				throw new SimError(e); // writes to memory don't fail
+			}
+		}
+
+		/**
+		 * Records the time when the next path is available
+		 *
+		 * @param time
+		 *            The time given by the movement model
+		 */
+		public void nextPathAvailable(double time) {
+			try {
+				this.out.writeByte(PATH_AVAILABLE);
+				this.out.writeDouble(time);
+			} catch (IOException e) {
+				throw new SimError(e);
+			}
+		}
+
+		private void write(DataOutputStream fileOut) throws IOException {
+			fileOut.writeUTF(this.groupId);
+			fileOut.writeInt(this.address);
+			MovementCheckpoint.writeCoord(fileOut, this.initialLocation);
+			fileOut.writeInt(this.bytes.size());
+			this.bytes.writeTo(fileOut);
+		}
+	}
+}
@@ -0,0 +1,355 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * <P>
+ * Multi-level connectivity grid for hosts with very different radio ranges.
+ * The cells of level 0 are the smallest range of the nodes times a cell size
+ * multiplier (like the cells of the single level grids) and the cell size
+ * doubles on every level above it. Every node is put on the lowest level
+ * whose cells are at least as large as the node's own range, so a few long
+ * range nodes (e.g., trams) don't make the cells large for all the short
+ * range nodes (e.g., pedestrians), like they do in the single level grids
+ * whose cell size depends on the largest range of the scenario.
+ * </P>
+ * <P>
+ * Two nodes can connect only if they are within the smaller of their ranges
+ * from each other, so a node is checked against the nodes of its own and
+ * the 8 adjacent cells on its own level and on all the levels above it. The
+ * pairs of two nodes on the same level are checked only once. Like in
+ * {@link FlatConnectivityGrid}, the cells of the nodes are re-computed on
+ * every connection check with counting sort and nothing is allocated after
+ * the levels have been created. The resulting connections are the same as
+ * with the other algorithms but the order of connection events is different.
+ * </P>
+ * <P>
+ * <strong>Note:</strong> this class does NOT support negative coordinates.
+ * </P>
+ */
+public class MultiLevelGrid implements SpatialIndex {
+	private int worldSizeX;
+	private int worldSizeY;
+	/** cells of level 0 are the smallest range times this */
+	private int cellSizeMult;
+	/** the levels of the grid (null until the first connection check) */
+	private Level[] levels;
+
+	/** the nodes of the grid */
+	private DTNHost[] nodes;
+	/** level of every node (indexed like {@link #nodes}) */
+	private int[] levelOf;
+	/** cell index of every node on its own level */
+	private int[] cellOf;
+	/** node coordinates and ranges copied for the pair checks */
+	private double[] xs;
+	private double[] ys;
+	private double[] ranges;
+
+	/** number of pairs checked on the latest connection check */
+	private int nrofCheckedPairs;
+
+	/**
+	 * Creates a new multi-level grid. The levels are created on the first
+	 * connection check according to the ranges of the nodes.
+	 *
+	 * @param worldSizeX
+	 *            Width of the world (biggest possible x coordinate)
+	 * @param worldSizeY
+	 *            Height of the world (biggest possible y coordinate)
+	 * @param cellSizeMult
+	 *            Multiplier of the smallest range for the cell size of level
+	 *            0 (at least 1)
+	 */
+	public MultiLevelGrid(int worldSizeX, int worldSizeY, int cellSizeMult) {
+		this.worldSizeX = worldSizeX;
+		this.worldSizeY = worldSizeY;
+		this.cellSizeMult = cellSizeMult;
+		this.nodes = new DTNHost[0];
+		setArraySizes(0);
+	}
+
+	/**
+	 * Adds nodes to the grid
+	 *
+	 * @param nodes
+	 *            Collection of nodes to add
+	 */
+	public void addNodes(Collection<DTNHost> nodes) {
+		int oldSize = this.nodes.length;
+		this.nodes = Arrays.copyOf(this.nodes, oldSize + nodes.size());
+		for (DTNHost n : nodes) {
+			this.nodes[oldSize++] = n;
+		}
+		setArraySizes(this.nodes.length);
+		this.levels = null;
+	}
+
+	/**
+	 * Sets the sizes of the per-node arrays
+	 *
+	 * @param size
+	 *            The new size
+	 */
+	private void setArraySizes(int size) {
+		this.levelOf = new int[size];
+		this.cellOf = new int[size];
+		this.xs = new double[size];
+		this.ys = new double[size];
+		this.ranges = new double[size];
+	}
+
+	/**
+	 * Creates the levels so that the cells of level 0 are the smallest range
+	 * of the nodes times the multiplier and the cells of the top level are at
+	 * least as large as the largest range
+	 */
+	private void createLevels() {
+		double minRange = Double.MAX_VALUE;
+		double maxRange = 0;
+		for (int i = 0, n = nodes.length; i < n; i++) {
+			double range = nodes[i].getTransmitRange();
+			if (range > 0) {
+				minRange = Math.min(minRange, range);
+			}
+			maxRange = Math.max(maxRange, range);
+		}
+
+		if (minRange > maxRange) {
+			minRange = 1; // no node has a radio
+		}
+		int cellSize = Math.max((int) Math.ceil(minRange * cellSizeMult), 1);
+		int nrofLevels = 1;
+		while ((long) cellSize << (nrofLevels - 1) < maxRange) {
+			nrofLevels++;
+		}
+
+		this.levels = new Level[nrofLevels];
+		for (int l = 0; l < nrofLevels; l++) {
+			this.levels[l] = new Level(cellSize << l, this.nodes.length);
+		}
+	}
+
+	/**
+	 * Connects all nodes that are within range of each other. The levels and
+	 * the cells of the nodes are updated first so the nodes can move freely
+	 * between the calls.
+	 */
+	public void connectAllNearNodes() {
+		rebuild();
+		this.nrofCheckedPairs = 0;
+
+		for (int i = 0, n = nodes.length; i < n; i++) {
+			int ownLevel = levelOf[i];
+			for (int l = ownLevel; l < levels.length; l++) {
+				Level level = levels[l];
+				if (level.nrofNodes == 0) {
+					continue;
+				}
+				int center = (l == ownLevel ? cellOf[i] : level.cellFromCoord(
+						xs[i], ys[i]));
+				for (int row = -1; row <= 1; row++) {
+					for (int col = -1; col <= 1; col++) {
+						int cell = center + row * level.stride + col;
+						int end = level.cellStart[cell + 1];
+						for (int k = level.cellStart[cell]; k < end; k++) {
+							int j = level.cellNodes[k];
+							if (l == ownLevel && j <= i) {
+								continue; // same level pairs only once
+							}
+							checkPair(i, j);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Connects two nodes if they are within each other's radio range. The node
+	 * with the lower address tries to connect first.
+	 *
+	 * @param i
+	 *            Index of the first node
+	 * @param j
+	 *            Index of the second node
+	 */
+	private void checkPair(int i, int j) {
+		this.nrofCheckedPairs++;
+		double dx = xs[i] - xs[j];
+		double dy = ys[i] - ys[j];
+		double smallerRange = (ranges[i] < ranges[j] ? ranges[i] : ranges[j]);
+
+		if (Math.sqrt(dx * dx + dy * dy) > smallerRange) {
+			return;
+		}
+
+		DTNHost n1 = nodes[i];
+		DTNHost n2 = nodes[j];
+		if (n1.getAddress() > n2.getAddress()) {
+			n1 = nodes[j];
+			n2 = nodes[i];
+		}
+		n1.connect(n2);
+		n2.connect(n1);
+	}
+
+	/**
+	 * Re-computes the levels and the cells of all nodes and orders the nodes
+	 * of every level by their cells using counting sort. The levels are
+	 * re-created if some node's range has grown larger than the cells of the
+	 * top level.
+	 */
+	private void rebuild() {
+		int nrofNodes = this.nodes.length;
+		for (int i = 0; i < nrofNodes; i++) {
+			DTNHost n = nodes[i];
+			Coord c = n.getLocation();
+			xs[i] = c.getX();
+			ys[i] = c.getY();
+			ranges[i] = n.getTransmitRange();
+		}
+
+		if (this.levels == null
+				|| levelFor(maxOf(ranges)) >= this.levels.length) {
+			createLevels();
+		}
+		for (Level level : this.levels) {
+			Arrays.fill(level.cellStart, 0);
+			level.nrofNodes = 0;
+		}
+
+		for (int i = 0; i < nrofNodes; i++) {
+			levelOf[i] = levelFor(ranges[i]);
+			Level level = levels[levelOf[i]];
+			cellOf[i] = level.cellFromCoord(xs[i], ys[i]);
+			level.cellStart[cellOf[i] + 1]++;
+			level.nrofNodes++;
+		}
+
+		for (Level level : this.levels) {
+			if (level.nrofNodes > 0) {
+				level.prefixSums();
+			}
+		}
+
+		/* place the nodes; cellStart[c] is used as the next free slot of c */
+		for (int i = 0; i < nrofNodes; i++) {
+			Level level = levels[levelOf[i]];
+			level.cellNodes[level.cellStart[cellOf[i]]++] = i;
+		}
+		/* ...which shifted every start to the next cell's start; undo it */
+		for (Level level : this.levels) {
+			if (level.nrofNodes > 0) {
+				level.undoShift();
+			}
+		}
+	}
+
+	/**
+	 * Returns the lowest level whose cells are at least as large as the range
+	 */
+	private int levelFor(double range) {
+		int l = 0;
+		int cellSize = levels[0].cellSize;
+		while (cellSize < range) {
+			cellSize <<= 1;
+			l++;
+		}
+		return l;
+	}
+
+	private static double maxOf(double[] values) {
+		double max = 0;
+		for (double v : values) {
+			max = Math.max(max, v);
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the number of levels of the grid
+	 *
+	 * @return the number of levels (0 before the first connection check)
+	 */
+	public int getNrofLevels() {
+		return (this.levels == null ? 0 : this.levels.length);
+	}
+
+	/**
+	 * Returns the number of node pairs whose distance was checked on the
+	 * latest connection check
+	 *
+	 * @return the number of checked pairs
+	 */
+	public int getNrofCheckedPairs() {
+		return this.nrofCheckedPairs;
+	}
+
+	/**
+	 * Returns a string representation of the grid
+	 *
+	 * @return a string representation of the grid
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of " + getNrofLevels()
+				+ " levels, smallest cell size="
+				+ (this.levels == null ? "?" : "" + levels[0].cellSize);
+	}
+
+	/**
+	 * One level of the grid. The cells are stored like in
+	 * {@link FlatConnectivityGrid}, with empty cells on all sides.
+	 */
+	private class Level {
+		private int cellSize;
+		private int rows;
+		private int cols;
+		/** length of a row in the flat cell arrays */
+		private int stride;
+		/** index of the first node of every cell in {@link #cellNodes} */
+		private int[] cellStart;
+		/** node indexes of the level ordered by their cells */
+		private int[] cellNodes;
+		/** number of nodes on the level */
+		private int nrofNodes;
+
+		private Level(int cellSize, int maxNodes) {
+			this.cellSize = cellSize;
+			this.rows = worldSizeY / cellSize + 1;
+			this.cols = worldSizeX / cellSize + 1;
+			this.stride = cols + 2;
+			this.cellStart = new int[(rows + 2) * stride + 1];
+			this.cellNodes = new int[maxNodes];
+		}
+
+		private void prefixSums() {
+			for (int c = 1; c < cellStart.length; c++) {
+				cellStart[c] += cellStart[c - 1];
+			}
+		}
+
+		private void undoShift() {
+			for (int c = cellStart.length - 1; c > 0; c--) {
+				cellStart[c] = cellStart[c - 1];
+			}
+			cellStart[0] = 0;
+		}
+
+		private int cellFromCoord(double x, double y) {
+			// +1 due empty cells on both sides of the matrix
+			int row = (int) (y / cellSize) + 1;
+			int col = (int) (x / cellSize) + 1;
+
+			assert row > 0 && row <= rows && col > 0 && col <= cols : "Location ("
+					+ x + "," + y + ") is out of world's bounds";
+
+			return row * stride + col;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * <P>
+ * Connectivity grid that keeps a neighbor list (a Verlet list) of candidate
+ * pairs: the pairs of nodes that are within their radio range plus a skin
+ * distance from each other. Only the candidate pairs are checked for
+ * connectivity on every connection check. The list is rebuilt with the
+ * cells of {@link FlatConnectivityGrid} only when some node has moved more
+ * than half of the skin (or its range has grown) since the latest rebuild,
+ * because before that no other pair can have come within range.
+ * </P>
+ * <P>
+ * A larger skin means fewer rebuilds but more candidate pairs to check on
+ * every update (see {@link report.NeighborListReport}). The resulting
+ * connections are the same as with {@link FlatConnectivityGrid} but the
+ * order of the connection events may be different.
+ * </P>
+ * <P>
+ * <strong>Note:</strong> this class does NOT support negative coordinates.
+ * </P>
+ */
+public class NeighborListGrid extends FlatConnectivityGrid {
+	/** extra distance of the candidate pairs */
+	private double skin;
+	/** square of the half skin (the largest movement without rebuild) */
+	private double halfSkinSquared;
+
+	/** the candidate pairs (indexes of the nodes) */
+	private int[] firsts;
+	private int[] seconds;
+	private int nrofPairs;
+
+	private boolean built;
+	private int nrofRebuilds;
+	/** number of pairs the grid checked on the latest rebuild */
+	private int nrofGridPairs;
+
+	/**
+	 * Creates a new neighbor list grid
+	 *
+	 * @param worldSizeX
+	 *            Width of the world (biggest possible x coordinate)
+	 * @param worldSizeY
+	 *            Height of the world (biggest possible y coordinate)
+	 * @param cellSize
+	 *            Cell's edge's length (must be at least the largest radio
+	 *            range plus the skin)
+	 * @param skin
+	 *            The extra distance of the candidate pairs
+	 */
+	public NeighborListGrid(int worldSizeX, int worldSizeY, int cellSize,
+			double skin) {
+		super(worldSizeX, worldSizeY, cellSize);
+		this.skin = skin;
+		this.halfSkinSquared = (skin / 2) * (skin / 2);
+		this.firsts = new int[64];
+		this.seconds = new int[64];
+		this.nrofPairs = 0;
+		this.built = false;
+		this.nrofRebuilds = 0;
+		this.nrofGridPairs = 0;
+	}
+
+	/**
+	 * Connects all nodes that are within range of each other. Rebuilds the
+	 * neighbor list first if it's needed.
+	 */
+	@Override
+	public void connectAllNearNodes() {
+		updateList();
+
+		for (int k = 0; k < this.nrofPairs; k++) {
+			int i = firsts[k];
+			int j = seconds[k];
+			DTNHost n1 = nodes[i];
+			DTNHost n2 = nodes[j];
+			Coord c1 = n1.getLocation();
+			Coord c2 = n2.getLocation();
+			double dx = c1.getX() - c2.getX();
+			double dy = c1.getY() - c2.getY();
+			double r1 = n1.getTransmitRange();
+			double r2 = n2.getTransmitRange();
+
+			if (Math.sqrt(dx * dx + dy * dy) <= (r1 < r2 ? r1 : r2)) {
+				connectPair(i, j);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the neighbor list if some node has moved more than half of the
+	 * skin or its range has grown since the latest rebuild
+	 *
+	 * @return true if the list was rebuilt
+	 */
+	public boolean updateList() {
+		if (this.built && !isRebuildNeeded()) {
+			return false;
+		}
+
+		rebuild();
+		this.nrofPairs = 0;
+		this.nrofGridPairs = 0;
+		checkNearPairs();
+		this.built = true;
+		this.nrofRebuilds++;
+		return true;
+	}
+
+	/**
+	 * Returns true if some node has moved more than half of the skin or its
+	 * range has grown since the latest rebuild
+	 */
+	private boolean isRebuildNeeded() {
+		for (int i = 0, n = nodes.length; i < n; i++) {
+			DTNHost node = nodes[i];
+			Coord c = node.getLocation();
+			double dx = c.getX() - xs[i];
+			double dy = c.getY() - ys[i];
+			if (dx * dx + dy * dy > this.halfSkinSquared
+					|| node.getTransmitRange() > ranges[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the pair to the neighbor list if the nodes are within their range
+	 * plus the skin from each other (called for the pairs of the grid on a
+	 * rebuild)
+	 */
+	@Override
+	protected void checkPair(int i, int j) {
+		this.nrofGridPairs++;
+		double dx = xs[i] - xs[j];
+		double dy = ys[i] - ys[j];
+		double smallerRange = (ranges[i] < ranges[j] ? ranges[i] : ranges[j]);
+
+		if (Math.sqrt(dx * dx + dy * dy) > smallerRange + this.skin) {
+			return;
+		}
+
+		if (this.nrofPairs == this.firsts.length) {
+			this.firsts = Arrays.copyOf(this.firsts, this.nrofPairs * 2);
+			this.seconds = Arrays.copyOf(this.seconds, this.nrofPairs * 2);
+		}
+		this.firsts[this.nrofPairs] = i;
+		this.seconds[this.nrofPairs] = j;
+		this.nrofPairs++;
+	}
+
+	/**
+	 * Returns the skin distance of the candidate pairs
+	 *
+	 * @return the skin
+	 */
+	public double getSkin() {
+		return this.skin;
+	}
+
+	/**
+	 * Returns the number of times the neighbor list has been built
+	 *
+	 * @return the number of rebuilds
+	 */
+	public int getNrofRebuilds() {
+		return this.nrofRebuilds;
+	}
+
+	/**
+	 * Returns the number of candidate pairs in the neighbor list, i.e., the
+	 * pairs checked on every connection check
+	 *
+	 * @return the number of candidate pairs
+	 */
+	public int getNrofCandidatePairs() {
+		return this.nrofPairs;
+	}
+
+	/**
+	 * Returns the number of pairs the grid checked on the latest rebuild
+	 *
+	 * @return the number of checked pairs
+	 */
+	public int getNrofGridPairs() {
+		return this.nrofGridPairs;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + ", skin=" + this.skin;
+	}
+}
@@ -4,6 +4,9 @@
  */
 package core;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -28,8 +31,6 @@ public class NetworkLayer implements ModuleCommunicationListener {
 
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
-	private static int nextAddress;
-	private static Random rng;
 
 	private DTNHost host;
 	private List<Connection> connections; // connected hosts
@@ -73,7 +74,8 @@ public class NetworkLayer implements ModuleCommunicationListener {
 		comBus.subscribe(SPEED_ID, this);
 
 		/* draw lastScanTime of [0 -- scanInterval] */
-		this.lastScanTime = rng.nextDouble() * scanInterval;
+		this.lastScanTime = SimulationContext.current().networkRng.nextDouble()
+				* scanInterval;
 	}
 
 	/**
@@ -83,7 +85,7 @@ public class NetworkLayer implements ModuleCommunicationListener {
 	 * @return The next address.
 	 */
 	private static int getNextNetAddress() {
-		return nextAddress++;
+		return SimulationContext.current().nextAddress++;
 	}
 
 	/**
@@ -122,6 +124,16 @@ public class NetworkLayer implements ModuleCommunicationListener {
 		return this.connections;
 	}
 
+	/**
+	 * Returns true if this network layer scans for other hosts only at
+	 * intervals (i.e., the scan interval is larger than zero)
+	 * 
+	 * @return true if the scan interval is in use
+	 */
+	public boolean hasScanInterval() {
+		return this.scanInterval > 0.0;
+	}
+
 	public boolean isScanning() {
 		double simTime = SimClock.getTime();
 
@@ -231,9 +243,11 @@ public class NetworkLayer implements ModuleCommunicationListener {
 
 	/**
 	 * Updates the state of current connections (i.e. tears down connections
-	 * that are out of range).
+	 * that are out of range). Connections between two static hosts (see
+	 * {@link DTNHost#isStatic()}) are known to be in range and not checked.
 	 */
 	public void update() {
+		boolean isStatic = this.host.isStatic();
 		for (int i = 0; i < this.connections.size();) {
 			Connection con = this.connections.get(i);
 			DTNHost anotherNode = con.getOtherNode(this.host);
@@ -241,7 +255,9 @@ public class NetworkLayer implements ModuleCommunicationListener {
 			// all connections should be up at this stage
 			assert con.isUp() : "Connection " + con + " was down!";
 
-			if (!isWithinRange(anotherNode)) {
+			if (isStatic && anotherNode.isStatic()) {
+				i++;
+			} else if (!isWithinRange(anotherNode)) {
 				removeConnectionByIndex(i);
 			} else {
 				i++;
@@ -320,15 +336,55 @@ public class NetworkLayer implements ModuleCommunicationListener {
 	public void moduleValueChanged(String key, Object newValue) {
 		if (key.equals(SCAN_INTERVAL_ID)) {
 			this.scanInterval = (Double) newValue;
+			this.host.connectivityChanged();
 		} else if (key.equals(SPEED_ID)) {
 			this.transmitSpeed = (Integer) newValue;
 		} else if (key.equals(RANGE_ID)) {
 			this.transmitRange = (Double) newValue;
+			this.host.connectivityChanged();
 		} else {
 			throw new SimError("Unexpected combus ID " + key);
 		}
 	}
 
+	/**
+	 * Writes the scanning state and the connections of this network layer to
+	 * a checkpoint
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @param cp
+	 *            The checkpoint that is written
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	void writeState(DataOutput out, SimCheckpoint cp) throws IOException {
+		out.writeDouble(this.lastScanTime);
+		out.writeInt(this.connections.size());
+		for (Connection con : this.connections) {
+			cp.writeConnection(out, con);
+		}
+	}
+
+	/**
+	 * Restores the state written with
+	 * {@link #writeState(DataOutput, SimCheckpoint)}
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @param cp
+	 *            The checkpoint that is read
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	void readState(DataInput in, SimCheckpoint cp) throws IOException {
+		this.lastScanTime = in.readDouble();
+		this.connections.clear();
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			this.connections.add(cp.readConnection(in));
+		}
+	}
+
 	/**
 	 * Returns a string representation of the object.
 	 * 
@@ -343,8 +399,9 @@ public class NetworkLayer implements ModuleCommunicationListener {
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		nextAddress = 0;
-		rng = new Random(0);
+		SimulationContext context = SimulationContext.current();
+		context.nextAddress = 0;
+		context.networkRng = new Random(0);
 	}
 
 }
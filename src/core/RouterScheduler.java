@@ -0,0 +1,256 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import routing.MessageRouter;
+
+/**
+ * <P>
+ * Event-driven scheduler for router updates. A host whose router is
+ * event-driven (see {@link MessageRouter#isEventDriven()}) is updated only
+ * when something has affected it since its previous update: one of its
+ * connections went up or down, a message was created, transferred, aborted
+ * or deleted at the host or at one of its neighbors, or the time of a timed
+ * update requested by the router (e.g., the end of an ongoing transfer or
+ * the next TTL check; see {@link MessageRouter#getNextTimedUpdate()}) has
+ * passed. Other hosts' routers are updated at every update as before.
+ * </P>
+ * <P>
+ * The hosts that need an update are marked using the connection and message
+ * listener callbacks; timed updates are kept in a priority queue. Since the
+ * hosts are still updated in the same order, the results are the same as
+ * when all routers are updated at every update.
+ * </P>
+ */
+public class RouterScheduler implements ConnectionListener, MessageListener {
+	/** how much later than the current time timed updates happen at least */
+	public static final double MIN_TIMED_UPDATE_DELAY = 0.00001;
+
+	private List<DTNHost> hosts;
+	/** hosts that need a router update (indexed by address) */
+	private boolean[] dirty;
+	/** addresses of the hosts marked as needing an update (or null) */
+	private List<Integer> dirtyHosts;
+	/** time of the timed update of each host (indexed by address) */
+	private double[] timedUpdates;
+	/** timed updates in time order; outdated entries are skipped */
+	private PriorityQueue<TimedUpdate> queue;
+
+	/**
+	 * Creates a new scheduler for the given hosts. All hosts are marked as
+	 * needing an update.
+	 *
+	 * @param hosts
+	 *            The hosts to schedule (indexed by their network addresses)
+	 * @param listDirtyHosts
+	 *            If true, the hosts needing an update are also kept in a list
+	 *            so that they can be updated without going through all hosts
+	 *            (see {@link #updateDirtyHosts()})
+	 */
+	public RouterScheduler(List<DTNHost> hosts, boolean listDirtyHosts) {
+		int n = hosts.size();
+		this.hosts = hosts;
+		this.dirty = new boolean[n];
+		if (listDirtyHosts) {
+			this.dirtyHosts = new ArrayList<Integer>();
+		}
+		this.timedUpdates = new double[n];
+		this.queue = new PriorityQueue<TimedUpdate>();
+
+		for (int i = 0; i < n; i++) {
+			this.dirty[i] = true;
+			this.timedUpdates[i] = Double.MAX_VALUE;
+			if (listDirtyHosts) {
+				this.dirtyHosts.add(i);
+			}
+		}
+	}
+
+	/**
+	 * Returns the time of the next timed update
+	 *
+	 * @return The time of the next timed update or Double.MAX_VALUE if there
+	 *         aren't any
+	 */
+	public double nextTimedUpdate() {
+		while (!queue.isEmpty()) {
+			TimedUpdate u = queue.peek();
+			if (timedUpdates[u.address] == u.time) {
+				return u.time;
+			}
+			queue.poll(); // outdated entry
+		}
+		return Double.MAX_VALUE;
+	}
+
+	/**
+	 * Updates the routers of the hosts that need an update, i.e., that are
+	 * marked by the listener callbacks or woken up by
+	 * {@link #wakeDueHosts(double)}, in the order they were marked. Hosts
+	 * marked during the updates are also updated. Only the routers are
+	 * updated (the connections are not checked). Inactive hosts stay marked
+	 * but they are not listed again until {@link #markDirty(DTNHost)} is
+	 * called for them. Requires that the scheduler lists the dirty hosts.
+	 */
+	public void updateDirtyHosts() {
+		for (int i = 0; i < dirtyHosts.size(); i++) {
+			int address = dirtyHosts.get(i);
+			DTNHost host = hosts.get(address);
+			if (dirty[address] && host.isActive()) {
+				dirty[address] = false;
+				host.update(false);
+				schedule(address, host.getRouter().getNextTimedUpdate());
+			}
+		}
+		dirtyHosts.clear();
+	}
+
+	/**
+	 * Marks a host as needing a router update
+	 *
+	 * @param host
+	 *            The host to mark
+	 */
+	public void markDirty(DTNHost host) {
+		int address = host.getAddress();
+		dirty[address] = true;
+		if (dirtyHosts != null) {
+			dirtyHosts.add(address);
+		}
+	}
+
+	/**
+	 * Marks the hosts whose timed updates are due as needing an update
+	 *
+	 * @param time
+	 *            The current simulation time
+	 */
+	public void wakeDueHosts(double time) {
+		while (!queue.isEmpty() && queue.peek().time <= time) {
+			TimedUpdate u = queue.poll();
+			if (timedUpdates[u.address] == u.time) {
+				timedUpdates[u.address] = Double.MAX_VALUE;
+				markDirty(hosts.get(u.address));
+			}
+		}
+	}
+
+	/**
+	 * Updates a host. The host's connections are checked (if requested) but
+	 * its router is updated only if it is not event-driven or if something
+	 * has affected the host since its previous update.
+	 *
+	 * @param host
+	 *            The host to update
+	 * @param checkConnections
+	 *            If true, the connections that are out of range are torn down
+	 */
+	public void update(DTNHost host, boolean checkConnections) {
+		if (!host.isActive()) {
+			return;
+		}
+
+		if (checkConnections && host.getConnections().size() > 0) {
+			host.updateConnections();
+		}
+
+		int address = host.getAddress();
+		MessageRouter router = host.getRouter();
+		if (dirty[address] || !router.isEventDriven()) {
+			dirty[address] = false;
+			host.update(false);
+			schedule(address, router.getNextTimedUpdate());
+		}
+	}
+
+	/**
+	 * Schedules a timed update for a host. Replaces the earlier timed update
+	 * of the host, if any.
+	 */
+	private void schedule(int address, double time) {
+		double earliest = SimClock.getTime() + MIN_TIMED_UPDATE_DELAY;
+		if (time < earliest) {
+			time = earliest; // not again at the same time
+		}
+		if (timedUpdates[address] == time) {
+			return; // already in the queue
+		}
+		timedUpdates[address] = time;
+		if (time != Double.MAX_VALUE) {
+			synchronized (queue) { // hosts may be updated concurrently
+				queue.add(new TimedUpdate(time, address));
+			}
+		}
+	}
+
+	/**
+	 * Marks a host and all the hosts it is connected to as needing an update
+	 */
+	private void markWithNeighbors(DTNHost host) {
+		markDirty(host);
+		List<Connection> connections = host.getConnections();
+		for (int i = 0, n = connections.size(); i < n; i++) {
+			markDirty(connections.get(i).getOtherNode(host));
+		}
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		markWithNeighbors(host1);
+		markWithNeighbors(host2);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		markWithNeighbors(host1);
+		markWithNeighbors(host2);
+	}
+
+	public void newMessage(Message m) {
+		markWithNeighbors(m.getFrom());
+	}
+
+	public void messageTransferStarted(Message m, DTNHost from, DTNHost to) {
+		markWithNeighbors(from);
+		markWithNeighbors(to);
+	}
+
+	public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+		markWithNeighbors(where);
+	}
+
+	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
+		markWithNeighbors(from);
+		markWithNeighbors(to);
+	}
+
+	public void messageTransferred(Message m, DTNHost from, DTNHost to,
+			boolean firstDelivery) {
+		markWithNeighbors(from);
+		markWithNeighbors(to);
+	}
+
+	/**
+	 * A timed update of a host
+	 */
+	private static class TimedUpdate implements Comparable<TimedUpdate> {
+		private double time;
+		private int address;
+
+		public TimedUpdate(double time, int address) {
+			this.time = time;
+			this.address = address;
+		}
+
+		public int compareTo(TimedUpdate other) {
+			if (this.time != other.time) {
+				return (this.time < other.time ? -1 : 1);
+			}
+			return this.address - other.address;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * <P>
+ * Runs the runs of a batch as routing variants of one movement and contact
+ * realization (see {@link DTNSim#VARIANTS_FLAG}). The first run of the batch
+ * moves the hosts and checks their connections as usual and records its
+ * contact trace (see {@link ContactTrace}) to a temporary file. The other
+ * runs replay the trace while it is being recorded, so they don't move the
+ * hosts nor check their connections and cost only the work of their
+ * routers. Every run has its own routers, message buffers, listeners and
+ * reports.
+ * </P>
+ * <P>
+ * The trace is kept in a file instead of memory because the replaying runs
+ * may start only after the recording run has ended (e.g., when the runs are
+ * not run concurrently), so no part of the trace can be dropped before all
+ * the runs have ended. The file is deleted when the batch ends.
+ * </P>
+ * <P>
+ * The runs may differ only in the settings that don't affect the movement
+ * or the connections (e.g., routing or anonymity settings). The number of
+ * hosts, the update interval and the update order settings must be the
+ * same in all the runs.
+ * </P>
+ */
+public class RoutingVariants {
+	/** the variants of the current batch or null if not in use */
+	private static RoutingVariants current = null;
+
+	/** run index of the run that records the contact trace */
+	private int recordingRun;
+	/** the file of the recorded contact trace */
+	private File traceFile;
+	/** stream of the recording run to the trace file */
+	private FileOutputStream trace;
+	/** number of bytes recorded (and readable from the file) so far */
+	private long size;
+	/** has the recording ended */
+	private boolean closed;
+
+	private RoutingVariants(int recordingRun) {
+		this.recordingRun = recordingRun;
+		this.size = 0;
+		this.closed = false;
+		try {
+			this.traceFile = File.createTempFile("variants", ".trace");
+			this.traceFile.deleteOnExit();
+			this.trace = new FileOutputStream(this.traceFile);
+		} catch (IOException e) {
+			throw new SimError("Couldn't create a temporary file for the "
+					+ "contact trace of the routing variants", e);
+		}
+	}
+
+	/**
+	 * Starts running the following batch runs as routing variants
+	 *
+	 * @param recordingRun
+	 *            Run index of the run whose contact trace the other runs
+	 *            replay (must be run first)
+	 */
+	public static void start(int recordingRun) {
+		current = new RoutingVariants(recordingRun);
+	}
+
+	/**
+	 * Stops running the batch runs as routing variants and deletes the
+	 * recorded contact trace
+	 */
+	public static void stop() {
+		if (current != null) {
+			current.end();
+			current.traceFile.delete();
+		}
+		current = null;
+	}
+
+	/**
+	 * Returns the routing variants of the current batch
+	 *
+	 * @return the variants or null if the runs are not routing variants
+	 */
+	public static RoutingVariants getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Returns true if the current run records the contact trace, false if
+	 * it replays the trace
+	 *
+	 * @return true for the first run of the variants
+	 */
+	public boolean isRecordingRun() {
+		return SimulationContext.current().runIndex == this.recordingRun;
+	}
+
+	/**
+	 * Returns a stream where the contact trace is recorded to. Closing the
+	 * stream ends the recording.
+	 *
+	 * @return the stream for the recording run
+	 */
+	public OutputStream getTraceOutput() {
+		return new OutputStream() {
+			public void write(int b) throws IOException {
+				append(new byte[] { (byte) b }, 0, 1);
+			}
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				append(b, off, len);
+			}
+
+			public void close() throws IOException {
+				end();
+			}
+		};
+	}
+
+	/**
+	 * Returns a stream of the recorded contact trace. Reading waits for the
+	 * recording run if it hasn't recorded the requested bytes yet.
+	 *
+	 * @return a new stream that starts from the beginning of the trace
+	 */
+	public InputStream getTraceInput() {
+		return new InputStream() {
+			private RandomAccessFile file = null;
+			private long position = 0;
+
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return (read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF);
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				long available = waitFor(this.position);
+				if (available <= 0) {
+					close();
+					return -1;
+				}
+				if (this.file == null) {
+					this.file = new RandomAccessFile(traceFile, "r");
+				}
+				int n = this.file.read(b, off, (int) Math.min(len, available));
+				if (n > 0) {
+					this.position += n;
+				}
+				return n;
+			}
+
+			public void close() throws IOException {
+				if (this.file != null) {
+					this.file.close();
+					this.file = null;
+				}
+			}
+		};
+	}
+
+	private synchronized void append(byte[] b, int off, int len)
+			throws IOException {
+		this.trace.write(b, off, len);
+		this.size += len;
+		notifyAll();
+	}
+
+	private synchronized void end() {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			this.trace.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't write the contact trace of the "
+					+ "routing variants", e);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the trace has bytes after the position or the recording
+	 * has ended
+	 *
+	 * @return the number of recorded bytes after the position (0 at the end
+	 *         of the ended trace)
+	 */
+	private synchronized long waitFor(long position) throws IOException {
+		while (position >= this.size && !this.closed) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while waiting "
+						+ "for the contact trace");
+			}
+		}
+		return this.size - position;
+	}
+}
@@ -0,0 +1,470 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <P>
+ * Cache of simulation results. The results (report files) of a run are
+ * stored under a key that is a hash of everything that affects them: the
+ * settings of the run (with the run arrays resolved), the contents of the
+ * input files that the settings refer to (e.g., map, external event and
+ * route files) and the classes of the simulator. A run whose key is in the
+ * cache doesn't have to be simulated again.
+ * </P>
+ * <P>
+ * Every cache entry is a directory named by the key. It contains the report
+ * files and the file {@value #ENTRY_FILE} that lists the settings of the
+ * run. Entries are created by renaming a complete temporary directory, so
+ * an entry is never partial.
+ * </P>
+ * <P>
+ * The main method is a command line tool for listing and invalidating
+ * cache entries.
+ * </P>
+ */
+public class RunCache {
+	/** Name of the settings file of a cache entry ({@value} ) */
+	public static final String ENTRY_FILE = "entry.txt";
+	/**
+	 * Settings that don't affect the results and are left out from the keys:
+	 * the report directory and the sweep settings
+	 */
+	private static final String[] IGNORED_SETTINGS = { "Report.reportDir",
+			SweepRunner.SWEEP_NS + "." };
+
+	/** hash of the simulator's classes (computed once) */
+	private static String buildHash = null;
+
+	private File cacheDir;
+
+	/**
+	 * Creates a cache in the given directory
+	 *
+	 * @param cacheDir
+	 *            Directory of the cache entries (created when needed)
+	 */
+	public RunCache(String cacheDir) {
+		this.cacheDir = new File(cacheDir);
+	}
+
+	/**
+	 * Returns the key of a run
+	 *
+	 * @param settings
+	 *            All the settings of the run (with the run arrays resolved)
+	 * @return The key of the run (a hexadecimal string)
+	 */
+	public String getKey(SortedMap<String, String> settings) {
+		MessageDigest md = newDigest();
+		SortedMap<String, String> keySettings = getKeySettings(settings);
+		for (Map.Entry<String, String> e : keySettings.entrySet()) {
+			update(md, e.getKey() + "=" + e.getValue() + "\n");
+			File file = new File(e.getValue());
+			if (file.isFile()) {
+				update(md, hashFile(file) + "\n");
+			}
+		}
+		update(md, getBuildHash());
+		return toHex(md.digest());
+	}
+
+	/**
+	 * Returns the settings that are used for the key
+	 */
+	private static SortedMap<String, String> getKeySettings(
+			SortedMap<String, String> settings) {
+		SortedMap<String, String> keySettings =
+			new TreeMap<String, String>(settings);
+		for (String name : settings.keySet()) {
+			for (String ignored : IGNORED_SETTINGS) {
+				if (name.equals(ignored) || (ignored.endsWith(".")
+						&& name.startsWith(ignored))) {
+					keySettings.remove(name);
+				}
+			}
+		}
+		return keySettings;
+	}
+
+	/**
+	 * Returns true if the cache has the results of a run
+	 *
+	 * @param key
+	 *            The key of the run
+	 * @return true if the results are in the cache
+	 */
+	public boolean contains(String key) {
+		return new File(new File(this.cacheDir, key), ENTRY_FILE).isFile();
+	}
+
+	/**
+	 * Copies the cached results of a run to a directory
+	 *
+	 * @param key
+	 *            The key of the run
+	 * @param dir
+	 *            Directory where to copy the report files
+	 * @throws IOException
+	 *             if copying failed
+	 */
+	public void get(String key, File dir) throws IOException {
+		File entry = new File(this.cacheDir, key);
+		copyFiles(entry, dir, ENTRY_FILE);
+	}
+
+	/**
+	 * Stores the results of a run to the cache
+	 *
+	 * @param key
+	 *            The key of the run
+	 * @param settings
+	 *            All the settings of the run (for listing the entries)
+	 * @param dir
+	 *            Directory of the report files
+	 * @param ignored
+	 *            Names of the files in the directory that are not results
+	 * @throws IOException
+	 *             if storing failed
+	 */
+	public void put(String key, SortedMap<String, String> settings, File dir,
+			String... ignored) throws IOException {
+		File entry = new File(this.cacheDir, key);
+		File tmp = new File(this.cacheDir, key + ".tmp"
+				+ Thread.currentThread().getId());
+		if (!this.cacheDir.isDirectory() && !this.cacheDir.mkdirs()) {
+			throw new IOException("Couldn't create cache directory "
+					+ this.cacheDir);
+		}
+		delete(tmp);
+
+		copyFiles(dir, tmp, ignored);
+		PrintWriter out = new PrintWriter(new FileWriter(new File(tmp,
+				ENTRY_FILE)));
+		try {
+			for (Map.Entry<String, String> e : getKeySettings(settings)
+					.entrySet()) {
+				out.println(e.getKey() + " = " + e.getValue());
+			}
+		} finally {
+			out.close();
+		}
+
+		if (!tmp.renameTo(entry)) {
+			delete(tmp); // e.g. another worker stored the same run
+		}
+	}
+
+	/**
+	 * Removes an entry from the cache
+	 *
+	 * @param key
+	 *            The key of the entry
+	 */
+	public void invalidate(String key) {
+		delete(new File(this.cacheDir, key));
+	}
+
+	/**
+	 * Returns the keys of the complete entries in the cache
+	 *
+	 * @return The keys (sorted)
+	 */
+	public List<String> getKeys() {
+		List<String> keys = new ArrayList<String>();
+		String[] names = this.cacheDir.list();
+		if (names == null) {
+			return keys;
+		}
+		Arrays.sort(names);
+		for (String name : names) {
+			if (!name.contains(".") && contains(name)) {
+				keys.add(name);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the settings of a cache entry
+	 *
+	 * @param key
+	 *            The key of the entry
+	 * @return The settings of the run whose results the entry has
+	 * @throws IOException
+	 *             if reading the entry failed
+	 */
+	public SortedMap<String, String> getSettings(String key)
+			throws IOException {
+		SortedMap<String, String> settings = new TreeMap<String, String>();
+		BufferedReader reader = new BufferedReader(new FileReader(new File(
+				new File(this.cacheDir, key), ENTRY_FILE)));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int i = line.indexOf(" = ");
+				if (i > 0) {
+					settings.put(line.substring(0, i), line.substring(i + 3));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return settings;
+	}
+
+	/**
+	 * Returns a hash of the simulator's classes (the class path directories
+	 * and jar files), so that results of different builds have different
+	 * keys
+	 *
+	 * @return The hash of the classes (a hexadecimal string)
+	 */
+	public static synchronized String getBuildHash() {
+		if (buildHash != null) {
+			return buildHash;
+		}
+
+		MessageDigest md = newDigest();
+		String classPath = System.getProperty("java.class.path");
+		for (String path : classPath.split(File.pathSeparator)) {
+			File file = new File(path);
+			if (file.isDirectory()) {
+				hashClasses(md, file, "");
+			} else if (file.isFile()) {
+				update(md, file.getName() + "=" + hashFile(file) + "\n");
+			}
+		}
+		buildHash = toHex(md.digest());
+		return buildHash;
+	}
+
+	/**
+	 * Hashes the class files of a class path directory
+	 */
+	private static void hashClasses(MessageDigest md, File dir, String path) {
+		String[] names = dir.list();
+		if (names == null) {
+			return;
+		}
+		Arrays.sort(names);
+		for (String name : names) {
+			File file = new File(dir, name);
+			if (file.isDirectory()) {
+				hashClasses(md, file, path + name + "/");
+			} else if (name.endsWith(".class")) {
+				update(md, path + name + "=" + hashFile(file) + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Returns the hash of a file's contents
+	 */
+	private static String hashFile(File file) {
+		MessageDigest md = newDigest();
+		byte[] buffer = new byte[8192];
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					md.update(buffer, 0, n);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SimError("Couldn't read " + file + " for the run cache",
+					e);
+		}
+		return toHex(md.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError("No SHA-256 for the run cache", e);
+		}
+	}
+
+	private static void update(MessageDigest md, String s) {
+		try {
+			md.update(s.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new SimError(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Copies the files (and subdirectories) of a directory to another
+	 * directory
+	 */
+	private static void copyFiles(File from, File to, String... ignored)
+			throws IOException {
+		String[] names = from.list();
+		if (names == null) {
+			throw new IOException("Couldn't list " + from);
+		}
+		if (!to.isDirectory() && !to.mkdirs()) {
+			throw new IOException("Couldn't create " + to);
+		}
+
+		for (String name : names) {
+			if (Arrays.asList(ignored).contains(name)) {
+				continue;
+			}
+			File src = new File(from, name);
+			File dst = new File(to, name);
+			if (src.isDirectory()) {
+				copyFiles(src, dst);
+				continue;
+			}
+			InputStream in = new FileInputStream(src);
+			try {
+				OutputStream out = new FileOutputStream(dst);
+				try {
+					byte[] buffer = new byte[8192];
+					int n;
+					while ((n = in.read(buffer)) > 0) {
+						out.write(buffer, 0, n);
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Deletes a file or a directory with its contents
+	 */
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				delete(f);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Returns true if an entry matches all the selectors. A selector is
+	 * either the beginning of a key or a setting and its value
+	 * (<CODE>name=value</CODE>).
+	 */
+	private boolean matches(String key, List<String> selectors)
+			throws IOException {
+		SortedMap<String, String> settings = null;
+		for (String selector : selectors) {
+			int i = selector.indexOf('=');
+			if (i < 0) {
+				if (!key.startsWith(selector)) {
+					return false;
+				}
+				continue;
+			}
+			if (settings == null) {
+				settings = getSettings(key);
+			}
+			String value = settings.get(selector.substring(0, i).trim());
+			if (value == null
+					|| !value.equals(selector.substring(i + 1).trim())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Lists or invalidates cache entries. Usage:<BR>
+	 * <CODE>RunCache list cacheDir [selector...]</CODE><BR>
+	 * <CODE>RunCache invalidate cacheDir (all | selector...)</CODE><BR>
+	 * A selector is the beginning of a key or a setting and its value
+	 * (<CODE>name=value</CODE>); the command applies to the entries that
+	 * match all the selectors.
+	 *
+	 * @param args
+	 *            Command line arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2 || !(args[0].equals("list")
+				|| args[0].equals("invalidate"))
+				|| (args[0].equals("invalidate") && args.length < 3)) {
+			System.err.println("Usage: RunCache list cacheDir [selector...]");
+			System.err.println("       RunCache invalidate cacheDir "
+					+ "(all | selector...)");
+			System.err.println("A selector is the beginning of a key or "
+					+ "setting=value");
+			System.exit(-1);
+		}
+
+		boolean invalidate = args[0].equals("invalidate");
+		RunCache cache = new RunCache(args[1]);
+		List<String> selectors = new ArrayList<String>(Arrays.asList(args)
+				.subList(2, args.length));
+		if (invalidate && selectors.size() == 1 && selectors.get(0).equals(
+				"all")) {
+			selectors.clear();
+		}
+
+		SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		int count = 0;
+		try {
+			for (String key : cache.getKeys()) {
+				if (!cache.matches(key, selectors)) {
+					continue;
+				}
+				count++;
+				if (invalidate) {
+					cache.invalidate(key);
+				} else {
+					File entry = new File(cache.cacheDir, key);
+					System.out.println(key + " " + df.format(new Date(
+							entry.lastModified())) + " "
+							+ (entry.list().length - 1) + " files");
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't read the cache: " + e.getMessage());
+			System.exit(-1);
+		}
+		System.out.println(count + " entries " + (invalidate ? "invalidated"
+				: "listed"));
+	}
+}
@@ -12,7 +12,9 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Properties;
 import java.util.Scanner;
+import java.util.SortedMap;
 import java.util.Stack;
+import java.util.TreeMap;
 
 /**
  * Interface for simulation settings stored in setting file(s). Settings class
@@ -43,8 +45,6 @@ public class Settings {
 	 */
 	public static final String FILL_DELIMITER = "%%";
 
-	/** run index for run-specific settings */
-	private static int runIndex = 0;
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
@@ -88,7 +88,7 @@ public class Settings {
 	 *            disable run indexing
 	 */
 	public static void setRunIndex(int index) {
-		runIndex = index;
+		SimulationContext.current().runIndex = index;
 	}
 
 	/**
@@ -326,23 +326,82 @@ public class Settings {
 	 * @return The runIndex % arrayLength'th value of the run array
 	 */
 	private String parseRunSetting(String value) {
+		int runIndex = SimulationContext.current().runIndex;
+		String[] valueArr = splitRunArray(value);
+
+		if (valueArr == null || runIndex < 0) {
+			return value; // standard format setting -> return
+		}
+
+		return valueArr[runIndex % valueArr.length];
+	}
+
+	/**
+	 * Splits a run array value to the values of the different runs
+	 * 
+	 * @param value
+	 *            The (trimmed) value to split
+	 * @return The values of the run array (trimmed) or null if the value is
+	 *         not a run array
+	 */
+	private static String[] splitRunArray(String value) {
 		final String RUN_ARRAY_START = "[";
 		final String RUN_ARRAY_END = "]";
 		final String RUN_ARRAY_DELIM = ";";
 		final int MIN_LENGTH = 3; // minimum run is one value. e.g. "[v]"
 
 		if (!value.startsWith(RUN_ARRAY_START)
-				|| !value.endsWith(RUN_ARRAY_END) || runIndex < 0
+				|| !value.endsWith(RUN_ARRAY_END)
 				|| value.length() < MIN_LENGTH) {
-			return value; // standard format setting -> return
+			return null;
 		}
 
 		value = value.substring(1, value.length() - 1); // remove brackets
 		String[] valueArr = value.split(RUN_ARRAY_DELIM);
-		int arrIndex = runIndex % valueArr.length;
-		value = valueArr[arrIndex].trim();
+		for (int i = 0; i < valueArr.length; i++) {
+			valueArr[i] = valueArr[i].trim();
+		}
+		return valueArr;
+	}
 
-		return value;
+	/**
+	 * Returns all settings (including the default settings) whose value is a
+	 * run array (see {@link #setRunIndex(int)})
+	 * 
+	 * @return The run array values of the settings, sorted by the full
+	 *         setting names
+	 */
+	public static SortedMap<String, String[]> getRunArraySettings() {
+		SortedMap<String, String[]> runArrays =
+			new TreeMap<String, String[]>();
+		for (String name : props.stringPropertyNames()) {
+			String[] values = splitRunArray(props.getProperty(name).trim());
+			if (values != null) {
+				runArrays.put(name, values);
+			}
+		}
+		return runArrays;
+	}
+
+	/**
+	 * Returns all settings (including the default settings) with the run
+	 * arrays resolved for the current run index (see
+	 * {@link #setRunIndex(int)})
+	 * 
+	 * @return The values of the settings, sorted by the full setting names
+	 */
+	public static SortedMap<String, String> getResolvedSettings() {
+		int runIndex = SimulationContext.current().runIndex;
+		SortedMap<String, String> resolved = new TreeMap<String, String>();
+		for (String name : props.stringPropertyNames()) {
+			String value = props.getProperty(name).trim();
+			String[] values = splitRunArray(value);
+			if (values != null && runIndex >= 0) {
+				value = values[runIndex % values.length];
+			}
+			resolved.put(name, value);
+		}
+		return resolved;
 	}
 
 	/**
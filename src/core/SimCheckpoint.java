@@ -0,0 +1,445 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import movement.MovementModel;
+
+/**
+ * <P>
+ * Binary checkpoints of a running simulation. Unlike the warmup checkpoints
+ * of {@link MovementCheckpoint}, these contain the whole state of the world
+ * at any simulation time: the movement state, the connections (including the
+ * messages being transferred), the message buffers and other state of the
+ * routers, the anonymity groups, the message event generators and the
+ * scheduled updates. A simulation resumed from a checkpoint continues exactly
+ * like the simulation that wrote the checkpoint. Reports are not saved, so
+ * the reports of a resumed simulation cover only the time after the
+ * checkpoint.
+ * </P>
+ * <P>
+ * All hosts' movement models and routers must support checkpoints (see
+ * {@link MovementModel#isCheckpointable()} and
+ * {@link routing.MessageRouter#isCheckpointable()}), the external events
+ * must come from message event generators and the optimizations whose state
+ * is not saved must be off (see {@link World#checkCheckpointable()}).
+ * Otherwise a {@link SettingsError} is thrown. A checkpoint is checked to
+ * match the number of hosts and their movement models and routers; it is up
+ * to the user to make sure that the other settings have not changed.
+ * </P>
+ * <P>
+ * Format (all values in {@link DataOutput} format): magic number, format
+ * version, simulation time, number of hosts, the movement model and router
+ * class names of every host, the next message unique ID, the anonymity rng
+ * state, the common movement rng state, the world's state (see
+ * {@link World#writeState(DataOutput, SimCheckpoint)}) and the magic number
+ * again. Messages and connections are written where they are first referred
+ * to and referred to by their index after that, so objects that are shared
+ * (e.g., a connection in the lists of both of its hosts) are shared after
+ * restoring too.
+ * </P>
+ */
+public class SimCheckpoint {
+	/** Identifier in the beginning and end of checkpoint files ("ONES") */
+	public static final int MAGIC = 0x4F4E4553;
+	/** Version of the checkpoint format */
+	public static final int VERSION = 1;
+
+	/** Value type tags of {@link #writeValue(DataOutput, Object)} */
+	private static final int NULL_VALUE = 0;
+	private static final int INTEGER_VALUE = 1;
+	private static final int DOUBLE_VALUE = 2;
+	private static final int BOOLEAN_VALUE = 3;
+	private static final int STRING_VALUE = 4;
+
+	/** the hosts of the world */
+	private List<DTNHost> hosts;
+	/** indexes of the written messages and connections */
+	private IdentityHashMap<Object, Integer> written;
+	/** the read messages and connections in the order of their indexes */
+	private List<Object> read;
+
+	/**
+	 * Creates a checkpoint for writing or reading the state of hosts. Also
+	 * used for the saved states of the Time Warp logical processes (see
+	 * {@link TimeWarpStateLog}).
+	 *
+	 * @param hosts
+	 *            The hosts of the world
+	 */
+	SimCheckpoint(List<DTNHost> hosts) {
+		this.hosts = hosts;
+		this.written = new IdentityHashMap<Object, Integer>();
+		this.read = new ArrayList<Object>();
+	}
+
+	/**
+	 * Writes a checkpoint of the world's current state. The checkpoint is
+	 * first written to a temporary file that is then renamed, so a failed
+	 * write never leaves a partial checkpoint behind and an older checkpoint
+	 * with the same name is replaced only by a complete one.
+	 *
+	 * @param world
+	 *            The world whose state to write
+	 * @param file
+	 *            The checkpoint file
+	 */
+	public static void write(World world, File file) {
+		world.checkCheckpointable();
+		List<DTNHost> hosts = world.getHosts();
+		SimCheckpoint cp = new SimCheckpoint(hosts);
+		SimulationContext context = SimulationContext.current();
+		File tmpFile = new File(file.getPath() + ".tmp");
+
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeDouble(SimClock.getTime());
+				out.writeInt(hosts.size());
+				for (DTNHost host : hosts) {
+					out.writeUTF(host.getMovement().getClass().getName());
+					out.writeUTF(host.getRouter().getClass().getName());
+				}
+				out.writeInt(context.nextMessageId);
+				context.anonRng.writeState(out);
+				MovementModel.writeCommonState(out);
+				world.writeState(out, cp);
+				out.writeInt(MAGIC);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw new SimError("Couldn't write checkpoint '" + file + "'\n"
+					+ e.getMessage(), e);
+		}
+
+		file.delete(); // renaming over an existing file fails on some systems
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			throw new SimError("Couldn't rename checkpoint to '" + file + "'");
+		}
+	}
+
+	/**
+	 * Restores the world's state from a checkpoint and sets the simulation
+	 * clock to the time of the checkpoint. The world must have been created
+	 * with the same settings as the world whose state was written and its
+	 * movement must not have been warmed up.
+	 *
+	 * @param world
+	 *            The world whose state to restore
+	 * @param file
+	 *            The checkpoint file
+	 */
+	public static void read(World world, File file) {
+		world.checkCheckpointable();
+		List<DTNHost> hosts = world.getHosts();
+		SimCheckpoint cp = new SimCheckpoint(hosts);
+		SimulationContext context = SimulationContext.current();
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC) {
+					throw new SimError("'" + file + "' is not a checkpoint");
+				}
+				int version = in.readInt();
+				if (version != VERSION) {
+					throw new SimError("Unsupported version " + version
+							+ " of checkpoint '" + file + "'");
+				}
+				double time = in.readDouble();
+				int nrofHosts = in.readInt();
+				if (nrofHosts != hosts.size()) {
+					throw new SettingsError("Checkpoint '" + file + "' has "
+							+ nrofHosts + " hosts but the settings have "
+							+ hosts.size());
+				}
+				for (DTNHost host : hosts) {
+					checkClass(file, host, in.readUTF(), host.getMovement());
+					checkClass(file, host, in.readUTF(), host.getRouter());
+				}
+				context.nextMessageId = in.readInt();
+				context.anonRng.readState(in);
+				MovementModel.readCommonState(in);
+				SimClock.getInstance().setTime(time);
+				world.readState(in, cp);
+				if (in.readInt() != MAGIC) {
+					throw new SimError("Corrupted checkpoint '" + file + "'");
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SimError("Couldn't read checkpoint '" + file + "'\n"
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Checks that a class name read from a checkpoint is the class of a
+	 * host's module (movement model or router)
+	 */
+	private static void checkClass(File file, DTNHost host, String className,
+			Object module) {
+		if (!className.equals(module.getClass().getName())) {
+			throw new SettingsError("Checkpoint '" + file + "' has "
+					+ className + " for " + host + " but the settings have "
+					+ module.getClass().getName());
+		}
+	}
+
+	/**
+	 * Writes a reference to a host
+	 *
+	 * @param out
+	 *            Where to write the reference
+	 * @param host
+	 *            The host or null
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeHost(DataOutput out, DTNHost host) throws IOException {
+		out.writeInt(host == null ? -1 : host.getAddress());
+	}
+
+	/**
+	 * Reads a host reference written with
+	 * {@link #writeHost(DataOutput, DTNHost)}
+	 *
+	 * @param in
+	 *            Where to read the reference from
+	 * @return The host or null
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public DTNHost readHost(DataInput in) throws IOException {
+		int address = in.readInt();
+		if (address == -1) {
+			return null;
+		}
+		if (address < 0 || address >= this.hosts.size()
+				|| this.hosts.get(address).getAddress() != address) {
+			throw new SimError("No host with address " + address
+					+ " for the checkpoint");
+		}
+		return this.hosts.get(address);
+	}
+
+	/**
+	 * Writes a message, or only a reference to it if it has already been
+	 * written to this checkpoint
+	 *
+	 * @param out
+	 *            Where to write the message
+	 * @param m
+	 *            The message or null
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeMessage(DataOutput out, Message m) throws IOException {
+		if (writeReference(out, m)) {
+			m.writeState(out, this);
+		}
+	}
+
+	/**
+	 * Reads a message written with {@link #writeMessage(DataOutput, Message)}
+	 *
+	 * @param in
+	 *            Where to read the message from
+	 * @return The message or null
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public Message readMessage(DataInput in) throws IOException {
+		int index = in.readInt();
+		if (isNewObject(index)) {
+			return Message.readState(in, this);
+		}
+		return (index == -1 ? null : (Message) this.read.get(index));
+	}
+
+	/**
+	 * Writes a connection, or only a reference to it if it has already been
+	 * written to this checkpoint
+	 *
+	 * @param out
+	 *            Where to write the connection
+	 * @param con
+	 *            The connection or null
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeConnection(DataOutput out, Connection con)
+			throws IOException {
+		if (writeReference(out, con)) {
+			con.writeState(out, this);
+		}
+	}
+
+	/**
+	 * Reads a connection written with
+	 * {@link #writeConnection(DataOutput, Connection)}
+	 *
+	 * @param in
+	 *            Where to read the connection from
+	 * @return The connection or null
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public Connection readConnection(DataInput in) throws IOException {
+		int index = in.readInt();
+		if (isNewObject(index)) {
+			return Connection.readState(in, this);
+		}
+		return (index == -1 ? null : (Connection) this.read.get(index));
+	}
+
+	/**
+	 * Writes the index of an object (or -1 for null). An object that hasn't
+	 * been written yet gets the next free index.
+	 *
+	 * @return true if the object is new and its state must be written next
+	 */
+	private boolean writeReference(DataOutput out, Object o)
+			throws IOException {
+		if (o == null) {
+			out.writeInt(-1);
+			return false;
+		}
+		Integer index = this.written.get(o);
+		if (index != null) {
+			out.writeInt(index);
+			return false;
+		}
+		index = this.written.size();
+		this.written.put(o, index);
+		out.writeInt(index);
+		return true;
+	}
+
+	/**
+	 * Checks if an object index read from a checkpoint refers to an object
+	 * that is read next
+	 */
+	private boolean isNewObject(int index) {
+		if (index < -1 || index > this.read.size()) {
+			throw new SimError("Invalid object index " + index
+					+ " in the checkpoint");
+		}
+		return index == this.read.size();
+	}
+
+	/**
+	 * Registers an object that is being read, so the references to it can be
+	 * resolved. Must be called before reading the object's fields.
+	 *
+	 * @param o
+	 *            The object
+	 */
+	void register(Object o) {
+		this.read.add(o);
+	}
+
+	/**
+	 * Reads an anonymity group name and returns the defined group with the
+	 * name
+	 *
+	 * @param in
+	 *            Where to read the name from
+	 * @return The group
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	AnonymousGroup readGroup(DataInput in) throws IOException {
+		String name = in.readUTF();
+		AnonymousGroup g = AnonymousGroupManager.getDefinedGroups().get(name);
+		if (g == null) {
+			throw new SettingsError("Checkpoint has anonymity group " + name
+					+ " that is not defined in the settings");
+		}
+		return g;
+	}
+
+	/**
+	 * Writes an immutable value (e.g., a message property). The value must be
+	 * null, an Integer, a Double, a Boolean or a String.
+	 *
+	 * @param out
+	 *            Where to write the value
+	 * @param value
+	 *            The value
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeValue(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL_VALUE);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER_VALUE);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE_VALUE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN_VALUE);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof String) {
+			out.writeByte(STRING_VALUE);
+			out.writeUTF((String) value);
+		} else {
+			throw new SimError("Value " + value + " of type "
+					+ value.getClass().getName()
+					+ " can't be saved to a checkpoint");
+		}
+	}
+
+	/**
+	 * Reads a value written with {@link #writeValue(DataOutput, Object)}
+	 *
+	 * @param in
+	 *            Where to read the value from
+	 * @return The value
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public Object readValue(DataInput in) throws IOException {
+		int type = in.readByte();
+		switch (type) {
+		case NULL_VALUE:
+			return null;
+		case INTEGER_VALUE:
+			return in.readInt();
+		case DOUBLE_VALUE:
+			return in.readDouble();
+		case BOOLEAN_VALUE:
+			return in.readBoolean();
+		case STRING_VALUE:
+			return in.readUTF();
+		default:
+			throw new SimError("Invalid value type " + type
+					+ " in the checkpoint");
+		}
+	}
+}
@@ -5,10 +5,10 @@
 package core;
 
 /**
- * Wall clock for checking the simulation time.
+ * Wall clock for checking the simulation time. The time is kept in the
+ * {@link SimulationContext} of the current thread.
  */
 public class SimClock {
-	private static double clockTime = 0.0;
 	private static SimClock clock = null;
 
 	private SimClock() {
@@ -24,7 +24,7 @@ public class SimClock {
 	 * 
 	 * @return The instance of this clock
 	 */
-	public static SimClock getInstance() {
+	public static synchronized SimClock getInstance() {
 		if (clock == null) {
 			clock = new SimClock();
 		}
@@ -37,7 +37,7 @@ public class SimClock {
 	 * @return Time as a double
 	 */
 	public static double getTime() {
-		return clockTime;
+		return SimulationContext.current().clockTime;
 	}
 
 	/**
@@ -46,7 +46,7 @@ public class SimClock {
 	 * @return Time as integer
 	 */
 	public static int getIntTime() {
-		return (int) Math.round(clockTime);
+		return (int) Math.round(SimulationContext.current().clockTime);
 	}
 
 	/**
@@ -56,7 +56,7 @@ public class SimClock {
 	 *            Nrof seconds to increase the time
 	 */
 	public void advance(double time) {
-		clockTime += time;
+		SimulationContext.current().clockTime += time;
 	}
 
 	/**
@@ -66,7 +66,7 @@ public class SimClock {
 	 *            the time to set
 	 */
 	public void setTime(double time) {
-		clockTime = time;
+		SimulationContext.current().clockTime = time;
 	}
 
 	/**
@@ -75,13 +75,13 @@ public class SimClock {
 	 * @return the current simulation time in a string
 	 */
 	public String toString() {
-		return "SimTime: " + clockTime;
+		return "SimTime: " + getTime();
 	}
 
 	/**
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		clockTime = 0;
+		SimulationContext.current().clockTime = 0;
 	}
 }
@@ -0,0 +1,101 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Random number generator that gives exactly the same values as
+ * {@link java.util.Random} with the same seed but whose state can be saved
+ * and restored (see {@link #writeState(DataOutput)} and
+ * {@link #readState(DataInput)}). Uses the linear congruential generator
+ * that is specified for java.util.Random.
+ */
+public class SimRandom extends Random {
+	private static final long serialVersionUID = 1L;
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	/*
+	 * No initializers for the fields: the super constructor sets them with
+	 * setSeed before the initializers would be run
+	 */
+	private long state;
+	private double nextNextGaussian;
+	private boolean haveNextNextGaussian;
+
+	/**
+	 * Creates a new generator with the given seed
+	 *
+	 * @param seed
+	 *            The seed
+	 */
+	public SimRandom(long seed) {
+		super(seed);
+	}
+
+	@Override
+	public synchronized void setSeed(long seed) {
+		this.state = (seed ^ MULTIPLIER) & MASK;
+		this.haveNextNextGaussian = false;
+	}
+
+	@Override
+	protected synchronized int next(int bits) {
+		this.state = (this.state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (this.state >>> (48 - bits));
+	}
+
+	@Override
+	public synchronized double nextGaussian() {
+		if (this.haveNextNextGaussian) {
+			this.haveNextNextGaussian = false;
+			return this.nextNextGaussian;
+		}
+
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+		this.nextNextGaussian = v2 * multiplier;
+		this.haveNextNextGaussian = true;
+		return v1 * multiplier;
+	}
+
+	/**
+	 * Writes the state of the generator
+	 *
+	 * @param out
+	 *            Where to write the state
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public synchronized void writeState(DataOutput out) throws IOException {
+		out.writeLong(this.state);
+		out.writeBoolean(this.haveNextNextGaussian);
+		out.writeDouble(this.nextNextGaussian);
+	}
+
+	/**
+	 * Restores a state written with {@link #writeState(DataOutput)}
+	 *
+	 * @param in
+	 *            Where to read the state from
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public synchronized void readState(DataInput in) throws IOException {
+		this.state = in.readLong() & MASK;
+		this.haveNextNextGaussian = in.readBoolean();
+		this.nextNextGaussian = in.readDouble();
+	}
+}
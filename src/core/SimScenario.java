@@ -32,6 +32,17 @@ public class SimScenario implements Serializable {
 	public static final String UP_INT_S = "updateInterval";
 	/** simulate connections -setting id ({@value} ) */
 	public static final String SIM_CON_S = "simulateConnections";
+	/**
+	 * Contact trace file -setting id ({@value} ). If set, all the connection
+	 * events of the run are recorded to the file (see {@link ContactTrace}).
+	 */
+	public static final String CONTACT_TRACE_S = "contactTraceFile";
+	/**
+	 * Contact replay file -setting id ({@value} ). If set, the connections
+	 * are created and destroyed as recorded in the contact trace file and the
+	 * hosts are not moved (see {@link ContactTrace}).
+	 */
+	public static final String CONTACT_REPLAY_S = "contactReplayFile";
 	
 	/** namespace for host group settings ({@value} ) */
 	public static final String ANONYMITY_NS = "Anonymity";
@@ -74,11 +85,6 @@ public class SimScenario implements Serializable {
 	private String name;
 	/** number of host groups */
 	int nrofGroups;
-	public static boolean isAnonOn;
-	/** number of anonymity groups */
-	public static int numAnonGroups;
-	public static int anonThreshold;
-	public static String anonymitySystem;
 	/** Width of the world */
 	private int worldSizeX;
 	/** Height of the world */
@@ -93,6 +99,10 @@ public class SimScenario implements Serializable {
 	private EventQueueHandler eqHandler;
 	/** Should connections between hosts be simulated */
 	private boolean simulateConnections;
+	/** File where the contact trace is recorded to (or null) */
+	private String contactTraceFile;
+	/** File where the replayed contact trace is read from (or null) */
+	private String contactReplayFile;
 	/** Map used for host movement (if any) */
 	private SimMap simMap;
 
@@ -110,12 +120,13 @@ public class SimScenario implements Serializable {
 	 */
 	public SimScenario() {
 		Settings anonSettings = new Settings(ANONYMITY_NS);
-		isAnonOn = anonSettings.getBoolean(ANONYMITY_ON);
-		numAnonGroups = anonSettings.getInt(ANONYMITY_GROUPS);
-		anonThreshold = anonSettings.getInt(ANONYMITY_THRESHOLD);
-		ensurePositiveValue(anonThreshold, ANONYMITY_THRESHOLD);
-		ensurePositiveValue(numAnonGroups, ANONYMITY_GROUPS);
-		anonymitySystem = anonSettings.getSetting(ANONYMITY_SYSTEM);
+		SimulationContext context = SimulationContext.current();
+		context.anonOn = anonSettings.getBoolean(ANONYMITY_ON);
+		context.numAnonGroups = anonSettings.getInt(ANONYMITY_GROUPS);
+		context.anonThreshold = anonSettings.getInt(ANONYMITY_THRESHOLD);
+		ensurePositiveValue(context.anonThreshold, ANONYMITY_THRESHOLD);
+		ensurePositiveValue(context.numAnonGroups, ANONYMITY_GROUPS);
+		context.anonymitySystem = anonSettings.getSetting(ANONYMITY_SYSTEM);
 
 		Settings s = new Settings(SCENARIO_NS);
 		nrofGroups = s.getInt(NROF_GROUPS_S);
@@ -124,6 +135,12 @@ public class SimScenario implements Serializable {
 		this.endTime = s.getDouble(END_TIME_S);
 		this.updateInterval = s.getDouble(UP_INT_S);
 		this.simulateConnections = s.getBoolean(SIM_CON_S);
+		if (s.contains(CONTACT_TRACE_S)) {
+			this.contactTraceFile = s.getSetting(CONTACT_TRACE_S);
+		}
+		if (s.contains(CONTACT_REPLAY_S)) {
+			this.contactReplayFile = s.getSetting(CONTACT_REPLAY_S);
+		}
 
 		ensurePositiveValue(nrofGroups, NROF_GROUPS_S);
 		ensurePositiveValue(endTime, END_TIME_S);
@@ -156,6 +173,63 @@ public class SimScenario implements Serializable {
 		}
 	}
 
+	/**
+	 * Returns true if anonymity is on in the current simulation
+	 * 
+	 * @return true if anonymity is on
+	 */
+	public static boolean isAnonOn() {
+		return SimulationContext.current().anonOn;
+	}
+
+	/**
+	 * Returns the number of anonymity groups in the current simulation
+	 * 
+	 * @return the number of anonymity groups
+	 */
+	public static int getNumAnonGroups() {
+		return SimulationContext.current().numAnonGroups;
+	}
+
+	/**
+	 * Sets the number of anonymity groups of the current simulation
+	 * 
+	 * @param numAnonGroups
+	 *            The number of anonymity groups
+	 */
+	public static void setNumAnonGroups(int numAnonGroups) {
+		SimulationContext.current().numAnonGroups = numAnonGroups;
+	}
+
+	/**
+	 * Returns the anonymity threshold of the current simulation
+	 * 
+	 * @return the anonymity threshold
+	 */
+	public static int getAnonThreshold() {
+		return SimulationContext.current().anonThreshold;
+	}
+
+	/**
+	 * Returns the name of the anonymity system of the current simulation
+	 * 
+	 * @return the name of the anonymity system (e.g.
+	 *         {@link #ANONYMITY_SYSTEM_RANDOMPIVOT})
+	 */
+	public static String getAnonymitySystem() {
+		return SimulationContext.current().anonymitySystem;
+	}
+
+	/**
+	 * Sets the anonymity system of the current simulation
+	 * 
+	 * @param anonymitySystem
+	 *            The name of the anonymity system
+	 */
+	public static void setAnonymitySystem(String anonymitySystem) {
+		SimulationContext.current().anonymitySystem = anonymitySystem;
+	}
+
 	/**
 	 * Returns the name of the simulation run
 	 * 
@@ -174,6 +248,25 @@ public class SimScenario implements Serializable {
 		return this.simulateConnections;
 	}
 
+	/**
+	 * Returns the file where the contact trace of the run is recorded to
+	 * 
+	 * @return the file name or null if contacts are not recorded
+	 */
+	public String getContactTraceFile() {
+		return this.contactTraceFile;
+	}
+
+	/**
+	 * Returns the file of the contact trace that is replayed instead of
+	 * moving the hosts and checking their connections
+	 * 
+	 * @return the file name or null if no contact trace is replayed
+	 */
+	public String getContactReplayFile() {
+		return this.contactReplayFile;
+	}
+
 	/**
 	 * Returns the width of the world
 	 * 
@@ -279,6 +372,36 @@ public class SimScenario implements Serializable {
 		this.updateListeners.add(ul);
 	}
 
+	/**
+	 * Returns the list of registered connection listeners. The same list is
+	 * used by all nodes.
+	 * 
+	 * @return the list of registered connection listeners
+	 */
+	public List<ConnectionListener> getConnectionListeners() {
+		return this.connectionListeners;
+	}
+
+	/**
+	 * Returns the list of registered message listeners. The same list is
+	 * used by all nodes.
+	 * 
+	 * @return the list of registered message listeners
+	 */
+	public List<MessageListener> getMessageListeners() {
+		return this.messageListeners;
+	}
+
+	/**
+	 * Returns the list of registered movement listeners. The same list is
+	 * used by all nodes.
+	 * 
+	 * @return the list of registered movement listeners
+	 */
+	public List<MovementListener> getMovementListeners() {
+		return this.movementListeners;
+	}
+
 	/**
 	 * Returns the list of registered update listeners
 	 * 
@@ -0,0 +1,217 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import input.ScheduledUpdatesQueue;
+
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <P>
+ * State of one simulation run that used to be kept in static fields: the
+ * simulation clock, the run index of the settings, the counters for network
+ * addresses and message IDs, the common random number generators, the
+ * anonymity settings and groups etc. Classes of other packages can keep their
+ * per run state in the context with {@link #getState(Object)} and
+ * {@link #setState(Object, Object)}.
+ * </P>
+ * <P>
+ * By default all threads share a single default context, so a single
+ * simulation works like before. When multiple simulations are run
+ * concurrently, every thread running a simulation must be given a context of
+ * its own with {@link #setCurrent(SimulationContext)}, and all the
+ * simulation's classes use that context when called from that thread.
+ * </P>
+ */
+public class SimulationContext {
+	/** the context used by threads that have not been given a context */
+	private static final SimulationContext defaultContext =
+		new SimulationContext();
+	/** contexts of the threads that have been given a context */
+	private static final ThreadLocal<SimulationContext> threadContexts =
+		new ThreadLocal<SimulationContext>();
+	/**
+	 * has any thread been given a context (if not, no lookups are needed).
+	 * Not volatile: a thread that has set its context always sees its own
+	 * write and for the other threads both values lead to the default context.
+	 */
+	private static boolean perThread = false;
+
+	/** current simulation time */
+	double clockTime;
+	/** run index for run-specific settings */
+	int runIndex;
+	/** next free network layer address */
+	int nextAddress;
+	/** rng for network layer scan times */
+	Random networkRng;
+	/** next free message unique ID */
+	int nextMessageId;
+
+	/** is anonymity on */
+	boolean anonOn;
+	/** number of anonymity groups */
+	int numAnonGroups;
+	/** anonymity threshold */
+	int anonThreshold;
+	/** name of the anonymity system */
+	String anonymitySystem;
+	/** the defined anonymity groups */
+	Hashtable<String, AnonymousGroup> anonGroups;
+	/** rng for joining random anonymity groups and choosing pivots */
+	SimRandom anonRng;
+	/** have the anonymity groups been defined */
+	boolean anonGroupsDefined;
+	/** index of the next group to join in round-robin joining */
+	int anonDefinedIndex;
+
+	/** queue of the scheduled updates of the world */
+	ScheduledUpdatesQueue scheduledUpdates;
+
+	/** state of other classes */
+	private Map<Object, Object> states;
+	/** the context whose message IDs this context uses (or null) */
+	private SimulationContext shared;
+
+	/**
+	 * Creates a new context for a simulation run. All the values are in the
+	 * same state as before the first run (the resettable classes are reset
+	 * by {@link DTNSim} before every run anyway).
+	 */
+	public SimulationContext() {
+		this.clockTime = 0;
+		this.runIndex = 0;
+		this.nextAddress = 0;
+		this.networkRng = new Random(0);
+		this.nextMessageId = 0;
+		this.anonGroups = new Hashtable<String, AnonymousGroup>();
+		this.anonRng = new SimRandom(new Random().nextLong());
+		this.anonGroupsDefined = false;
+		this.anonDefinedIndex = 0;
+		this.states = new HashMap<Object, Object>();
+	}
+
+	/**
+	 * Creates a context for a thread that runs a part of another context's
+	 * simulation (see {@link TimeWarpEngine}). The new context has a clock
+	 * of its own but shares the message IDs and the state of other classes
+	 * with the given context, and the other values are copied from it.
+	 *
+	 * @param shared
+	 *            The context of the simulation
+	 */
+	SimulationContext(SimulationContext shared) {
+		this.clockTime = shared.clockTime;
+		this.runIndex = shared.runIndex;
+		this.nextAddress = shared.nextAddress;
+		this.networkRng = shared.networkRng;
+		this.anonOn = shared.anonOn;
+		this.numAnonGroups = shared.numAnonGroups;
+		this.anonThreshold = shared.anonThreshold;
+		this.anonymitySystem = shared.anonymitySystem;
+		this.anonGroups = shared.anonGroups;
+		this.anonRng = shared.anonRng;
+		this.anonGroupsDefined = shared.anonGroupsDefined;
+		this.anonDefinedIndex = shared.anonDefinedIndex;
+		this.scheduledUpdates = shared.scheduledUpdates;
+		this.states = shared.states;
+		this.shared = shared;
+	}
+
+	/**
+	 * Returns the context of the current thread
+	 *
+	 * @return The context given to the current thread with
+	 *         {@link #setCurrent(SimulationContext)} or the default context if
+	 *         the thread has no context of its own
+	 */
+	public static SimulationContext current() {
+		if (!perThread) {
+			return defaultContext;
+		}
+		SimulationContext context = threadContexts.get();
+		return (context != null ? context : defaultContext);
+	}
+
+	/**
+	 * Sets the context of the current thread. All simulation classes called
+	 * from the thread after this use the given context.
+	 *
+	 * @param context
+	 *            The context to use or null to use the default context
+	 */
+	public static void setCurrent(SimulationContext context) {
+		perThread = true;
+		threadContexts.set(context);
+	}
+
+	/**
+	 * Returns the next free message unique ID. Messages can be created by
+	 * multiple threads of a simulation (see {@link World#PARALLEL_ROUTING_S}).
+	 *
+	 * @return the next free message unique ID
+	 */
+	synchronized int nextMessageId() {
+		if (this.shared != null) {
+			return this.shared.nextMessageId();
+		}
+		return this.nextMessageId++;
+	}
+
+	/**
+	 * Returns true if this is the default context shared by all threads
+	 *
+	 * @return true if this is the default context
+	 */
+	boolean isDefault() {
+		return this == defaultContext;
+	}
+
+	/**
+	 * Returns a state object stored in this context
+	 *
+	 * @param key
+	 *            Key of the state (e.g., the class that owns the state)
+	 * @return The state stored with the key or null if there was no state
+	 */
+	public Object getState(Object key) {
+		return this.states.get(key);
+	}
+
+	/**
+	 * Returns the next value of a per run counter stored in this context.
+	 * The first value of a counter is 0 and it can be reset by setting its
+	 * state to null with {@link #setState(Object, Object)}.
+	 *
+	 * @param key
+	 *            Key of the counter
+	 * @return The next value of the counter
+	 */
+	public int nextId(Object key) {
+		Integer id = (Integer) this.states.get(key);
+		int next = (id == null ? 0 : id.intValue());
+		this.states.put(key, next + 1);
+		return next;
+	}
+
+	/**
+	 * Stores a state object in this context
+	 *
+	 * @param key
+	 *            Key of the state (e.g., the class that owns the state)
+	 * @param state
+	 *            The state to store (null removes the state)
+	 */
+	public void setState(Object key, Object state) {
+		if (state == null) {
+			this.states.remove(key);
+		} else {
+			this.states.put(key, state);
+		}
+	}
+}
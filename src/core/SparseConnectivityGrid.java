@@ -0,0 +1,271 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * <P>
+ * Sparse overlay grid for very large or mostly empty worlds. Only the cells
+ * that contain some nodes exist: they are found from an open addressing hash
+ * table whose keys are the (row, column) pairs of the cells packed to longs.
+ * Unlike with {@link ConnectivityGrid} and {@link FlatConnectivityGrid}, the
+ * memory use depends on the number of nodes instead of the size of the
+ * world, so, e.g., continent sized external movement traces need no huge
+ * cell arrays. Since there are no cell arrays, negative
+ * coordinates are supported too.
+ * </P>
+ * <P>
+ * The cells are re-created from a pool on every connection check, so nothing
+ * is allocated after the nodes have been added. The nodes of a cell are kept
+ * in a linked list of node indexes. Pairs are found using the same half
+ * stencil as in {@link FlatConnectivityGrid}, so every pair is checked only
+ * once and the resulting connections are the same as with the dense grids,
+ * but the order of the connection events is different.
+ * </P>
+ */
+public class SparseConnectivityGrid implements SpatialIndex {
+	/** key of an empty hash table slot (no cell has this row and column) */
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private int cellSize;
+
+	/** the nodes of the grid */
+	private DTNHost[] nodes;
+	/** node coordinates and ranges copied for the pair checks */
+	private double[] xs;
+	private double[] ys;
+	private double[] ranges;
+	/** index of the next node in the same cell or -1 (indexed like nodes) */
+	private int[] nextInCell;
+
+	/** keys of the hash table slots (packed rows and columns of the cells) */
+	private long[] keys;
+	/** cell index of every hash table slot */
+	private int[] slotCells;
+	/** slot of every cell in the hash table (to clear only the used slots) */
+	private int[] cellSlots;
+	/** row and column of every cell */
+	private int[] cellRows;
+	private int[] cellCols;
+	/** index of the first node of every cell */
+	private int[] cellFirst;
+	/** number of cells in use (the cells 0...nrofCells-1 of the pool) */
+	private int nrofCells;
+
+	/**
+	 * Creates a new sparse overlay grid
+	 *
+	 * @param cellSize
+	 *            Cell's edge's length (must be at least the largest radio
+	 *            range)
+	 */
+	public SparseConnectivityGrid(int cellSize) {
+		this.cellSize = cellSize;
+		this.nodes = new DTNHost[0];
+		setArraySizes(0);
+	}
+
+	/**
+	 * Adds nodes to overlay grid
+	 *
+	 * @param nodes
+	 *            Collection of nodes to add
+	 */
+	public void addNodes(Collection<DTNHost> nodes) {
+		int oldSize = this.nodes.length;
+		this.nodes = Arrays.copyOf(this.nodes, oldSize + nodes.size());
+		for (DTNHost n : nodes) {
+			this.nodes[oldSize++] = n;
+		}
+		setArraySizes(this.nodes.length);
+	}
+
+	/**
+	 * Sets the sizes of the per-node arrays and the cell pool (there can't be
+	 * more cells than nodes) and the hash table (at most half full)
+	 *
+	 * @param size
+	 *            The new number of nodes
+	 */
+	private void setArraySizes(int size) {
+		this.xs = new double[size];
+		this.ys = new double[size];
+		this.ranges = new double[size];
+		this.nextInCell = new int[size];
+
+		this.cellSlots = new int[size];
+		this.cellRows = new int[size];
+		this.cellCols = new int[size];
+		this.cellFirst = new int[size];
+		this.nrofCells = 0;
+
+		int capacity = Integer.highestOneBit(Math.max(size, 1) * 2) * 2;
+		this.keys = new long[capacity];
+		Arrays.fill(this.keys, EMPTY);
+		this.slotCells = new int[capacity];
+	}
+
+	/**
+	 * Connects all nodes that are within range of each other. The cells are
+	 * re-created first so the nodes can move freely between the calls.
+	 */
+	public void connectAllNearNodes() {
+		rebuild();
+
+		for (int c = 0; c < this.nrofCells; c++) {
+			int row = cellRows[c];
+			int col = cellCols[c];
+			for (int i = cellFirst[c]; i >= 0; i = nextInCell[i]) {
+				for (int j = nextInCell[i]; j >= 0; j = nextInCell[j]) {
+					checkPair(i, j); // pairs within the cell
+				}
+			}
+
+			connectToCell(c, row, col + 1); // east
+			connectToCell(c, row + 1, col - 1); // south-west
+			connectToCell(c, row + 1, col); // south
+			connectToCell(c, row + 1, col + 1); // south-east
+		}
+	}
+
+	/**
+	 * Checks the pairs between the nodes of a cell and the nodes of another
+	 * cell (if the other cell has any nodes)
+	 *
+	 * @param cell
+	 *            Index of the cell
+	 * @param otherRow
+	 *            Row of the other cell
+	 * @param otherCol
+	 *            Column of the other cell
+	 */
+	private void connectToCell(int cell, int otherRow, int otherCol) {
+		int other = findCell(otherRow, otherCol);
+		if (other < 0) {
+			return;
+		}
+		for (int i = cellFirst[cell]; i >= 0; i = nextInCell[i]) {
+			for (int j = cellFirst[other]; j >= 0; j = nextInCell[j]) {
+				checkPair(i, j);
+			}
+		}
+	}
+
+	/**
+	 * Connects two nodes if they are within each other's radio range. The node
+	 * with the lower address tries to connect first.
+	 *
+	 * @param i
+	 *            Index of the first node
+	 * @param j
+	 *            Index of the second node
+	 */
+	private void checkPair(int i, int j) {
+		double dx = xs[i] - xs[j];
+		double dy = ys[i] - ys[j];
+		double smallerRange = (ranges[i] < ranges[j] ? ranges[i] : ranges[j]);
+
+		if (Math.sqrt(dx * dx + dy * dy) > smallerRange) {
+			return;
+		}
+
+		DTNHost n1 = nodes[i];
+		DTNHost n2 = nodes[j];
+		if (n1.getAddress() > n2.getAddress()) {
+			n1 = nodes[j];
+			n2 = nodes[i];
+		}
+		n1.connect(n2);
+		n2.connect(n1);
+	}
+
+	/**
+	 * Empties the cells and puts every node to the cell of its current
+	 * location, creating the cells that are needed
+	 */
+	private void rebuild() {
+		for (int c = 0; c < this.nrofCells; c++) {
+			keys[cellSlots[c]] = EMPTY;
+		}
+		this.nrofCells = 0;
+
+		for (int i = 0, n = nodes.length; i < n; i++) {
+			DTNHost node = nodes[i];
+			Coord loc = node.getLocation();
+			xs[i] = loc.getX();
+			ys[i] = loc.getY();
+			ranges[i] = node.getTransmitRange();
+
+			int row = (int) Math.floor(ys[i] / cellSize);
+			int col = (int) Math.floor(xs[i] / cellSize);
+			long key = pack(row, col);
+			int slot = slotOf(key);
+			int cell;
+			if (keys[slot] == EMPTY) { // take a new cell from the pool
+				cell = this.nrofCells++;
+				keys[slot] = key;
+				slotCells[slot] = cell;
+				cellSlots[cell] = slot;
+				cellRows[cell] = row;
+				cellCols[cell] = col;
+				cellFirst[cell] = -1;
+			} else {
+				cell = slotCells[slot];
+			}
+			nextInCell[i] = cellFirst[cell];
+			cellFirst[cell] = i;
+		}
+	}
+
+	/**
+	 * Returns the index of the cell in the given row and column
+	 *
+	 * @return the index of the cell or -1 if there is no such cell
+	 */
+	private int findCell(int row, int col) {
+		int slot = slotOf(pack(row, col));
+		return (keys[slot] == EMPTY ? -1 : slotCells[slot]);
+	}
+
+	/**
+	 * Returns the hash table slot of the key: the slot where the key is or
+	 * the empty slot where it should be put (linear probing)
+	 */
+	private int slotOf(long key) {
+		int mask = keys.length - 1;
+		long hash = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static long pack(int row, int col) {
+		return ((long) row << 32) | (col & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the number of cells that had some nodes on the latest
+	 * connection check
+	 *
+	 * @return the number of occupied cells
+	 */
+	public int getNrofOccupiedCells() {
+		return this.nrofCells;
+	}
+
+	/**
+	 * Returns a string representation of the grid
+	 *
+	 * @return a string representation of the grid
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + this.nrofCells
+				+ " occupied cells, cell size=" + this.cellSize;
+	}
+}
@@ -0,0 +1,32 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Collection;
+
+/**
+ * Interface for the spatial indexes that find the hosts that are within
+ * range of each other (see {@link World#CON_ALG_S}). The index reads the
+ * locations and the ranges of the hosts when the connections are checked, so
+ * the hosts may move between the checks (except with
+ * {@link ConnectivityGrid}, whose cells are updated as the hosts move).
+ */
+public interface SpatialIndex {
+
+	/**
+	 * Adds nodes to the index
+	 * 
+	 * @param nodes
+	 *            Collection of nodes to add
+	 */
+	public void addNodes(Collection<DTNHost> nodes);
+
+	/**
+	 * Connects all nodes that are within range of each other (see
+	 * {@link DTNHost#connect(DTNHost)})
+	 */
+	public void connectAllNearNodes();
+
+}
@@ -0,0 +1,356 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * <P>
+ * Sweep and prune index of the nodes. Every node has an interval on the
+ * longer axis of the world: its coordinate plus and minus half of its radio
+ * range, so two nodes that are within range of each other always have
+ * overlapping intervals. The end points of the intervals are kept in sorted
+ * order and the order is repaired with insertion sort on every connection
+ * check. Since the nodes move only a little between the checks, the order
+ * changes little and the repair is close to linear in the number of nodes.
+ * Unlike with the grids, the cost doesn't depend on the size of the world.
+ * </P>
+ * <P>
+ * The set of overlapping pairs is maintained incrementally: every swap of two
+ * end points during the repair is a pair that starts overlapping (a begin
+ * point moves before the end point of another node) or stops overlapping (an
+ * end point moves before the begin point of another node). Only the
+ * overlapping pairs are checked for connectivity. The resulting connections
+ * are the same as with the grids but the order of the connection events may
+ * be different.
+ * </P>
+ */
+public class SweepAndPrune implements SpatialIndex {
+	/**
+	 * extra half width of the intervals; keeps the pairs exactly at the range
+	 * overlapping despite rounding errors
+	 */
+	private static final double SLACK = 1e-6;
+	/** key of an empty pair table slot (pair keys are never negative) */
+	private static final long EMPTY = -1;
+
+	/** should the intervals be on the x axis (or on the y axis) */
+	private boolean xAxis;
+
+	/** the nodes of the index */
+	private DTNHost[] nodes;
+	/**
+	 * values of the end points; index <CODE>2*i</CODE> is the begin point and
+	 * <CODE>2*i+1</CODE> the end point of node <CODE>i</CODE>
+	 */
+	private double[] values;
+	/** the end points (indexes of {@link #values}) in sorted order */
+	private int[] order;
+	/** has the order been built */
+	private boolean built;
+
+	/** the overlapping pairs (indexes of the nodes, the smaller first) */
+	private int[] firsts;
+	private int[] seconds;
+	private int nrofPairs;
+	/**
+	 * open addressing hash table from the pair keys (see
+	 * {@link #pairKey(int, int)}) to the indexes of the pairs in the pair
+	 * arrays; at most half full
+	 */
+	private long[] tableKeys;
+	private int[] tableIndexes;
+
+	/** number of end point swaps in the latest repair */
+	private int nrofSwaps;
+
+	/**
+	 * Creates a new sweep and prune index
+	 *
+	 * @param worldSizeX
+	 *            Width of the world
+	 * @param worldSizeY
+	 *            Height of the world
+	 */
+	public SweepAndPrune(int worldSizeX, int worldSizeY) {
+		this.xAxis = worldSizeX >= worldSizeY;
+		this.nodes = new DTNHost[0];
+		this.values = new double[0];
+		this.order = new int[0];
+		this.built = false;
+		this.firsts = new int[64];
+		this.seconds = new int[64];
+		this.nrofPairs = 0;
+		this.tableKeys = new long[128];
+		Arrays.fill(this.tableKeys, EMPTY);
+		this.tableIndexes = new int[128];
+	}
+
+	/**
+	 * Adds nodes to the index
+	 *
+	 * @param nodes
+	 *            Collection of nodes to add
+	 */
+	public void addNodes(Collection<DTNHost> nodes) {
+		int oldSize = this.nodes.length;
+		this.nodes = Arrays.copyOf(this.nodes, oldSize + nodes.size());
+		for (DTNHost n : nodes) {
+			this.nodes[oldSize++] = n;
+		}
+		this.values = new double[this.nodes.length * 2];
+		this.order = new int[this.nodes.length * 2];
+		this.built = false;
+	}
+
+	/**
+	 * Connects all nodes that are within range of each other. The order of
+	 * the end points and the overlapping pairs are updated first so the nodes
+	 * can move freely between the calls.
+	 */
+	public void connectAllNearNodes() {
+		update();
+
+		for (int k = 0; k < this.nrofPairs; k++) {
+			DTNHost n1 = nodes[firsts[k]];
+			DTNHost n2 = nodes[seconds[k]];
+			Coord c1 = n1.getLocation();
+			Coord c2 = n2.getLocation();
+			double dx = c1.getX() - c2.getX();
+			double dy = c1.getY() - c2.getY();
+			double r1 = n1.getTransmitRange();
+			double r2 = n2.getTransmitRange();
+
+			if (Math.sqrt(dx * dx + dy * dy) > (r1 < r2 ? r1 : r2)) {
+				continue;
+			}
+
+			if (n1.getAddress() > n2.getAddress()) {
+				DTNHost tmp = n1;
+				n1 = n2;
+				n2 = tmp;
+			}
+			n1.connect(n2);
+			n2.connect(n1);
+		}
+	}
+
+	/**
+	 * Updates the end points of the intervals to the current locations and
+	 * ranges of the nodes and repairs their order and the overlapping pairs
+	 */
+	public void update() {
+		for (int i = 0, n = nodes.length; i < n; i++) {
+			DTNHost node = nodes[i];
+			Coord c = node.getLocation();
+			double center = (xAxis ? c.getX() : c.getY());
+			double halfWidth = node.getTransmitRange() / 2 + SLACK;
+			values[2 * i] = center - halfWidth;
+			values[2 * i + 1] = center + halfWidth;
+		}
+
+		if (!this.built) {
+			build();
+		}
+
+		this.nrofSwaps = 0;
+		for (int k = 1, n = order.length; k < n; k++) {
+			int point = order[k];
+			int l = k;
+			while (l > 0 && isBefore(point, order[l - 1])) {
+				swapped(point, order[l - 1]);
+				order[l] = order[l - 1];
+				l--;
+			}
+			order[l] = point;
+		}
+	}
+
+	/**
+	 * Builds the first order of the end points: the intervals one after
+	 * another ordered by their begin points. None of the intervals overlap in
+	 * that order, so the repair of the order finds all the overlapping pairs.
+	 */
+	private void build() {
+		Integer[] byBegin = new Integer[nodes.length];
+		for (int i = 0; i < byBegin.length; i++) {
+			byBegin[i] = i;
+		}
+		Arrays.sort(byBegin, new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				return Double.compare(values[2 * i], values[2 * j]);
+			}
+		});
+		for (int i = 0; i < byBegin.length; i++) {
+			order[2 * i] = 2 * byBegin[i];
+			order[2 * i + 1] = 2 * byBegin[i] + 1;
+		}
+
+		this.nrofPairs = 0;
+		Arrays.fill(this.tableKeys, EMPTY);
+		this.built = true;
+	}
+
+	/**
+	 * Returns true if end point p1 should be before end point p2. Equal values
+	 * are ordered begin points first (so touching intervals overlap) and then
+	 * by the node.
+	 */
+	private boolean isBefore(int p1, int p2) {
+		double v1 = values[p1];
+		double v2 = values[p2];
+		if (v1 != v2) {
+			return v1 < v2;
+		}
+		int end1 = p1 & 1;
+		int end2 = p2 & 1;
+		if (end1 != end2) {
+			return end1 < end2;
+		}
+		return p1 < p2;
+	}
+
+	/**
+	 * Updates the overlapping pairs when end point p moves before end point
+	 * q in the order
+	 */
+	private void swapped(int p, int q) {
+		this.nrofSwaps++;
+		int i = p >> 1;
+		int j = q >> 1;
+		if (i == j || (p & 1) == (q & 1)) {
+			return; // begin past begin or end past end changes nothing
+		}
+
+		if ((p & 1) == 0) { // begin of i moved before the end of j
+			addPair(Math.min(i, j), Math.max(i, j));
+		} else { // end of i moved before the begin of j
+			removePair(Math.min(i, j), Math.max(i, j));
+		}
+	}
+
+	private void addPair(int i, int j) {
+		if (this.nrofPairs == this.firsts.length) {
+			this.firsts = Arrays.copyOf(this.firsts, this.nrofPairs * 2);
+			this.seconds = Arrays.copyOf(this.seconds, this.nrofPairs * 2);
+		}
+		if ((this.nrofPairs + 1) * 2 > this.tableKeys.length) {
+			growTable();
+		}
+		this.firsts[this.nrofPairs] = i;
+		this.seconds[this.nrofPairs] = j;
+		long key = pairKey(i, j);
+		int slot = slotOf(key);
+		this.tableKeys[slot] = key;
+		this.tableIndexes[slot] = this.nrofPairs;
+		this.nrofPairs++;
+	}
+
+	private void removePair(int i, int j) {
+		int slot = slotOf(pairKey(i, j));
+		if (this.tableKeys[slot] == EMPTY) {
+			return;
+		}
+		int index = this.tableIndexes[slot];
+		removeSlot(slot);
+
+		/* move the last pair to the removed pair's place */
+		int last = --this.nrofPairs;
+		if (index != last) {
+			this.firsts[index] = this.firsts[last];
+			this.seconds[index] = this.seconds[last];
+			int moved = slotOf(pairKey(firsts[index], seconds[index]));
+			this.tableIndexes[moved] = index;
+		}
+	}
+
+	/**
+	 * Empties a slot of the pair table and moves the following keys of the
+	 * same probe sequence backwards so that no key is left behind an empty
+	 * slot (deletion without tombstones in linear probing)
+	 */
+	private void removeSlot(int slot) {
+		int mask = this.tableKeys.length - 1;
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (tableKeys[next] != EMPTY) {
+			int home = homeSlot(tableKeys[next]);
+			/* can the key move to the hole without passing its home slot */
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				tableKeys[hole] = tableKeys[next];
+				tableIndexes[hole] = tableIndexes[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		tableKeys[hole] = EMPTY;
+	}
+
+	/** Doubles the size of the pair table and re-inserts all the pairs */
+	private void growTable() {
+		this.tableKeys = new long[this.tableKeys.length * 2];
+		Arrays.fill(this.tableKeys, EMPTY);
+		this.tableIndexes = new int[this.tableKeys.length];
+		for (int k = 0; k < this.nrofPairs; k++) {
+			long key = pairKey(firsts[k], seconds[k]);
+			int slot = slotOf(key);
+			this.tableKeys[slot] = key;
+			this.tableIndexes[slot] = k;
+		}
+	}
+
+	/**
+	 * Returns the pair table slot of the key: the slot where the key is or
+	 * the empty slot where it should be put (linear probing)
+	 */
+	private int slotOf(long key) {
+		int mask = tableKeys.length - 1;
+		int slot = homeSlot(key);
+		while (tableKeys[slot] != EMPTY && tableKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private int homeSlot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & (tableKeys.length - 1);
+	}
+
+	private static long pairKey(int i, int j) {
+		return ((long) i << 32) | j;
+	}
+
+	/**
+	 * Returns the number of pairs of nodes whose intervals overlap, i.e., the
+	 * pairs checked on every connection check
+	 *
+	 * @return the number of overlapping pairs
+	 */
+	public int getNrofOverlappingPairs() {
+		return this.nrofPairs;
+	}
+
+	/**
+	 * Returns the number of end point swaps in the latest repair of the order
+	 *
+	 * @return the number of swaps
+	 */
+	public int getNrofSwaps() {
+		return this.nrofSwaps;
+	}
+
+	/**
+	 * Returns a string representation of the index
+	 *
+	 * @return a string representation of the index
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of " + this.nodes.length
+				+ " nodes on the " + (xAxis ? "x" : "y") + " axis";
+	}
+}
@@ -0,0 +1,523 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+
+/**
+ * <P>
+ * Runs a parameter sweep: all combinations (the Cartesian product) of the
+ * values of the settings that have run arrays (see
+ * {@link Settings#setRunIndex(int)}). Every combination is run in a separate
+ * worker JVM and a pool of workers takes the runs from a common queue, so
+ * long and short runs are balanced over the workers. A failed run is retried
+ * {@link #NROF_RETRIES_S} times.
+ * </P>
+ * <P>
+ * Every run gets a directory of its own in the sweep directory. The
+ * directory contains the run's settings (the chosen values of the swept
+ * settings and the report directory), the output of the worker and the
+ * reports of the run. The finished runs are recorded in a manifest file in
+ * the sweep directory; when the same sweep is started again, the runs that
+ * are in the manifest are skipped, so an interrupted sweep continues where
+ * it stopped.
+ * </P>
+ */
+public class SweepRunner {
+	/** Namespace of the sweep settings ({@value} ) */
+	public static final String SWEEP_NS = "Sweep";
+	/**
+	 * Number of worker JVMs -setting id ({@value} ). Default is the number of
+	 * processors, limited by the physical memory (see
+	 * {@link #WORKER_MEMORY_S}) and the number of runs. The
+	 * {@link DTNSim#PARALLEL_FLAG} option overrides this.
+	 */
+	public static final String NROF_WORKERS_S = "nrofWorkers";
+	/**
+	 * Maximum heap size of a worker JVM (megabytes) -setting id ({@value} ).
+	 * Default is {@link #DEF_WORKER_MEMORY}.
+	 */
+	public static final String WORKER_MEMORY_S = "workerMemory";
+	/**
+	 * How many times a failed run is retried -setting id ({@value} ).
+	 * Default is {@link #DEF_NROF_RETRIES}.
+	 */
+	public static final String NROF_RETRIES_S = "nrofRetries";
+	/**
+	 * Result cache directory -setting id ({@value} ). If set, the results of
+	 * the runs are stored to a {@link RunCache} in the directory and runs
+	 * whose results are already in the cache are not run again.
+	 */
+	public static final String CACHE_DIR_S = "cacheDir";
+
+	/** Default maximum heap size of a worker JVM ({@value} ) */
+	public static final int DEF_WORKER_MEMORY = 512;
+	/** Default number of retries of failed runs ({@value} ) */
+	public static final int DEF_NROF_RETRIES = 1;
+
+	/** Name of the manifest file in the sweep directory ({@value} ) */
+	public static final String MANIFEST_FILE = "manifest.txt";
+	/** Name of the settings file in a run's directory ({@value} ) */
+	public static final String RUN_SETTINGS_FILE = "settings.txt";
+	/** Name of the worker output file in a run's directory ({@value} ) */
+	public static final String RUN_OUTPUT_FILE = "output.txt";
+	/** Manifest status of a finished run ({@value} ) */
+	public static final String DONE = "done";
+	/** Manifest status of a run that failed all its attempts ({@value} ) */
+	public static final String FAILED = "failed";
+
+	private File sweepDir;
+	private List<String> confFiles;
+	/** names and values of the swept settings */
+	private List<String> names;
+	private List<String[]> values;
+	private int nrofRuns;
+
+	private int nrofWorkers;
+	private int workerMemory;
+	private int nrofRetries;
+	/** cache of the run results (or null if not used) */
+	private RunCache cache;
+
+	/** manifest status and values of the runs (by run name) */
+	private Map<String, String[]> manifest;
+	private PrintWriter manifestOut;
+	private int nrofFinished;
+	private int nrofFailed;
+
+	/**
+	 * Creates a sweep of the run array settings of the current settings
+	 *
+	 * @param sweepDir
+	 *            Directory for the sweep's results
+	 * @param confFiles
+	 *            The configuration files of the runs (in the order they are
+	 *            read)
+	 * @param nrofWorkers
+	 *            Number of worker JVMs or 0 to use the setting (or the
+	 *            default)
+	 */
+	public SweepRunner(String sweepDir, List<String> confFiles,
+			int nrofWorkers) {
+		this.sweepDir = new File(sweepDir);
+		this.confFiles = confFiles;
+		this.names = new ArrayList<String>();
+		this.values = new ArrayList<String[]>();
+
+		SortedMap<String, String[]> runArrays = Settings.getRunArraySettings();
+		this.nrofRuns = 1;
+		for (Map.Entry<String, String[]> e : runArrays.entrySet()) {
+			if (e.getKey().startsWith(SWEEP_NS + ".")) {
+				continue;
+			}
+			this.names.add(e.getKey());
+			this.values.add(e.getValue());
+			this.nrofRuns *= e.getValue().length;
+		}
+
+		Settings s = new Settings(SWEEP_NS);
+		this.workerMemory = DEF_WORKER_MEMORY;
+		if (s.contains(WORKER_MEMORY_S)) {
+			this.workerMemory = s.getInt(WORKER_MEMORY_S);
+		}
+		this.nrofRetries = DEF_NROF_RETRIES;
+		if (s.contains(NROF_RETRIES_S)) {
+			this.nrofRetries = s.getInt(NROF_RETRIES_S);
+		}
+		if (s.contains(CACHE_DIR_S)) {
+			this.cache = new RunCache(s.getSetting(CACHE_DIR_S));
+		}
+		if (nrofWorkers <= 0 && s.contains(NROF_WORKERS_S)) {
+			nrofWorkers = s.getInt(NROF_WORKERS_S);
+		}
+		if (nrofWorkers <= 0) {
+			nrofWorkers = getDefaultNrofWorkers();
+		}
+		if (this.workerMemory < 1 || this.nrofRetries < 0) {
+			throw new SettingsError("Invalid value for " + SWEEP_NS + "."
+					+ WORKER_MEMORY_S + " or " + SWEEP_NS + "."
+					+ NROF_RETRIES_S);
+		}
+		this.nrofWorkers = Math.max(1, Math.min(nrofWorkers, this.nrofRuns));
+
+		this.manifest = readManifest();
+	}
+
+	/**
+	 * Returns the number of processors, limited so that the workers' heaps
+	 * fit in three quarters of the physical memory
+	 */
+	private int getDefaultNrofWorkers() {
+		int workers = Runtime.getRuntime().availableProcessors();
+		long memory = getTotalMemorySize() / (1024 * 1024);
+		if (memory > 0) {
+			workers = (int) Math.min(workers, memory * 3 / 4 / workerMemory);
+		}
+		return Math.max(1, workers);
+	}
+
+	/**
+	 * Returns the size of the physical memory. The size is read as an
+	 * attribute of the operating system's management bean: the
+	 * "TotalMemorySize" attribute of the newer JVMs or the
+	 * "TotalPhysicalMemorySize" attribute of the older ones.
+	 *
+	 * @return the size of the physical memory in bytes or -1 if the JVM
+	 *         doesn't tell it
+	 */
+	private static long getTotalMemorySize() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (String attribute : new String[] { "TotalMemorySize",
+				"TotalPhysicalMemorySize" }) {
+			try {
+				Object size = server.getAttribute(os.getObjectName(),
+						attribute);
+				if (size instanceof Number) {
+					return ((Number) size).longValue();
+				}
+			} catch (JMException e) {
+				// no such attribute in this JVM; try the next one
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of runs in the sweep
+	 *
+	 * @return the number of runs in the sweep
+	 */
+	public int getNrofRuns() {
+		return this.nrofRuns;
+	}
+
+	/**
+	 * Returns the number of worker JVMs the sweep uses
+	 *
+	 * @return the number of worker JVMs
+	 */
+	public int getNrofWorkers() {
+		return this.nrofWorkers;
+	}
+
+	/**
+	 * Returns the values of the swept settings for a run. The last setting
+	 * (in the order of the setting names) changes between consecutive runs.
+	 *
+	 * @param run
+	 *            Index of the run
+	 * @return The values of the swept settings by setting name
+	 */
+	public Map<String, String> getRunValues(int run) {
+		Map<String, String> runValues = new LinkedHashMap<String, String>();
+		int rest = run;
+		for (int i = this.names.size() - 1; i >= 0; i--) {
+			String[] vals = this.values.get(i);
+			runValues.put(this.names.get(i), vals[rest % vals.length]);
+			rest /= vals.length;
+		}
+
+		Map<String, String> ordered = new LinkedHashMap<String, String>();
+		for (String name : this.names) {
+			ordered.put(name, runValues.get(name));
+		}
+		return ordered;
+	}
+
+	/**
+	 * Returns the name of a run (also the name of its directory)
+	 *
+	 * @param run
+	 *            Index of the run
+	 * @return The name of the run
+	 */
+	public String getRunName(int run) {
+		return String.format("run%04d", run);
+	}
+
+	/**
+	 * Returns the indexes of the runs that are not done according to the
+	 * manifest
+	 *
+	 * @return The indexes of the runs that should be run
+	 * @throws SettingsError
+	 *             if the manifest has a finished run with different setting
+	 *             values than this sweep has (a different sweep was run in
+	 *             the same directory)
+	 */
+	public List<Integer> getPendingRuns() {
+		List<Integer> pending = new ArrayList<Integer>();
+		for (int run = 0; run < this.nrofRuns; run++) {
+			String[] entry = this.manifest.get(getRunName(run));
+			if (entry == null || !entry[0].equals(DONE)) {
+				pending.add(run);
+			} else if (!entry[1].equals(valuesString(run))) {
+				throw new SettingsError("Sweep directory " + this.sweepDir
+						+ " has results of a different sweep (" + entry[1]
+						+ " for " + getRunName(run) + ")");
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Returns the values of a run as a string for the manifest
+	 */
+	private String valuesString(int run) {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> e : getRunValues(run).entrySet()) {
+			if (sb.length() > 0) {
+				sb.append('\t');
+			}
+			sb.append(e.getKey()).append('=').append(e.getValue());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Reads the manifest of the sweep directory (if any). Later lines of the
+	 * same run override earlier ones.
+	 */
+	private Map<String, String[]> readManifest() {
+		Map<String, String[]> entries = new HashMap<String, String[]>();
+		File file = new File(this.sweepDir, MANIFEST_FILE);
+		if (!file.exists()) {
+			return entries;
+		}
+
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] parts = line.split("\t", 3);
+					if (parts.length < 2) {
+						continue; // e.g. a partially written last line
+					}
+					String vals = (parts.length > 2 ? parts[2] : "");
+					entries.put(parts[0], new String[] { parts[1], vals });
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new SimError("Couldn't read sweep manifest " + file, e);
+		}
+		return entries;
+	}
+
+	/**
+	 * Returns all the settings of a run (the swept settings with the run's
+	 * values)
+	 *
+	 * @param run
+	 *            Index of the run
+	 * @return The settings of the run, sorted by the setting names
+	 */
+	public SortedMap<String, String> getRunSettings(int run) {
+		SortedMap<String, String> settings = new TreeMap<String, String>(
+				Settings.getResolvedSettings());
+		settings.putAll(getRunValues(run));
+		return settings;
+	}
+
+	/**
+	 * Records the result of a run to the manifest
+	 */
+	private synchronized void record(int run, boolean done, String note) {
+		String status = (done ? DONE : FAILED);
+		this.manifestOut.println(getRunName(run) + "\t" + status + "\t"
+				+ valuesString(run));
+		this.manifestOut.flush();
+
+		this.nrofFinished++;
+		if (!done) {
+			this.nrofFailed++;
+		}
+		print(getRunName(run) + " " + status + note + " (" + this.nrofFinished
+				+ " finished)");
+	}
+
+	/**
+	 * Runs all the runs that are not done yet and waits until they have
+	 * finished
+	 *
+	 * @return The number of runs that failed all their attempts
+	 */
+	public int run() {
+		List<Integer> pending = getPendingRuns();
+		print("Sweep of " + this.nrofRuns + " runs over " + this.names
+				+ ": " + pending.size() + " to run with " + this.nrofWorkers
+				+ " workers");
+
+		if (!this.sweepDir.isDirectory() && !this.sweepDir.mkdirs()) {
+			throw new SimError("Couldn't create sweep directory "
+					+ this.sweepDir);
+		}
+		try {
+			this.manifestOut = new PrintWriter(new FileWriter(new File(
+					this.sweepDir, MANIFEST_FILE), true));
+		} catch (IOException e) {
+			throw new SimError("Couldn't open sweep manifest", e);
+		}
+
+		ExecutorService workers = Executors.newFixedThreadPool(nrofWorkers);
+		for (final int run : pending) {
+			workers.execute(new Runnable() {
+				public void run() {
+					runRun(run);
+				}
+			});
+		}
+		workers.shutdown();
+
+		try {
+			while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+				// wait for the runs
+			}
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		} finally {
+			this.manifestOut.close();
+		}
+
+		return this.nrofFailed;
+	}
+
+	/**
+	 * Runs a run: copies its results from the cache or runs it in a worker
+	 * JVM (with retries) and stores the results to the cache
+	 *
+	 * @param run
+	 *            Index of the run
+	 */
+	private void runRun(int run) {
+		File runDir = new File(this.sweepDir, getRunName(run));
+		SortedMap<String, String> settings = null;
+		String key = null;
+
+		try {
+			writeRunSettings(run, runDir);
+			if (this.cache != null) {
+				settings = getRunSettings(run);
+				key = this.cache.getKey(settings);
+				if (this.cache.contains(key)) {
+					this.cache.get(key, runDir);
+					record(run, true, " (cached " + key.substring(0, 12) + ")");
+					return;
+				}
+			}
+		} catch (IOException e) {
+			print(getRunName(run) + " settings or cache failed: "
+					+ e.getMessage());
+		} catch (SimError e) {
+			print(getRunName(run) + " cache failed: " + e.getMessage());
+			key = null;
+		}
+
+		boolean done = false;
+		for (int i = 0; i <= this.nrofRetries && !done; i++) {
+			done = runWorker(run, runDir);
+		}
+
+		if (done && key != null) {
+			try {
+				this.cache.put(key, settings, runDir, RUN_SETTINGS_FILE,
+						RUN_OUTPUT_FILE);
+			} catch (IOException e) {
+				print(getRunName(run) + " couldn't be cached: "
+						+ e.getMessage());
+			}
+		}
+		record(run, done, "");
+	}
+
+	/**
+	 * Writes the settings file of a run to the run's directory
+	 */
+	private void writeRunSettings(int run, File runDir) throws IOException {
+		runDir.mkdirs();
+		PrintWriter out = new PrintWriter(new FileWriter(new File(runDir,
+				RUN_SETTINGS_FILE)));
+		try {
+			for (Map.Entry<String, String> e : getRunValues(run).entrySet()) {
+				out.println(e.getKey() + " = " + e.getValue());
+			}
+			out.println("Report.reportDir = "
+					+ runDir.getPath().replace(File.separatorChar, '/') + "/");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Runs a run in a worker JVM
+	 *
+	 * @param run
+	 *            Index of the run
+	 * @param runDir
+	 *            Directory of the run (with the settings file)
+	 * @return true if the worker finished successfully
+	 */
+	private boolean runWorker(int run, File runDir) {
+		File settingsFile = new File(runDir, RUN_SETTINGS_FILE);
+		File outputFile = new File(runDir, RUN_OUTPUT_FILE);
+
+		try {
+			List<String> command = new ArrayList<String>();
+			command.add(System.getProperty("java.home") + File.separator
+					+ "bin" + File.separator + "java");
+			command.add("-Xmx" + this.workerMemory + "M");
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(DTNSim.class.getName());
+			command.add(DTNSim.BATCH_MODE_FLAG);
+			command.add("1");
+			command.addAll(this.confFiles);
+			command.add(settingsFile.getPath());
+
+			ProcessBuilder pb = new ProcessBuilder(command);
+			pb.redirectErrorStream(true);
+			pb.redirectOutput(ProcessBuilder.Redirect.appendTo(outputFile));
+			Process p = pb.start();
+			return p.waitFor() == 0;
+		} catch (IOException e) {
+			print(getRunName(run) + " couldn't be started: " + e.getMessage());
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Prints text to stdout
+	 */
+	private static void print(String txt) {
+		System.out.println(txt);
+	}
+}
@@ -0,0 +1,483 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import input.ExternalEvent;
+import input.MessageCreateEvent;
+import input.MessageEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes the update intervals (ticks) of a subset of a {@link World}'s
+ * hosts so that the hosts are moved, connected and updated in the same
+ * order as in a sequential run with {@link World#PARALLEL_MOVEMENT_S}. Used
+ * by the engines that split the hosts between logical processes
+ * ({@link TimeWarpEngine}) or processes ({@link DistributedWorker}). The
+ * listener events are recorded to a {@link TimeWarpRecorder.Sink} with keys
+ * that give their order in a sequential run. The external events and update
+ * orders of the ticks are read in tick order and kept until they are
+ * forgotten with {@link #forget(int)}.
+ */
+class TickRunner {
+	/** the world whose hosts are updated */
+	private World world;
+	private List<DTNHost> hosts;
+	/** the largest range of the hosts */
+	private double maxRange;
+	/** size of the connectivity grid cells (0 with connection algorithm 1) */
+	private int cellSize;
+	private double interval;
+	/** the world's update order (null if the order is not randomized) */
+	private UpdateOrder updateOrder;
+
+	/** grid cell of each host (indexed by address) */
+	int[] cellRows;
+	int[] cellCols;
+	/**
+	 * the tick when each host entered its grid cell (-1 for the cell at the
+	 * start) and the host's sequence number among the hosts that entered on
+	 * that tick; give the order of the cell's host list (indexed by address)
+	 */
+	int[] enterTicks;
+	int[] enterSeqs;
+	/** the latest tick when an external event accessed each host */
+	int[] touchedTicks;
+
+	/* the rest of the fields are guarded by this runner's lock */
+	/** end times of the ticks (tick 0 is the start time) */
+	private double[] tickTimes;
+	private int nrofTickTimes;
+	/** the latest tick whose external events have been read */
+	private int fedTick;
+	private Map<Integer, Batch[]> batches;
+	/** the latest tick whose update order has been drawn */
+	private int orderedTick;
+	private Map<Integer, int[]> orders;
+
+	/**
+	 * Creates a new runner
+	 *
+	 * @param world
+	 *            The world whose hosts are updated
+	 * @param scen
+	 *            The scenario of the world
+	 * @param cellSize
+	 *            Size of the connectivity grid cells or 0 if the hosts are
+	 *            connected like with connection algorithm 1
+	 * @param updateOrder
+	 *            The world's update order or null if it's not randomized
+	 */
+	TickRunner(World world, SimScenario scen, int cellSize,
+			UpdateOrder updateOrder) {
+		this.world = world;
+		this.hosts = scen.getHosts();
+		this.maxRange = scen.getMaxHostRange();
+		this.cellSize = cellSize;
+		this.interval = scen.getUpdateInterval();
+		if (updateOrder != null) {
+			this.updateOrder = copy(updateOrder);
+		}
+
+		int n = this.hosts.size();
+		this.cellRows = new int[n];
+		this.cellCols = new int[n];
+		this.enterTicks = new int[n];
+		this.enterSeqs = new int[n];
+		this.touchedTicks = new int[n];
+		Arrays.fill(this.touchedTicks, -1);
+
+		this.batches = new HashMap<Integer, Batch[]>();
+		this.orders = new HashMap<Integer, int[]>();
+		this.tickTimes = new double[1024];
+	}
+
+	/**
+	 * Returns a copy of an update order
+	 */
+	private static UpdateOrder copy(UpdateOrder order) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			order.writeState(out);
+			out.close();
+			UpdateOrder copy = new UpdateOrder(order.size());
+			copy.readState(new DataInputStream(new ByteArrayInputStream(
+					bytes.toByteArray())));
+			return copy;
+		} catch (IOException e) {
+			throw new SimError("Couldn't copy the update order", e);
+		}
+	}
+
+	/**
+	 * Starts the ticks at the current simulation time and takes the hosts'
+	 * grid cells from the connectivity grid
+	 */
+	void start() {
+		synchronized (this) {
+			this.tickTimes[0] = SimClock.getTime();
+			this.nrofTickTimes = 1;
+		}
+		if (this.cellSize == 0) {
+			return;
+		}
+		for (int a = 0, n = this.hosts.size(); a < n; a++) {
+			DTNHost host = this.hosts.get(a);
+			/* the hosts that were in the cells at the start come first */
+			setCell(a, -1, host.getCurCell().getNodes().indexOf(host));
+		}
+	}
+
+	/**
+	 * Executes the first half of a tick for some hosts: processes the
+	 * external events of the tick whose sender is one of the hosts, updates
+	 * the hosts the events accessed and moves the hosts
+	 *
+	 * @param tick
+	 *            The tick
+	 * @param members
+	 *            Addresses of the hosts
+	 * @param isMember
+	 *            Which hosts are executed (indexed by address)
+	 * @param sink
+	 *            Where the listener events are recorded
+	 * @param clock
+	 *            The clock of the current thread
+	 */
+	void firstHalf(int tick, int[] members, boolean[] isMember,
+			TimeWarpRecorder.Sink sink, SimClock clock) {
+		Batch[] tickBatches = getBatches(tick);
+		double time = getTickTime(tick - 1);
+
+		for (int b = 0; b < tickBatches.length; b++) {
+			Batch batch = tickBatches[b];
+			time = batch.time;
+			clock.setTime(time);
+			for (int i = 0, n = batch.events.size(); i < n; i++) {
+				if (isMember[batch.froms[i]]) {
+					sink.setKey(0, b, 0, i, 0);
+					batch.events.get(i).processEvent(this.world);
+				}
+			}
+			for (int j = 0; j < batch.touched.length; j++) {
+				int a = batch.touched[j];
+				if (isMember[a]) {
+					sink.setKey(0, b, 1, j, 0);
+					this.hosts.get(a).update();
+					this.touchedTicks[a] = tick;
+				}
+			}
+		}
+
+		sink.setKey(0, tickBatches.length, 0, 0, 0);
+		clock.setTime(time);
+		for (int a : members) {
+			this.hosts.get(a).move(this.interval);
+			updateCell(a, tick);
+		}
+		clock.setTime(getTickTime(tick));
+	}
+
+	/**
+	 * Executes the second half of a tick for some hosts: connects the hosts
+	 * that are within range of each other and updates the hosts. The clock
+	 * must be at the end of the tick.
+	 *
+	 * @param tick
+	 *            The tick
+	 * @param members
+	 *            Addresses of the hosts
+	 * @param isMember
+	 *            Which hosts are executed (indexed by address)
+	 * @param sink
+	 *            Where the listener events are recorded
+	 */
+	void secondHalf(int tick, int[] members, boolean[] isMember,
+			TimeWarpRecorder.Sink sink) {
+		List<Candidate> candidates = findCandidates(members);
+		Collections.sort(candidates);
+		for (int i = 0, n = candidates.size(); i < n; i++) {
+			Candidate c = candidates.get(i);
+			sink.setKey(1, c.a, c.rank, c.enterTick, c.enterSeq);
+			this.hosts.get(c.a).connect(this.hosts.get(c.b));
+		}
+
+		int[] order = getOrder(tick);
+		for (int pos = 0; pos < order.length; pos++) {
+			int a = order[pos];
+			if (isMember[a]) {
+				sink.setKey(2, pos, 0, 0, 0);
+				this.hosts.get(a).update();
+			}
+		}
+	}
+
+	/**
+	 * Finds the pairs of hosts that may be within range of each other, keyed
+	 * by the order the world's connection algorithm would try to connect them
+	 */
+	private List<Candidate> findCandidates(int[] members) {
+		Integer[] sorted = new Integer[members.length];
+		for (int i = 0; i < members.length; i++) {
+			sorted[i] = members[i];
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(hosts.get(a).getLocation().getX(),
+						hosts.get(b).getLocation().getX());
+			}
+		});
+
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (int i = 0; i < sorted.length; i++) {
+			Coord c1 = this.hosts.get(sorted[i]).getLocation();
+			for (int j = i + 1; j < sorted.length; j++) {
+				Coord c2 = this.hosts.get(sorted[j]).getLocation();
+				if (c2.getX() - c1.getX() > this.maxRange) {
+					break;
+				}
+				if (Math.abs(c2.getY() - c1.getY()) > this.maxRange) {
+					continue;
+				}
+				int a = Math.min(sorted[i], sorted[j]);
+				int b = Math.max(sorted[i], sorted[j]);
+				Candidate c = new Candidate();
+				c.a = a;
+				c.b = b;
+				if (this.cellSize > 0) {
+					int dRow = this.cellRows[b] - this.cellRows[a];
+					int dCol = this.cellCols[b] - this.cellCols[a];
+					if (Math.abs(dRow) > 1 || Math.abs(dCol) > 1) {
+						continue; // not in the neighbor cells
+					}
+					c.rank = (dRow + 1) * 3 + (dCol + 1);
+					c.enterTick = this.enterTicks[b];
+					c.enterSeq = this.enterSeqs[b];
+				} else {
+					c.enterSeq = b;
+				}
+				candidates.add(c);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Updates the grid cell of a host after it has moved on a tick
+	 */
+	private void updateCell(int a, int tick) {
+		if (this.cellSize == 0) {
+			return;
+		}
+		Coord c = this.hosts.get(a).getLocation();
+		int row = (int) (c.getY() / this.cellSize) + 1;
+		int col = (int) (c.getX() / this.cellSize) + 1;
+		if (row != this.cellRows[a] || col != this.cellCols[a]) {
+			this.cellRows[a] = row;
+			this.cellCols[a] = col;
+			this.enterTicks[a] = tick;
+			this.enterSeqs[a] = a; // hosts are moved in address order
+		}
+	}
+
+	/**
+	 * Sets the grid cell of a host from its location and the order stamp of
+	 * the host in the cell (see {@link #enterTicks})
+	 *
+	 * @param a
+	 *            Address of the host
+	 * @param enterTick
+	 *            The tick when the host entered the cell
+	 * @param enterSeq
+	 *            The sequence number of the host among the hosts that
+	 *            entered on that tick
+	 */
+	void setCell(int a, int enterTick, int enterSeq) {
+		if (this.cellSize == 0) {
+			return;
+		}
+		Coord c = this.hosts.get(a).getLocation();
+		this.cellRows[a] = (int) (c.getY() / this.cellSize) + 1;
+		this.cellCols[a] = (int) (c.getX() / this.cellSize) + 1;
+		this.enterTicks[a] = enterTick;
+		this.enterSeqs[a] = enterSeq;
+	}
+
+	/**
+	 * Returns which hosts are members (indexed by address)
+	 *
+	 * @param members
+	 *            Addresses of the members
+	 * @return which hosts are members
+	 */
+	boolean[] isMember(int[] members) {
+		boolean[] isMember = new boolean[this.hosts.size()];
+		for (int a : members) {
+			isMember[a] = true;
+		}
+		return isMember;
+	}
+
+	/**
+	 * Returns the end time of a tick
+	 *
+	 * @param tick
+	 *            The tick
+	 * @return the end time of the tick
+	 */
+	synchronized double getTickTime(int tick) {
+		while (this.nrofTickTimes <= tick) {
+			if (this.nrofTickTimes == this.tickTimes.length) {
+				this.tickTimes = Arrays.copyOf(this.tickTimes,
+						this.tickTimes.length * 2);
+			}
+			this.tickTimes[this.nrofTickTimes] =
+				this.tickTimes[this.nrofTickTimes - 1] + this.interval;
+			this.nrofTickTimes++;
+		}
+		return this.tickTimes[tick];
+	}
+
+	/**
+	 * Forgets the external events and the update order of a tick that
+	 * won't be executed again
+	 *
+	 * @param tick
+	 *            The tick
+	 */
+	synchronized void forget(int tick) {
+		this.batches.remove(tick);
+		this.orders.remove(tick);
+	}
+
+	/**
+	 * Returns the batches of external events of a tick. The events are read
+	 * from the world's event queues in tick order.
+	 */
+	private synchronized Batch[] getBatches(int tick) {
+		while (this.fedTick < tick) {
+			this.fedTick++;
+			double end = getTickTime(this.fedTick);
+			List<Batch> list = new ArrayList<Batch>();
+			while (this.world.nextEventTime() <= end) {
+				list.add(readBatch(this.world.nextEventTime()));
+			}
+			this.batches.put(this.fedTick, list.toArray(new Batch[0]));
+		}
+		return this.batches.get(tick);
+	}
+
+	/**
+	 * Reads the external events that happen at the given time
+	 */
+	private Batch readBatch(double time) {
+		Batch batch = new Batch();
+		batch.time = time;
+		batch.events = new ArrayList<ExternalEvent>();
+		List<Integer> froms = new ArrayList<Integer>();
+		List<Integer> touched = new ArrayList<Integer>();
+		do {
+			ExternalEvent ee = this.world.nextEvent();
+			if (!(ee instanceof MessageCreateEvent)) {
+				throw new SimError("Only message creation events can be "
+						+ "used when the hosts are split, not " + ee);
+			}
+			MessageEvent me = (MessageEvent) ee;
+			batch.events.add(ee);
+			froms.add(me.getFromAddr());
+			/* the event accesses the receiver first */
+			if (!touched.contains(me.getToAddr())) {
+				touched.add(me.getToAddr());
+			}
+			if (!touched.contains(me.getFromAddr())) {
+				touched.add(me.getFromAddr());
+			}
+		} while (this.world.nextEventTime() == time);
+
+		batch.froms = toArray(froms);
+		batch.touched = toArray(touched);
+		return batch;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Returns the update order of a tick. The orders are drawn in tick order.
+	 */
+	private synchronized int[] getOrder(int tick) {
+		while (this.orderedTick < tick) {
+			this.orderedTick++;
+			int[] order = new int[this.hosts.size()];
+			if (this.updateOrder != null) {
+				this.updateOrder.shuffle((int) Math.round(getTickTime(
+						this.orderedTick)));
+			}
+			for (int i = 0; i < order.length; i++) {
+				order[i] = (this.updateOrder != null ? this.updateOrder.get(i)
+						: i);
+			}
+			this.orders.put(this.orderedTick, order);
+		}
+		return this.orders.get(tick);
+	}
+
+	/**
+	 * External events of a tick that happen at the same time
+	 */
+	private static class Batch {
+		private double time;
+		private List<ExternalEvent> events;
+		/** sender of each event */
+		private int[] froms;
+		/** the hosts the events access, in the order they access them */
+		private int[] touched;
+	}
+
+	/**
+	 * A pair of hosts to try to connect, ordered like the connection
+	 * algorithm tries the pairs
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+		/** the host that initiates the connection (lower address) */
+		private int a;
+		private int b;
+		/** position of b's cell among a's neighbor cells */
+		private int rank;
+		private int enterTick;
+		private int enterSeq;
+
+		public int compareTo(Candidate c) {
+			if (this.a != c.a) {
+				return (this.a < c.a ? -1 : 1);
+			}
+			if (this.rank != c.rank) {
+				return (this.rank < c.rank ? -1 : 1);
+			}
+			if (this.enterTick != c.enterTick) {
+				return (this.enterTick < c.enterTick ? -1 : 1);
+			}
+			return (this.enterSeq < c.enterSeq ? -1
+					: (this.enterSeq == c.enterSeq ? 0 : 1));
+		}
+	}
+}
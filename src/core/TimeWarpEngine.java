@@ -0,0 +1,1019 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <P>
+ * Optimistic (Time Warp) parallel execution of the update intervals (ticks)
+ * of a {@link World} (see {@link World#TIME_WARP_S}). The world is split into
+ * vertical strips of equal width and every strip is a logical process (LP,
+ * see {@link TimeWarpProcess}) that owns the hosts located in it. The LPs run
+ * their hosts' ticks in threads of their own, ahead of each other and of the
+ * committed time, and the simulation thread coordinates them.
+ * </P>
+ * <P>
+ * A tick of an LP has two halves. In the first half the external events
+ * whose sender the LP owns are processed, the hosts the events accessed are
+ * updated and the hosts are moved. After that the LP publishes its halo: a
+ * timestamped boundary message with the locations of its hosts that are
+ * within the largest range of another strip or outside their own strip. If
+ * the LP's hosts may connect to the hosts of another LP on that tick
+ * (according to the halos that have been published for it), the LPs are
+ * coupled and the LP waits. Otherwise it runs the second half: connects its
+ * hosts that are within range and updates them in the world's update order.
+ * The changed state of the hosts is saved at the end of every tick (see
+ * {@link TimeWarpStateLog}).
+ * </P>
+ * <P>
+ * If an LP publishes a halo that couples it with an LP that has already
+ * executed the tick, the boundary message is a straggler and the other LP is
+ * rolled back to the state before the tick: its saved states, halos and
+ * recorded events after that are dropped. The simulation thread commits one
+ * tick per {@link #update()}: it waits for the halos of the next tick from
+ * all the LPs, executes the second half of the coupled LPs jointly, moves
+ * their hosts to the LPs of their new locations and waits until all the LPs
+ * have executed the tick. The global virtual time (GVT) is then advanced to
+ * the tick, the saved states older than it are fossil collected and the
+ * listener events of the tick (see {@link TimeWarpRecorder}) are given to
+ * the listeners in the order they happen in a sequential run. LPs whose
+ * hosts stay connected to the hosts of other LPs are executed jointly by the
+ * simulation thread until the connections are gone.
+ * </P>
+ * <P>
+ * The results are the same as with {@link World#PARALLEL_MOVEMENT_S}
+ * (without Time Warp): the external events, movement, connections and
+ * updates of every tick happen in the same order. LPs can run ahead of the
+ * GVT by at most {@link World#TIME_WARP_WINDOW_S} ticks.
+ * </P>
+ */
+public class TimeWarpEngine {
+	/** the world whose hosts are updated */
+	private World world;
+	private List<DTNHost> hosts;
+	private int nrofLps;
+	/** how many ticks the LPs can run ahead of the GVT */
+	private int window;
+	private double stripWidth;
+	/** the largest range of the hosts */
+	private double maxRange;
+	private double endTime;
+	/** executes the ticks of the LPs' hosts */
+	private TickRunner runner;
+
+	private TimeWarpRecorder recorder;
+	private TimeWarpStateLog stateLog;
+	/** the recording sink of the simulation thread */
+	private TimeWarpRecorder.Sink sink;
+	/** the scenario's listener lists (that all the hosts use) */
+	private List<ConnectionListener> cListeners;
+	private List<MessageListener> mListeners;
+	/** copies of the original listener lists (the events are replayed to) */
+	private List<ConnectionListener> originalCListeners;
+	private List<MessageListener> originalMListeners;
+	private TimeWarpProcess[] lps;
+
+	/** the LP that owns each host (indexed by address) */
+	int[] owners;
+
+	/* the rest of the fields are guarded by this engine's lock */
+	/** the global virtual time (the latest committed tick) */
+	int gvt;
+	/** the last tick of the simulation */
+	int maxTick;
+	private boolean started;
+	private boolean stopped;
+	private Throwable failure;
+	/** the published halos of the ticks (indexed by LP) */
+	private Map<Integer, Halo[]> halos;
+
+	private long nrofCommittedTicks;
+	private long nrofExecutedTicks;
+	private long nrofRollbacks;
+	private long nrofRolledBackTicks;
+	private long nrofRolledBackEvents;
+	private int maxRollbackDistance;
+	private long nrofStragglers;
+	private long nrofJointTicks;
+	private long nrofCoupledLpTicks;
+	private long nrofFalseAlarms;
+	private long nrofCancelledHalos;
+	private long nrofCommittedEvents;
+	private long nrofMigrations;
+
+	/**
+	 * Creates a new engine. The engine starts on the first
+	 * {@link #update()}.
+	 *
+	 * @param world
+	 *            The world whose hosts are updated
+	 * @param scen
+	 *            The scenario of the world
+	 * @param nrofLps
+	 *            Number of logical processes (strips)
+	 * @param window
+	 *            How many ticks the LPs can run ahead of the GVT
+	 * @param cellSize
+	 *            Size of the connectivity grid cells or 0 if the hosts are
+	 *            connected like with connection algorithm 1
+	 * @param updateOrder
+	 *            The world's update order or null if it's not randomized
+	 */
+	public TimeWarpEngine(World world, SimScenario scen, int nrofLps,
+			int window, int cellSize, UpdateOrder updateOrder) {
+		this.world = world;
+		this.hosts = scen.getHosts();
+		this.nrofLps = nrofLps;
+		this.window = window;
+		this.stripWidth = scen.getWorldSizeX() / (double) nrofLps;
+		this.maxRange = scen.getMaxHostRange();
+		this.endTime = scen.getEndTime();
+		this.cListeners = scen.getConnectionListeners();
+		this.mListeners = scen.getMessageListeners();
+		this.runner = new TickRunner(world, scen, cellSize, updateOrder);
+		this.owners = new int[this.hosts.size()];
+
+		this.recorder = new TimeWarpRecorder(this.hosts);
+		this.stateLog = new TimeWarpStateLog(this.hosts, this.runner);
+		this.sink = new TimeWarpRecorder.Sink();
+		this.halos = new HashMap<Integer, Halo[]>();
+
+		SimulationContext.current().setState(TimeWarpEngine.class, this);
+	}
+
+	/**
+	 * Returns the engine of the current simulation run
+	 *
+	 * @return the engine or null if Time Warp is not used
+	 */
+	public static TimeWarpEngine getCurrent() {
+		return (TimeWarpEngine) SimulationContext.current().getState(
+				TimeWarpEngine.class);
+	}
+
+	/**
+	 * Starts the LPs: assigns the hosts to the LPs of their locations, saves
+	 * the initial state and starts recording the listener events
+	 */
+	private void start() {
+		SimulationContext context = SimulationContext.current();
+		this.runner.start();
+		this.maxTick = 0;
+		while (getTickTime(this.maxTick) < this.endTime) {
+			this.maxTick++;
+		}
+
+		for (int a = 0, n = this.hosts.size(); a < n; a++) {
+			DTNHost host = this.hosts.get(a);
+			if (host.isMovementRecorded()) {
+				throw new SimError("Movement of " + host + " can't be "
+						+ "recorded with Time Warp");
+			}
+			this.owners[a] = lpOf(host.getLocation().getX());
+		}
+
+		this.lps = new TimeWarpProcess[this.nrofLps];
+		for (int p = 0; p < this.nrofLps; p++) {
+			this.lps[p] = new TimeWarpProcess(this, p,
+					new SimulationContext(context));
+			this.lps[p].setMembers(membersOf(p));
+			this.stateLog.save(0, this.lps[p].members, this.lps[p].isMember,
+					true);
+		}
+
+		this.originalCListeners = new ArrayList<ConnectionListener>(
+				this.cListeners);
+		this.originalMListeners = new ArrayList<MessageListener>(
+				this.mListeners);
+		this.cListeners.clear();
+		this.cListeners.add(this.recorder);
+		this.mListeners.clear();
+		this.mListeners.add(this.recorder);
+		this.recorder.setSink(this.sink);
+
+		this.started = true;
+		for (TimeWarpProcess lp : this.lps) {
+			lp.start();
+		}
+	}
+
+	/**
+	 * Stops the LPs and gives the scenario's listeners back to the hosts
+	 */
+	public void stop() {
+		synchronized (this) {
+			this.stopped = true;
+			notifyAll();
+		}
+		if (!this.started) {
+			return;
+		}
+		this.started = false;
+		for (TimeWarpProcess lp : this.lps) {
+			try {
+				lp.join();
+			} catch (InterruptedException e) {
+				throw new SimError("Interrupted while stopping Time Warp");
+			}
+		}
+		this.cListeners.clear();
+		this.cListeners.addAll(this.originalCListeners);
+		this.mListeners.clear();
+		this.mListeners.addAll(this.originalMListeners);
+		this.recorder.setSink(null);
+	}
+
+	/**
+	 * Stops the engine because an LP failed. The failure is thrown from the
+	 * simulation thread.
+	 *
+	 * @param cause
+	 *            The failure
+	 */
+	synchronized void fail(Throwable cause) {
+		if (this.failure == null) {
+			this.failure = cause;
+		}
+		this.stopped = true;
+		notifyAll();
+	}
+
+	/**
+	 * Waits for a change in the LPs' state. The caller must hold the lock.
+	 *
+	 * @return false if the engine has been stopped
+	 */
+	boolean waitForChange() {
+		if (this.stopped) {
+			return false;
+		}
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			throw new SimError("Interrupted while waiting for Time Warp");
+		}
+		return !this.stopped;
+	}
+
+	/**
+	 * Waits for a change in the LPs' state in the simulation thread and
+	 * throws the failure of an LP if the engine has been stopped
+	 */
+	private void waitOrFail() {
+		if (!waitForChange()) {
+			throwFailure();
+		}
+	}
+
+	/**
+	 * Throws the failure of an LP or an error if the engine was stopped
+	 */
+	private void throwFailure() {
+		if (this.failure instanceof Error) {
+			throw (Error) this.failure;
+		} else if (this.failure instanceof RuntimeException) {
+			throw (RuntimeException) this.failure;
+		} else if (this.failure != null) {
+			throw new SimError("Time Warp process failed: " + this.failure);
+		}
+		throw new SimError("Time Warp has been stopped");
+	}
+
+	/**
+	 * Is the engine stopped. The caller must hold the lock.
+	 *
+	 * @return true if the LPs should stop
+	 */
+	boolean isStopped() {
+		return this.stopped;
+	}
+
+	/**
+	 * Commits the next tick and sets the simulation clock to its end
+	 */
+	public void update() {
+		if (!this.started) {
+			if (this.stopped) {
+				throw new SimError("Time Warp has been stopped");
+			}
+			start();
+		}
+
+		int t;
+		synchronized (this) {
+			if (this.stopped) {
+				throwFailure();
+			}
+			t = this.gvt + 1;
+			if (t > this.maxTick) { // the simulation is run longer
+				this.maxTick = t;
+				notifyAll();
+			}
+		}
+
+		List<TimeWarpRecorder.Event> committed = commit(t);
+		Collections.sort(committed);
+		TimeWarpRecorder.replay(committed, this.originalCListeners,
+				this.originalMListeners);
+		SimClock.getInstance().setTime(getTickTime(t));
+	}
+
+	/**
+	 * Commits a tick: executes the jointly executed and coupled LPs' parts
+	 * of the tick and waits until all the LPs have executed it
+	 *
+	 * @param t
+	 *            The tick (the one after the GVT)
+	 * @return The listener events of the tick
+	 */
+	private List<TimeWarpRecorder.Event> commit(int t) {
+		SimClock clock = SimClock.getInstance();
+		List<TimeWarpRecorder.Event> events =
+			new ArrayList<TimeWarpRecorder.Event>();
+		boolean[] joined = new boolean[this.nrofLps];
+		int nrofJoined = 0;
+		synchronized (this) {
+			for (int p = 0; p < this.nrofLps; p++) {
+				if (this.lps[p].state == TimeWarpProcess.JOINED) {
+					joined[p] = true;
+					nrofJoined++;
+				}
+			}
+		}
+
+		this.sink.setEvents(events);
+		if (nrofJoined > 0) {
+			int[] members = membersOf(joined);
+			this.runner.firstHalf(t, members, isMember(members), this.sink,
+					clock);
+			synchronized (this) {
+				for (int p = 0; p < this.nrofLps; p++) {
+					if (joined[p]) {
+						publishHalo(this.lps[p], t);
+					}
+				}
+				notifyAll();
+			}
+		}
+
+		/* find the coupled LPs and wait until they have stopped at t */
+		boolean[] coupled = new boolean[this.nrofLps];
+		int nrofCoupled = 0;
+		synchronized (this) {
+			Halo[] tickHalos = this.halos.get(t);
+			while (!isComplete(tickHalos)) {
+				waitOrFail();
+				tickHalos = this.halos.get(t);
+			}
+			boolean[][] pairs = findCoupled(tickHalos, this.nrofLps,
+					this.maxRange);
+			for (int p = 0; p < this.nrofLps; p++) {
+				coupled[p] = joined[p];
+				for (int q = 0; q < this.nrofLps; q++) {
+					coupled[p] |= pairs[p][q];
+				}
+				if (coupled[p]) {
+					nrofCoupled++;
+				}
+			}
+
+			while (!haltCoupled(t, coupled, joined)) {
+				notifyAll();
+				waitOrFail();
+			}
+			for (int p = 0; p < this.nrofLps; p++) {
+				if (coupled[p]) {
+					this.lps[p].state = TimeWarpProcess.JOINED;
+				}
+			}
+		}
+
+		if (nrofCoupled > 0) {
+			int[] members = membersOf(coupled);
+			clock.setTime(getTickTime(t));
+			this.runner.secondHalf(t, members, isMember(members), this.sink);
+			finishJoint(t, coupled, members);
+		}
+		this.sink.setEvents(null);
+
+		synchronized (this) {
+			while (!isExecuted(t, coupled)) {
+				waitOrFail();
+			}
+			for (int p = 0; p < this.nrofLps; p++) {
+				List<TimeWarpRecorder.Event> lpEvents = this.lps[p].events
+						.remove(t);
+				if (lpEvents != null) {
+					events.addAll(lpEvents);
+				}
+			}
+
+			this.gvt = t;
+			this.halos.remove(t);
+			this.runner.forget(t);
+			this.nrofCommittedTicks++;
+			this.nrofCommittedEvents += events.size();
+			if (nrofCoupled > 0) {
+				this.nrofJointTicks++;
+				this.nrofCoupledLpTicks += nrofCoupled;
+			}
+			notifyAll();
+		}
+		return events;
+	}
+
+	/**
+	 * Asks the coupled LPs to stop at a tick before its second half. The
+	 * caller must hold the lock.
+	 *
+	 * @return true if all the coupled LPs have stopped at the tick
+	 */
+	private boolean haltCoupled(int t, boolean[] coupled, boolean[] joined) {
+		boolean ready = true;
+		for (int p = 0; p < this.nrofLps; p++) {
+			TimeWarpProcess lp = this.lps[p];
+			if (!coupled[p] || joined[p] || lp.isWaitingAt(t)) {
+				continue;
+			}
+			ready = false;
+			if (lp.haltAt > t) {
+				lp.haltAt = t;
+			}
+		}
+		return ready;
+	}
+
+	/**
+	 * Checks if all the LPs have executed a tick and releases the LPs that
+	 * stopped at the tick because of a coupling that no longer exists. The
+	 * caller must hold the lock.
+	 *
+	 * @return true if all the LPs have executed the tick
+	 */
+	private boolean isExecuted(int t, boolean[] coupled) {
+		boolean ready = true;
+		for (int p = 0; p < this.nrofLps; p++) {
+			TimeWarpProcess lp = this.lps[p];
+			if (!coupled[p] && lp.isWaitingAt(t)) {
+				lp.released = true; // false alarm
+				this.nrofFalseAlarms++;
+				notifyAll();
+			}
+			if (lp.lvt < t || lp.haltAt <= t) {
+				ready = false;
+			}
+		}
+		return ready;
+	}
+
+	/**
+	 * Finishes a jointly executed tick: moves the hosts to the LPs of their
+	 * locations, saves their state and decides which LPs are still executed
+	 * jointly (the ones whose hosts are connected to the hosts of other LPs)
+	 *
+	 * @param t
+	 *            The tick
+	 * @param coupled
+	 *            Which LPs executed the tick jointly
+	 * @param members
+	 *            The hosts of the coupled LPs
+	 */
+	private void finishJoint(int t, boolean[] coupled, int[] members) {
+		int nrofMigrations = 0;
+		for (int a : members) {
+			int lp = lpOf(this.hosts.get(a).getLocation().getX());
+			if (!coupled[lp]) {
+				throw new SimError("Host " + this.hosts.get(a) + " moved to "
+						+ "an LP that wasn't coupled");
+			}
+			if (lp != this.owners[a]) {
+				this.owners[a] = lp;
+				nrofMigrations++;
+			}
+		}
+
+		boolean[] stayJoined = new boolean[this.nrofLps];
+		for (int a : members) {
+			for (Connection con : this.hosts.get(a).getConnections()) {
+				int b = con.getOtherNode(this.hosts.get(a)).getAddress();
+				if (this.owners[b] != this.owners[a]) {
+					stayJoined[this.owners[a]] = true;
+				}
+			}
+		}
+
+		for (int p = 0; p < this.nrofLps; p++) {
+			if (coupled[p]) {
+				this.lps[p].setMembers(membersOf(p));
+				if (!stayJoined[p]) {
+					/* only the LP's own snapshots are restored later */
+					this.stateLog.save(t, this.lps[p].members,
+							this.lps[p].isMember, true);
+				}
+			}
+		}
+		int[] joint = membersOf(stayJoined);
+		this.stateLog.save(t, joint, isMember(joint), false);
+		this.stateLog.fossilCollect(joint, t);
+
+		synchronized (this) {
+			this.nrofMigrations += nrofMigrations;
+			for (int p = 0; p < this.nrofLps; p++) {
+				if (coupled[p]) {
+					this.lps[p].finishJoint(t, stayJoined[p]);
+				}
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns true if the halos of all the LPs are present
+	 */
+	private boolean isComplete(Halo[] tickHalos) {
+		if (tickHalos == null) {
+			return false;
+		}
+		for (Halo h : tickHalos) {
+			if (h == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Publishes the halo of an LP for a tick and rolls back the LPs that are
+	 * coupled with it and have already executed the tick (stragglers). The
+	 * caller must hold the lock.
+	 *
+	 * @param lp
+	 *            The LP
+	 * @param tick
+	 *            The tick whose first half the LP has executed
+	 * @return true if the LP is coupled with some other LP
+	 */
+	boolean publishHalo(TimeWarpProcess lp, int tick) {
+		Halo[] tickHalos = this.halos.get(tick);
+		if (tickHalos == null) {
+			tickHalos = new Halo[this.nrofLps];
+			this.halos.put(tick, tickHalos);
+		}
+		tickHalos[lp.index] = createHalo(lp.index, lp.members);
+
+		boolean[][] pairs = findCoupled(tickHalos, this.nrofLps,
+				this.maxRange);
+		boolean isCoupled = false;
+		for (int q = 0; q < this.nrofLps; q++) {
+			if (!pairs[lp.index][q]) {
+				continue;
+			}
+			isCoupled = true;
+			TimeWarpProcess other = this.lps[q];
+			if (tickHalos[q] != null && other.hasPassed(tick)) {
+				other.haltAt = tick;
+				this.nrofStragglers++;
+			}
+		}
+		return isCoupled;
+	}
+
+	/**
+	 * Prepares an LP for a rollback: cancels its halos and drops its
+	 * recorded events after the target tick. The caller must hold the lock.
+	 * The LP restores its hosts' state after this.
+	 *
+	 * @param lp
+	 *            The LP
+	 * @param target
+	 *            The tick whose state is restored
+	 * @param from
+	 *            The latest tick the LP has executed (or half executed)
+	 */
+	void rollback(TimeWarpProcess lp, int target, int from) {
+		if (target < this.gvt) {
+			throw new SimError("Rollback of LP " + lp.index + " to tick "
+					+ target + " before the GVT " + this.gvt);
+		}
+		for (Map.Entry<Integer, Halo[]> e : this.halos.entrySet()) {
+			if (e.getKey() > target && e.getValue()[lp.index] != null) {
+				e.getValue()[lp.index] = null;
+				this.nrofCancelledHalos++;
+			}
+		}
+		Iterator<Map.Entry<Integer, List<TimeWarpRecorder.Event>>> i = lp.events
+				.entrySet().iterator();
+		while (i.hasNext()) {
+			Map.Entry<Integer, List<TimeWarpRecorder.Event>> e = i.next();
+			if (e.getKey() > target) {
+				this.nrofRolledBackEvents += e.getValue().size();
+				i.remove();
+			}
+		}
+		this.nrofRollbacks++;
+		this.nrofRolledBackTicks += from - target;
+		this.maxRollbackDistance = Math.max(this.maxRollbackDistance, from
+				- target);
+	}
+
+	/**
+	 * Counts a tick executed by an LP. The caller must hold the lock.
+	 */
+	void countExecuted() {
+		this.nrofExecutedTicks++;
+	}
+
+	/**
+	 * Returns the LP (strip) of an x coordinate
+	 */
+	private int lpOf(double x) {
+		int lp = (int) (x / this.stripWidth);
+		return Math.max(0, Math.min(this.nrofLps - 1, lp));
+	}
+
+	/**
+	 * Returns the addresses of the hosts an LP owns (in address order)
+	 */
+	private int[] membersOf(int lp) {
+		boolean[] lps = new boolean[this.nrofLps];
+		lps[lp] = true;
+		return membersOf(lps);
+	}
+
+	/**
+	 * Returns the addresses of the hosts some LPs own (in address order)
+	 */
+	private int[] membersOf(boolean[] lps) {
+		int count = 0;
+		for (int a = 0; a < this.owners.length; a++) {
+			if (lps[this.owners[a]]) {
+				count++;
+			}
+		}
+		int[] members = new int[count];
+		count = 0;
+		for (int a = 0; a < this.owners.length; a++) {
+			if (lps[this.owners[a]]) {
+				members[count++] = a;
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * Returns which hosts are members (indexed by address)
+	 */
+	boolean[] isMember(int[] members) {
+		return this.runner.isMember(members);
+	}
+
+	/**
+	 * Creates the halo of an LP: the locations of its hosts that are outside
+	 * its strip or within the largest range of a neighbor strip
+	 */
+	private Halo createHalo(int lp, int[] members) {
+		double left = lp * this.stripWidth;
+		double right = (lp + 1) * this.stripWidth;
+		Halo halo = new Halo(lp, members.length);
+		for (int a : members) {
+			DTNHost host = this.hosts.get(a);
+			double x = host.getLocation().getX();
+			int strip = lpOf(x);
+			if (strip != lp || (lp > 0 && x - left <= this.maxRange)
+					|| (lp < this.nrofLps - 1 && right - x <= this.maxRange)) {
+				halo.add(a, x, host.getLocation().getY(),
+						host.getTransmitRange(), strip);
+			}
+		}
+		return halo;
+	}
+
+	/**
+	 * Finds the coupled LPs of a tick from their halos. Two LPs are coupled
+	 * if a host of one of them is within range of a host of the other, or
+	 * if a host of one of them is located in the strip of the other.
+	 *
+	 * @param halos
+	 *            The halos of the LPs (null for the LPs that haven't
+	 *            published their halo)
+	 * @param nrofLps
+	 *            Number of LPs
+	 * @param maxRange
+	 *            The largest range of the hosts
+	 * @return Which LPs are coupled with each other
+	 */
+	public static boolean[][] findCoupled(Halo[] halos, int nrofLps,
+			double maxRange) {
+		boolean[][] coupled = new boolean[nrofLps][nrofLps];
+		List<double[]> entries = new ArrayList<double[]>();
+		for (Halo h : halos) {
+			if (h == null) {
+				continue;
+			}
+			for (int i = 0; i < h.size; i++) {
+				if (h.strips[i] != h.lp) {
+					coupled[h.lp][h.strips[i]] = true;
+					coupled[h.strips[i]][h.lp] = true;
+				}
+				entries.add(new double[] { h.xs[i], h.ys[i], h.ranges[i],
+						h.lp });
+			}
+		}
+
+		Collections.sort(entries, new Comparator<double[]>() {
+			public int compare(double[] e1, double[] e2) {
+				return Double.compare(e1[0], e2[0]);
+			}
+		});
+		for (int i = 0, n = entries.size(); i < n; i++) {
+			double[] e1 = entries.get(i);
+			for (int j = i + 1; j < n; j++) {
+				double[] e2 = entries.get(j);
+				if (e2[0] - e1[0] > maxRange) {
+					break;
+				}
+				int lp1 = (int) e1[3];
+				int lp2 = (int) e2[3];
+				if (lp1 == lp2 || coupled[lp1][lp2]) {
+					continue;
+				}
+				double dx = e1[0] - e2[0];
+				double dy = e1[1] - e2[1];
+				if (Math.sqrt(dx * dx + dy * dy) <= Math.min(e1[2], e2[2])) {
+					coupled[lp1][lp2] = true;
+					coupled[lp2][lp1] = true;
+				}
+			}
+		}
+		return coupled;
+	}
+
+	/**
+	 * Returns the end time of a tick
+	 *
+	 * @param tick
+	 *            The tick
+	 * @return the end time of the tick
+	 */
+	double getTickTime(int tick) {
+		return this.runner.getTickTime(tick);
+	}
+
+	/**
+	 * Returns the executor of the LPs' ticks
+	 *
+	 * @return the executor of the ticks
+	 */
+	TickRunner getRunner() {
+		return this.runner;
+	}
+
+	/**
+	 * Returns the recorder of the listener events
+	 *
+	 * @return the recorder of the listener events
+	 */
+	TimeWarpRecorder getRecorder() {
+		return this.recorder;
+	}
+
+	/**
+	 * Returns the saved states of the hosts
+	 *
+	 * @return the saved states of the hosts
+	 */
+	TimeWarpStateLog getStateLog() {
+		return this.stateLog;
+	}
+
+	/**
+	 * Returns how many ticks the LPs can run ahead of the GVT
+	 *
+	 * @return the length of the optimism window in ticks
+	 */
+	int getWindow() {
+		return this.window;
+	}
+
+	/**
+	 * Returns the number of logical processes
+	 *
+	 * @return the number of logical processes
+	 */
+	public int getNrofLps() {
+		return this.nrofLps;
+	}
+
+	/**
+	 * Returns the number of committed ticks
+	 *
+	 * @return the number of committed ticks
+	 */
+	public synchronized long getNrofCommittedTicks() {
+		return this.nrofCommittedTicks;
+	}
+
+	/**
+	 * Returns the number of ticks the LPs executed (including the ones that
+	 * were rolled back but not the jointly executed ones)
+	 *
+	 * @return the number of ticks the LPs executed
+	 */
+	public synchronized long getNrofExecutedTicks() {
+		return this.nrofExecutedTicks;
+	}
+
+	/**
+	 * Returns the number of rollbacks
+	 *
+	 * @return the number of rollbacks
+	 */
+	public synchronized long getNrofRollbacks() {
+		return this.nrofRollbacks;
+	}
+
+	/**
+	 * Returns the number of ticks that were rolled back
+	 *
+	 * @return the number of rolled back ticks
+	 */
+	public synchronized long getNrofRolledBackTicks() {
+		return this.nrofRolledBackTicks;
+	}
+
+	/**
+	 * Returns the number of listener events that were rolled back
+	 *
+	 * @return the number of rolled back events
+	 */
+	public synchronized long getNrofRolledBackEvents() {
+		return this.nrofRolledBackEvents;
+	}
+
+	/**
+	 * Returns the largest number of ticks rolled back at once
+	 *
+	 * @return the longest rollback in ticks
+	 */
+	public synchronized int getMaxRollbackDistance() {
+		return this.maxRollbackDistance;
+	}
+
+	/**
+	 * Returns the number of halos that arrived after the receiving LP had
+	 * executed their tick
+	 *
+	 * @return the number of stragglers
+	 */
+	public synchronized long getNrofStragglers() {
+		return this.nrofStragglers;
+	}
+
+	/**
+	 * Returns the number of ticks where some LPs were executed jointly
+	 *
+	 * @return the number of jointly executed ticks
+	 */
+	public synchronized long getNrofJointTicks() {
+		return this.nrofJointTicks;
+	}
+
+	/**
+	 * Returns the sum of the numbers of LPs executed jointly over the ticks
+	 *
+	 * @return the number of jointly executed LP ticks
+	 */
+	public synchronized long getNrofCoupledLpTicks() {
+		return this.nrofCoupledLpTicks;
+	}
+
+	/**
+	 * Returns the number of times an LP waited because of a coupling that
+	 * was found to be false when the tick was committed
+	 *
+	 * @return the number of false alarms
+	 */
+	public synchronized long getNrofFalseAlarms() {
+		return this.nrofFalseAlarms;
+	}
+
+	/**
+	 * Returns the number of halos that were cancelled by rollbacks
+	 *
+	 * @return the number of cancelled halos
+	 */
+	public synchronized long getNrofCancelledHalos() {
+		return this.nrofCancelledHalos;
+	}
+
+	/**
+	 * Returns the number of committed listener events
+	 *
+	 * @return the number of committed events
+	 */
+	public synchronized long getNrofCommittedEvents() {
+		return this.nrofCommittedEvents;
+	}
+
+	/**
+	 * Returns the number of times a host moved to another LP
+	 *
+	 * @return the number of host migrations
+	 */
+	public synchronized long getNrofMigrations() {
+		return this.nrofMigrations;
+	}
+
+	/**
+	 * Returns the number of saved host states
+	 *
+	 * @return the number of saved host states
+	 * @see TimeWarpStateLog#getNrofSavedStates()
+	 */
+	public long getNrofSavedStates() {
+		return this.stateLog.getNrofSavedStates();
+	}
+
+	/**
+	 * Returns the number of bytes written to the saved states
+	 *
+	 * @return the number of saved bytes
+	 */
+	public long getNrofSavedBytes() {
+		return this.stateLog.getNrofSavedBytes();
+	}
+
+	/**
+	 * Returns the number of saved states removed by fossil collection
+	 *
+	 * @return the number of fossil collected states
+	 */
+	public long getNrofCollectedStates() {
+		return this.stateLog.getNrofCollected();
+	}
+
+	/**
+	 * Halo of an LP: the locations of the LP's hosts that may connect to the
+	 * hosts of other LPs on a tick
+	 */
+	public static class Halo {
+		/** the LP */
+		private int lp;
+		private int size;
+		private int[] addresses;
+		private double[] xs;
+		private double[] ys;
+		private double[] ranges;
+		/** strip (LP) of each host's location */
+		private int[] strips;
+
+		/**
+		 * Creates an empty halo
+		 *
+		 * @param lp
+		 *            The LP
+		 * @param capacity
+		 *            How many hosts the halo can have
+		 */
+		public Halo(int lp, int capacity) {
+			this.lp = lp;
+			this.addresses = new int[capacity];
+			this.xs = new double[capacity];
+			this.ys = new double[capacity];
+			this.ranges = new double[capacity];
+			this.strips = new int[capacity];
+		}
+
+		/**
+		 * Adds a host to the halo
+		 *
+		 * @param address
+		 *            Address of the host
+		 * @param x
+		 *            X coordinate of the host
+		 * @param y
+		 *            Y coordinate of the host
+		 * @param range
+		 *            Transmit range of the host
+		 * @param strip
+		 *            The strip the host is located in
+		 */
+		public void add(int address, double x, double y, double range, int strip) {
+			this.addresses[size] = address;
+			this.xs[size] = x;
+			this.ys[size] = y;
+			this.ranges[size] = range;
+			this.strips[size] = strip;
+			this.size++;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A logical process (LP) of the {@link TimeWarpEngine}: a thread that
+ * executes the ticks of the hosts located in one strip of the world
+ * optimistically, ahead of the global virtual time, and rolls them back when
+ * a straggler arrives. The fields that other threads access are guarded by
+ * the engine's lock.
+ */
+class TimeWarpProcess extends Thread {
+	/** state of an LP that executes its ticks */
+	static final int RUNNING = 0;
+	/** state of an LP that has executed the first half of a tick */
+	static final int MIDWAY = 1;
+	/** state of an LP whose hosts the simulation thread executes */
+	static final int JOINED = 2;
+
+	private static final int FIRST = 0;
+	private static final int SECOND = 1;
+	private static final int ROLLBACK = 2;
+	private static final int COLLECT = 3;
+
+	private TimeWarpEngine engine;
+	/** index of the LP (and its strip) */
+	final int index;
+	private SimulationContext context;
+	private TimeWarpRecorder.Sink sink;
+
+	/** the latest tick the LP has executed (local virtual time) */
+	int lvt;
+	int state;
+	/** the tick whose first half the LP has executed (if MIDWAY) */
+	int midTick;
+	/** the LP must roll back to the state before this tick */
+	int haltAt;
+	/** can the LP execute the second half of its tick (if MIDWAY) */
+	boolean released;
+	/** the latest GVT whose old saved states the LP has fossil collected */
+	private int seenGvt;
+	/** the latest tick the simulation thread executed for the LP */
+	private int jointTick;
+	/** the recorded listener events of the ticks after the GVT */
+	Map<Integer, List<TimeWarpRecorder.Event>> events;
+	/** addresses of the hosts the LP owns (in address order) */
+	int[] members;
+	/** which hosts the LP owns (indexed by address) */
+	boolean[] isMember;
+
+	/**
+	 * Creates a new LP
+	 *
+	 * @param engine
+	 *            The engine
+	 * @param index
+	 *            Index of the LP
+	 * @param context
+	 *            Simulation context of the LP's thread
+	 */
+	TimeWarpProcess(TimeWarpEngine engine, int index,
+			SimulationContext context) {
+		super("TimeWarpProcess-" + index);
+		setDaemon(true);
+		this.engine = engine;
+		this.index = index;
+		this.context = context;
+		this.sink = new TimeWarpRecorder.Sink();
+		this.state = RUNNING;
+		this.haltAt = Integer.MAX_VALUE;
+		this.events = new HashMap<Integer, List<TimeWarpRecorder.Event>>();
+	}
+
+	/**
+	 * Sets the hosts the LP owns. Called when the LP isn't executing ticks.
+	 *
+	 * @param members
+	 *            Addresses of the hosts (in address order)
+	 */
+	void setMembers(int[] members) {
+		this.members = members;
+		this.isMember = this.engine.isMember(members);
+	}
+
+	/**
+	 * Returns true if the LP has stopped after the first half of a tick and
+	 * waits for the simulation thread. The caller must hold the engine's
+	 * lock.
+	 *
+	 * @param tick
+	 *            The tick
+	 * @return true if the LP waits at the tick
+	 */
+	boolean isWaitingAt(int tick) {
+		return this.state == MIDWAY && this.midTick == tick && !this.released;
+	}
+
+	/**
+	 * Returns true if the LP executes a tick on its own and has to be rolled
+	 * back if a straggler for the tick arrives. The LP must have published
+	 * its halo for the tick. The caller must hold the engine's lock.
+	 *
+	 * @param tick
+	 *            The tick
+	 * @return true if the LP has passed the tick
+	 */
+	boolean hasPassed(int tick) {
+		return this.state != JOINED && tick > this.jointTick
+				&& !isWaitingAt(tick) && this.haltAt > tick;
+	}
+
+	/**
+	 * Sets the LP's state after the simulation thread has executed a tick
+	 * for it. The caller must hold the engine's lock.
+	 *
+	 * @param tick
+	 *            The tick
+	 * @param stayJoined
+	 *            Should the simulation thread execute the next tick too
+	 */
+	void finishJoint(int tick, boolean stayJoined) {
+		this.lvt = tick;
+		this.jointTick = tick;
+		this.haltAt = Integer.MAX_VALUE;
+		this.released = false;
+		this.state = (stayJoined ? JOINED : RUNNING);
+	}
+
+	@Override
+	public void run() {
+		SimulationContext.setCurrent(this.context);
+		this.engine.getRecorder().setSink(this.sink);
+		try {
+			while (step()) {
+				// execute until stopped
+			}
+		} catch (Throwable t) {
+			this.engine.fail(t);
+		}
+	}
+
+	/**
+	 * Decides what to do next and does it
+	 *
+	 * @return false if the engine has been stopped
+	 */
+	private boolean step() {
+		SimClock clock = SimClock.getInstance();
+		int action;
+		int tick;
+		boolean partial = false;
+		List<TimeWarpRecorder.Event> tickEvents = null;
+
+		synchronized (this.engine) {
+			while (true) {
+				if (this.engine.isStopped()) {
+					return false;
+				}
+				if (this.state == JOINED) {
+					this.engine.waitForChange();
+					continue;
+				}
+				if (this.state == MIDWAY) {
+					if (this.haltAt < this.midTick
+							|| (this.released && this.haltAt <= this.midTick)) {
+						action = ROLLBACK;
+						tick = this.haltAt - 1;
+						partial = true;
+						break;
+					}
+					if (this.released) {
+						action = SECOND;
+						tick = this.midTick;
+						tickEvents = this.events.get(tick);
+						break;
+					}
+					this.engine.waitForChange();
+					continue;
+				}
+				if (this.haltAt <= this.lvt) {
+					action = ROLLBACK;
+					tick = this.haltAt - 1;
+					break;
+				}
+				if (this.engine.gvt > this.seenGvt) {
+					action = COLLECT;
+					tick = this.engine.gvt;
+					this.seenGvt = tick;
+					break;
+				}
+				int limit = Math.min(this.engine.gvt
+						+ this.engine.getWindow(), this.engine.maxTick);
+				if (this.lvt < limit) {
+					action = FIRST;
+					tick = this.lvt + 1;
+					tickEvents = new ArrayList<TimeWarpRecorder.Event>();
+					this.events.put(tick, tickEvents);
+					break;
+				}
+				this.engine.waitForChange();
+			}
+
+			if (action == ROLLBACK) {
+				this.engine.rollback(this, tick, (partial ? this.midTick
+						: this.lvt));
+				this.lvt = tick;
+				this.state = RUNNING;
+				this.haltAt = Integer.MAX_VALUE;
+				this.released = false;
+			}
+		}
+
+		switch (action) {
+		case FIRST:
+			this.sink.setEvents(tickEvents);
+			this.engine.getRunner().firstHalf(tick, this.members,
+					this.isMember, this.sink, clock);
+			this.sink.setEvents(null);
+			synchronized (this.engine) {
+				boolean coupled = this.engine.publishHalo(this, tick);
+				this.state = MIDWAY;
+				this.midTick = tick;
+				this.released = !coupled && this.haltAt > tick;
+				this.engine.notifyAll();
+			}
+			break;
+		case SECOND:
+			this.sink.setEvents(tickEvents);
+			this.engine.getRunner().secondHalf(tick, this.members,
+					this.isMember, this.sink);
+			this.sink.setEvents(null);
+			this.engine.getStateLog().save(tick, this.members,
+					this.isMember, false);
+			synchronized (this.engine) {
+				this.lvt = tick;
+				this.state = RUNNING;
+				this.released = false;
+				this.engine.countExecuted();
+				this.engine.notifyAll();
+			}
+			break;
+		case ROLLBACK:
+			clock.setTime(this.engine.getTickTime(tick));
+			this.engine.getStateLog().restore(tick, this.members,
+					this.isMember, partial);
+			break;
+		default: // COLLECT
+			this.engine.getStateLog().fossilCollect(this.members, tick);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <P>
+ * Records the connection and message events of the logical processes of
+ * the {@link TimeWarpEngine}. Every thread that updates hosts records the
+ * events to a {@link Sink} of its own. The sink gives every event a key that
+ * tells where the event happens in a sequential run: the phase of the update
+ * interval (external events, new connections or host updates) and the
+ * position within the phase. When an update interval is committed, the
+ * events of all the logical processes are sorted by their keys and given to
+ * the listeners, so the listeners get the same events in the same order as
+ * without Time Warp.
+ * </P>
+ * <P>
+ * The recorded messages are copies of the messages at the time of the event,
+ * since a logical process may change the messages before the events are
+ * committed. The message log lines (see {@link Message#log(String)}) are
+ * recorded too, so they are printed only once even if an interval is
+ * executed again. The events of the intervals that are rolled back are
+ * dropped.
+ * </P>
+ * <P>
+ * The workers of a distributed run (see {@link DistributedWorker}) record
+ * their events the same way and send them to the coordinator (see
+ * {@link Event#write(DataOutput, List)}), which sorts and replays them.
+ * </P>
+ */
+public class TimeWarpRecorder implements ConnectionListener, MessageListener {
+	private static final int CONNECTED = 0;
+	private static final int DISCONNECTED = 1;
+	private static final int NEW_MESSAGE = 2;
+	private static final int TRANSFER_STARTED = 3;
+	private static final int DELETED = 4;
+	private static final int TRANSFER_ABORTED = 5;
+	private static final int TRANSFERRED = 6;
+	private static final int LOG_LINE = 7;
+
+	/** the hosts of the world (for copying the messages) */
+	private List<DTNHost> hosts;
+	/** the sinks of the threads */
+	private static final ThreadLocal<Sink> sinks = new ThreadLocal<Sink>();
+
+	/**
+	 * Creates a new recorder
+	 *
+	 * @param hosts
+	 *            The hosts of the world
+	 */
+	public TimeWarpRecorder(List<DTNHost> hosts) {
+		this.hosts = hosts;
+	}
+
+	/**
+	 * Sets the sink where the events of the current thread are recorded
+	 *
+	 * @param sink
+	 *            The sink
+	 */
+	public void setSink(Sink sink) {
+		sinks.set(sink);
+	}
+
+	/**
+	 * Records a message log line if the current thread is recording events
+	 *
+	 * @param line
+	 *            The line to print
+	 * @return true if the line was recorded, false if it should be printed
+	 *         right away
+	 */
+	public static boolean recordLog(String line) {
+		Sink sink = sinks.get();
+		if (sink == null || sink.events == null) {
+			return false;
+		}
+		sink.events.add(new Event(sink, LOG_LINE, line, null, null, null,
+				false));
+		return true;
+	}
+
+	/**
+	 * Gives recorded events to listeners in the order of their keys. The
+	 * simulation clock is set to the time of every event before the event is
+	 * given to the listeners.
+	 *
+	 * @param events
+	 *            The events sorted by their keys
+	 * @param cListeners
+	 *            The connection listeners
+	 * @param mListeners
+	 *            The message listeners
+	 */
+	public static void replay(List<Event> events,
+			List<ConnectionListener> cListeners,
+			List<MessageListener> mListeners) {
+		SimClock clock = SimClock.getInstance();
+		for (int i = 0, n = events.size(); i < n; i++) {
+			Event e = events.get(i);
+			clock.setTime(e.time);
+			if (e.type == LOG_LINE) {
+				System.out.println(e.line);
+				continue;
+			}
+			if (e.type == CONNECTED || e.type == DISCONNECTED) {
+				for (ConnectionListener cl : cListeners) {
+					if (e.type == CONNECTED) {
+						cl.hostsConnected(e.host1, e.host2);
+					} else {
+						cl.hostsDisconnected(e.host1, e.host2);
+					}
+				}
+				continue;
+			}
+
+			for (MessageListener ml : mListeners) {
+				switch (e.type) {
+				case NEW_MESSAGE:
+					ml.newMessage(e.message);
+					break;
+				case TRANSFER_STARTED:
+					ml.messageTransferStarted(e.message, e.host1, e.host2);
+					break;
+				case DELETED:
+					ml.messageDeleted(e.message, e.host1, e.flag);
+					break;
+				case TRANSFER_ABORTED:
+					ml.messageTransferAborted(e.message, e.host1, e.host2);
+					break;
+				case TRANSFERRED:
+					ml.messageTransferred(e.message, e.host1, e.host2, e.flag);
+					break;
+				default:
+					assert false : e.type; // invalid type
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records an event to the current thread's sink
+	 */
+	private void record(int type, Message m, DTNHost h1, DTNHost h2,
+			boolean flag) {
+		Sink sink = sinks.get();
+		if (sink == null || sink.events == null) {
+			throw new SimError("Listener event outside of a Time Warp update");
+		}
+		sink.events.add(new Event(sink, type, null, copy(m), h1, h2, flag));
+	}
+
+	/**
+	 * Returns a copy of a message in its current state
+	 */
+	private Message copy(Message m) {
+		if (m == null) {
+			return null;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			new SimCheckpoint(this.hosts).writeMessage(out, m);
+			out.close();
+			return new SimCheckpoint(this.hosts).readMessage(
+					new DataInputStream(new ByteArrayInputStream(bytes
+							.toByteArray())));
+		} catch (IOException e) {
+			throw new SimError("Couldn't copy message " + m, e);
+		}
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		record(CONNECTED, null, host1, host2, false);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		record(DISCONNECTED, null, host1, host2, false);
+	}
+
+	public void newMessage(Message m) {
+		record(NEW_MESSAGE, m, null, null, false);
+	}
+
+	public void messageTransferStarted(Message m, DTNHost from, DTNHost to) {
+		record(TRANSFER_STARTED, m, from, to, false);
+	}
+
+	public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+		record(DELETED, m, where, null, dropped);
+	}
+
+	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
+		record(TRANSFER_ABORTED, m, from, to, false);
+	}
+
+	public void messageTransferred(Message m, DTNHost from, DTNHost to,
+			boolean firstDelivery) {
+		record(TRANSFERRED, m, from, to, firstDelivery);
+	}
+
+	/**
+	 * Where the events of one thread are recorded to, and the key of the
+	 * next events. The events recorded with the same key are ordered by the
+	 * order they were recorded in.
+	 */
+	public static class Sink {
+		/** the list the events are added to (or null) */
+		private List<Event> events;
+		private int[] key;
+		private int seq;
+
+		/**
+		 * Creates a new sink
+		 */
+		public Sink() {
+			this.key = new int[Event.KEY_LENGTH];
+		}
+
+		/**
+		 * Sets the list where the next events are added to
+		 *
+		 * @param events
+		 *            The list or null to stop recording
+		 */
+		public void setEvents(List<Event> events) {
+			this.events = events;
+		}
+
+		/**
+		 * Sets the key of the next events
+		 *
+		 * @param phase
+		 *            Phase of the update interval
+		 * @param a
+		 *            First position within the phase
+		 * @param b
+		 *            Second position within the phase
+		 * @param c
+		 *            Third position within the phase
+		 * @param d
+		 *            Fourth position within the phase
+		 */
+		public void setKey(int phase, int a, int b, int c, int d) {
+			this.key[0] = phase;
+			this.key[1] = a;
+			this.key[2] = b;
+			this.key[3] = c;
+			this.key[4] = d;
+			this.seq = 0;
+		}
+	}
+
+	/**
+	 * A recorded event. Events are ordered by their keys.
+	 */
+	public static class Event implements Comparable<Event> {
+		/** number of key values set with {@link Sink#setKey} */
+		private static final int KEY_LENGTH = 5;
+
+		private int[] key;
+		private int seq;
+		private double time;
+		private int type;
+		private String line;
+		private Message message;
+		private DTNHost host1;
+		private DTNHost host2;
+		private boolean flag;
+
+		private Event() {
+			this.key = new int[KEY_LENGTH];
+		}
+
+		private Event(Sink sink, int type, String line, Message message,
+				DTNHost host1, DTNHost host2, boolean flag) {
+			this.key = sink.key.clone();
+			this.seq = sink.seq++;
+			this.time = SimClock.getTime();
+			this.type = type;
+			this.line = line;
+			this.message = message;
+			this.host1 = host1;
+			this.host2 = host2;
+			this.flag = flag;
+		}
+
+		/**
+		 * Writes the event to a stream
+		 *
+		 * @param out
+		 *            Where to write the event
+		 * @param hosts
+		 *            The hosts of the world
+		 * @throws IOException
+		 *             if writing failed
+		 */
+		public void write(DataOutput out, List<DTNHost> hosts)
+				throws IOException {
+			for (int i = 0; i < KEY_LENGTH; i++) {
+				out.writeInt(this.key[i]);
+			}
+			out.writeInt(this.seq);
+			out.writeDouble(this.time);
+			out.writeByte(this.type);
+			if (this.type == LOG_LINE) {
+				out.writeUTF(this.line);
+				return;
+			}
+			SimCheckpoint cp = new SimCheckpoint(hosts);
+			cp.writeMessage(out, this.message);
+			cp.writeHost(out, this.host1);
+			cp.writeHost(out, this.host2);
+			out.writeBoolean(this.flag);
+		}
+
+		/**
+		 * Reads an event written with {@link #write(DataOutput, List)}
+		 *
+		 * @param in
+		 *            Where to read the event from
+		 * @param hosts
+		 *            The hosts of the world
+		 * @return The event
+		 * @throws IOException
+		 *             if reading failed
+		 */
+		public static Event read(DataInput in, List<DTNHost> hosts)
+				throws IOException {
+			Event e = new Event();
+			for (int i = 0; i < KEY_LENGTH; i++) {
+				e.key[i] = in.readInt();
+			}
+			e.seq = in.readInt();
+			e.time = in.readDouble();
+			e.type = in.readByte();
+			if (e.type == LOG_LINE) {
+				e.line = in.readUTF();
+				return e;
+			}
+			SimCheckpoint cp = new SimCheckpoint(hosts);
+			e.message = cp.readMessage(in);
+			e.host1 = cp.readHost(in);
+			e.host2 = cp.readHost(in);
+			e.flag = in.readBoolean();
+			return e;
+		}
+
+		public int compareTo(Event e) {
+			for (int i = 0; i < KEY_LENGTH; i++) {
+				if (this.key[i] != e.key[i]) {
+					return (this.key[i] < e.key[i] ? -1 : 1);
+				}
+			}
+			return (this.seq < e.seq ? -1 : (this.seq == e.seq ? 0 : 1));
+		}
+	}
+}
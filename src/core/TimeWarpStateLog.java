@@ -0,0 +1,423 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <P>
+ * Saved states of the hosts for rolling back the logical processes of the
+ * {@link TimeWarpEngine}. The states are saved incrementally at the end of
+ * every update interval (tick): a host gets a new entry only when its state
+ * has changed. The movement state and the rest of the state (connections,
+ * router and anonymity groups) are saved separately.
+ * </P>
+ * <P>
+ * A movement entry is saved when the host's location or grid cell has
+ * changed. The full movement state (see
+ * {@link DTNHost#writeMovementState(java.io.DataOutput)}) is written again
+ * only when the host has set a new waypoint; otherwise the entry shares the
+ * bytes of the previous entry and only the location is new.
+ * </P>
+ * <P>
+ * The rest of the state is saved for the hosts that may have changed: hosts
+ * whose router is not event-driven (see
+ * {@link routing.MessageRouter#isEventDriven()}), hosts that have or had
+ * connections, hosts an external event accessed and hosts whose router's
+ * timed update was due. Hosts that are connected to each other share their
+ * connection objects, so the state of every connected component of the
+ * changed hosts is written to one snapshot that is always restored as a
+ * whole. The component's hosts must be owned by the same logical process.
+ * </P>
+ * <P>
+ * The entries of a host are only accessed by the thread that currently
+ * executes the host (its logical process or the coordinator of the engine).
+ * Entries older than the latest entry at or before the global virtual time
+ * are not needed anymore and are removed by {@link #fossilCollect(int[], int)}.
+ * </P>
+ */
+public class TimeWarpStateLog {
+	/** the hosts of the world */
+	private List<DTNHost> hosts;
+	/** the executor of the ticks whose grid cell stamps are saved */
+	private TickRunner runner;
+	/** movement entries of every host (indexed by address) */
+	private List<List<MoveEntry>> moves;
+	/** network and router entries of every host (indexed by address) */
+	private List<List<NetEntry>> nets;
+	/** did the host have connections at the latest save of its state */
+	private boolean[] hadConnections;
+	/** the next timed router update at the latest save of the state */
+	private double[] nextTimedUpdates;
+	/** is the router of the host event-driven */
+	private boolean[] eventDriven;
+
+	private AtomicLong nrofSavedStates;
+	private AtomicLong nrofSavedBytes;
+	private AtomicLong nrofCollected;
+
+	/**
+	 * Creates a new state log
+	 *
+	 * @param hosts
+	 *            The hosts of the world
+	 * @param runner
+	 *            The executor of the ticks whose grid cell stamps are saved
+	 */
+	TimeWarpStateLog(List<DTNHost> hosts, TickRunner runner) {
+		int n = hosts.size();
+		this.hosts = hosts;
+		this.runner = runner;
+		this.moves = new ArrayList<List<MoveEntry>>(n);
+		this.nets = new ArrayList<List<NetEntry>>(n);
+		this.hadConnections = new boolean[n];
+		this.nextTimedUpdates = new double[n];
+		this.eventDriven = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			this.moves.add(new ArrayList<MoveEntry>());
+			this.nets.add(new ArrayList<NetEntry>());
+			this.eventDriven[i] = hosts.get(i).getRouter().isEventDriven();
+		}
+		this.nrofSavedStates = new AtomicLong();
+		this.nrofSavedBytes = new AtomicLong();
+		this.nrofCollected = new AtomicLong();
+	}
+
+	/**
+	 * Saves the changed state of hosts at the end of a tick. The simulation
+	 * clock must be at the end of the tick.
+	 *
+	 * @param tick
+	 *            The tick
+	 * @param members
+	 *            Addresses of the hosts (in order)
+	 * @param isMember
+	 *            Which hosts are members (indexed by address)
+	 * @param all
+	 *            If true, the whole state of all the hosts is saved
+	 */
+	public void save(int tick, int[] members, boolean[] isMember, boolean all) {
+		double now = SimClock.getTime();
+		List<DTNHost> changed = new ArrayList<DTNHost>();
+		boolean[] inChanged = new boolean[this.hosts.size()];
+
+		for (int a : members) {
+			DTNHost host = this.hosts.get(a);
+			saveMovement(tick, host, all);
+			if (all || !this.eventDriven[a] || this.hadConnections[a]
+					|| host.getConnections().size() > 0
+					|| this.runner.touchedTicks[a] == tick
+					|| this.nextTimedUpdates[a] <= now) {
+				changed.add(host);
+				inChanged[a] = true;
+			}
+		}
+
+		/* connected hosts share state; they have connections so changed */
+		boolean[] saved = new boolean[this.hosts.size()];
+		List<DTNHost> component = new ArrayList<DTNHost>();
+		for (DTNHost host : changed) {
+			if (saved[host.getAddress()]) {
+				continue;
+			}
+			component.clear();
+			component.add(host);
+			saved[host.getAddress()] = true;
+			for (int i = 0; i < component.size(); i++) {
+				for (Connection con : component.get(i).getConnections()) {
+					DTNHost other = con.getOtherNode(component.get(i));
+					int b = other.getAddress();
+					if (!isMember[b] || !inChanged[b]) {
+						throw new SimError("Host " + component.get(i)
+								+ " is connected to " + other + " of "
+								+ "another logical process");
+					}
+					if (!saved[b]) {
+						saved[b] = true;
+						component.add(other);
+					}
+				}
+			}
+			saveComponent(tick, component);
+		}
+
+		for (DTNHost host : changed) {
+			int a = host.getAddress();
+			this.hadConnections[a] = host.getConnections().size() > 0;
+			this.nextTimedUpdates[a] = host.getRouter().getNextTimedUpdate();
+		}
+	}
+
+	/**
+	 * Saves the movement state of a host if it has changed
+	 */
+	private void saveMovement(int tick, DTNHost host, boolean all) {
+		int a = host.getAddress();
+		List<MoveEntry> entries = this.moves.get(a);
+		MoveEntry last = (entries.isEmpty() ? null : entries
+				.get(entries.size() - 1));
+		Coord loc = host.getLocation();
+		int waypoints = host.getNrofWaypointChanges();
+		int enterTick = this.runner.enterTicks[a];
+		int enterSeq = this.runner.enterSeqs[a];
+
+		if (!all && last != null && last.x == loc.getX()
+				&& last.y == loc.getY() && last.waypoints == waypoints
+				&& last.enterTick == enterTick && last.enterSeq == enterSeq) {
+			return; // nothing has changed
+		}
+
+		MoveEntry e = new MoveEntry();
+		e.tick = tick;
+		e.x = loc.getX();
+		e.y = loc.getY();
+		e.enterTick = enterTick;
+		e.enterSeq = enterSeq;
+		e.waypoints = waypoints;
+		if (!all && last != null && last.waypoints == waypoints) {
+			e.movement = last.movement;
+		} else {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				host.writeMovementState(out);
+				out.close();
+				e.movement = bytes.toByteArray();
+			} catch (IOException ex) {
+				throw new SimError("Couldn't save the movement of " + host, ex);
+			}
+			this.nrofSavedBytes.addAndGet(e.movement.length);
+		}
+		entries.add(e);
+		this.nrofSavedStates.incrementAndGet();
+	}
+
+	/**
+	 * Saves the state of a connected component of hosts to one snapshot
+	 */
+	private void saveComponent(int tick, List<DTNHost> component) {
+		Snapshot snapshot = new Snapshot();
+		snapshot.addresses = new int[component.size()];
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			SimCheckpoint cp = new SimCheckpoint(this.hosts);
+			for (int i = 0, n = component.size(); i < n; i++) {
+				snapshot.addresses[i] = component.get(i).getAddress();
+				component.get(i).writeState(out, cp);
+			}
+			out.close();
+			snapshot.bytes = bytes.toByteArray();
+		} catch (IOException e) {
+			throw new SimError("Couldn't save the state of " + component, e);
+		}
+
+		for (DTNHost host : component) {
+			NetEntry e = new NetEntry();
+			e.tick = tick;
+			e.snapshot = snapshot;
+			this.nets.get(host.getAddress()).add(e);
+		}
+		this.nrofSavedStates.addAndGet(component.size());
+		this.nrofSavedBytes.addAndGet(snapshot.bytes.length);
+	}
+
+	/**
+	 * Restores hosts to their state at the end of a tick and removes the
+	 * entries after that tick. The simulation clock must be at the end of
+	 * the tick.
+	 *
+	 * @param tick
+	 *            The tick whose state is restored
+	 * @param members
+	 *            Addresses of the hosts that may have changed
+	 * @param isMember
+	 *            Which hosts are members (indexed by address)
+	 * @param all
+	 *            If true, all the members are restored (they may have changed
+	 *            after their latest saved state), otherwise only the ones
+	 *            that have entries after the tick
+	 */
+	public void restore(int tick, int[] members, boolean[] isMember,
+			boolean all) {
+		IdentityHashMap<Snapshot, Snapshot> snapshots =
+			new IdentityHashMap<Snapshot, Snapshot>();
+		List<Snapshot> toRead = new ArrayList<Snapshot>();
+
+		for (int a : members) {
+			DTNHost host = this.hosts.get(a);
+			List<MoveEntry> mEntries = this.moves.get(a);
+			boolean moved = truncate(mEntries, tick) || all;
+			List<NetEntry> nEntries = this.nets.get(a);
+			boolean changed = truncate(nEntries, tick) || all;
+
+			if (moved) {
+				MoveEntry e = mEntries.get(mEntries.size() - 1);
+				try {
+					host.readMovementState(new DataInputStream(
+							new ByteArrayInputStream(e.movement)));
+				} catch (IOException ex) {
+					throw new SimError("Couldn't restore the movement of "
+							+ host, ex);
+				}
+				host.setLocation(new Coord(e.x, e.y));
+				this.runner.setCell(a, e.enterTick, e.enterSeq);
+			}
+			if (changed) {
+				Snapshot s = nEntries.get(nEntries.size() - 1).snapshot;
+				if (!snapshots.containsKey(s)) {
+					snapshots.put(s, s);
+					toRead.add(s);
+				}
+			}
+		}
+
+		for (Snapshot s : toRead) {
+			try {
+				DataInputStream in = new DataInputStream(
+						new ByteArrayInputStream(s.bytes));
+				SimCheckpoint cp = new SimCheckpoint(this.hosts);
+				for (int a : s.addresses) {
+					if (!isMember[a]) {
+						throw new SimError("Saved state of " + hosts.get(a)
+								+ " belongs to another logical process");
+					}
+					this.hosts.get(a).readState(in, cp);
+				}
+			} catch (IOException e) {
+				throw new SimError("Couldn't restore the state of hosts", e);
+			}
+			for (int a : s.addresses) {
+				DTNHost host = this.hosts.get(a);
+				this.hadConnections[a] = host.getConnections().size() > 0;
+				this.nextTimedUpdates[a] = host.getRouter()
+						.getNextTimedUpdate();
+			}
+		}
+	}
+
+	/**
+	 * Removes the entries after a tick
+	 *
+	 * @return true if some entries were removed
+	 */
+	private boolean truncate(List<? extends Entry> entries, int tick) {
+		int n = entries.size();
+		int i = n;
+		while (i > 1 && entries.get(i - 1).tick > tick) {
+			i--;
+		}
+		if (entries.get(i - 1).tick > tick) {
+			throw new SimError("No saved state before tick " + tick);
+		}
+		if (i == n) {
+			return false;
+		}
+		entries.subList(i, n).clear();
+		return true;
+	}
+
+	/**
+	 * Removes the entries that are older than the latest entry at or before
+	 * the given tick (the global virtual time). Hosts are never rolled back
+	 * to an earlier tick.
+	 *
+	 * @param members
+	 *            Addresses of the hosts whose entries are removed
+	 * @param gvt
+	 *            The global virtual time (tick)
+	 */
+	public void fossilCollect(int[] members, int gvt) {
+		for (int a : members) {
+			collect(this.moves.get(a), gvt);
+			collect(this.nets.get(a), gvt);
+		}
+	}
+
+	/**
+	 * Removes the entries before the latest entry at or before a tick
+	 */
+	private void collect(List<? extends Entry> entries, int tick) {
+		int i = 0;
+		while (i + 1 < entries.size() && entries.get(i + 1).tick <= tick) {
+			i++;
+		}
+		if (i > 0) {
+			entries.subList(0, i).clear();
+			this.nrofCollected.addAndGet(i);
+		}
+	}
+
+	/**
+	 * Returns the number of saved host states (movement and other entries)
+	 *
+	 * @return the number of saved host states
+	 */
+	public long getNrofSavedStates() {
+		return this.nrofSavedStates.get();
+	}
+
+	/**
+	 * Returns the number of bytes written to the saved states
+	 *
+	 * @return the number of bytes written to the saved states
+	 */
+	public long getNrofSavedBytes() {
+		return this.nrofSavedBytes.get();
+	}
+
+	/**
+	 * Returns the number of entries removed by fossil collection
+	 *
+	 * @return the number of entries removed by fossil collection
+	 */
+	public long getNrofCollected() {
+		return this.nrofCollected.get();
+	}
+
+	/**
+	 * Entry of a host's saved state
+	 */
+	private static class Entry {
+		/** the tick at whose end the state was saved */
+		protected int tick;
+	}
+
+	/**
+	 * Saved movement state of a host
+	 */
+	private static class MoveEntry extends Entry {
+		private double x;
+		private double y;
+		private int enterTick;
+		private int enterSeq;
+		private int waypoints;
+		/** movement state (shared by the entries with the same waypoint) */
+		private byte[] movement;
+	}
+
+	/**
+	 * Saved connections, router and anonymity groups of a host
+	 */
+	private static class NetEntry extends Entry {
+		private Snapshot snapshot;
+	}
+
+	/**
+	 * Saved state of a connected component of hosts
+	 */
+	private static class Snapshot {
+		private int[] addresses;
+		private byte[] bytes;
+	}
+}
@@ -0,0 +1,199 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * <P>
+ * Random update order of hosts that doesn't allocate any memory while
+ * running. The order is a permutation of host indexes that is shuffled in
+ * place (i.e., every shuffle starts from the previous order) using a
+ * reseedable random number generator.
+ * </P>
+ * <P>
+ * The generator produces the same numbers as {@link java.util.Random} with the
+ * same seed and {@link #shuffle(long)} uses the same algorithm as
+ * {@link java.util.Collections#shuffle(java.util.List, java.util.Random)}, so
+ * the orders are the same as when shuffling a list of the hosts with a new
+ * Random object every time.
+ * </P>
+ * <P>
+ * The order can also be generated lazily (see {@link #startLazy(long)} and
+ * {@link #next()}): every call to next draws the next index of the order, so
+ * no pass over the whole permutation is needed before the first index is
+ * known. The lazy orders are different from the ones given by shuffle, but
+ * deterministic.
+ * </P>
+ */
+public class UpdateOrder {
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	/** the current order (permutation of indexes) */
+	private int[] order;
+	/** state of the random number generator */
+	private long seed;
+	/** how many indexes of the lazy order have been given out */
+	private int position;
+
+	/**
+	 * Creates a new update order. The initial order is the order of the
+	 * indexes.
+	 *
+	 * @param size
+	 *            Number of indexes (hosts) in the order
+	 */
+	public UpdateOrder(int size) {
+		this.order = new int[size];
+		for (int i = 0; i < size; i++) {
+			this.order[i] = i;
+		}
+		this.position = size;
+	}
+
+	/**
+	 * Writes the current order to a checkpoint. The order is all the state
+	 * that is kept between the shuffles.
+	 * 
+	 * @param out
+	 *            Where to write the order
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(this.order.length);
+		for (int i = 0; i < this.order.length; i++) {
+			out.writeInt(this.order[i]);
+		}
+	}
+
+	/**
+	 * Restores the order written with {@link #writeState(DataOutput)}
+	 * 
+	 * @param in
+	 *            Where to read the order from
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readState(DataInput in) throws IOException {
+		if (in.readInt() != this.order.length) {
+			throw new SimError("Checkpoint's update order has a different "
+					+ "number of hosts");
+		}
+		for (int i = 0; i < this.order.length; i++) {
+			this.order[i] = in.readInt();
+		}
+		this.position = this.order.length;
+	}
+
+	/**
+	 * Returns the number of indexes in the order
+	 *
+	 * @return the number of indexes in the order
+	 */
+	public int size() {
+		return this.order.length;
+	}
+
+	/**
+	 * Returns an index of the (shuffled) order
+	 *
+	 * @param i
+	 *            Position in the order
+	 * @return The index at the position
+	 */
+	public int get(int i) {
+		return this.order[i];
+	}
+
+	/**
+	 * Shuffles the order using a generator with the given seed
+	 *
+	 * @param seed
+	 *            The seed of the generator
+	 */
+	public void shuffle(long seed) {
+		setSeed(seed);
+		for (int i = order.length; i > 1; i--) {
+			swap(i - 1, nextInt(i));
+		}
+		this.position = order.length;
+	}
+
+	/**
+	 * Starts a new lazily generated order using a generator with the given
+	 * seed. The indexes of the order are drawn with {@link #next()}.
+	 *
+	 * @param seed
+	 *            The seed of the generator
+	 */
+	public void startLazy(long seed) {
+		setSeed(seed);
+		this.position = 0;
+	}
+
+	/**
+	 * Returns true if the lazily generated order has more indexes
+	 *
+	 * @return true if {@link #next()} can be called
+	 */
+	public boolean hasNext() {
+		return this.position < this.order.length;
+	}
+
+	/**
+	 * Draws the next index of the lazily generated order
+	 *
+	 * @return The next index
+	 */
+	public int next() {
+		int i = this.position++;
+		swap(i, i + nextInt(order.length - i));
+		return this.order[i];
+	}
+
+	private void swap(int i, int j) {
+		int tmp = order[i];
+		order[i] = order[j];
+		order[j] = tmp;
+	}
+
+	/**
+	 * Sets the seed of the generator like {@link java.util.Random#setSeed(long)}
+	 */
+	private void setSeed(long seed) {
+		this.seed = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	/**
+	 * Generates the next random bits like {@link java.util.Random}
+	 */
+	private int next(int bits) {
+		this.seed = (this.seed * MULTIPLIER + ADDEND) & MASK;
+		return (int) (this.seed >>> (48 - bits));
+	}
+
+	/**
+	 * Returns a random integer between 0 (inclusive) and n (exclusive) like
+	 * {@link java.util.Random#nextInt(int)}
+	 */
+	private int nextInt(int n) {
+		if ((n & -n) == n) { // n is a power of 2
+			return (int) ((n * (long) next(31)) >> 31);
+		}
+
+		int bits;
+		int val;
+		do {
+			bits = next(31);
+			val = bits % n;
+		} while (bits - val + (n - 1) < 0);
+		return val;
+	}
+}
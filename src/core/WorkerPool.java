@@ -0,0 +1,154 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Pool of worker threads for running independent parts of a simulation step
+ * concurrently. The tasks given to the pool must not depend on each other's
+ * results or on the order they are run in; all order dependent work (e.g.
+ * informing listeners) must be done by the caller after
+ * {@link #runAll(List)} returns. The tasks are run in the
+ * {@link SimulationContext} of the thread that calls {@link #runAll(List)}.
+ */
+public class WorkerPool {
+	private ForkJoinPool pool;
+	private int nrofThreads;
+
+	/**
+	 * Creates a new worker pool
+	 *
+	 * @param nrofThreads
+	 *            How many worker threads the pool uses
+	 */
+	public WorkerPool(int nrofThreads) {
+		if (nrofThreads < 1) {
+			throw new SimError("Invalid number of worker threads ("
+					+ nrofThreads + ")");
+		}
+		this.nrofThreads = nrofThreads;
+		this.pool = new ForkJoinPool(nrofThreads);
+	}
+
+	/**
+	 * Returns the number of worker threads in this pool
+	 *
+	 * @return the number of worker threads in this pool
+	 */
+	public int getNrofThreads() {
+		return this.nrofThreads;
+	}
+
+	/**
+	 * Returns how many tasks a work of the given size should be split to so
+	 * that all the workers are kept busy even if the tasks take different
+	 * amount of time.
+	 *
+	 * @param workSize
+	 *            Number of items in the work (e.g., hosts)
+	 * @return Number of tasks to split the work to (at least 1)
+	 */
+	public int getNrofTasks(int workSize) {
+		if (this.nrofThreads == 1) {
+			return 1; // single worker gains nothing from splitting
+		}
+
+		int nrof = this.nrofThreads * 4;
+		if (nrof > workSize) {
+			nrof = workSize;
+		}
+		return (nrof < 1 ? 1 : nrof);
+	}
+
+	/**
+	 * Runs all the given tasks and waits until all of them are done. If any
+	 * of the tasks throws an exception or error, it is re-thrown from here
+	 * (errors as such, exceptions wrapped in a {@link SimError}).
+	 *
+	 * @param tasks
+	 *            The tasks to run
+	 * @return The results of the tasks in the same order as the tasks
+	 */
+	public <T> List<T> runAll(List<? extends Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>(tasks.size());
+
+		if (tasks.size() == 1) { // no need to bother the workers
+			try {
+				results.add(tasks.get(0).call());
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new SimError(e);
+			}
+			return results;
+		}
+
+		SimulationContext context = SimulationContext.current();
+		if (!context.isDefault()) { // workers must use the caller's context
+			List<Callable<T>> inContext = new ArrayList<Callable<T>>(tasks
+					.size());
+			for (Callable<T> task : tasks) {
+				inContext.add(new ContextTask<T>(task, context));
+			}
+			tasks = inContext;
+		}
+
+		for (Future<T> f : this.pool.invokeAll(tasks)) {
+			try {
+				results.add(f.get());
+			} catch (InterruptedException e) {
+				throw new SimError(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new SimError((Exception) cause);
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Task that runs another task in a simulation context
+	 */
+	private static class ContextTask<T> implements Callable<T> {
+		private Callable<T> task;
+		private SimulationContext context;
+
+		public ContextTask(Callable<T> task, SimulationContext context) {
+			this.task = task;
+			this.context = context;
+		}
+
+		public T call() throws Exception {
+			SimulationContext.setCurrent(this.context);
+			try {
+				return this.task.call();
+			} finally {
+				SimulationContext.setCurrent(null);
+			}
+		}
+	}
+
+	/**
+	 * Returns a string representation of the pool
+	 *
+	 * @return a string representation of the pool
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + this.nrofThreads
+				+ " threads";
+	}
+}
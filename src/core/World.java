@@ -4,14 +4,20 @@
  */
 package core;
 
+import input.DTN2Events;
 import input.EventQueue;
+import input.EventQueueScheduler;
 import input.ExternalEvent;
+import input.MessageEventGenerator;
 import input.ScheduledUpdatesQueue;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.Callable;
 
 /**
  * World contains all the nodes and is responsible for updating their location
@@ -29,6 +35,19 @@ public class World {
 	 * {@link ConnectivityGrid#connectToNearNodes(DTNHost)}
 	 * <LI>3 (cell optimized for large amount of nodes) see
 	 * {@link ConnectivityGrid#connectAllNearNodes()}
+	 * <LI>4 (like 3 but uses flat arrays and checks every pair only once) see
+	 * {@link FlatConnectivityGrid#connectAllNearNodes()}
+	 * <LI>5 (like 4 but checks only the pairs in a neighbor list that is
+	 * rebuilt when needed) see {@link NeighborListGrid} and
+	 * {@link #NEIGHBOR_LIST_SKIN_S}
+	 * <LI>6 (sweep and prune; keeps the hosts sorted on one axis and checks
+	 * only the pairs that overlap on it; for very unevenly spread hosts) see
+	 * {@link SweepAndPrune}
+	 * <LI>7 (multi-level grid whose cell sizes depend on the ranges of the
+	 * hosts; for scenarios with very different ranges) see
+	 * {@link MultiLevelGrid}
+	 * <LI>8 (like 4 but only the cells with hosts exist; for very large or
+	 * mostly empty worlds) see {@link SparseConnectivityGrid}
 	 * </UL>
 	 * Default value is {@link #DEF_CON_ALG}. Selection of the algorithm should
 	 * not affect the amount of connections but it may affect the ordering of
@@ -42,37 +61,306 @@ public class World {
 	 * Single ConnectivityCell's size is the biggest radio range times this.
 	 * Larger values save memory and decrease startup time but may result in
 	 * slower simulation especially with algorithm 2. This has no effect for
-	 * algorithm 1. Default value is {@link #DEF_CON_CELL_SIZE_MULT}. Smallest
-	 * accepted value is 2.
+	 * algorithms 1 and 6. With algorithm 7 the smallest cells are the
+	 * smallest radio range times this. Also the cell size of the candidate
+	 * grid of {@link #DISCRETE_EVENTS_S}. Default value is
+	 * {@link #DEF_CON_CELL_SIZE_MULT}. Smallest accepted value is 2.
 	 * 
 	 * @see ConnectivityGrid
 	 */
 	public static final String CELL_SIZE_MULT_S = "cellSizeMult";
+	/**
+	 * Neighbor list skin -setting id ({@value} ). Used only with connection
+	 * algorithm 5. The pairs of hosts that are within their range plus this
+	 * distance (meters) from each other are in the neighbor list, which is
+	 * rebuilt when some host has moved more than half of this. Default value
+	 * is {@link #DEF_NEIGHBOR_LIST_SKIN}.
+	 * 
+	 * @see NeighborListGrid
+	 */
+	public static final String NEIGHBOR_LIST_SKIN_S = "neighborListSkin";
 	/**
 	 * Should the order of node updates be different (random) within every
 	 * update step -setting id ({@value} ). Boolean (true/false) variable.
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Should the hosts be moved concurrently using worker threads -setting id
+	 * ({@value} ). Boolean (true/false) variable. If enabled, every host's
+	 * movement model draws its random values from a stream of its own (see
+	 * {@link movement.MovementModel#useOwnRandomStream(int)}) so the results
+	 * do not depend on the number of threads, but they do differ from the
+	 * results of a run without this option. Hosts whose movement model is not
+	 * safe for concurrent use are moved by the simulation thread. Default is
+	 * {@link #DEF_PARALLEL_MOVEMENT}.
+	 */
+	public static final String PARALLEL_MOVEMENT_S = "parallelMovement";
+	/**
+	 * Should the connections be checked concurrently using worker threads
+	 * -setting id ({@value} ). Boolean (true/false) variable. Only affects
+	 * algorithm 3: see {@link ConnectivityGrid#connectAllNearNodes(WorkerPool)}
+	 * . Default is {@link #DEF_PARALLEL_CONNECTIONS}.
+	 */
+	public static final String PARALLEL_CONNECTIONS_S = "parallelConnections";
+	/**
+	 * Number of worker threads for the concurrent optimizations -setting id
+	 * ({@value} ). Default is the number of available processors.
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
+	/**
+	 * Should the exact contact start and end times be solved -setting id
+	 * ({@value} ). Boolean (true/false) variable. If enabled, the hosts are
+	 * moved at the start of every update interval and the times when they come
+	 * within and go out of each other's range during the interval are solved
+	 * by a {@link ContactPredictor}. The connections are then created and
+	 * destroyed at those times, in time order with the external events, so
+	 * the contact times do not depend on the update interval. Default is
+	 * {@link #DEF_KINETIC_CONTACTS}.
+	 */
+	public static final String KINETIC_CONTACTS_S = "kineticContacts";
+	/**
+	 * Should the length of every update interval be selected adaptively
+	 * -setting id ({@value} ). Boolean (true/false) variable. If enabled, the
+	 * update interval is the smallest time any pair of hosts needs to come
+	 * within or go out of each other's range at their current speeds (see
+	 * {@link AdaptiveInterval}), but at least the scenario's update interval
+	 * and at most {@link #MAX_UPDATE_INTERVAL_S}. Intervals are also shortened
+	 * to end at the next external event, ongoing transfer's end, and the end of
+	 * the simulation. Default is {@link #DEF_ADAPTIVE_INTERVAL}.
+	 */
+	public static final String ADAPTIVE_INTERVAL_S = "adaptiveInterval";
+	/**
+	 * Longest adaptive update interval -setting id ({@value} ). Used only if
+	 * {@link #ADAPTIVE_INTERVAL_S} is enabled. Default is
+	 * {@link #DEF_MAX_UPDATE_INTERVAL}.
+	 */
+	public static final String MAX_UPDATE_INTERVAL_S = "maxUpdateInterval";
+	/**
+	 * Should the routers be updated only when needed -setting id ({@value} ).
+	 * Boolean (true/false) variable. If enabled, the routers that support it
+	 * (see {@link routing.MessageRouter#isEventDriven()}) are updated only
+	 * when a connection of their host goes up or down, a message is created,
+	 * transferred, aborted or deleted at their host or at its neighbor, a
+	 * transfer is done, or a TTL check is due (see {@link RouterScheduler}).
+	 * Default is {@link #DEF_EVENT_DRIVEN_ROUTING}.
+	 */
+	public static final String EVENT_DRIVEN_ROUTING_S = "eventDrivenRouting";
+	/**
+	 * Should all hosts be updated after every external event -setting id
+	 * ({@value} ). Boolean (true/false) variable. If disabled, the external
+	 * events that happen at the same time are processed as one batch and
+	 * after that only the hosts the events accessed (see
+	 * {@link #getNodeByAddress(int)}) are updated; all hosts are updated only
+	 * after events that don't access any host (e.g., scheduled updates). If
+	 * enabled, all hosts are updated after every event as in the earlier
+	 * versions. Default is {@link #DEF_UPDATE_ALL_AFTER_EVENTS}.
+	 */
+	public static final String UPDATE_ALL_AFTER_EVENTS_S = "updateAllAfterEvents";
+	/**
+	 * Should the random update order be generated lazily -setting id
+	 * ({@value} ). Boolean (true/false) variable. Used only if
+	 * {@link #RANDOMIZE_UPDATES_S} is enabled. If enabled, the next host to
+	 * update is drawn only when it is needed (see {@link UpdateOrder}); the
+	 * orders are different from the default ones but still deterministic.
+	 * Default is {@link #DEF_LAZY_UPDATE_ORDER}.
+	 */
+	public static final String LAZY_UPDATE_ORDER_S = "lazyUpdateOrder";
+	/**
+	 * Should the simulation be run as a discrete-event simulation -setting id
+	 * ({@value} ). Boolean (true/false) variable. If enabled, movement
+	 * changes, connection events and router updates are events on one
+	 * calendar (see {@link DiscreteEventEngine}) and nothing is polled on
+	 * every update interval except the hosts' activeness and the routers that
+	 * are not event-driven. The update interval then only defines how often the
+	 * update listeners (e.g., the GUI) see the simulation. Event-driven routing
+	 * is used automatically and the kinetic contacts, adaptive interval and
+	 * concurrent movement optimizations are not used. Default is
+	 * {@link #DEF_DISCRETE_EVENTS}.
+	 */
+	public static final String DISCRETE_EVENTS_S = "discreteEvents";
+	/**
+	 * Should the hosts' routers be updated concurrently using worker threads
+	 * -setting id ({@value} ). Boolean (true/false) variable. If enabled, the
+	 * connected components of the contact graph are found on every update
+	 * (see {@link ContactComponents}) and the components are updated
+	 * concurrently; the hosts of every component are updated in the same
+	 * (random) order as without this option. The connection and message
+	 * events of the updates are given to the listeners (e.g., reports) after
+	 * all the updates, in the same order as they happen without this option,
+	 * so the results don't change. Routers must not share state with routers
+	 * of hosts they are not connected to. Default is
+	 * {@link #DEF_PARALLEL_ROUTING}.
+	 */
+	public static final String PARALLEL_ROUTING_S = "parallelRouting";
+	/**
+	 * Should the connectivity checks between static hosts be skipped -setting
+	 * id ({@value} ). Boolean (true/false) variable. If enabled, the hosts
+	 * whose location, range, activeness or forced connections have changed
+	 * are tracked (see {@link ChangedHosts}) and only the pairs with a
+	 * changed host are checked: the connection grid is searched only around
+	 * the changed hosts, and the connections between two static hosts are
+	 * not checked for range. Hosts that wait for their next path or are
+	 * inactive are not moved until their wait ends or their activeness may
+	 * change. Useful when many hosts wait in place (e.g., at the offices and
+	 * homes of working day movement). The results don't change. Works only
+	 * with the connection algorithms 1-3 (algorithm 3 checks the connections
+	 * like algorithm 2 and never concurrently); the other algorithms rebuild
+	 * their indexes from all the hosts on every check. Not used with
+	 * {@link #DISCRETE_EVENTS_S} or contact replay, which don't check the
+	 * connections. Default is {@link #DEF_SKIP_STATIC_PAIRS}.
+	 */
+	public static final String SKIP_STATIC_PAIRS_S = "skipStaticPairs";
+	/**
+	 * Should the update intervals be executed optimistically in parallel
+	 * -setting id ({@value} ). Boolean (true/false) variable. If enabled,
+	 * the world is split into vertical strips, one logical process (thread)
+	 * per strip, and every process executes the update intervals of the
+	 * hosts located in its strip ahead of the others, rolling them back when
+	 * another process's hosts turn out to have come within range (see
+	 * {@link TimeWarpEngine}). The hosts are moved like with
+	 * {@link #PARALLEL_MOVEMENT_S} and the results are the same as with it.
+	 * Works only with the connection algorithms 1 and 2, message creation
+	 * events, movement models and routers that support checkpoints and
+	 * without the other optimizations that change the update order, update
+	 * listeners, contact traces and anonymity. Default is
+	 * {@link #DEF_TIME_WARP}.
+	 */
+	public static final String TIME_WARP_S = "timeWarp";
+	/**
+	 * Number of Time Warp logical processes -setting id ({@value} ). Used
+	 * only if {@link #TIME_WARP_S} is enabled. Default is
+	 * {@link #DEF_TIME_WARP_LPS}.
+	 */
+	public static final String TIME_WARP_LPS_S = "timeWarpLps";
+	/**
+	 * Time Warp optimism window -setting id ({@value} ). How many update
+	 * intervals the logical processes can run ahead of the committed time.
+	 * Used only if {@link #TIME_WARP_S} is enabled. Default is
+	 * {@link #DEF_TIME_WARP_WINDOW}.
+	 */
+	public static final String TIME_WARP_WINDOW_S = "timeWarpWindow";
+	/**
+	 * Should the simulation be distributed over worker JVMs -setting id
+	 * ({@value} ). Boolean (true/false) variable. If enabled, the world is
+	 * split into a grid of rectangular regions (see
+	 * {@link #DISTRIBUTED_REGIONS_S}) and every region is owned by a worker
+	 * JVM that is started on this machine and moves, connects and updates the
+	 * hosts located in the region. The workers exchange the hosts near the
+	 * region borders (halos) with a coordinator in this JVM through loopback
+	 * sockets on every update interval, hosts that cross a border move to
+	 * the worker of their new region, and the reports of this JVM get the
+	 * events of all the workers (see {@link DistributedCoordinator}). The
+	 * results are the same as with {@link #PARALLEL_MOVEMENT_S}. Works with
+	 * the same scenarios as {@link #TIME_WARP_S} and not together with it.
+	 * Default is {@link #DEF_DISTRIBUTED}.
+	 */
+	public static final String DISTRIBUTED_S = "distributed";
+	/**
+	 * Distributed regions -setting id ({@value} ). Two comma separated
+	 * values: the number of region columns and rows, i.e., worker JVMs (see
+	 * {@link #DISTRIBUTED_S}). Default is {@link #DEF_DISTRIBUTED_REGIONS}.
+	 */
+	public static final String DISTRIBUTED_REGIONS_S = "distributedRegions";
+	/**
+	 * Maximum heap size of a distributed worker JVM (megabytes) -setting id
+	 * ({@value} ). Default is {@link #DEF_DISTRIBUTED_WORKER_MEMORY}.
+	 */
+	public static final String DISTRIBUTED_WORKER_MEMORY_S =
+		"distributedWorkerMemory";
 
 	/** default value for connection checking algorithm ({@value} ) */
 	public static final int DEF_CON_ALG = 2;
 	/** default value for cell size multiplier ({@value} ) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
+	/** default value for the neighbor list skin ({@value} ) */
+	public static final double DEF_NEIGHBOR_LIST_SKIN = 5;
 	/**
 	 * should the update order of nodes be randomized -setting's default value
 	 * ({@value} )
 	 */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** default value for concurrent host movement ({@value} ) */
+	public static final boolean DEF_PARALLEL_MOVEMENT = false;
+	/** default value for concurrent connection checking ({@value} ) */
+	public static final boolean DEF_PARALLEL_CONNECTIONS = false;
+	/** default value for solving the exact contact times ({@value} ) */
+	public static final boolean DEF_KINETIC_CONTACTS = false;
+	/** default value for adaptive update intervals ({@value} ) */
+	public static final boolean DEF_ADAPTIVE_INTERVAL = false;
+	/** default value for the longest adaptive update interval ({@value} ) */
+	public static final double DEF_MAX_UPDATE_INTERVAL = 10;
+	/** default value for event-driven router updates ({@value} ) */
+	public static final boolean DEF_EVENT_DRIVEN_ROUTING = false;
+	/** default value for updating all hosts after every event ({@value} ) */
+	public static final boolean DEF_UPDATE_ALL_AFTER_EVENTS = false;
+	/** default value for lazily generated update order ({@value} ) */
+	public static final boolean DEF_LAZY_UPDATE_ORDER = false;
+	/** default value for discrete-event simulation ({@value} ) */
+	public static final boolean DEF_DISCRETE_EVENTS = false;
+	/** default value for concurrent router updates ({@value} ) */
+	public static final boolean DEF_PARALLEL_ROUTING = false;
+	/** default value for skipping static host pairs ({@value} ) */
+	public static final boolean DEF_SKIP_STATIC_PAIRS = false;
+	/** default value for optimistic parallel execution ({@value} ) */
+	public static final boolean DEF_TIME_WARP = false;
+	/** default value for the number of logical processes ({@value} ) */
+	public static final int DEF_TIME_WARP_LPS = 4;
+	/** default value for the optimism window in intervals ({@value} ) */
+	public static final int DEF_TIME_WARP_WINDOW = 50;
+	/** default value for distributed runs ({@value} ) */
+	public static final boolean DEF_DISTRIBUTED = false;
+	/** default number of region columns and rows (2,2) */
+	public static final int[] DEF_DISTRIBUTED_REGIONS = { 2, 2 };
+	/** default maximum heap size of a worker JVM ({@value} ) */
+	public static final int DEF_DISTRIBUTED_WORKER_MEMORY = 512;
 
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
 	private ConnectivityGrid conGrid;
+	/**
+	 * index that finds the hosts within range of each other (null with
+	 * connection algorithm 1; the same object as {@link #conGrid} with
+	 * algorithms 2 and 3)
+	 */
+	private SpatialIndex spatialIndex;
+	/** solver of the exact contact times (null if not in use) */
+	private ContactPredictor contactPredictor;
+	/** selector of adaptive update intervals (null if not in use) */
+	private AdaptiveInterval adaptiveInterval;
+	/** scheduler of router updates or null if all routers are always updated */
+	private RouterScheduler routerScheduler;
+	/** discrete-event engine or null if the simulation is time-stepped */
+	private DiscreteEventEngine eventEngine;
+	/** recorders of the contact trace (null if contacts are not recorded) */
+	private List<ContactTrace.Recorder> contactRecorders;
+	/**
+	 * replayed contact trace or null if the hosts are moved and their
+	 * connections checked
+	 */
+	private ContactTrace contactReplay;
+	/** should all hosts be updated after every external event */
+	private boolean updateAllAfterEvents;
+	/** hosts accessed by the external events of the current batch */
+	private List<DTNHost> touchedHosts;
+	/** host list indexes of the {@link #touchedHosts} */
+	private int[] touchedIndexes;
+	/** which hosts are in {@link #touchedHosts} (indexed by host list
+	 * position) */
+	private boolean[] touched;
+	/** is an external event being processed */
+	private boolean processingEvent;
+	/** how many times the current external event has accessed a host */
+	private int nrofTouches;
+	/** end time of the simulation */
+	private double endTime;
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
 	private EventQueue nextEventQueue;
+	/** merges the events of all the event queues */
+	private EventQueueScheduler eventScheduler;
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
 	private boolean simulateConnections;
@@ -80,17 +368,75 @@ public class World {
 	 * nodes in the order they should be updated (if the order should be
 	 * randomized; null value means that the order should not be randomized)
 	 */
-	private ArrayList<DTNHost> updateOrder;
+	private UpdateOrder updateOrder;
+	/** should the random update order be generated lazily */
+	private boolean lazyUpdateOrder;
 	/** is cancellation of simulation requested from UI */
 	private boolean isCancelled;
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
-	private static ScheduledUpdatesQueue scheduledUpdates;
+	private ScheduledUpdatesQueue scheduledUpdates;
 
 	/** used connection algorithm */
 	private int conAlgorithm;
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
+	/** skin of the neighbor list (used only with connection algorithm 5) */
+	private double neighborListSkin;
+	/** should the connections be checked using worker threads */
+	private boolean parallelConnections;
+	/** should the pairs of static hosts be skipped in connection checks */
+	private boolean skipStaticPairs;
+	/** tracker of the changed hosts or null if all pairs are checked */
+	private ChangedHosts changedHosts;
+	/** number of worker threads to use (if any concurrency is enabled) */
+	private int nrofThreads;
+	/** worker threads or null if nothing is done concurrently */
+	private WorkerPool workers;
+	/**
+	 * tasks for moving hosts concurrently or null if hosts are moved by the
+	 * simulation thread only
+	 */
+	private List<MoveTask> moveTasks;
+	/** which hosts are moved by the tasks (indexed like {@link #hosts}) */
+	private boolean[] concurrentMovers;
+	/**
+	 * tasks for updating hosts concurrently or null if hosts are updated by
+	 * the simulation thread only
+	 */
+	private List<RouteTask> routeTasks;
+	/** connected components of the contact graph for concurrent updates */
+	private ContactComponents components;
+	/** the update order of the concurrent updates */
+	private int[] concurrentOrder;
+	/** recorder of the listener events of the concurrent updates */
+	private ListenerEventRecorder eventRecorder;
+	/** the scenario's connection and message listener lists */
+	private List<ConnectionListener> connectionListeners;
+	private List<MessageListener> messageListeners;
+	/** the listeners while the hosts are updated concurrently */
+	private List<ConnectionListener> recordingCListeners;
+	private List<MessageListener> recordingMListeners;
+	/** copies of the scenario's original listener lists */
+	private List<ConnectionListener> originalCListeners;
+	private List<MessageListener> originalMListeners;
+	/** the listeners the recorded events are given to */
+	private List<ConnectionListener> replayCListeners;
+	private List<MessageListener> replayMListeners;
+	/** should the intervals be executed with Time Warp */
+	private boolean timeWarpOn;
+	private int timeWarpLps;
+	private int timeWarpWindow;
+	/** the Time Warp engine or null if it's not in use */
+	private TimeWarpEngine timeWarp;
+	/** should the simulation be distributed over worker JVMs */
+	private boolean distributedOn;
+	private int[] distributedRegions;
+	private int distributedWorkerMemory;
+	/** coordinator of the workers or null if this is not distributed */
+	private DistributedCoordinator coordinator;
+	/** this JVM's worker or null if this is not a distributed worker */
+	private DistributedWorker worker;
 
 	/**
 	 * Constructor.
@@ -103,25 +449,421 @@ public class World {
 		this.sizeY = scen.getWorldSizeY();
 		this.simClock = SimClock.getInstance();
 		this.updateInterval = scen.getUpdateInterval();
+		this.endTime = scen.getEndTime();
 		this.updateListeners = scen.getUpdateListeners();
 
 		this.hosts = scen.getHosts();
 		this.simulateConnections = scen.simulateConnections();
 		this.eventQueues = scen.getExternalEvents();
-		scheduledUpdates = new ScheduledUpdatesQueue();
+		this.scheduledUpdates = new ScheduledUpdatesQueue();
+		SimulationContext.current().scheduledUpdates = this.scheduledUpdates;
+		initEventScheduler();
 		setNextEventQueue();
 
 		this.isCancelled = false;
 		initSettings();
 
-		if (this.simulateConnections && conAlgorithm != 1) {
+		if (this.routerScheduler != null) {
+			scen.addConnectionListener(this.routerScheduler);
+			scen.addMessageListener(this.routerScheduler);
+		}
+
+		initContactTrace(scen);
+
+		/* connections of a replayed contact trace need no grids */
+		boolean checkRanges = this.simulateConnections
+				&& this.contactReplay == null;
+		if (checkRanges && conAlgorithm != 1) {
+			this.spatialIndex = createSpatialIndex(scen.getMaxHostRange());
+			this.spatialIndex.addNodes(this.hosts);
+		}
+		if (checkRanges && skipStaticPairs && this.eventEngine == null) {
+			initChangeTracking();
+		}
+
+		if (this.moveTasks != null) {
+			initConcurrentMovement();
+		}
+
+		if (this.routeTasks != null) {
+			initConcurrentRouting(scen);
+		}
+
+		if (this.timeWarpOn) {
+			initTimeWarp(scen);
+		}
+		if (this.distributedOn) {
+			initDistributed(scen);
+		}
+	}
+
+	/**
+	 * Checks that the scenario can be executed with Time Warp (see
+	 * {@link #TIME_WARP_S}) and creates the engine
+	 * 
+	 * @param scen
+	 *            The scenario of this world
+	 */
+	private void initTimeWarp(SimScenario scen) {
+		checkSplittable(scen, "Time Warp", TIME_WARP_S);
+		if (this.timeWarpLps < 1) {
+			throw new SettingsError("Too small value (" + this.timeWarpLps
+					+ ") for " + SETTINGS_NS + "." + TIME_WARP_LPS_S);
+		}
+		if (this.timeWarpWindow < 1) {
+			throw new SettingsError("Too small value (" + this.timeWarpWindow
+					+ ") for " + SETTINGS_NS + "." + TIME_WARP_WINDOW_S);
+		}
+
+		this.timeWarp = new TimeWarpEngine(this, scen, this.timeWarpLps,
+				this.timeWarpWindow, getSplitCellSize(scen), this.updateOrder);
+	}
+
+	/**
+	 * Checks that the scenario can be distributed over worker JVMs (see
+	 * {@link #DISTRIBUTED_S}) and creates the coordinator, or sets up this
+	 * JVM's worker if this is a worker
+	 * 
+	 * @param scen
+	 *            The scenario of this world
+	 */
+	private void initDistributed(SimScenario scen) {
+		if (this.timeWarpOn) {
+			throw new SettingsError("Distributed mode (" + SETTINGS_NS + "."
+					+ DISTRIBUTED_S + ") can't be used with Time Warp");
+		}
+		checkSplittable(scen, "Distributed mode", DISTRIBUTED_S);
+		if (this.distributedRegions[0] < 1 || this.distributedRegions[1] < 1
+				|| this.distributedWorkerMemory < 1) {
+			throw new SettingsError("Invalid value for " + SETTINGS_NS + "."
+					+ DISTRIBUTED_REGIONS_S + " or " + SETTINGS_NS + "."
+					+ DISTRIBUTED_WORKER_MEMORY_S);
+		}
+
+		DistributedRegions regions = new DistributedRegions(this.sizeX,
+				this.sizeY, this.distributedRegions[0],
+				this.distributedRegions[1], scen.getMaxHostRange());
+		this.worker = DistributedWorker.getCurrent();
+		if (this.worker != null) {
+			this.worker.init(this, scen, regions, getSplitCellSize(scen),
+					this.updateOrder);
+		} else {
+			this.coordinator = new DistributedCoordinator(scen, regions,
+					this.distributedWorkerMemory);
+		}
+	}
+
+	/**
+	 * Returns the size of the grid cells whose order the engines that split
+	 * the hosts (see {@link TickRunner}) follow when connecting the hosts
+	 * 
+	 * @param scen
+	 *            The scenario of this world
+	 * @return the cell size or 0 with connection algorithm 1
+	 */
+	private int getSplitCellSize(SimScenario scen) {
+		if (this.conGrid != null) { // same cells as the connectivity grid
+			return (int) (scen.getMaxHostRange() * conCellSizeMult);
+		}
+		return 0;
+	}
+
+	/**
+	 * Checks that the hosts can be split between threads or processes that
+	 * execute the update intervals of their hosts (see {@link TickRunner})
+	 * 
+	 * @param scen
+	 *            The scenario of this world
+	 * @param mode
+	 *            Name of the execution mode for the error messages
+	 * @param setting
+	 *            Name of the setting that enables the mode
+	 * @throws SettingsError
+	 *             if the hosts can't be split
+	 */
+	private void checkSplittable(SimScenario scen, String mode,
+			String setting) {
+		String optimization = null;
+		if (this.contactPredictor != null) {
+			optimization = KINETIC_CONTACTS_S;
+		} else if (this.adaptiveInterval != null) {
+			optimization = ADAPTIVE_INTERVAL_S;
+		} else if (this.eventEngine != null) {
+			optimization = DISCRETE_EVENTS_S;
+		} else if (this.routerScheduler != null) {
+			optimization = EVENT_DRIVEN_ROUTING_S;
+		} else if (this.routeTasks != null) {
+			optimization = PARALLEL_ROUTING_S;
+		} else if (this.skipStaticPairs) {
+			optimization = SKIP_STATIC_PAIRS_S;
+		} else if (this.updateAllAfterEvents) {
+			optimization = UPDATE_ALL_AFTER_EVENTS_S;
+		} else if (this.updateOrder != null && this.lazyUpdateOrder) {
+			optimization = LAZY_UPDATE_ORDER_S;
+		} else if (this.conAlgorithm > 2) {
+			optimization = CON_ALG_S + " " + this.conAlgorithm;
+		}
+		if (optimization != null) {
+			throw new SettingsError(mode + " (" + SETTINGS_NS + "." + setting
+					+ ") can't be used with " + SETTINGS_NS + "."
+					+ optimization);
+		}
+		if (this.contactRecorders != null || this.contactReplay != null) {
+			throw new SettingsError(mode + " can't be used with contact "
+					+ "traces or routing variants");
+		}
+		if (!this.simulateConnections) {
+			throw new SettingsError(mode + " can't be used without "
+					+ "simulated connections");
+		}
+		if (SimScenario.isAnonOn()
+				|| SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT.equals(SimScenario
+						.getAnonymitySystem())) {
+			throw new SettingsError(mode + " can't be used with anonymity "
+					+ "or the " + SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT
+					+ " system");
+		}
+		if (this.updateListeners.size() > 0
+				|| scen.getMovementListeners().size() > 0) {
+			throw new SettingsError(mode + " can't be used with update or "
+					+ "movement listeners");
+		}
+
+		for (int i = 0, n = this.hosts.size(); i < n; i++) {
+			DTNHost host = this.hosts.get(i);
+			if (!this.concurrentMovers[i]) {
+				throw new SettingsError("Movement model " + host.getMovement()
+						+ " of " + host + " can't be used concurrently ("
+						+ mode + ")");
+			}
+			if (!host.getMovement().isCheckpointable()
+					|| !host.getRouter().isCheckpointable()) {
+				throw new SettingsError(mode + " can't save the state of "
+						+ host + ": its movement model or router doesn't "
+						+ "support checkpoints");
+			}
+			if (host.scansAtIntervals()) {
+				throw new SettingsError(mode + " can't be used with scan "
+						+ "intervals (host " + host + ")");
+			}
+		}
+	}
+
+	/**
+	 * Starts tracking the changed hosts for skipping the static host pairs
+	 * (see {@link #SKIP_STATIC_PAIRS_S})
+	 */
+	private void initChangeTracking() {
+		if (conAlgorithm > 3) {
+			throw new SettingsError("Static pairs (" + SETTINGS_NS + "."
+					+ SKIP_STATIC_PAIRS_S + ") can be skipped only with the "
+					+ "connection algorithms 1-3 (" + SETTINGS_NS + "."
+					+ CON_ALG_S + ")");
+		}
+		this.changedHosts = new ChangedHosts(this.hosts);
+	}
+
+	/**
+	 * Creates the spatial index of the selected connection algorithm (2-8)
+	 * 
+	 * @param maxRange
+	 *            The largest range of the hosts
+	 * @return The spatial index
+	 */
+	private SpatialIndex createSpatialIndex(double maxRange) {
+		switch (conAlgorithm) {
+		case 2:
+		case 3:
 			/* use cell based optimization */
-			this.conGrid = new ConnectivityGrid(sizeX, sizeY, (int) (scen
-					.getMaxHostRange() * conCellSizeMult));
-			this.conGrid.addNodes(this.hosts);
+			this.conGrid = new ConnectivityGrid(sizeX, sizeY,
+					(int) (maxRange * conCellSizeMult));
+			return this.conGrid;
+		case 4:
+			/* cells are computed on every connection check; no updates */
+			return new FlatConnectivityGrid(sizeX, sizeY,
+					(int) (maxRange * conCellSizeMult));
+		case 5:
+			/* cells must contain the range and the skin */
+			int cellSize = (int) Math.ceil(Math.max(maxRange
+					* conCellSizeMult, maxRange + neighborListSkin));
+			return new NeighborListGrid(sizeX, sizeY, cellSize,
+					neighborListSkin);
+		case 6:
+			/* the index sorts the hosts on every connection check */
+			return new SweepAndPrune(sizeX, sizeY);
+		case 7:
+			/* the cell sizes depend on the ranges of the hosts */
+			return new MultiLevelGrid(sizeX, sizeY, conCellSizeMult);
+		default:
+			/* memory use depends on the hosts, not on the world size */
+			return new SparseConnectivityGrid(
+					(int) (maxRange * conCellSizeMult));
 		}
 	}
 
+	/**
+	 * Initializes the recording and the replaying of the contact trace (see
+	 * {@link ContactTrace}) if they are enabled in the scenario's settings or
+	 * the run is one of the {@link RoutingVariants}. Both work only with the
+	 * standard time-stepped updates.
+	 * 
+	 * @param scen
+	 *            The scenario whose settings are used
+	 */
+	private void initContactTrace(SimScenario scen) {
+		String traceFile = scen.getContactTraceFile();
+		String replayFile = scen.getContactReplayFile();
+		RoutingVariants variants = RoutingVariants.getCurrent();
+		if (traceFile == null && replayFile == null && variants == null) {
+			return;
+		}
+
+		if (this.eventEngine != null || this.contactPredictor != null
+				|| this.adaptiveInterval != null) {
+			throw new SettingsError("Contact traces can't be recorded or "
+					+ "replayed with the " + SETTINGS_NS + "."
+					+ DISCRETE_EVENTS_S + ", " + KINETIC_CONTACTS_S + " or "
+					+ ADAPTIVE_INTERVAL_S + " settings");
+		}
+
+		if (variants != null && replayFile != null) {
+			throw new SettingsError("Routing variants can't replay a contact "
+					+ "trace file (" + SimScenario.SCENARIO_NS + "."
+					+ SimScenario.CONTACT_REPLAY_S + ")");
+		}
+
+		if (replayFile != null) {
+			this.contactReplay = new ContactTrace(replayFile, this.hosts);
+		} else if (variants != null && !variants.isRecordingRun()) {
+			this.contactReplay = new ContactTrace(variants.getTraceInput(),
+					"routing variants", this.hosts);
+		}
+		if (this.contactReplay != null) {
+			this.moveTasks = null; // hosts are not moved
+		}
+
+		this.contactRecorders = new ArrayList<ContactTrace.Recorder>();
+		if (traceFile != null) {
+			this.contactRecorders.add(new ContactTrace.Recorder(traceFile,
+					this.hosts.size()));
+		}
+		if (variants != null && variants.isRecordingRun()) {
+			this.contactRecorders.add(new ContactTrace.Recorder(variants
+					.getTraceOutput(), "routing variants", this.hosts.size()));
+		}
+		for (ContactTrace.Recorder recorder : this.contactRecorders) {
+			scen.addConnectionListener(recorder);
+		}
+	}
+
+	/**
+	 * Runs the jobs that are needed at the end of the simulation, i.e.,
+	 * closes the contact trace files (if any).
+	 */
+	public void done() {
+		if (this.timeWarp != null) {
+			this.timeWarp.stop();
+		}
+		if (this.coordinator != null) {
+			this.coordinator.stop();
+		}
+		if (this.worker != null) {
+			this.worker.close();
+		}
+		if (this.contactRecorders != null) {
+			for (ContactTrace.Recorder recorder : this.contactRecorders) {
+				recorder.close();
+			}
+			this.contactRecorders = null;
+		}
+		if (this.contactReplay != null) {
+			this.contactReplay.close();
+		}
+	}
+
+	/**
+	 * Initializes the concurrent router updates: creates the tasks and the
+	 * listener lists used while the hosts are updated concurrently. The
+	 * router scheduler (if any) keeps listening to the events directly; the
+	 * other listeners get the events from the recorder.
+	 * 
+	 * @param scen
+	 *            The scenario whose listeners are used
+	 */
+	private void initConcurrentRouting(SimScenario scen) {
+		int nrofHosts = this.hosts.size();
+		this.components = new ContactComponents(this.hosts);
+		this.concurrentOrder = new int[nrofHosts];
+		this.eventRecorder = new ListenerEventRecorder(nrofHosts);
+		this.connectionListeners = scen.getConnectionListeners();
+		this.messageListeners = scen.getMessageListeners();
+		this.originalCListeners = new ArrayList<ConnectionListener>(
+				this.connectionListeners);
+		this.originalMListeners = new ArrayList<MessageListener>(
+				this.messageListeners);
+
+		this.recordingCListeners = new ArrayList<ConnectionListener>();
+		this.replayCListeners = new ArrayList<ConnectionListener>();
+		for (ConnectionListener cl : this.connectionListeners) {
+			if (cl == this.routerScheduler) {
+				this.recordingCListeners.add(cl);
+			} else {
+				if (this.replayCListeners.size() == 0) {
+					this.recordingCListeners.add(this.eventRecorder);
+				}
+				this.replayCListeners.add(cl);
+			}
+		}
+		this.recordingMListeners = new ArrayList<MessageListener>();
+		this.replayMListeners = new ArrayList<MessageListener>();
+		for (MessageListener ml : this.messageListeners) {
+			if (ml == this.routerScheduler) {
+				this.recordingMListeners.add(ml);
+			} else {
+				if (this.replayMListeners.size() == 0) {
+					this.recordingMListeners.add(this.eventRecorder);
+				}
+				this.replayMListeners.add(ml);
+			}
+		}
+
+		int nrofTasks = getWorkers().getNrofTasks(nrofHosts);
+		for (int i = 0; i < nrofTasks; i++) {
+			this.routeTasks.add(new RouteTask());
+		}
+	}
+
+	/**
+	 * Initializes the concurrent movement of hosts: checks which hosts can be
+	 * moved by the worker threads and splits them to tasks.
+	 */
+	private void initConcurrentMovement() {
+		int nrofHosts = this.hosts.size();
+		this.concurrentMovers = new boolean[nrofHosts];
+		for (int i = 0; i < nrofHosts; i++) {
+			concurrentMovers[i] = hosts.get(i).initConcurrentMovement();
+		}
+
+		int nrofTasks = getWorkers().getNrofTasks(nrofHosts);
+		for (int i = 0; i < nrofTasks; i++) {
+			this.moveTasks.add(new MoveTask(i * nrofHosts / nrofTasks, (i + 1)
+					* nrofHosts / nrofTasks));
+		}
+	}
+
+	/**
+	 * Returns the worker thread pool of this world. The pool is created when
+	 * this method is called for the first time.
+	 * 
+	 * @return the worker thread pool
+	 */
+	private WorkerPool getWorkers() {
+		if (this.workers == null) {
+			this.workers = new WorkerPool(this.nrofThreads);
+		}
+		return this.workers;
+	}
+
 	/**
 	 * Initializes settings fields that can be configured using Settings class
 	 */
@@ -135,11 +877,17 @@ public class World {
 
 		if (randomizeUpdates) {
 			// creates the update order array that can be shuffled
-			this.updateOrder = new ArrayList<DTNHost>(this.hosts);
+			this.updateOrder = new UpdateOrder(this.hosts.size());
 		} else { // null pointer means "don't randomize"
 			this.updateOrder = null;
 		}
 
+		if (s.contains(LAZY_UPDATE_ORDER_S)) {
+			lazyUpdateOrder = s.getBoolean(LAZY_UPDATE_ORDER_S);
+		} else {
+			lazyUpdateOrder = DEF_LAZY_UPDATE_ORDER;
+		}
+
 		if (s.contains(CON_ALG_S)) {
 			conAlgorithm = s.getInt(CON_ALG_S);
 		} else {
@@ -150,13 +898,162 @@ public class World {
 		} else {
 			conCellSizeMult = DEF_CON_CELL_SIZE_MULT;
 		}
+		if (s.contains(NEIGHBOR_LIST_SKIN_S)) {
+			neighborListSkin = s.getDouble(NEIGHBOR_LIST_SKIN_S);
+		} else {
+			neighborListSkin = DEF_NEIGHBOR_LIST_SKIN;
+		}
+
+		if (s.contains(NROF_THREADS_S)) {
+			nrofThreads = s.getInt(NROF_THREADS_S);
+		} else {
+			nrofThreads = Runtime.getRuntime().availableProcessors();
+		}
+
+		boolean parallelMovement = DEF_PARALLEL_MOVEMENT;
+		if (s.contains(PARALLEL_MOVEMENT_S)) {
+			parallelMovement = s.getBoolean(PARALLEL_MOVEMENT_S);
+		}
+		if (s.contains(TIME_WARP_S)) {
+			timeWarpOn = s.getBoolean(TIME_WARP_S);
+		} else {
+			timeWarpOn = DEF_TIME_WARP;
+		}
+		if (s.contains(TIME_WARP_LPS_S)) {
+			timeWarpLps = s.getInt(TIME_WARP_LPS_S);
+		} else {
+			timeWarpLps = DEF_TIME_WARP_LPS;
+		}
+		if (s.contains(TIME_WARP_WINDOW_S)) {
+			timeWarpWindow = s.getInt(TIME_WARP_WINDOW_S);
+		} else {
+			timeWarpWindow = DEF_TIME_WARP_WINDOW;
+		}
+		if (s.contains(DISTRIBUTED_S)) {
+			distributedOn = s.getBoolean(DISTRIBUTED_S);
+		} else {
+			distributedOn = DEF_DISTRIBUTED;
+		}
+		if (s.contains(DISTRIBUTED_REGIONS_S)) {
+			distributedRegions = s.getCsvInts(DISTRIBUTED_REGIONS_S, 2);
+		} else {
+			distributedRegions = DEF_DISTRIBUTED_REGIONS;
+		}
+		if (s.contains(DISTRIBUTED_WORKER_MEMORY_S)) {
+			distributedWorkerMemory = s.getInt(DISTRIBUTED_WORKER_MEMORY_S);
+		} else {
+			distributedWorkerMemory = DEF_DISTRIBUTED_WORKER_MEMORY;
+		}
+		if (parallelMovement || timeWarpOn || distributedOn) {
+			this.moveTasks = new ArrayList<MoveTask>();
+		} else {
+			this.moveTasks = null;
+		}
+
+		boolean parallelRouting = DEF_PARALLEL_ROUTING;
+		if (s.contains(PARALLEL_ROUTING_S)) {
+			parallelRouting = s.getBoolean(PARALLEL_ROUTING_S);
+		}
+		if (parallelRouting) {
+			this.routeTasks = new ArrayList<RouteTask>();
+		} else {
+			this.routeTasks = null;
+		}
+
+		if (s.contains(PARALLEL_CONNECTIONS_S)) {
+			parallelConnections = s.getBoolean(PARALLEL_CONNECTIONS_S);
+		} else {
+			parallelConnections = DEF_PARALLEL_CONNECTIONS;
+		}
+		if (s.contains(SKIP_STATIC_PAIRS_S)) {
+			skipStaticPairs = s.getBoolean(SKIP_STATIC_PAIRS_S);
+		} else {
+			skipStaticPairs = DEF_SKIP_STATIC_PAIRS;
+		}
+
+		boolean kineticContacts = DEF_KINETIC_CONTACTS;
+		if (s.contains(KINETIC_CONTACTS_S)) {
+			kineticContacts = s.getBoolean(KINETIC_CONTACTS_S);
+		}
+		if (kineticContacts && this.simulateConnections) {
+			this.contactPredictor = new ContactPredictor(this.hosts);
+		}
+
+		boolean adaptive = DEF_ADAPTIVE_INTERVAL;
+		if (s.contains(ADAPTIVE_INTERVAL_S)) {
+			adaptive = s.getBoolean(ADAPTIVE_INTERVAL_S);
+		}
+		if (adaptive) {
+			double maxInterval = DEF_MAX_UPDATE_INTERVAL;
+			if (s.contains(MAX_UPDATE_INTERVAL_S)) {
+				maxInterval = s.getDouble(MAX_UPDATE_INTERVAL_S);
+			}
+			if (maxInterval < this.updateInterval) {
+				throw new SettingsError("Too small value (" + maxInterval
+						+ ") for " + SETTINGS_NS + "." + MAX_UPDATE_INTERVAL_S
+						+ ". Must not be smaller than the update interval");
+			}
+			this.adaptiveInterval = new AdaptiveInterval(this.hosts,
+					this.updateInterval, maxInterval, this.simulateConnections);
+		}
+
+		boolean eventDrivenRouting = DEF_EVENT_DRIVEN_ROUTING;
+		if (s.contains(EVENT_DRIVEN_ROUTING_S)) {
+			eventDrivenRouting = s.getBoolean(EVENT_DRIVEN_ROUTING_S);
+		}
+		boolean discreteEvents = DEF_DISCRETE_EVENTS;
+		if (s.contains(DISCRETE_EVENTS_S)) {
+			discreteEvents = s.getBoolean(DISCRETE_EVENTS_S);
+		}
+
+		if (discreteEvents) {
+			this.routerScheduler = new RouterScheduler(this.hosts, true);
+			double maxRange = 0;
+			for (DTNHost host : this.hosts) {
+				maxRange = Math.max(maxRange, host.getTransmitRange());
+			}
+			this.eventEngine = new DiscreteEventEngine(this.hosts,
+					this.routerScheduler, this.updateInterval,
+					this.simulateConnections, this.sizeX, this.sizeY,
+					(int) Math.ceil(maxRange * conCellSizeMult));
+			this.moveTasks = null;
+			this.routeTasks = null;
+			if (this.contactPredictor != null) {
+				for (DTNHost host : this.hosts) {
+					host.setMoveTrace(null);
+				}
+			}
+			this.contactPredictor = null;
+			this.adaptiveInterval = null;
+		} else if (eventDrivenRouting) {
+			this.routerScheduler = new RouterScheduler(this.hosts, false);
+		}
+
+		if (s.contains(UPDATE_ALL_AFTER_EVENTS_S)) {
+			updateAllAfterEvents = s.getBoolean(UPDATE_ALL_AFTER_EVENTS_S);
+		} else {
+			updateAllAfterEvents = DEF_UPDATE_ALL_AFTER_EVENTS;
+		}
+		if (!updateAllAfterEvents) {
+			this.touchedHosts = new ArrayList<DTNHost>();
+			this.touched = new boolean[this.hosts.size()];
+			this.touchedIndexes = new int[this.hosts.size()];
+		}
 
 		// check that values are within limits
+		if (nrofThreads < 1) {
+			throw new SettingsError("Too small value (" + nrofThreads
+					+ ") for " + SETTINGS_NS + "." + NROF_THREADS_S);
+		}
 		if (conCellSizeMult < 2) {
 			throw new SettingsError("Too small value (" + conCellSizeMult
 					+ ") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
-		if (conAlgorithm > 3 || conAlgorithm < 1) {
+		if (neighborListSkin < 0) {
+			throw new SettingsError("Negative value (" + neighborListSkin
+					+ ") for " + SETTINGS_NS + "." + NEIGHBOR_LIST_SKIN_S);
+		}
+		if (conAlgorithm > 8 || conAlgorithm < 1) {
 			throw new SettingsError("Invalid value (" + conAlgorithm + ") for "
 					+ SETTINGS_NS + "." + CON_ALG_S);
 		}
@@ -174,6 +1071,10 @@ public class World {
 		if (time <= 0) {
 			return;
 		}
+		if (this.contactReplay != null) {
+			simClock.setTime(0); // hosts are not moved when replaying
+			return;
+		}
 
 		while (SimClock.getTime() < -updateInterval) {
 			moveHosts(updateInterval);
@@ -187,23 +1088,217 @@ public class World {
 	}
 
 	/**
-	 * Goes through all event Queues and sets the event queue that has the next
-	 * event.
+	 * Writes the movement state of all hosts and the connectivity grid to a
+	 * checkpoint (see {@link MovementCheckpoint})
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @throws IOException
+	 *             if writing failed
 	 */
-	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
+	public void writeMovementState(DataOutput out) throws IOException {
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			hosts.get(i).writeMovementState(out);
+		}
+		out.writeBoolean(this.conGrid != null);
+		if (this.conGrid != null) {
+			this.conGrid.writeState(out);
+		}
+	}
 
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest) {
-				nextQueue = eq;
-				earliest = eq.nextEventsTime();
+	/**
+	 * Restores the movement state of all hosts and the connectivity grid
+	 * from a checkpoint written with {@link #writeMovementState(DataOutput)}
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readMovementState(DataInput in) throws IOException {
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			hosts.get(i).readMovementState(in);
+		}
+		if (in.readBoolean() != (this.conGrid != null)) {
+			throw new SettingsError("Checkpoint's connectivity grid setup "
+					+ "doesn't match the settings (" + SETTINGS_NS + "."
+					+ CON_ALG_S + ")");
+		}
+		if (this.conGrid != null) {
+			this.conGrid.readState(in);
+		}
+		if (this.changedHosts != null) {
+			this.changedHosts.resetMovement();
+		}
+	}
+
+	/**
+	 * Checks that the state of this world can be saved to a checkpoint (see
+	 * {@link SimCheckpoint}): all the hosts' movement models and routers must
+	 * support checkpoints, all the external event queues must be message
+	 * event generators and the optimizations that keep state between the
+	 * updates (kinetic contacts, discrete events, adaptive intervals, event
+	 * driven routing, contact traces and the connection algorithms that keep
+	 * their state between the checks, 5 and above) must not be in use.
+	 * 
+	 * @throws SettingsError
+	 *             if the state can't be saved
+	 */
+	public void checkCheckpointable() {
+		String optimization = null;
+		if (this.contactPredictor != null) {
+			optimization = KINETIC_CONTACTS_S;
+		} else if (this.eventEngine != null) {
+			optimization = DISCRETE_EVENTS_S;
+		} else if (this.adaptiveInterval != null) {
+			optimization = ADAPTIVE_INTERVAL_S;
+		} else if (this.routerScheduler != null) {
+			optimization = EVENT_DRIVEN_ROUTING_S;
+		} else if (this.conAlgorithm > 4) {
+			optimization = CON_ALG_S + " " + this.conAlgorithm;
+		} else if (this.timeWarp != null) {
+			optimization = TIME_WARP_S;
+		} else if (this.distributedOn) {
+			optimization = DISTRIBUTED_S;
+		}
+		if (optimization != null) {
+			throw new SettingsError("Checkpoints can't be used with "
+					+ SETTINGS_NS + "." + optimization);
+		}
+		if (this.contactRecorders != null || this.contactReplay != null) {
+			throw new SettingsError("Checkpoints can't be used with "
+					+ "contact traces or routing variants");
+		}
+
+		for (DTNHost host : this.hosts) {
+			if (!host.getMovement().isCheckpointable()) {
+				throw new SettingsError("Movement model "
+						+ host.getMovement() + " of " + host + " doesn't "
+						+ "support checkpoints");
+			}
+			if (!host.getRouter().isCheckpointable()) {
+				throw new SettingsError("Router "
+						+ host.getRouter().getClass().getSimpleName()
+						+ " of " + host + " doesn't support checkpoints");
+			}
+		}
+		for (EventQueue eq : this.eventQueues) {
+			if (!(eq instanceof MessageEventGenerator)) {
+				throw new SettingsError("Event queue "
+						+ eq.getClass().getSimpleName() + " doesn't support "
+						+ "checkpoints");
 			}
 		}
+	}
+
+	/**
+	 * Writes the state of this world to a checkpoint: the movement state
+	 * (see {@link #writeMovementState(DataOutput)}), the rest of the hosts'
+	 * state, the update order, the scheduled updates and the state of the
+	 * event queues
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @param cp
+	 *            The checkpoint that is written
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeState(DataOutput out, SimCheckpoint cp)
+			throws IOException {
+		writeMovementState(out);
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			hosts.get(i).writeState(out, cp);
+		}
+		out.writeBoolean(this.updateOrder != null);
+		if (this.updateOrder != null) {
+			this.updateOrder.writeState(out);
+		}
+		this.scheduledUpdates.writeState(out);
+		out.writeInt(this.eventQueues.size());
+		for (EventQueue eq : this.eventQueues) {
+			((MessageEventGenerator) eq).writeState(out);
+		}
+	}
+
+	/**
+	 * Restores the state of this world from a checkpoint written with
+	 * {@link #writeState(DataOutput, SimCheckpoint)}
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @param cp
+	 *            The checkpoint that is read
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readState(DataInput in, SimCheckpoint cp) throws IOException {
+		readMovementState(in);
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			hosts.get(i).readState(in, cp);
+		}
+		if (in.readBoolean() != (this.updateOrder != null)) {
+			throw new SettingsError("Checkpoint's update order setup doesn't "
+					+ "match the settings (" + SETTINGS_NS + "."
+					+ RANDOMIZE_UPDATES_S + ")");
+		}
+		if (this.updateOrder != null) {
+			this.updateOrder.readState(in);
+		}
+		this.scheduledUpdates.readState(in);
+		int nrofQueues = in.readInt();
+		if (nrofQueues != this.eventQueues.size()) {
+			throw new SettingsError("Checkpoint has " + nrofQueues
+					+ " event queues but the settings have "
+					+ this.eventQueues.size());
+		}
+		for (EventQueue eq : this.eventQueues) {
+			((MessageEventGenerator) eq).readState(in);
+		}
+		setNextEventQueue();
+	}
 
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+	/**
+	 * Sets the event queue that has the next event (see
+	 * {@link EventQueueScheduler}).
+	 */
+	public void setNextEventQueue() {
+		this.nextEventQueue = this.eventScheduler.nextQueue();
+		this.nextQueueEventTime = this.eventScheduler.nextEventsTime();
+	}
+
+	/**
+	 * Returns the time of the next external event
+	 * 
+	 * @return the time of the next external event
+	 */
+	double nextEventTime() {
+		setNextEventQueue();
+		return this.nextQueueEventTime;
+	}
+
+	/**
+	 * Removes the next external event from its queue and returns it
+	 * 
+	 * @return the next external event
+	 */
+	ExternalEvent nextEvent() {
+		setNextEventQueue();
+		return this.nextEventQueue.nextEvent();
+	}
+
+	/**
+	 * Initializes the event scheduler with the scheduled updates queue and
+	 * the external event queues (in that order of precedence for events that
+	 * happen at the same time). Queues where events can be added at any time
+	 * are checked on every event.
+	 */
+	private void initEventScheduler() {
+		this.eventScheduler = new EventQueueScheduler();
+		this.eventScheduler.addQueue(scheduledUpdates, true);
+		for (EventQueue eq : eventQueues) {
+			this.eventScheduler.addQueue(eq, eq instanceof DTN2Events);
+		}
 	}
 
 	/**
@@ -212,22 +1307,58 @@ public class World {
 	 * and after one update interval.
 	 */
 	public void update() {
-		double runUntil = SimClock.getTime() + this.updateInterval;
+		if (this.timeWarp != null) {
+			this.timeWarp.update();
+			return;
+		}
+		if (this.coordinator != null) {
+			this.coordinator.update();
+			return;
+		}
+		if (this.worker != null) {
+			this.worker.update();
+			return;
+		}
+
+		double interval = getNextInterval();
+
+		if (this.eventEngine != null) {
+			updateWithDiscreteEvents(interval);
+			return;
+		}
+
+		if (this.contactPredictor != null) {
+			updateWithContactPrediction(interval);
+			return;
+		}
+
+		double runUntil = SimClock.getTime() + interval;
 
 		setNextEventQueue();
 
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
-			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
-			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
-			setNextEventQueue();
+			processNextEvents(true);
+		}
+
+		if (this.contactReplay != null) {
+			simClock.setTime(runUntil);
+			this.contactReplay.connect(runUntil); // replay connections
+			updateHosts();
+			for (UpdateListener ul : this.updateListeners) {
+				ul.updated(this.hosts);
+			}
+			return;
 		}
 
-		moveHosts(this.updateInterval);
+		moveHosts(interval);
 		simClock.setTime(runUntil);
 
+		if (this.contactRecorders != null) {
+			for (int i = 0, n = contactRecorders.size(); i < n; i++) {
+				contactRecorders.get(i).connectPhase(runUntil);
+			}
+		}
 		if (simulateConnections) {
 			connectHosts(); // make connections
 		}
@@ -240,24 +1371,301 @@ public class World {
 		}
 	}
 
+	/**
+	 * Returns the length of the next update interval. Unless adaptive update
+	 * intervals are in use, this is always the scenario's update interval.
+	 * 
+	 * @return the length of the next update interval
+	 */
+	private double getNextInterval() {
+		if (this.adaptiveInterval == null) {
+			return this.updateInterval;
+		}
+
+		double now = SimClock.getTime();
+		double interval = this.adaptiveInterval.getInterval();
+
+		/* end the interval at the next event or the end of the simulation */
+		setNextEventQueue();
+		double untilEvent = this.nextQueueEventTime - now;
+		if (untilEvent < interval) {
+			interval = untilEvent;
+		}
+		double untilEnd = this.endTime - now;
+		if (untilEnd < interval) {
+			interval = untilEnd;
+		}
+
+		/* events before that are processed within the interval as usual */
+		return (interval < this.updateInterval ? this.updateInterval
+				: interval);
+	}
+
+	/**
+	 * Update version that is used when the exact contact times are solved
+	 * (see {@link #KINETIC_CONTACTS_S}). The hosts are moved first and then
+	 * the contact events of the interval are processed in time order with the
+	 * external events. Hosts' routers are updated after every external event
+	 * (but their connections are not checked since the contact events take
+	 * care of that) and all hosts are updated normally at the end of the
+	 * interval.
+	 * 
+	 * @param interval
+	 *            Length of the update interval
+	 */
+	private void updateWithContactPrediction(double interval) {
+		double startTime = SimClock.getTime();
+		double runUntil = startTime + interval;
+
+		moveHosts(interval);
+		contactPredictor.predict(startTime, runUntil);
+		setNextEventQueue();
+
+		while (true) {
+			double contactTime = contactPredictor.nextEventTime();
+			if (contactTime <= runUntil
+					&& contactTime < this.nextQueueEventTime) {
+				simClock.setTime(contactTime);
+				contactPredictor.processNextEvent();
+			} else if (this.nextQueueEventTime <= runUntil) {
+				processNextEvents(false);
+			} else {
+				break; // nothing more to do during this interval
+			}
+		}
+
+		simClock.setTime(runUntil);
+		connectHosts(); // catches contacts of e.g. activated hosts
+		updateHosts();
+
+		/* inform all update listeners */
+		for (UpdateListener ul : this.updateListeners) {
+			ul.updated(this.hosts);
+		}
+	}
+
+	/**
+	 * Processes the next external event and updates the hosts. If all hosts
+	 * are updated after every event (see {@link #UPDATE_ALL_AFTER_EVENTS_S}),
+	 * only one event is processed. Otherwise all the events that happen at
+	 * the same time are processed and then only the hosts they accessed are
+	 * updated, in the order they were accessed, unless some event didn't
+	 * access any host (in which case all hosts are updated).
+	 * 
+	 * @param checkConnections
+	 *            If false, only the hosts' routers are updated
+	 */
+	private void processNextEvents(boolean checkConnections) {
+		double time = this.nextQueueEventTime;
+		simClock.setTime(time);
+
+		if (this.updateAllAfterEvents) {
+			ExternalEvent ee = this.nextEventQueue.nextEvent();
+			ee.processEvent(this);
+			if (this.contactReplay != null) {
+				this.contactReplay.advance(time);
+			}
+			updateHosts(checkConnections); // update all hosts after every event
+			setNextEventQueue();
+			return;
+		}
+
+		boolean updateAll = false;
+		do {
+			ExternalEvent ee = this.nextEventQueue.nextEvent();
+			this.nrofTouches = 0;
+			this.processingEvent = true;
+			ee.processEvent(this);
+			this.processingEvent = false;
+			if (this.nrofTouches == 0) {
+				updateAll = true; // e.g., a scheduled update
+			}
+			setNextEventQueue();
+		} while (this.nextQueueEventTime == time);
+
+		if (this.contactReplay != null) {
+			this.contactReplay.advance(time);
+		}
+		if (updateAll) {
+			updateHosts(checkConnections);
+		} else {
+			for (int i = 0, n = this.touchedHosts.size(); i < n; i++) {
+				updateHost(this.touchedHosts.get(i), checkConnections);
+			}
+		}
+
+		for (int i = 0, n = this.touchedHosts.size(); i < n; i++) {
+			this.touched[this.touchedIndexes[i]] = false;
+		}
+		this.touchedHosts.clear();
+	}
+
+	/**
+	 * Update version that is used in discrete-event simulation (see
+	 * {@link #DISCRETE_EVENTS_S}). The events of the engine are processed in
+	 * time order with the external events until the end of the interval.
+	 * 
+	 * @param interval
+	 *            Length of the update interval
+	 */
+	private void updateWithDiscreteEvents(double interval) {
+		double runUntil = SimClock.getTime() + interval;
+
+		eventEngine.checkActiveness();
+		setNextEventQueue();
+
+		while (true) {
+			double eventTime = eventEngine.nextEventTime();
+			if (eventTime <= runUntil && eventTime < this.nextQueueEventTime) {
+				simClock.setTime(eventTime);
+				eventEngine.processNextEvent();
+			} else if (this.nextQueueEventTime <= runUntil) {
+				processNextEvents(false);
+				eventEngine.updateRouters();
+			} else {
+				break; // nothing more to do during this interval
+			}
+		}
+
+		simClock.setTime(runUntil);
+		eventEngine.finishInterval();
+
+		/* inform all update listeners */
+		for (UpdateListener ul : this.updateListeners) {
+			ul.updated(this.hosts);
+		}
+	}
+
 	/**
 	 * Updates all hosts (calls update for every one of them). If update order
 	 * randomizing is on (updateOrder array is defined), the calls are made in
 	 * random order.
 	 */
 	private void updateHosts() {
+		updateHosts(true);
+	}
+
+	/**
+	 * Updates all hosts like {@link #updateHosts()} but the hosts' connections
+	 * are checked only if requested.
+	 * 
+	 * @param checkConnections
+	 *            If false, only the hosts' routers are updated
+	 * @see DTNHost#update(boolean)
+	 */
+	private void updateHosts(boolean checkConnections) {
+		if (this.routerScheduler != null) {
+			this.routerScheduler.wakeDueHosts(SimClock.getTime());
+		}
+
+		if (this.routeTasks != null) {
+			updateHostsConcurrently(checkConnections);
+			return;
+		}
+
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i = 0, n = hosts.size(); i < n; i++) {
-				hosts.get(i).update();
+				updateHost(hosts.get(i), checkConnections);
+			}
+		} else if (this.lazyUpdateOrder) { // draw the order while updating
+			this.updateOrder.startLazy(SimClock.getIntTime());
+			while (this.updateOrder.hasNext()) {
+				updateHost(hosts.get(this.updateOrder.next()), checkConnections);
 			}
 		} else { // update order randomizing is on
 			assert this.updateOrder.size() == this.hosts.size() : "Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng);
+			this.updateOrder.shuffle(SimClock.getIntTime());
 			for (int i = 0, n = hosts.size(); i < n; i++) {
-				this.updateOrder.get(i).update();
+				updateHost(hosts.get(this.updateOrder.get(i)), checkConnections);
+			}
+		}
+	}
+
+	/**
+	 * Updates all hosts like {@link #updateHosts(boolean)} but the connected
+	 * components of the contact graph are updated concurrently by the worker
+	 * threads. The components are split to tasks of about equal numbers of
+	 * hosts. The recorded listener events are given to the listeners after
+	 * the updates in the update order of the hosts.
+	 * 
+	 * @param checkConnections
+	 *            If false, only the hosts' routers are updated
+	 */
+	private void updateHostsConcurrently(boolean checkConnections) {
+		int nrofHosts = this.hosts.size();
+		int[] order = this.concurrentOrder;
+		if (this.updateOrder == null) { // randomizing is off
+			for (int i = 0; i < nrofHosts; i++) {
+				order[i] = i;
+			}
+		} else {
+			if (this.lazyUpdateOrder) { // same order as drawn lazily
+				this.updateOrder.startLazy(SimClock.getIntTime());
+				while (this.updateOrder.hasNext()) {
+					this.updateOrder.next();
+				}
+			} else {
+				this.updateOrder.shuffle(SimClock.getIntTime());
+			}
+			for (int i = 0; i < nrofHosts; i++) {
+				order[i] = this.updateOrder.get(i);
 			}
 		}
+
+		components.compute(order);
+		int nrofComponents = components.getNrofComponents();
+		int nrofTasks = this.routeTasks.size();
+		int component = 0;
+		for (int t = 0; t < nrofTasks; t++) {
+			RouteTask task = this.routeTasks.get(t);
+			int limit = (t + 1) * nrofHosts / nrofTasks;
+			task.from = components.getStart(component);
+			while (component < nrofComponents
+					&& components.getStart(component + 1) <= limit) {
+				component++;
+			}
+			task.to = components.getStart(component);
+			task.checkConnections = checkConnections;
+		}
+
+		setListeners(this.recordingCListeners, this.recordingMListeners);
+		try {
+			getWorkers().runAll(this.routeTasks);
+		} finally {
+			setListeners(this.originalCListeners, this.originalMListeners);
+		}
+
+		for (int i = 0; i < nrofHosts; i++) {
+			eventRecorder.replay(order[i], this.replayCListeners,
+					this.replayMListeners);
+		}
+	}
+
+	/**
+	 * Replaces the contents of the scenario's connection and message listener
+	 * lists (that all the hosts use)
+	 */
+	private void setListeners(List<ConnectionListener> cls,
+			List<MessageListener> mls) {
+		this.connectionListeners.clear();
+		this.connectionListeners.addAll(cls);
+		this.messageListeners.clear();
+		this.messageListeners.addAll(mls);
+	}
+
+	private void updateHost(DTNHost host, boolean checkConnections) {
+		if (this.contactReplay != null) {
+			/* connections are torn down only as recorded in the trace */
+			this.contactReplay.disconnect(host);
+			checkConnections = false;
+		}
+		if (this.routerScheduler != null) {
+			this.routerScheduler.update(host, checkConnections);
+		} else if (checkConnections) {
+			host.update();
+		} else {
+			host.update(false);
+		}
 	}
 
 	/**
@@ -267,12 +1675,58 @@ public class World {
 	 *            The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.moveTasks != null) {
+			moveHostsConcurrently(timeIncrement);
+			return;
+		}
+
+		if (this.changedHosts != null && this.contactPredictor == null) {
+			/* waiting hosts are skipped; moves aren't traced for predictions */
+			this.changedHosts.moveHosts(timeIncrement, conGrid);
+			return;
+		}
+
 		for (int i = 0, n = hosts.size(); i < n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
 			if (conGrid != null) {
 				conGrid.updateLocation(host);
 			}
+			if (this.changedHosts != null) {
+				this.changedHosts.checkMoved(i, null);
+			}
+		}
+	}
+
+	/**
+	 * Moves all hosts in the world for a given amount of time using the worker
+	 * threads. After the concurrent phase, the hosts that could not be moved
+	 * concurrently are moved, the postponed movement events are delivered, and
+	 * the hosts' cells in the connectivity grid are updated, all in the order
+	 * of the hosts' addresses.
+	 * 
+	 * @param timeIncrement
+	 *            The time how long all nodes should move
+	 */
+	private void moveHostsConcurrently(double timeIncrement) {
+		for (MoveTask t : this.moveTasks) {
+			t.timeIncrement = timeIncrement;
+		}
+		getWorkers().runAll(this.moveTasks);
+
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			DTNHost host = hosts.get(i);
+			if (concurrentMovers[i]) {
+				host.flushMovementEvents();
+			} else {
+				host.move(timeIncrement);
+			}
+			if (conGrid != null) {
+				conGrid.updateLocation(host);
+			}
+			if (this.changedHosts != null) {
+				this.changedHosts.checkMoved(i, null);
+			}
 		}
 	}
 
@@ -280,7 +1734,12 @@ public class World {
 	 * Try to connect all hosts within range
 	 */
 	private void connectHosts() {
-		if (this.conGrid != null) { // cell-optimized way
+		if (this.changedHosts != null) {
+			connectChangedHosts();
+			return;
+		}
+
+		if (this.spatialIndex != null) { // cell-optimized way
 			switch (conAlgorithm) {
 			case 2: // algorithm number 2
 				for (int i = 0, n = hosts.size(); i < n; i++) {
@@ -293,10 +1752,14 @@ public class World {
 				}
 				break;
 			case 3: // algorithm number 3
-				conGrid.connectAllNearNodes();
+				if (parallelConnections) {
+					conGrid.connectAllNearNodes(getWorkers());
+				} else {
+					conGrid.connectAllNearNodes();
+				}
 				break;
-			default:
-				assert false : "Invalid algorithm (" + conAlgorithm + ")";
+			default: // algorithms 4-8
+				spatialIndex.connectAllNearNodes();
 			}
 		} else { // the old way to do it (aka Algorithm no 1)
 			// try to connect every single node to all other nodes
@@ -311,6 +1774,35 @@ public class World {
 		}
 	}
 
+	/**
+	 * Try to connect the hosts that have changed since the previous check
+	 * (see {@link #SKIP_STATIC_PAIRS_S}). The pairs are connected in the same
+	 * order as {@link #connectHosts()} would connect them without the
+	 * tracking; only the hosts that have a changed host in their near cells
+	 * (or, with algorithm 1, any changed host) are gone through.
+	 */
+	private void connectChangedHosts() {
+		List<DTNHost> changed = this.changedHosts.startCheck();
+		int nrofChanged = changed.size();
+
+		if (this.conGrid == null) { // algorithm 1
+			Collections.sort(changed); // connected in the order of addresses
+			for (int i = 0, n = hosts.size(); i < n; i++) {
+				DTNHost host = hosts.get(i);
+				boolean isStatic = host.isStatic();
+				for (int j = 0, m = (isStatic ? nrofChanged : n); j < m; j++) {
+					host.connect(isStatic ? changed.get(j) : hosts.get(j));
+				}
+				if (isCancelled) {
+					return;
+				}
+			}
+			return;
+		}
+
+		conGrid.connectToNodesNear(changed);
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -362,17 +1854,82 @@ public class World {
 		assert node.getAddress() == address : "Node indexing failed. "
 				+ "Node " + node + " in index " + address;
 
+		if (this.processingEvent) { // the current event affects the node
+			this.nrofTouches++;
+			if (!this.touched[address]) {
+				this.touched[address] = true;
+				this.touchedIndexes[this.touchedHosts.size()] = address;
+				this.touchedHosts.add(node);
+			}
+		}
+
 		return node;
 	}
 
 	/**
-	 * Schedules an update request to all nodes to happen at the specified
-	 * simulation time.
+	 * Schedules an update request to all nodes of the current simulation to
+	 * happen at the specified simulation time.
 	 * 
 	 * @param simTime
 	 *            The time of the update
 	 */
 	public static void scheduleUpdate(double simTime) {
-		scheduledUpdates.addUpdate(simTime);
+		SimulationContext.current().scheduledUpdates.addUpdate(simTime);
+	}
+
+	/**
+	 * Task for updating a range of the hosts grouped by their connected
+	 * components in a worker thread. The range contains only whole
+	 * components.
+	 */
+	private class RouteTask implements Callable<Object> {
+		/** first position in the grouped order (inclusive) */
+		private int from;
+		/** last position in the grouped order (exclusive) */
+		private int to;
+		/** should the hosts' connections be checked */
+		private boolean checkConnections;
+
+		public Object call() {
+			for (int i = from; i < to; i++) {
+				int address = components.getHost(i);
+				eventRecorder.setCurrentHost(address);
+				updateHost(hosts.get(address), checkConnections);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Task for moving a range of hosts in a worker thread.
+	 */
+	private class MoveTask implements Callable<Object> {
+		private int from;
+		private int to;
+		/** how long the hosts should move on the next run */
+		private double timeIncrement;
+
+		/**
+		 * Creates a task for moving the hosts whose index is within the given
+		 * range
+		 * 
+		 * @param from
+		 *            Index of the first host (inclusive)
+		 * @param to
+		 *            Index of the last host (exclusive)
+		 */
+		public MoveTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		public Object call() {
+			for (int i = from; i < to; i++) {
+				if (concurrentMovers[i]) {
+					hosts.get(i).move(timeIncrement);
+				}
+			}
+			return null;
+		}
 	}
 }
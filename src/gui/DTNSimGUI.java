@@ -116,6 +116,9 @@ public class DTNSimGUI extends DTNSimUI {
 					processAssertionError(e);
 				}
 				simTime = SimClock.getTime();
+				if (simTime < endTime) {
+					writeCheckpointIfDue();
+				}
 			}
 			this.update(false);
 		}
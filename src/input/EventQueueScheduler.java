@@ -0,0 +1,193 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <P>
+ * Merges the events of multiple event queues to a single time ordered
+ * stream. The queues are kept in an indexed min-heap keyed by the time of
+ * their next event, so finding the queue with the next event takes
+ * O(log Q) time with Q queues instead of checking every queue.
+ * </P>
+ * <P>
+ * The order of the queues is the order they were added in; if multiple
+ * queues have an event at the same time, the queue that was added first is
+ * selected (like when going through the queues in a list and picking the
+ * first queue with the earliest event).
+ * </P>
+ * <P>
+ * The heap is valid as long as the time of a queue's next event changes only
+ * when its {@link EventQueue#nextEvent()} is called, and only the queue
+ * returned by the last call of {@link #nextQueue()} is asked for events.
+ * Queues whose next event's time can also change otherwise (e.g., queues
+ * where events can be added at any time) must be added as volatile queues;
+ * they are checked on every call.
+ * </P>
+ */
+public class EventQueueScheduler {
+	private List<EventQueue> queues;
+	/** keys (times of the next events) of the queues (indexed by queue) */
+	private double[] times;
+	/** heap of queue indexes */
+	private int[] heap;
+	/** positions of the queues in the heap (indexed by queue) */
+	private int[] positions;
+	private int heapSize;
+	/** indexes of the volatile queues in the order they were added */
+	private List<Integer> volatileQueues;
+	/** index of the queue returned by the last call to nextQueue */
+	private int lastQueue;
+	/** time of the next event of the queue returned by nextQueue */
+	private double nextTime;
+
+	/**
+	 * Creates a new, empty, scheduler
+	 */
+	public EventQueueScheduler() {
+		this.queues = new ArrayList<EventQueue>();
+		this.times = new double[0];
+		this.heap = new int[0];
+		this.positions = new int[0];
+		this.heapSize = 0;
+		this.volatileQueues = new ArrayList<Integer>();
+		this.lastQueue = -1;
+		this.nextTime = Double.MAX_VALUE;
+	}
+
+	/**
+	 * Adds a new queue to the scheduler.
+	 *
+	 * @param queue
+	 *            The queue to add
+	 * @param isVolatile
+	 *            If true, the time of the queue's next event can change
+	 *            without calling {@link EventQueue#nextEvent()} and the queue
+	 *            is checked every time the next queue is requested
+	 */
+	public void addQueue(EventQueue queue, boolean isVolatile) {
+		int index = this.queues.size();
+		this.queues.add(queue);
+		this.times = Arrays.copyOf(this.times, index + 1);
+		this.positions = Arrays.copyOf(this.positions, index + 1);
+		this.heap = Arrays.copyOf(this.heap, index + 1);
+
+		if (isVolatile) {
+			this.volatileQueues.add(index);
+			this.positions[index] = -1;
+		} else {
+			this.times[index] = queue.nextEventsTime();
+			this.heap[heapSize] = index;
+			this.positions[index] = heapSize;
+			heapSize++;
+			siftUp(heapSize - 1);
+		}
+	}
+
+	/**
+	 * Returns the queue that has the next event. The queue returned by the
+	 * previous call may have been asked for events after that call.
+	 *
+	 * @return The queue that has the next event or null if there are no
+	 *         queues
+	 */
+	public EventQueue nextQueue() {
+		if (this.lastQueue >= 0 && this.positions[lastQueue] >= 0) {
+			/* the previous queue may have given out its next event */
+			updateKey(lastQueue, queues.get(lastQueue).nextEventsTime());
+		}
+
+		int best = -1;
+		double earliest = Double.MAX_VALUE;
+		if (heapSize > 0) {
+			best = heap[0];
+			earliest = times[best];
+		}
+
+		for (int i = 0, n = volatileQueues.size(); i < n; i++) {
+			int index = volatileQueues.get(i);
+			double time = queues.get(index).nextEventsTime();
+			if (best < 0 || time < earliest
+					|| (time == earliest && index < best)) {
+				best = index;
+				earliest = time;
+			}
+		}
+
+		this.lastQueue = best;
+		this.nextTime = earliest;
+		return (best < 0 ? null : queues.get(best));
+	}
+
+	/**
+	 * Returns the time of the next event of the queue returned by the last
+	 * call to {@link #nextQueue()}
+	 *
+	 * @return The time of the next event or Double.MAX_VALUE if there are no
+	 *         queues
+	 */
+	public double nextEventsTime() {
+		return this.nextTime;
+	}
+
+	/**
+	 * Changes the key of a queue in the heap and restores the heap order
+	 */
+	private void updateKey(int index, double time) {
+		double old = times[index];
+		times[index] = time;
+		if (time < old) {
+			siftUp(positions[index]);
+		} else if (time > old) {
+			siftDown(positions[index]);
+		}
+	}
+
+	/**
+	 * Returns true if the queue a should be before the queue b
+	 */
+	private boolean isBefore(int a, int b) {
+		return times[a] < times[b] || (times[a] == times[b] && a < b);
+	}
+
+	private void siftUp(int pos) {
+		int index = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!isBefore(index, heap[parent])) {
+				break;
+			}
+			heap[pos] = heap[parent];
+			positions[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = index;
+		positions[index] = pos;
+	}
+
+	private void siftDown(int pos) {
+		int index = heap[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && isBefore(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!isBefore(heap[child], index)) {
+				break;
+			}
+			heap[pos] = heap[child];
+			positions[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = index;
+		positions[index] = pos;
+	}
+}
@@ -48,7 +48,7 @@ public class MessageCreateEvent extends MessageEvent {
 		DTNHost from = world.getNodeByAddress(this.fromAddr);
 
 		Message m = new Message(from, to, this.id, this.size);
-		if (SimScenario.isAnonOn) {
+		if (SimScenario.isAnonOn()) {
 			m.setAnonymous(true);
 		}
 		m.notifyCreated();
@@ -34,6 +34,24 @@ public abstract class MessageEvent extends ExternalEvent {
 		this.id = id;
 	}
 
+	/**
+	 * Returns the address of the node the message is from
+	 * 
+	 * @return the address of the node the message is from
+	 */
+	public int getFromAddr() {
+		return this.fromAddr;
+	}
+
+	/**
+	 * Returns the address of the node the message is to
+	 * 
+	 * @return the address of the node the message is to
+	 */
+	public int getToAddr() {
+		return this.toAddr;
+	}
+
 	public String toString() {
 		return "MSG @" + this.time + " " + id;
 	}
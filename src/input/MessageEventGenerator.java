@@ -4,10 +4,13 @@
  */
 package input;
 
-import java.util.Random;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 import core.Settings;
 import core.SettingsError;
+import core.SimRandom;
 
 /**
  * Message creation -external events generator. Creates uniformly distributed
@@ -74,7 +77,7 @@ public class MessageEventGenerator implements EventQueue {
 	private double[] msgTime;
 
 	/** Random number generator for this Class */
-	private Random rng;
+	private SimRandom rng;
 
 	/**
 	 * Constructor, initializes the interval between events, and the size of
@@ -101,7 +104,7 @@ public class MessageEventGenerator implements EventQueue {
 		}
 
 		/* if prefix is unique, so will be the rng's sequence */
-		this.rng = new Random(idPrefix.hashCode());
+		this.rng = new SimRandom(idPrefix.hashCode());
 
 		if (this.sizeRange.length == 1) {
 			/* convert single value to range with 0 length */
@@ -198,6 +201,42 @@ public class MessageEventGenerator implements EventQueue {
 		return this.nextEventsTime;
 	}
 
+	/**
+	 * Writes the state of this generator (next event's time, next message ID
+	 * and the state of the random number generator) to a checkpoint
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @throws IOException
+	 *             if writing failed
+	 * @see core.SimCheckpoint
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeUTF(this.idPrefix);
+		out.writeDouble(this.nextEventsTime);
+		out.writeInt(this.id);
+		this.rng.writeState(out);
+	}
+
+	/**
+	 * Restores the state written with {@link #writeState(DataOutput)}
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readState(DataInput in) throws IOException {
+		String prefix = in.readUTF();
+		if (!prefix.equals(this.idPrefix)) {
+			throw new SettingsError("Checkpoint has message prefix " + prefix
+					+ " but the setting is " + this.idPrefix);
+		}
+		this.nextEventsTime = in.readDouble();
+		this.id = in.readInt();
+		this.rng.readState(in);
+	}
+
 	/**
 	 * Returns a next free message ID
 	 * 
@@ -4,8 +4,10 @@
  */
 package input;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.TreeSet;
 
 /**
  * Event queue where simulation objects can request an update to happen at the
@@ -13,16 +15,14 @@ import java.util.List;
  * single update.
  */
 public class ScheduledUpdatesQueue implements EventQueue {
-	/** Time of the event (simulated seconds) */
-	private ExternalEvent nextEvent;
-	private List<ExternalEvent> updates;
+	/** Times of the requested updates (simulated seconds) */
+	private TreeSet<Double> updates;
 
 	/**
 	 * Constructor. Creates an empty update queue.
 	 */
 	public ScheduledUpdatesQueue() {
-		this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		this.updates = new ArrayList<ExternalEvent>();
+		this.updates = new TreeSet<Double>();
 	}
 
 	/**
@@ -32,15 +32,11 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event
 	 */
 	public ExternalEvent nextEvent() {
-		ExternalEvent event = this.nextEvent;
-
-		if (this.updates.size() == 0) {
-			this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		} else {
-			this.nextEvent = this.updates.remove(0);
+		if (this.updates.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
 		}
 
-		return event;
+		return new ExternalEvent(this.updates.pollFirst());
 	}
 
 	/**
@@ -50,56 +46,66 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event's time
 	 */
 	public double nextEventsTime() {
-		return this.nextEvent.getTime();
+		if (this.updates.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+
+		return this.updates.first();
 	}
 
 	/**
-	 * Add a new update request for the given time
+	 * Add a new update request for the given time. Requests for a time that
+	 * already has an update are merged to the existing update.
 	 * 
 	 * @param simTime
 	 *            The time when the update should happen
 	 */
 	public void addUpdate(double simTime) {
-		ExternalEvent ee = new ExternalEvent(simTime);
+		this.updates.add(simTime);
+	}
 
-		if (ee.compareTo(nextEvent) == 0) { // this event is already next
-			return;
-		} else if (this.nextEvent.getTime() > simTime) { // new nextEvent
-			putToQueue(this.nextEvent); // put the old nextEvent back to q
-			this.nextEvent = ee;
-		} else { // given event happens later..
-			putToQueue(ee);
+	/**
+	 * Writes the times of the requested updates to a checkpoint
+	 * 
+	 * @param out
+	 *            Where to write the times
+	 * @throws IOException
+	 *             if writing failed
+	 * @see core.SimCheckpoint
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(this.updates.size());
+		for (double time : this.updates) {
+			out.writeDouble(time);
 		}
 	}
 
 	/**
-	 * Puts a event to the queue in the right place
+	 * Replaces the requested updates with the ones written with
+	 * {@link #writeState(DataOutput)}
 	 * 
-	 * @param ee
-	 *            The event to put to the queue
+	 * @param in
+	 *            Where to read the times from
+	 * @throws IOException
+	 *             if reading failed
 	 */
-	private void putToQueue(ExternalEvent ee) {
-		double eeTime = ee.getTime();
-
-		for (int i = 0, n = this.updates.size(); i < n; i++) {
-			double time = updates.get(i).getTime();
-			if (time == eeTime) {
-				return; // update with the given time exists -> no need for new
-			} else if (eeTime < time) {
-				this.updates.add(i, ee);
-				return;
-			}
+	public void readState(DataInput in) throws IOException {
+		this.updates.clear();
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			this.updates.add(in.readDouble());
 		}
-
-		/* all existing updates are earlier -> add to the end of the list */
-		this.updates.add(ee);
 	}
 
 	public String toString() {
-		String times = "updates @ " + this.nextEvent.getTime();
+		String times = "updates @ " + this.nextEventsTime();
+		boolean first = true;
 
-		for (ExternalEvent ee : this.updates) {
-			times += ", " + ee.getTime();
+		for (double time : this.updates) {
+			if (first) {
+				first = false; // already printed as the next update
+			} else {
+				times += ", " + time;
+			}
 		}
 
 		return times;
@@ -78,13 +78,50 @@ public class ActivenessHandler {
 			return true; // no inactive times
 		}
 
+		return checkActiveTimes();
+	}
+
+	/**
+	 * Returns the next time when the activeness may change, i.e., the start
+	 * of the next active time range or the end of the current one. Nodes are
+	 * still active at the end time and become inactive right after it.
+	 * 
+	 * @return The time of the next change (may be the current time if the
+	 *         time is at the end of a time range) or Double.MAX_VALUE if the
+	 *         activeness never changes
+	 */
+	public synchronized double nextChangeTime() {
+		if (this.activeTimes == null) {
+			return Double.MAX_VALUE; // no inactive times
+		}
+
+		checkActiveTimes();
+		if (this.curRange == null) {
+			return Double.MAX_VALUE; // out of active times for good
+		}
+
+		if (SimClock.getTime() < this.curRange.start) {
+			return this.curRange.start;
+		} else {
+			return this.curRange.end;
+		}
+	}
+
+	/**
+	 * Advances the current time range if needed and checks if the current time
+	 * is within it. Synchronized because the same handler is shared by all
+	 * nodes of a group, which may be moved concurrently.
+	 *
+	 * @return true if the current time is within an active time range
+	 */
+	private synchronized boolean checkActiveTimes() {
 		if (curRange == null) {
 			return false; // out of active times
 		}
 
 		double time = SimClock.getTime();
 
-		if (this.curRange.isOut(time)) { // time for the next time range
+		while (this.curRange.isOut(time)) { // time for the next time range
 			this.curRange = activeTimes.poll();
 			if (curRange == null) {
 				return false; // out of active times
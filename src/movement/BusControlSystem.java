@@ -11,6 +11,7 @@ import java.util.List;
 import movement.map.SimMap;
 import core.Coord;
 import core.DTNSim;
+import core.SimulationContext;
 
 /**
  * This class controls busses and passengers that can use the bus. There can be
@@ -22,8 +23,6 @@ import core.DTNSim;
 public class BusControlSystem {
 	public static final String BUS_CONTROL_SYSTEM_NR = "busControlSystemNr";
 
-	private static HashMap<Integer, BusControlSystem> systems;
-
 	private HashMap<Integer, BusMovement> busses;
 	private HashMap<Integer, BusTravellerMovement> travellers;
 	private List<Coord> busStops;
@@ -48,7 +47,8 @@ public class BusControlSystem {
 	}
 
 	public static void reset() {
-		systems = new HashMap<Integer, BusControlSystem>();
+		SimulationContext.current().setState(BusControlSystem.class,
+				new HashMap<Integer, BusControlSystem>());
 	}
 
 	/**
@@ -91,6 +91,14 @@ public class BusControlSystem {
 	 */
 	public static BusControlSystem getBusControlSystem(int systemID) {
 		Integer id = new Integer(systemID);
+		@SuppressWarnings("unchecked")
+		HashMap<Integer, BusControlSystem> systems =
+			(HashMap<Integer, BusControlSystem>) SimulationContext.current()
+				.getState(BusControlSystem.class);
+		if (systems == null) {
+			reset();
+			return getBusControlSystem(systemID);
+		}
 
 		if (systems.containsKey(id)) {
 			return systems.get(id);
@@ -10,6 +10,7 @@ import java.util.List;
 import movement.map.MapNode;
 import core.Coord;
 import core.Settings;
+import core.SimulationContext;
 
 /**
  * This class controls the movement of busses. It informs the bus control system
@@ -21,7 +22,6 @@ public class BusMovement extends MapRouteMovement {
 
 	private BusControlSystem controlSystem;
 	private int id;
-	private static int nextID = 0;
 	private boolean startMode;
 	private List<Coord> stops;
 
@@ -35,7 +35,7 @@ public class BusMovement extends MapRouteMovement {
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
 		controlSystem.setMap(super.getMap());
-		this.id = nextID++;
+		this.id = SimulationContext.current().nextId(BusMovement.class);
 		controlSystem.registerBus(this);
 		startMode = true;
 		stops = new LinkedList<Coord>();
@@ -54,7 +54,7 @@ public class BusMovement extends MapRouteMovement {
 	public BusMovement(BusMovement proto) {
 		super(proto);
 		this.controlSystem = proto.controlSystem;
-		this.id = nextID++;
+		this.id = SimulationContext.current().nextId(BusMovement.class);
 		controlSystem.registerBus(this);
 		startMode = true;
 	}
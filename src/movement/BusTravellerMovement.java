@@ -12,6 +12,7 @@ import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
+import core.SimulationContext;
 
 /**
  * 
@@ -52,7 +53,6 @@ public class BusTravellerMovement extends MapBasedMovement implements
 
 	private boolean takeBus;
 
-	private static int nextID = 0;
 
 	/**
 	 * Creates a BusTravellerModel
@@ -63,7 +63,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		super(settings);
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
-		id = nextID++;
+		id = SimulationContext.current().nextId(BusTravellerMovement.class);
 		controlSystem.registerTraveller(this);
 		nextPath = new Path();
 		state = STATE_WALKING_ELSEWHERE;
@@ -91,7 +91,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			location = proto.location.clone();
 		}
 		nextPath = proto.nextPath;
-		id = nextID++;
+		id = SimulationContext.current().nextId(BusTravellerMovement.class);
 		controlSystem.registerTraveller(this);
 		probabilities = proto.probabilities;
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
@@ -361,7 +361,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	}
 
 	public static void reset() {
-		nextID = 0;
+		SimulationContext.current().setState(BusTravellerMovement.class, null);
 	}
 
 }
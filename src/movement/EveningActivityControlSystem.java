@@ -10,6 +10,7 @@ import java.util.Random;
 
 import core.Coord;
 import core.DTNSim;
+import core.SimulationContext;
 
 /**
  * This class controls the group mobility of the people meeting their friends in
@@ -25,8 +26,6 @@ public class EveningActivityControlSystem {
 
 	private Random rng;
 
-	private static HashMap<Integer, EveningActivityControlSystem> controlSystems;
-
 	static {
 		DTNSim.registerForReset("movement.EveningActivityControlSystem");
 		reset();
@@ -43,7 +42,9 @@ public class EveningActivityControlSystem {
 	}
 
 	public static void reset() {
-		controlSystems = new HashMap<Integer, EveningActivityControlSystem>();
+		SimulationContext.current().setState(
+				EveningActivityControlSystem.class,
+				new HashMap<Integer, EveningActivityControlSystem>());
 	}
 
 	/**
@@ -133,6 +134,15 @@ public class EveningActivityControlSystem {
 	 */
 	public static EveningActivityControlSystem getEveningActivityControlSystem(
 			int id) {
+		@SuppressWarnings("unchecked")
+		HashMap<Integer, EveningActivityControlSystem> controlSystems =
+			(HashMap<Integer, EveningActivityControlSystem>) SimulationContext
+				.current().getState(EveningActivityControlSystem.class);
+		if (controlSystems == null) {
+			reset();
+			return getEveningActivityControlSystem(id);
+		}
+
 		if (controlSystems.containsKey(new Integer(id))) {
 			return controlSystems.get(new Integer(id));
 		} else {
@@ -15,6 +15,7 @@ import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
+import core.SimulationContext;
 
 /**
  * A Class to model movement when people are out shopping or doing other
@@ -41,7 +42,6 @@ public class EveningActivityMovement extends MapBasedMovement implements
 	public static final String MIN_WAIT_TIME_SETTING = "minAfterShoppingStopTime";
 	public static final String MAX_WAIT_TIME_SETTING = "maxAfterShoppingStopTime";
 
-	private static int nrOfMeetingSpots = 10;
 
 	private int mode;
 	private boolean ready;
@@ -57,7 +57,6 @@ public class EveningActivityMovement extends MapBasedMovement implements
 
 	private int id;
 
-	private static int nextID = 0;
 
 	private int minGroupSize;
 	private int maxGroupSize;
@@ -73,7 +72,7 @@ public class EveningActivityMovement extends MapBasedMovement implements
 		pathFinder = new DijkstraPathFinder(null);
 		mode = WALKING_TO_MEETING_SPOT_MODE;
 
-		nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
+		int nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
 
 		minGroupSize = settings.getInt(MIN_GROUP_SIZE_SETTING);
 		maxGroupSize = settings.getInt(MAX_GROUP_SIZE_SETTING);
@@ -118,7 +117,7 @@ public class EveningActivityMovement extends MapBasedMovement implements
 			}
 		}
 
-		this.id = nextID++;
+		this.id = SimulationContext.current().nextId(EveningActivityMovement.class);
 
 		int scsID = settings.getInt(EVENING_ACTIVITY_CONTROL_SYSTEM_NR_SETTING);
 
@@ -144,7 +143,7 @@ public class EveningActivityMovement extends MapBasedMovement implements
 		super(proto);
 		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
-		this.id = nextID++;
+		this.id = SimulationContext.current().nextId(EveningActivityMovement.class);
 		scs = proto.scs;
 		scs.addEveningActivityNode(this);
 		this.setMinGroupSize(proto.getMinGroupSize());
@@ -277,7 +276,7 @@ public class EveningActivityMovement extends MapBasedMovement implements
 	}
 
 	public static void reset() {
-		nextID = 0;
+		SimulationContext.current().setState(EveningActivityMovement.class, null);
 	}
 
 	public int getMinGroupSize() {
@@ -16,6 +16,7 @@ import core.Coord;
 import core.DTNSim;
 import core.Settings;
 import core.SimClock;
+import core.SimulationContext;
 import core.Tuple;
 
 /**
@@ -31,24 +32,12 @@ public class ExternalMovement extends MovementModel {
 
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0, 0);
-	private static ExternalMovementReader reader;
-	private static String inputFileName;
-
-	/** mapping of external id to movement model */
-	private static Map<String, ExternalMovement> idMapping;
-	/** initial locations for nodes */
-	private static List<Tuple<String, Coord>> initLocations;
-	/** time of the very first location data */
-	private static double initTime;
-	/** sampling interval (seconds) of the location data */
-	private static double samplingInterval;
-	/** last read time stamp after preloading */
-	private static double lastPreloadTime;
-	/** how many time intervals to load on every preload run */
-	private static double nrofPreload = 10;
 	/** minimum number intervals that should be preloaded ahead of sim time */
 	private static final double MIN_AHEAD_INTERVALS = 2;
 
+	/** state shared by all the nodes of the simulation */
+	private Shared shared;
+
 	/** the very first location of the node */
 	private Coord intialLocation;
 	/** queue of path-start-time, path tuples */
@@ -78,25 +67,31 @@ public class ExternalMovement extends MovementModel {
 	public ExternalMovement(Settings settings) {
 		super(settings);
 
-		if (idMapping == null) {
+		SimulationContext context = SimulationContext.current();
+		this.shared = (Shared) context.getState(ExternalMovement.class);
+		if (this.shared == null) {
 			// run these the first time object is created or after reset call
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
-			idMapping = new HashMap<String, ExternalMovement>();
-			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
+			Shared sh = new Shared();
+			sh.idMapping = new HashMap<String, ExternalMovement>();
+			sh.inputFileName = s.getSetting(MOVEMENT_FILE_S);
+			sh.reader = new ExternalMovementReader(sh.inputFileName);
 
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
-			samplingInterval = -1;
-			lastPreloadTime = -1;
+			sh.initLocations = sh.reader.readNextMovements();
+			sh.initTime = sh.reader.getLastTimeStamp();
+			sh.samplingInterval = -1;
+			sh.lastPreloadTime = -1;
+			sh.nrofPreload = 10;
 
 			s.setNameSpace(EXTERNAL_MOVEMENT_NS);
 			if (s.contains(NROF_PRELOAD_S)) {
-				nrofPreload = s.getInt(NROF_PRELOAD_S);
-				if (nrofPreload <= 0) {
-					nrofPreload = 1;
+				sh.nrofPreload = s.getInt(NROF_PRELOAD_S);
+				if (sh.nrofPreload <= 0) {
+					sh.nrofPreload = 1;
 				}
 			}
+			context.setState(ExternalMovement.class, sh);
+			this.shared = sh;
 		}
 	}
 
@@ -109,18 +104,19 @@ public class ExternalMovement extends MovementModel {
 	 */
 	private ExternalMovement(MovementModel mm) {
 		super(mm);
+		this.shared = ((ExternalMovement) mm).shared;
 
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
 
-		if (initLocations.size() > 0) { // we have location data left
+		if (shared.initLocations.size() > 0) { // we have location data left
 			// gets a new location from the list
-			Tuple<String, Coord> initLoc = initLocations.remove(0);
+			Tuple<String, Coord> initLoc = shared.initLocations.remove(0);
 			this.intialLocation = latestLocation = initLoc.getValue();
-			this.latestPathStartTime = initTime;
+			this.latestPathStartTime = shared.initTime;
 
 			// puts the new model to model map for later updates
-			idMapping.put(initLoc.getKey(), this);
+			shared.idMapping.put(initLoc.getKey(), this);
 			isActive = true;
 		} else {
 			// no more location data left for the new node -> set inactive
@@ -132,16 +128,18 @@ public class ExternalMovement extends MovementModel {
 	/**
 	 * Checks if more paths should be preloaded and preloads them if needed.
 	 */
-	private static void checkPathNeed() {
-		if (samplingInterval == -1) { // first preload
-			lastPreloadTime = readMorePaths();
+	private void checkPathNeed() {
+		Shared sh = this.shared;
+		if (sh.samplingInterval == -1) { // first preload
+			sh.lastPreloadTime = readMorePaths();
 		}
 
-		if (lastPreloadTime != Double.NaN
-				&& SimClock.getTime() >= lastPreloadTime
-						- (samplingInterval * MIN_AHEAD_INTERVALS)) {
-			for (int i = 0; i < nrofPreload && lastPreloadTime != Double.NaN; i++) {
-				lastPreloadTime = readMorePaths();
+		if (sh.lastPreloadTime != Double.NaN
+				&& SimClock.getTime() >= sh.lastPreloadTime
+						- (sh.samplingInterval * MIN_AHEAD_INTERVALS)) {
+			for (int i = 0; i < sh.nrofPreload
+					&& sh.lastPreloadTime != Double.NaN; i++) {
+				sh.lastPreloadTime = readMorePaths();
 			}
 		}
 	}
@@ -156,6 +154,11 @@ public class ExternalMovement extends MovementModel {
 		return isActive;
 	}
 
+	@Override
+	public double nextActivenessChange() {
+		return Double.MAX_VALUE; // activeness is set on creation
+	}
+
 	/**
 	 * Adds a new location with a time to this model's move pattern. If the node
 	 * stayed stationary during the update, the current path is put to the queue
@@ -167,7 +170,7 @@ public class ExternalMovement extends MovementModel {
 	 *            When should the node be there
 	 */
 	private void addLocation(Coord loc, double time) {
-		assert samplingInterval > 0 : "Non-positive sampling interval!";
+		assert shared.samplingInterval > 0 : "Non-positive sampling interval!";
 		if (loc.equals(latestLocation)) { // node didn't move
 			if (latestPath != null) {
 				// constructing path -> end constructing and put it in the queue
@@ -184,7 +187,7 @@ public class ExternalMovement extends MovementModel {
 			latestPath = new Path();
 		}
 
-		double speed = loc.distance(this.latestLocation) / samplingInterval;
+		double speed = loc.distance(this.latestLocation) / shared.samplingInterval;
 		latestPath.addWaypoint(loc, speed);
 
 		this.latestLocation = loc;
@@ -222,12 +225,12 @@ public class ExternalMovement extends MovementModel {
 
 	@Override
 	public int getMaxX() {
-		return (int) (reader.getMaxX() - reader.getMinX()) + 1;
+		return (int) (shared.reader.getMaxX() - shared.reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
-		return (int) (reader.getMaxY() - reader.getMinY()) + 1;
+		return (int) (shared.reader.getMaxY() - shared.reader.getMinY()) + 1;
 	}
 
 	@Override
@@ -241,16 +244,17 @@ public class ExternalMovement extends MovementModel {
 	 * @return The time stamp of the reading or Double.NaN if no movements were
 	 *         read.
 	 */
-	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+	private double readMorePaths() {
+		Shared sh = this.shared;
+		List<Tuple<String, Coord>> list = sh.reader.readNextMovements();
+		double time = sh.reader.getLastTimeStamp();
 
-		if (samplingInterval == -1) {
-			samplingInterval = time - initTime;
+		if (sh.samplingInterval == -1) {
+			sh.samplingInterval = time - sh.initTime;
 		}
 
 		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
+			ExternalMovement em = sh.idMapping.get(t.getKey());
 			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
 				// ...init phase or if there are more IDs than nodes
 				em.addLocation(t.getValue(), time);
@@ -268,7 +272,28 @@ public class ExternalMovement extends MovementModel {
 	 * Reset state so that next instance will have a fresh state
 	 */
 	public static void reset() {
-		idMapping = null;
+		SimulationContext.current().setState(ExternalMovement.class, null);
+	}
+
+	/**
+	 * State shared by all the external movement models of a simulation
+	 */
+	private static class Shared {
+		private ExternalMovementReader reader;
+		private String inputFileName;
+
+		/** mapping of external id to movement model */
+		private Map<String, ExternalMovement> idMapping;
+		/** initial locations for nodes */
+		private List<Tuple<String, Coord>> initLocations;
+		/** time of the very first location data */
+		private double initTime;
+		/** sampling interval (seconds) of the location data */
+		private double samplingInterval;
+		/** last read time stamp after preloading */
+		private double lastPreloadTime;
+		/** how many time intervals to load on every preload run */
+		private double nrofPreload;
 	}
 
 }
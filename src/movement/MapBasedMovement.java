@@ -5,6 +5,7 @@
 package movement;
 
 import core.Coord;
+import core.MovementCheckpoint;
 import core.Settings;
 import core.SettingsError;
 import core.SimError;
@@ -12,6 +13,8 @@ import movement.map.*;
 
 import input.WKTMapReader;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
@@ -253,6 +256,43 @@ public class MapBasedMovement extends MovementModel implements
 		return n;
 	}
 
+	/**
+	 * Returns true for this class but not for its subclasses (they may have
+	 * state of their own)
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return getClass() == MapBasedMovement.class;
+	}
+
+	/**
+	 * Writes also the location of the last map node
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		out.writeBoolean(this.lastMapNode != null);
+		if (this.lastMapNode != null) {
+			MovementCheckpoint.writeCoord(out, this.lastMapNode.getLocation());
+		}
+	}
+
+	/**
+	 * Reads also the last map node (by its location)
+	 */
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		this.lastMapNode = null;
+		if (in.readBoolean()) {
+			Coord c = MovementCheckpoint.readCoord(in);
+			this.lastMapNode = this.map.getNodeByCoord(c);
+			if (this.lastMapNode == null) {
+				throw new SimError("No map node at " + c + " of checkpoint");
+			}
+		}
+	}
+
 	/**
 	 * Returns the SimMap this movement model uses
 	 * 
@@ -269,6 +309,19 @@ public class MapBasedMovement extends MovementModel implements
 	 * @return A new SimMap based on the settings
 	 */
 	private SimMap readMap() {
+		/* the cache is shared by all simulations run in the same JVM */
+		synchronized (MapBasedMovement.class) {
+			return readMapToCache();
+		}
+	}
+
+	/**
+	 * Reads a sim map like {@link #readMap()} using the map cache. The caller
+	 * must hold the lock of the cache.
+	 * 
+	 * @return A new SimMap based on the settings
+	 */
+	private SimMap readMapToCache() {
 		SimMap simMap;
 		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
 		WKTMapReader r = new WKTMapReader(true);
@@ -402,6 +455,15 @@ public class MapBasedMovement extends MovementModel implements
 		return cachedMap;
 	}
 
+	/**
+	 * Returns true for this class but not for its subclasses, which must opt in
+	 * themselves (many of them share path finders or control systems).
+	 */
+	@Override
+	public boolean isConcurrentSafe() {
+		return getClass() == MapBasedMovement.class;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new MapBasedMovement(this);
@@ -4,6 +4,9 @@
  */
 package movement;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 
 import core.Coord;
@@ -115,6 +118,51 @@ public class MapRouteMovement extends MapBasedMovement implements
 		}
 	}
 
+	/**
+	 * Returns true for this class but not for its subclasses (e.g.
+	 * {@link BusMovement} uses a shared control system).
+	 */
+	@Override
+	public boolean isConcurrentSafe() {
+		return getClass() == MapRouteMovement.class;
+	}
+
+	/**
+	 * Returns true for this class but not for its subclasses
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return getClass() == MapRouteMovement.class;
+	}
+
+	/**
+	 * Writes also the position on the route
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		this.route.writeState(out);
+	}
+
+	/**
+	 * Reads also the position on the route
+	 */
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		this.route.readState(in);
+	}
+
+	/**
+	 * Gives also a path finder of its own for this model because the path
+	 * finder keeps search state.
+	 */
+	@Override
+	public void useOwnRandomStream(int streamIndex) {
+		super.useOwnRandomStream(streamIndex);
+		this.pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+	}
+
 	@Override
 	public MapRouteMovement replicate() {
 		return new MapRouteMovement(this);
@@ -4,6 +4,9 @@
  */
 package movement;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
 
 import core.*;
@@ -43,8 +46,12 @@ public abstract class MovementModel {
 	/** movement models' rng seed -setting id ({@value} ) */
 	public static final String RNG_SEED = "rngSeed";
 
-	/** common rng for all movement models in the simulation */
-	protected static Random rng;
+
+	/**
+	 * rng of this movement model; the common rng unless the model has been
+	 * given a stream of its own with {@link #useOwnRandomStream(int)}
+	 */
+	protected Random rng;
 
 	private ActivenessHandler ah;
 
@@ -90,6 +97,7 @@ public abstract class MovementModel {
 	 */
 	public MovementModel() {
 		super();
+		this.rng = getCommonRng().rng;
 	}
 
 	/**
@@ -103,6 +111,7 @@ public abstract class MovementModel {
 		double[] times;
 
 		ah = new ActivenessHandler(settings);
+		this.rng = getCommonRng().rng;
 
 		if (settings.contains(SPEED)) {
 			speeds = settings.getCsvDoubles(SPEED, 2);
@@ -147,6 +156,7 @@ public abstract class MovementModel {
 		this.maxX = mm.maxX;
 		this.maxY = mm.maxY;
 		this.ah = mm.ah;
+		this.rng = getCommonRng().rng;
 	}
 
 	/**
@@ -220,6 +230,18 @@ public abstract class MovementModel {
 		return ah.isActive();
 	}
 
+	/**
+	 * Returns the next time when the value of {@link #isActive()} may change.
+	 * Models that override isActive() must override this too.
+	 * 
+	 * @return The time of the next change or Double.MAX_VALUE if the
+	 *         activeness doesn't change anymore
+	 * @see ActivenessHandler#nextChangeTime()
+	 */
+	public double nextActivenessChange() {
+		return (ah == null ? Double.MAX_VALUE : ah.nextChangeTime());
+	}
+
 	/**
 	 * Returns a sim time when the next path is available. This implementation
 	 * returns a random time in future that is {@link #WAIT_TIME} from now.
@@ -230,6 +252,139 @@ public abstract class MovementModel {
 		return SimClock.getTime() + generateWaitTime();
 	}
 
+	/**
+	 * Returns true if the {@link #getPath()} and {@link #nextPathAvailable()}
+	 * methods of this model only use the state of this instance (and its own
+	 * random number stream) so that hosts using the model can be moved
+	 * concurrently with other hosts. This implementation returns false; models
+	 * that are safe to move concurrently must override this.
+	 * 
+	 * @return true if the model can be used from a worker thread
+	 * @see #useOwnRandomStream(int)
+	 */
+	public boolean isConcurrentSafe() {
+		return false;
+	}
+
+	/**
+	 * Makes this model draw its random values from a stream of its own instead
+	 * of the rng that is common to all movement models. The stream is seeded
+	 * from the {@link #RNG_SEED} setting and the given stream index, so the
+	 * values a model gets do not depend on the order in which the models are
+	 * asked for paths. Subclasses that have passed the rng to helper objects
+	 * should override this and re-bind those helpers too.
+	 * 
+	 * @param streamIndex
+	 *            Index of the stream (e.g., network address of the host)
+	 */
+	public void useOwnRandomStream(int streamIndex) {
+		this.rng = new SimRandom(streamSeed(streamIndex));
+	}
+
+	/**
+	 * Derives a seed for a random number stream from the common seed and a
+	 * stream index. Uses the SplitMix64 finalizer so that adjacent indexes get
+	 * uncorrelated seeds.
+	 * 
+	 * @param streamIndex
+	 *            Index of the stream
+	 * @return Seed for the stream
+	 */
+	private static long streamSeed(int streamIndex) {
+		long z = getCommonRng().seed + (streamIndex + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns true if the state of this model can be saved to a checkpoint
+	 * with {@link #writeState(DataOutput)} and restored with
+	 * {@link #readState(DataInput)}. This implementation returns false;
+	 * models that save all their mutable state must override this.
+	 * 
+	 * @return true if the model supports checkpoints
+	 * @see MovementCheckpoint
+	 */
+	public boolean isCheckpointable() {
+		return false;
+	}
+
+	/**
+	 * Writes the mutable state of this model to a checkpoint. This
+	 * implementation writes the state of the model's own random number
+	 * stream (if it has one); subclasses must write their own state after
+	 * calling this.
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		boolean ownStream = (this.rng != getCommonRng().rng);
+		out.writeBoolean(ownStream);
+		if (ownStream) {
+			((SimRandom) this.rng).writeState(out);
+		}
+	}
+
+	/**
+	 * Restores the mutable state of this model from a checkpoint written with
+	 * {@link #writeState(DataOutput)}. The model must have been created with
+	 * the same settings as the model whose state was written.
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readState(DataInput in) throws IOException {
+		boolean ownStream = in.readBoolean();
+		if (ownStream != (this.rng != getCommonRng().rng)) {
+			throw new SimError("Checkpoint's random number stream setup of "
+					+ this + " doesn't match the settings");
+		}
+		if (ownStream) {
+			((SimRandom) this.rng).readState(in);
+		}
+	}
+
+	/**
+	 * Writes the state of the random number generator common to all movement
+	 * models to a checkpoint
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public static void writeCommonState(DataOutput out) throws IOException {
+		CommonRng common = getCommonRng();
+		out.writeLong(common.seed);
+		common.rng.writeState(out);
+	}
+
+	/**
+	 * Restores the state of the common random number generator from a
+	 * checkpoint written with {@link #writeCommonState(DataOutput)}
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public static void readCommonState(DataInput in) throws IOException {
+		CommonRng common = getCommonRng();
+		long seed = in.readLong();
+		if (seed != common.seed) {
+			throw new SettingsError("Checkpoint was written with "
+					+ MOVEMENT_MODEL_NS + "." + RNG_SEED + " " + seed
+					+ " but the setting is " + common.seed);
+		}
+		common.rng.readState(in);
+	}
+
 	/**
 	 * Returns simply the name of the movement model class
 	 * 
@@ -250,13 +405,42 @@ public abstract class MovementModel {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
+		CommonRng common = new CommonRng();
 		Settings s = new Settings(MOVEMENT_MODEL_NS);
 		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+			common.seed = s.getInt(RNG_SEED);
 		} else {
-			rng = new Random(0);
+			common.seed = 0;
 		}
+		common.rng = new SimRandom(common.seed);
+		SimulationContext.current().setState(MovementModel.class, common);
+	}
+
+	/**
+	 * Returns the common rng of the current simulation. The rng is created
+	 * if the current simulation has none yet.
+	 * 
+	 * @return The common rng and its seed
+	 */
+	private static CommonRng getCommonRng() {
+		CommonRng common = (CommonRng) SimulationContext.current().getState(
+				MovementModel.class);
+		if (common == null) {
+			reset();
+			common = (CommonRng) SimulationContext.current().getState(
+					MovementModel.class);
+		}
+		return common;
+	}
+
+	/**
+	 * The rng common to all movement models of a simulation
+	 */
+	private static class CommonRng {
+		/** the common rng */
+		private SimRandom rng;
+		/** seed of the common rng; used also for deriving per-host streams */
+		private long seed;
 	}
 
 }
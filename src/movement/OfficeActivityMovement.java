@@ -42,7 +42,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	public static final String OFFICE_MAX_WAIT_TIME_SETTING = "officeMaxWaitTime";
 	public static final String OFFICE_LOCATIONS_FILE_SETTING = "officeLocationsFile";
 
-	private static int nrOfOffices = 50;
+	private int nrOfOffices;
 
 	private int mode;
 	private int workDayLength;
@@ -135,6 +135,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	public OfficeActivityMovement(OfficeActivityMovement proto) {
 		super(proto);
 		this.workDayLength = proto.workDayLength;
+		this.nrOfOffices = proto.nrOfOffices;
 		startedWorkingTime = -1;
 		this.distance = proto.distance;
 		this.pathFinder = proto.pathFinder;
@@ -4,8 +4,13 @@
  */
 package movement;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
+
 import core.Coord;
+import core.MovementCheckpoint;
 
 /**
  * A Path between multiple Coordinates.
@@ -150,4 +155,46 @@ public class Path {
 	public List<Double> getSpeeds() {
 		return this.speeds;
 	}
+
+	/**
+	 * Writes the coordinates, speeds and the position of this path to a
+	 * checkpoint
+	 * 
+	 * @param out
+	 *            Where to write the path
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(this.coords.size());
+		for (Coord c : this.coords) {
+			MovementCheckpoint.writeCoord(out, c);
+		}
+		out.writeInt(this.speeds.size());
+		for (double speed : this.speeds) {
+			out.writeDouble(speed);
+		}
+		out.writeInt(this.nextWpIndex);
+	}
+
+	/**
+	 * Reads a path written with {@link #writeState(DataOutput)}
+	 * 
+	 * @param in
+	 *            Where to read the path from
+	 * @return The path
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public static Path readState(DataInput in) throws IOException {
+		Path p = new Path();
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			p.coords.add(MovementCheckpoint.readCoord(in));
+		}
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			p.speeds.add(in.readDouble());
+		}
+		p.nextWpIndex = in.readInt();
+		return p;
+	}
 }
@@ -4,6 +4,10 @@
  */
 package movement;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import core.*;
 
 /**
@@ -56,6 +60,28 @@ public class RandomWaypoint extends MovementModel {
 		return p;
 	}
 
+	@Override
+	public boolean isConcurrentSafe() {
+		return true;
+	}
+
+	@Override
+	public boolean isCheckpointable() {
+		return getClass() == RandomWaypoint.class;
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		MovementCheckpoint.writeCoord(out, this.lastWaypoint);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		this.lastWaypoint = MovementCheckpoint.readCoord(in);
+	}
+
 	@Override
 	public RandomWaypoint replicate() {
 		return new RandomWaypoint(this);
@@ -0,0 +1,287 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package movement;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+import core.DTNSim;
+import core.MovementCheckpoint;
+import core.MovementRecorder;
+import core.Settings;
+import core.SettingsError;
+import core.SimError;
+import core.SimScenario;
+import core.SimulationContext;
+
+/**
+ * <P>
+ * Movement model that replays movement recorded with
+ * {@link MovementRecorder}. Every host gets the recorded movement of the
+ * next recorded host with the same group ID, so the groups and their sizes
+ * must be the same as in the recorded run. The paths and
+ * wait times are read in the recorded order, so every path costs only the
+ * reading of its waypoints. After the end of the recording the hosts stay
+ * where they are.
+ * </P>
+ * <P>
+ * The replayed hosts move exactly like the recorded ones if the update
+ * interval and the warmup time are the same. If some groups use other
+ * movement models, their movement differs from the recorded run because the
+ * replayed groups don't use the common random number generator.
+ * </P>
+ */
+public class RecordedMovement extends MovementModel {
+	/** Recorded movement settings namespace ({@value} ) */
+	public static final String RECORDED_MOVEMENT_NS = "RecordedMovement";
+	/** Recording file -setting id ({@value} ) */
+	public static final String FILE_S = "file";
+
+	static {
+		DTNSim.registerForReset("movement.RecordedMovement");
+		reset();
+	}
+
+	/** the recording (shared by all models of a simulation) */
+	private Shared shared;
+	/** group ID of the hosts (for the prototype) */
+	private String groupId;
+
+	private HostRecord record;
+	private ByteArrayInputStream bytes;
+	private DataInputStream in;
+
+	/**
+	 * Constructor for the prototype. Run once per group. The recording is
+	 * read when the first prototype of a simulation is created.
+	 *
+	 * @param settings
+	 *            The Settings object where the settings are read from
+	 */
+	public RecordedMovement(Settings settings) {
+		super(settings);
+		this.groupId = settings.getSetting(SimScenario.GROUP_ID_S);
+
+		SimulationContext context = SimulationContext.current();
+		this.shared = (Shared) context.getState(RecordedMovement.class);
+		if (this.shared == null) {
+			String fileName = new Settings(RECORDED_MOVEMENT_NS)
+					.getSetting(FILE_S);
+			this.shared = readRecording(fileName);
+			context.setState(RecordedMovement.class, this.shared);
+		}
+		if (!this.shared.records.containsKey(this.groupId)) {
+			throw new SettingsError("Movement recording '"
+					+ this.shared.fileName + "' has no hosts of group "
+					+ this.groupId);
+		}
+	}
+
+	/**
+	 * Copy constructor. Takes the next recorded host of the prototype's
+	 * group.
+	 *
+	 * @param rm
+	 *            The RecordedMovement prototype
+	 */
+	public RecordedMovement(RecordedMovement rm) {
+		super(rm);
+		List<HostRecord> records = rm.shared.records.get(rm.groupId);
+		Integer next = rm.shared.nextRecords.get(rm.groupId);
+		int index = (next == null ? 0 : next);
+		if (index >= records.size()) {
+			throw new SettingsError("Movement recording '"
+					+ rm.shared.fileName + "' has only " + records.size()
+					+ " hosts of group " + rm.groupId);
+		}
+		rm.shared.nextRecords.put(rm.groupId, index + 1);
+
+		this.record = records.get(index);
+		this.bytes = new ByteArrayInputStream(this.record.data);
+		this.in = new DataInputStream(this.bytes);
+	}
+
+	/**
+	 * Reads the recordings of all hosts from a recording file
+	 */
+	private static Shared readRecording(String fileName) {
+		Shared sh = new Shared();
+		sh.fileName = fileName;
+		sh.records = new HashMap<String, List<HostRecord>>();
+		sh.nextRecords = new HashMap<String, Integer>();
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(fileName)));
+			try {
+				if (in.readInt() != MovementRecorder.MAGIC) {
+					throw new SettingsError("'" + fileName + "' is not a "
+							+ "movement recording");
+				}
+				int version = in.readInt();
+				if (version != MovementRecorder.VERSION) {
+					throw new SettingsError("Unsupported version " + version
+							+ " of movement recording '" + fileName + "'");
+				}
+				for (int i = 0, n = in.readInt(); i < n; i++) {
+					HostRecord r = new HostRecord();
+					String recordGroupId = in.readUTF();
+					in.readInt(); // address
+					r.initialLocation = MovementCheckpoint.readCoord(in);
+					r.data = new byte[in.readInt()];
+					in.readFully(r.data);
+					List<HostRecord> records = sh.records.get(recordGroupId);
+					if (records == null) {
+						records = new ArrayList<HostRecord>();
+						sh.records.put(recordGroupId, records);
+					}
+					records.add(r);
+				}
+				if (in.readInt() != MovementRecorder.MAGIC) {
+					throw new SettingsError("Corrupted movement recording '"
+							+ fileName + "'");
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read movement recording '"
+					+ fileName + "'\n" + e.getMessage());
+		}
+
+		return sh;
+	}
+
+	/**
+	 * Reads the type of the next record or returns -1 at the end of the
+	 * recording
+	 */
+	private int nextRecordType() throws IOException {
+		try {
+			return this.in.readUnsignedByte();
+		} catch (EOFException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public Coord getInitialLocation() {
+		return this.record.initialLocation.clone();
+	}
+
+	/**
+	 * Returns the next recorded path
+	 *
+	 * @return The next recorded path or null if the model gave no path or
+	 *         the recording has ended
+	 */
+	@Override
+	public Path getPath() {
+		try {
+			int type = nextRecordType();
+			if (type == MovementRecorder.PATH) {
+				return Path.readState(this.in);
+			} else if (type == MovementRecorder.NO_PATH || type < 0) {
+				return null;
+			}
+		} catch (IOException e) {
+			throw new SimError("Corrupted movement recording", e);
+		}
+		throw new SimError("Replayed movement doesn't match the recording "
+				+ "(a path was requested at the wrong time)");
+	}
+
+	/**
+	 * Returns the next recorded time when a path is available
+	 *
+	 * @return The next recorded time or Double.MAX_VALUE if the recording
+	 *         has ended
+	 */
+	@Override
+	public double nextPathAvailable() {
+		try {
+			int type = nextRecordType();
+			if (type == MovementRecorder.PATH_AVAILABLE) {
+				return this.in.readDouble();
+			} else if (type < 0) {
+				return Double.MAX_VALUE;
+			}
+		} catch (IOException e) {
+			throw new SimError("Corrupted movement recording", e);
+		}
+		throw new SimError("Replayed movement doesn't match the recording "
+				+ "(a wait time was requested at the wrong time)");
+	}
+
+	@Override
+	public boolean isConcurrentSafe() {
+		return true;
+	}
+
+	/**
+	 * Returns true for this class but not for its subclasses. The state is
+	 * the position in the recording.
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return getClass() == RecordedMovement.class;
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(this.record.data.length - this.bytes.available());
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		int position = in.readInt();
+		this.bytes = new ByteArrayInputStream(this.record.data);
+		this.bytes.skip(position);
+		this.in = new DataInputStream(this.bytes);
+	}
+
+	@Override
+	public RecordedMovement replicate() {
+		return new RecordedMovement(this);
+	}
+
+	/**
+	 * Reset state so that the recording is read again for the next run
+	 */
+	public static void reset() {
+		SimulationContext.current().setState(RecordedMovement.class, null);
+	}
+
+	/**
+	 * Recording shared by all the recorded movement models of a simulation
+	 */
+	private static class Shared {
+		private String fileName;
+		/** recordings of the hosts by group ID (in address order) */
+		private Map<String, List<HostRecord>> records;
+		/** index of the next recording to give out by group ID */
+		private Map<String, Integer> nextRecords;
+	}
+
+	/**
+	 * The recording of one host
+	 */
+	private static class HostRecord {
+		private Coord initialLocation;
+		private byte[] data;
+	}
+}
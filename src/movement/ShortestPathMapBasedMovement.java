@@ -69,6 +69,32 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 		return p;
 	}
 
+	@Override
+	public boolean isConcurrentSafe() {
+		return true;
+	}
+
+	/**
+	 * Returns true for this class but not for its subclasses. The points of
+	 * interest and path finder have no state that outlives a path.
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return getClass() == ShortestPathMapBasedMovement.class;
+	}
+
+	/**
+	 * Re-binds the Points Of Interest to the new random number stream and
+	 * gives this model a path finder of its own (path finder keeps search
+	 * state).
+	 */
+	@Override
+	public void useOwnRandomStream(int streamIndex) {
+		super.useOwnRandomStream(streamIndex);
+		this.pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		this.pois = new PointsOfInterest(this.pois, rng);
+	}
+
 	@Override
 	public ShortestPathMapBasedMovement replicate() {
 		return new ShortestPathMapBasedMovement(this);
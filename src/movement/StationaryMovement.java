@@ -77,6 +77,20 @@ public class StationaryMovement extends MovementModel {
 		return Double.MAX_VALUE; // no new paths available
 	}
 
+	@Override
+	public boolean isConcurrentSafe() {
+		return true;
+	}
+
+	/**
+	 * Returns true for this class but not for its subclasses. The model has
+	 * no mutable state besides what is written by the superclass.
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return getClass() == StationaryMovement.class;
+	}
+
 	@Override
 	public StationaryMovement replicate() {
 		return new StationaryMovement(this);
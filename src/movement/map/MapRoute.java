@@ -6,6 +6,8 @@ package movement.map;
 
 import input.WKTReader;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -119,6 +121,33 @@ public class MapRoute {
 		return new MapRoute(type, stops);
 	}
 
+	/**
+	 * Writes the position of this route to a checkpoint
+	 * 
+	 * @param out
+	 *            Where to write the position
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(this.index);
+		out.writeBoolean(this.comingBack);
+	}
+
+	/**
+	 * Restores the position of this route from a checkpoint written with
+	 * {@link #writeState(DataOutput)}
+	 * 
+	 * @param in
+	 *            Where to read the position from
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readState(DataInput in) throws IOException {
+		this.index = in.readInt();
+		this.comingBack = in.readBoolean();
+	}
+
 	public String toString() {
 		return ((type == CIRCULAR) ? "Circular" : "Ping-pong") + " route with "
 				+ getNrofStops() + " stops";
@@ -72,6 +72,23 @@ public class PointsOfInterest {
 		readPois(settings);
 	}
 
+	/**
+	 * Copy constructor. The new object shares the (read only) POI lists of the
+	 * prototype but uses the given random number generator.
+	 *
+	 * @param proto
+	 *            The prototype to copy the POIs from
+	 * @param rng
+	 *            The random number generator to use
+	 */
+	public PointsOfInterest(PointsOfInterest proto, Random rng) {
+		this.poiLists = proto.poiLists;
+		this.poiProbs = proto.poiProbs;
+		this.map = proto.map;
+		this.okMapNodeTypes = proto.okMapNodeTypes;
+		this.rng = rng;
+	}
+
 	/**
 	 * Selects a random destination from POIs or all MapNodes. Selecting among
 	 * POI groups is done by their probabilities. If sum of their probabilities
@@ -0,0 +1,55 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import core.DistributedCoordinator;
+import core.World;
+
+/**
+ * Shows how a distributed run (see {@link DistributedCoordinator} and
+ * {@link World#DISTRIBUTED_S}) went: how many update intervals (ticks)
+ * needed an exchange of ghosts between the workers, how many halo hosts,
+ * ghosts and host pairs within range across the workers there were, how
+ * many clusters of hosts moved to another worker and how many bytes the
+ * coordinator sent and received.
+ */
+public class DistributedReport extends Report {
+
+	/**
+	 * Constructor.
+	 */
+	public DistributedReport() {
+		init();
+	}
+
+	@Override
+	public void done() {
+		DistributedCoordinator coordinator = DistributedCoordinator
+				.getCurrent();
+		write("Distributed run stats for scenario " + getScenarioName()
+				+ "\nsim_time: " + format(getSimTime()));
+		if (coordinator == null) {
+			write("Distributed mode (" + World.SETTINGS_NS + "."
+					+ World.DISTRIBUTED_S + ") was not in use");
+			super.done();
+			return;
+		}
+
+		write("workers: " + coordinator.getNrofWorkers());
+		write("ticks: " + coordinator.getNrofTicks());
+		write("exchanges: " + coordinator.getNrofExchanges());
+		write("halo_entries: " + coordinator.getNrofHaloEntries());
+		write("ghosts: " + coordinator.getNrofGhosts());
+		write("pairs: " + coordinator.getNrofPairs());
+		write("migrations: " + coordinator.getNrofMigrations());
+		write("migrated_hosts: " + coordinator.getNrofMigratedHosts());
+		write("migrated_bytes: " + coordinator.getNrofMigratedBytes());
+		write("events: " + coordinator.getNrofEvents());
+		write("sent_bytes: " + coordinator.getNrofSentBytes());
+		write("received_bytes: " + coordinator.getNrofReceivedBytes());
+
+		super.done();
+	}
+}
@@ -0,0 +1,153 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import java.util.List;
+
+import movement.MovementModel;
+import core.DTNHost;
+import core.NeighborListGrid;
+import core.Settings;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * <P>
+ * Shows how the skin of the neighbor lists (see {@link NeighborListGrid} and
+ * connection algorithm 5 of {@link World}) trades the rebuilds of the lists
+ * against the pairs checked on every update. For every skin, the report
+ * keeps a neighbor list of the hosts and counts how often it had to be
+ * rebuilt, the pairs the grid checked on the rebuilds and the candidate
+ * pairs checked on every update. The report doesn't affect the simulation:
+ * the lists are not used for connecting the hosts.
+ * </P>
+ * <P>
+ * With skin 0 the list is rebuilt on every update when some host moves, so
+ * its counts are close to the ones of connection algorithm 4.
+ * </P>
+ */
+public class NeighborListReport extends Report implements UpdateListener {
+	/**
+	 * Skins -setting id ({@value} ). Comma separated skin distances (meters)
+	 * to compare.
+	 */
+	public static final String SKINS_S = "skins";
+	/** Default skins (0,1,2,5,10,20) */
+	public static final double[] DEF_SKINS = { 0, 1, 2, 5, 10, 20 };
+
+	private double[] skins;
+	private int worldSizeX;
+	private int worldSizeY;
+	private int cellSizeMult;
+
+	/** the neighbor lists of the skins (created on the first update) */
+	private NeighborListGrid[] grids;
+	private int[] nrofRebuilds;
+	private long[] gridPairs;
+	private long[] listPairs;
+	private int nrofUpdates;
+
+	/**
+	 * Constructor.
+	 */
+	public NeighborListReport() {
+		Settings settings = getSettings();
+		if (settings.contains(SKINS_S)) {
+			this.skins = settings.getCsvDoubles(SKINS_S);
+		} else {
+			this.skins = DEF_SKINS;
+		}
+
+		Settings mmSettings = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int[] worldSize = mmSettings.getCsvInts(MovementModel.WORLD_SIZE, 2);
+		this.worldSizeX = worldSize[0];
+		this.worldSizeY = worldSize[1];
+
+		Settings optSettings = new Settings(World.SETTINGS_NS);
+		if (optSettings.contains(World.CELL_SIZE_MULT_S)) {
+			this.cellSizeMult = optSettings.getInt(World.CELL_SIZE_MULT_S);
+		} else {
+			this.cellSizeMult = World.DEF_CON_CELL_SIZE_MULT;
+		}
+
+		init();
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		this.grids = null;
+		this.nrofRebuilds = new int[this.skins.length];
+		this.gridPairs = new long[this.skins.length];
+		this.listPairs = new long[this.skins.length];
+		this.nrofUpdates = 0;
+	}
+
+	/**
+	 * Creates the neighbor lists of the skins for the hosts
+	 */
+	private void createGrids(List<DTNHost> hosts) {
+		double maxRange = 1;
+		for (DTNHost host : hosts) {
+			maxRange = Math.max(maxRange, host.getTransmitRange());
+		}
+
+		this.grids = new NeighborListGrid[this.skins.length];
+		for (int i = 0; i < this.skins.length; i++) {
+			int cellSize = (int) Math.ceil(Math.max(maxRange
+					* this.cellSizeMult, maxRange + this.skins[i]));
+			this.grids[i] = new NeighborListGrid(this.worldSizeX,
+					this.worldSizeY, cellSize, this.skins[i]);
+			this.grids[i].addNodes(hosts);
+		}
+	}
+
+	/**
+	 * Updates the neighbor lists and counts the checked pairs
+	 *
+	 * @param hosts
+	 *            All the hosts in the world
+	 */
+	public void updated(List<DTNHost> hosts) {
+		if (isWarmup()) {
+			return;
+		}
+		if (this.grids == null) {
+			createGrids(hosts);
+		}
+
+		for (int i = 0; i < this.grids.length; i++) {
+			NeighborListGrid grid = this.grids[i];
+			if (grid.updateList()) {
+				this.nrofRebuilds[i]++;
+				this.gridPairs[i] += grid.getNrofGridPairs();
+			}
+			this.listPairs[i] += grid.getNrofCandidatePairs();
+		}
+		this.nrofUpdates++;
+	}
+
+	@Override
+	public void done() {
+		double updates = Math.max(this.nrofUpdates, 1);
+
+		write("Neighbor lists for scenario " + getScenarioName()
+				+ "\nsim_time: " + format(getSimTime()) + "\nupdates: "
+				+ this.nrofUpdates);
+		write("skin rebuilds updates_per_rebuild grid_pairs_per_update "
+				+ "list_pairs_per_update pairs_per_update");
+		for (int i = 0; i < this.skins.length; i++) {
+			write(format(this.skins[i]) + " " + this.nrofRebuilds[i] + " "
+					+ format(this.nrofUpdates
+							/ Math.max(this.nrofRebuilds[i], 1.0)) + " "
+					+ format(this.gridPairs[i] / updates) + " "
+					+ format(this.listPairs[i] / updates) + " "
+					+ format((this.gridPairs[i] + this.listPairs[i])
+							/ updates));
+		}
+
+		super.done();
+	}
+}
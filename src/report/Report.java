@@ -14,6 +14,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import core.Connection;
+import core.DTNHost;
+import core.Message;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
@@ -314,6 +317,29 @@ public abstract class Report {
 		this.warmupIDs.add(id);
 	}
 
+	/**
+	 * Informs the report that the simulation was resumed from a checkpoint
+	 * (see {@link core.SimCheckpoint}). The IDs of the messages that the
+	 * hosts carry or are transferring are added to the warm up ID set, so the
+	 * messages that were created before the checkpoint are handled like the
+	 * messages created during the warm up period.
+	 * 
+	 * @param hosts
+	 *            The hosts of the resumed simulation
+	 */
+	public void resumed(List<DTNHost> hosts) {
+		for (DTNHost host : hosts) {
+			for (Message m : host.getMessageCollection()) {
+				addWarmupID(m.getId());
+			}
+			for (Connection con : host.getConnections()) {
+				if (con.getMessage() != null) {
+					addWarmupID(con.getMessage().getId());
+				}
+			}
+		}
+	}
+
 	/**
 	 * Returns true if the given ID is in the warm up ID set
 	 * 
@@ -0,0 +1,67 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import core.TimeWarpEngine;
+import core.World;
+
+/**
+ * Shows how the optimistic parallel execution (see {@link TimeWarpEngine}
+ * and {@link World#TIME_WARP_S}) of the scenario went: how many ticks (update
+ * intervals) the logical processes executed and rolled back, how many
+ * stragglers and jointly executed ticks there were, and how much state was
+ * saved and fossil collected. The rollback efficiency is the fraction of the
+ * logical processes' executed ticks that were not rolled back.
+ */
+public class TimeWarpReport extends Report {
+
+	/**
+	 * Constructor.
+	 */
+	public TimeWarpReport() {
+		init();
+	}
+
+	@Override
+	public void done() {
+		TimeWarpEngine engine = TimeWarpEngine.getCurrent();
+		write("Time Warp stats for scenario " + getScenarioName()
+				+ "\nsim_time: " + format(getSimTime()));
+		if (engine == null) {
+			write("Time Warp (" + World.SETTINGS_NS + "." + World.TIME_WARP_S
+					+ ") was not in use");
+			super.done();
+			return;
+		}
+
+		long executed = engine.getNrofExecutedTicks();
+		long rolledBack = engine.getNrofRolledBackTicks();
+		double efficiency = 1;
+		if (executed > 0) {
+			efficiency = (executed - rolledBack) / (double) executed;
+		}
+
+		write("lps: " + engine.getNrofLps());
+		write("committed_ticks: " + engine.getNrofCommittedTicks());
+		write("executed_ticks: " + executed);
+		write("rollbacks: " + engine.getNrofRollbacks());
+		write("rolled_back_ticks: " + rolledBack);
+		write("rolled_back_events: " + engine.getNrofRolledBackEvents());
+		write("max_rollback_distance: " + engine.getMaxRollbackDistance());
+		write("stragglers: " + engine.getNrofStragglers());
+		write("cancelled_halos: " + engine.getNrofCancelledHalos());
+		write("joint_ticks: " + engine.getNrofJointTicks());
+		write("coupled_lp_ticks: " + engine.getNrofCoupledLpTicks());
+		write("false_alarms: " + engine.getNrofFalseAlarms());
+		write("migrations: " + engine.getNrofMigrations());
+		write("committed_events: " + engine.getNrofCommittedEvents());
+		write("saved_states: " + engine.getNrofSavedStates());
+		write("saved_bytes: " + engine.getNrofSavedBytes());
+		write("collected_states: " + engine.getNrofCollectedStates());
+		write("efficiency: " + format(efficiency));
+
+		super.done();
+	}
+}
@@ -0,0 +1,119 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import java.util.List;
+import java.util.Vector;
+
+import core.DTNHost;
+import core.Settings;
+import core.UpdateListener;
+
+/**
+ * Reports the lengths of the update intervals the simulation was run with.
+ * Useful mostly with adaptive update intervals (see
+ * {@link core.World#ADAPTIVE_INTERVAL_S}). The report starts with a summary
+ * of the intervals followed by the distribution of their lengths (rounded to
+ * the nearest multiple of the granularity). Syntax of the distribution
+ * lines:<br>
+ * <code>intervalLength nrofUpdates</code>
+ */
+public class UpdateIntervalReport extends Report implements UpdateListener {
+	/**
+	 * Granularity -setting id ({@value} ). Defines how many simulated seconds
+	 * are grouped in one reported interval length.
+	 */
+	public static final String GRANULARITY = "granularity";
+	/** Default value for the granularity ({@value} ) */
+	public static final double DEF_GRANULARITY = 0.1;
+
+	/** How many seconds are grouped in one group */
+	private double granularity;
+	private Vector<Integer> nrofUpdates;
+	private double lastUpdate;
+	private int nrofIntervals;
+	private double minInterval;
+	private double maxInterval;
+	private double totalTime;
+
+	/**
+	 * Constructor.
+	 */
+	public UpdateIntervalReport() {
+		Settings settings = getSettings();
+		if (settings.contains(GRANULARITY)) {
+			this.granularity = settings.getDouble(GRANULARITY);
+		} else {
+			this.granularity = DEF_GRANULARITY;
+		}
+
+		init();
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		this.nrofUpdates = new Vector<Integer>();
+		this.lastUpdate = getSimTime();
+		this.nrofIntervals = 0;
+		this.minInterval = Double.MAX_VALUE;
+		this.maxInterval = 0;
+		this.totalTime = 0;
+	}
+
+	/**
+	 * Records the length of the interval since the previous update
+	 *
+	 * @param hosts
+	 *            All the hosts in the world
+	 */
+	public void updated(List<DTNHost> hosts) {
+		double simTime = getSimTime();
+		double interval = simTime - this.lastUpdate;
+		this.lastUpdate = simTime;
+
+		if (isWarmup()) {
+			return;
+		}
+
+		this.nrofIntervals++;
+		this.totalTime += interval;
+		if (interval < this.minInterval) {
+			this.minInterval = interval;
+		}
+		if (interval > this.maxInterval) {
+			this.maxInterval = interval;
+		}
+
+		int index = (int) Math.round(interval / this.granularity);
+		if (index >= this.nrofUpdates.size()) {
+			this.nrofUpdates.setSize(index + 1);
+		}
+		Integer curValue = this.nrofUpdates.get(index);
+		this.nrofUpdates.set(index, (curValue == null ? 1 : curValue + 1));
+	}
+
+	@Override
+	public void done() {
+		write("Update intervals for scenario " + getScenarioName()
+				+ "\nsim_time: " + format(getSimTime()));
+
+		double avg = (nrofIntervals > 0 ? totalTime / nrofIntervals : 0);
+		write("updates: " + this.nrofIntervals + "\ninterval_min: "
+				+ format(nrofIntervals > 0 ? minInterval : 0)
+				+ "\ninterval_max: " + format(maxInterval)
+				+ "\ninterval_avg: " + format(avg));
+
+		for (int i = 0, n = this.nrofUpdates.size(); i < n; i++) {
+			Integer updates = this.nrofUpdates.get(i);
+			if (updates != null) {
+				// interval length nrofUpdates
+				write(format(i * this.granularity) + " " + updates);
+			}
+		}
+
+		super.done();
+	}
+}
@@ -4,6 +4,9 @@
  */
 package routing;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -15,6 +18,7 @@ import core.DTNHost;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
+import core.SimCheckpoint;
 import core.SimClock;
 import core.Tuple;
 
@@ -44,6 +48,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
+	/** how much earlier than needed the timed updates are requested */
+	private static final double TIMED_UPDATE_MARGIN = 0.000001;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in the
@@ -80,6 +86,27 @@ public abstract class ActiveRouter extends MessageRouter {
 		this.lastTtlCheck = 0;
 	}
 
+	@Override
+	public void writeState(DataOutput out, SimCheckpoint cp)
+			throws IOException {
+		super.writeState(out, cp);
+		out.writeDouble(this.lastTtlCheck);
+		out.writeInt(this.sendingConnections.size());
+		for (Connection con : this.sendingConnections) {
+			cp.writeConnection(out, con);
+		}
+	}
+
+	@Override
+	public void readState(DataInput in, SimCheckpoint cp) throws IOException {
+		super.readState(in, cp);
+		this.lastTtlCheck = in.readDouble();
+		this.sendingConnections.clear();
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			this.sendingConnections.add(cp.readConnection(in));
+		}
+	}
+
 	/**
 	 * Called when a connection's state changes. This version doesn't do
 	 * anything but subclasses may want to override this.
@@ -604,6 +631,34 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns the time when the next ongoing transfer is done or, if nothing
+	 * is being sent, when the next TTL check is due.
+	 */
+	@Override
+	public double getNextTimedUpdate() {
+		double next = Double.MAX_VALUE;
+		if (sendingConnections.size() == 0) {
+			/* TTL checks are done only when nothing is being sent */
+			next = lastTtlCheck + TTL_CHECK_INTERVAL;
+		}
+
+		for (int i = 0, n = sendingConnections.size(); i < n; i++) {
+			Connection con = sendingConnections.get(i);
+			if (con.getMessage() == null) {
+				return SimClock.getTime(); // will be removed at next update
+			}
+			/* a transfer is done when less than one byte is remaining */
+			double done = con.getTransferDoneTime() - 1.0 / con.getSpeed();
+			if (done < next) {
+				next = done;
+			}
+		}
+
+		/* guard against rounding of the time comparisons in update */
+		return next - TIMED_UPDATE_MARGIN;
+	}
+
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()}
 	 * due connection going down. This happens on the sending host. Subclasses
@@ -32,6 +32,24 @@ public class DirectDeliveryRouter extends ActiveRouter {
 		}
 	}
 
+	/**
+	 * Returns true; this router acts only on changes (see
+	 * {@link MessageRouter#isEventDriven()}).
+	 */
+	@Override
+	public boolean isEventDriven() {
+		return true;
+	}
+
+	/**
+	 * Returns true; this router has no state of its own (see
+	 * {@link MessageRouter#isCheckpointable()}).
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return true;
+	}
+
 	@Override
 	public DirectDeliveryRouter replicate() {
 		return new DirectDeliveryRouter(this);
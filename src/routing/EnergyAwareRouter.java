@@ -48,7 +48,6 @@ public class EnergyAwareRouter extends ActiveRouter implements
 	private double lastUpdate;
 	private double scanInterval;
 	private ModuleCommunicationBus comBus;
-	private static Random rng = null;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in the
@@ -93,8 +92,11 @@ public class EnergyAwareRouter extends ActiveRouter implements
 		if (range.length == 1) {
 			this.currentEnergy = range[0];
 		} else {
+			SimulationContext context = SimulationContext.current();
+			Random rng = (Random) context.getState(EnergyAwareRouter.class);
 			if (rng == null) {
 				rng = new Random((int) (range[0] + range[1]));
+				context.setState(EnergyAwareRouter.class, rng);
 			}
 			this.currentEnergy = range[0] + rng.nextDouble()
 					* (range[1] - range[0]);
@@ -51,6 +51,24 @@ public class EpidemicRouter extends ActiveRouter {
 		this.tryAllMessagesToAllConnections();
 	}
 
+	/**
+	 * Returns true; this router acts only on changes (see
+	 * {@link MessageRouter#isEventDriven()}).
+	 */
+	@Override
+	public boolean isEventDriven() {
+		return true;
+	}
+
+	/**
+	 * Returns true; this router has no state of its own (see
+	 * {@link MessageRouter#isCheckpointable()}).
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return true;
+	}
+
 	@Override
 	public EpidemicRouter replicate() {
 		return new EpidemicRouter(this);
@@ -67,6 +67,24 @@ public class FirstContactRouter extends ActiveRouter {
 		this.deleteMessage(con.getMessage().getId(), false);
 	}
 
+	/**
+	 * Returns true; this router acts only on changes (see
+	 * {@link MessageRouter#isEventDriven()}).
+	 */
+	@Override
+	public boolean isEventDriven() {
+		return true;
+	}
+
+	/**
+	 * Returns true; this router has no state of its own (see
+	 * {@link MessageRouter#isCheckpointable()}).
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return true;
+	}
+
 	@Override
 	public FirstContactRouter replicate() {
 		return new FirstContactRouter(this);
@@ -4,11 +4,15 @@
  */
 package routing;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import core.*;
@@ -59,6 +63,11 @@ public abstract class MessageRouter {
 	private HashMap<String, Message> incomingMessages;
 	/** The messages this router is carrying */
 	private HashMap<String, Message> messages;
+	/**
+	 * the largest number of messages the router has carried (this decides
+	 * the capacity and the iteration order of the message map)
+	 */
+	private int maxNrofMessages;
 	/** The messages this router has received as the final recipient */
 	private HashMap<String, Message> deliveredMessages;
 	/** Host where this router belongs to */
@@ -111,6 +120,7 @@ public abstract class MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		this.incomingMessages = new HashMap<String, Message>();
 		this.messages = new HashMap<String, Message>();
+		this.maxNrofMessages = 0;
 		this.deliveredMessages = new HashMap<String, Message>();
 		this.mListeners = mListeners;
 		this.host = host;
@@ -134,6 +144,35 @@ public abstract class MessageRouter {
 	 */
 	public abstract void update();
 
+	/**
+	 * Returns true if calling {@link #update()} can have an effect only when
+	 * something that affects this router has changed since the previous call
+	 * (a connection of the host went up or down, or a message was created,
+	 * transferred, aborted, or deleted at the host or at a host it is
+	 * connected to), or when the time returned by
+	 * {@link #getNextTimedUpdate()} has passed. Routers whose behavior depends
+	 * on the passing of time must return false. This implementation returns
+	 * false.
+	 * 
+	 * @return true if this router can be updated only when something changes
+	 */
+	public boolean isEventDriven() {
+		return false;
+	}
+
+	/**
+	 * Returns the time when this router needs to be updated next even if
+	 * nothing changes (see {@link #isEventDriven()}). The time may be a bit
+	 * early; extra updates must do no harm. This implementation returns
+	 * Double.MAX_VALUE (no timed updates are needed).
+	 * 
+	 * @return The time of the next timed update or Double.MAX_VALUE if none
+	 *         is needed
+	 */
+	public double getNextTimedUpdate() {
+		return Double.MAX_VALUE;
+	}
+
 	/**
 	 * Informs the router about change in connections state.
 	 * 
@@ -381,6 +420,9 @@ public abstract class MessageRouter {
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
 		this.messages.put(m.getId(), m);
+		if (this.messages.size() > this.maxNrofMessages) {
+			this.maxNrofMessages = this.messages.size();
+		}
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -573,6 +615,92 @@ public abstract class MessageRouter {
 		return ri;
 	}
 
+	/**
+	 * Returns true if the state of this router can be saved to a checkpoint
+	 * with {@link #writeState(DataOutput, SimCheckpoint)} and restored with
+	 * {@link #readState(DataInput, SimCheckpoint)}. This implementation
+	 * returns false; routers that save all their mutable state must override
+	 * this.
+	 * 
+	 * @return true if the router supports checkpoints
+	 * @see SimCheckpoint
+	 */
+	public boolean isCheckpointable() {
+		return false;
+	}
+
+	/**
+	 * Writes the mutable state of this router to a checkpoint. This
+	 * implementation writes the incoming, carried and delivered messages;
+	 * subclasses must write their own state after calling this.
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @param cp
+	 *            The checkpoint that is written
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeState(DataOutput out, SimCheckpoint cp)
+			throws IOException {
+		writeMessages(out, cp, this.incomingMessages);
+		out.writeInt(this.maxNrofMessages);
+		writeMessages(out, cp, this.messages);
+		writeMessages(out, cp, this.deliveredMessages);
+	}
+
+	/**
+	 * Restores the mutable state of this router from a checkpoint written
+	 * with {@link #writeState(DataOutput, SimCheckpoint)}. The messages are
+	 * put to maps of the same capacity in the same order, so they are
+	 * iterated in the same order as in the router whose state was written.
+	 * 
+	 * @param in
+	 *            Where to read the state from
+	 * @param cp
+	 *            The checkpoint that is read
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	public void readState(DataInput in, SimCheckpoint cp) throws IOException {
+		this.incomingMessages = readMessages(in, cp, 0);
+		this.maxNrofMessages = in.readInt();
+		this.messages = readMessages(in, cp, this.maxNrofMessages);
+		this.deliveredMessages = readMessages(in, cp, 0);
+	}
+
+	/**
+	 * Writes a message map in its iteration order
+	 */
+	private void writeMessages(DataOutput out, SimCheckpoint cp,
+			HashMap<String, Message> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, Message> e : map.entrySet()) {
+			out.writeUTF(e.getKey());
+			cp.writeMessage(out, e.getValue());
+		}
+	}
+
+	/**
+	 * Reads a message map written with
+	 * {@link #writeMessages(DataOutput, SimCheckpoint, HashMap)} to a map
+	 * whose capacity is the same as the capacity of a map that has held the
+	 * given number of messages
+	 */
+	private HashMap<String, Message> readMessages(DataInput in,
+			SimCheckpoint cp, int maxSize) throws IOException {
+		int capacity = 16; // HashMap's default capacity and load factor
+		while (maxSize > capacity * 3 / 4) {
+			capacity *= 2;
+		}
+		HashMap<String, Message> map = new HashMap<String, Message>(capacity);
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			String key = in.readUTF();
+			map.put(key, cp.readMessage(in));
+		}
+		return map;
+	}
+
 	/**
 	 * Creates a replicate of this router. The replicate has the same settings
 	 * as this router but empty buffers and routing tables.
@@ -39,6 +39,24 @@ public class PassiveRouter extends MessageRouter {
 		this.notifyConnection(con);
 	}
 
+	/**
+	 * Returns true; this router acts only on changes (see
+	 * {@link MessageRouter#isEventDriven()}).
+	 */
+	@Override
+	public boolean isEventDriven() {
+		return true;
+	}
+
+	/**
+	 * Returns true; this router has no state of its own (see
+	 * {@link MessageRouter#isCheckpointable()}).
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return true;
+	}
+
 	@Override
 	public MessageRouter replicate() {
 		return new PassiveRouter(this);
@@ -157,6 +157,24 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
 	}
 
+	/**
+	 * Returns true; this router acts only on changes (see
+	 * {@link MessageRouter#isEventDriven()}).
+	 */
+	@Override
+	public boolean isEventDriven() {
+		return true;
+	}
+
+	/**
+	 * Returns true; this router has no state of its own (see
+	 * {@link MessageRouter#isCheckpointable()}).
+	 */
+	@Override
+	public boolean isCheckpointable() {
+		return true;
+	}
+
 	@Override
 	public SprayAndWaitRouter replicate() {
 		return new SprayAndWaitRouter(this);
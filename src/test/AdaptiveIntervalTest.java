@@ -0,0 +1,189 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import junit.framework.TestCase;
+import report.Report;
+import report.UpdateIntervalReport;
+import test.ContactPredictorTest.PathMovement;
+import core.AdaptiveInterval;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkLayer;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * Tests for the interval selection of {@link AdaptiveInterval}
+ */
+public class AdaptiveIntervalTest extends TestCase {
+	private static final double DELTA = 0.000001;
+	private static final double RANGE = 10;
+	private static final double MIN_INTERVAL = 0.5;
+	private static final double MAX_INTERVAL = 20;
+
+	private TestUtils utils;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		NetworkLayer.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+
+		this.utils = new TestUtils(null, null, new TestSettings());
+		utils.setTransmitRange(RANGE);
+	}
+
+	/**
+	 * Creates the selector for all the created hosts and makes the hosts
+	 * take their first paths (so that their speeds are known)
+	 */
+	private AdaptiveInterval createSelector() {
+		for (DTNHost h : utils.getAllHosts()) {
+			h.move(0);
+		}
+		return new AdaptiveInterval(utils.getAllHosts(), MIN_INTERVAL,
+				MAX_INTERVAL, true);
+	}
+
+	public void testMaxIntervalWhenNothingMoves() {
+		utils.createHost(new Coord(0, 0));
+		utils.createHost(new Coord(5, 0));
+		utils.createHost(new Coord(500, 500));
+		AdaptiveInterval ai = createSelector();
+
+		assertEquals(MAX_INTERVAL, ai.getInterval(), DELTA);
+	}
+
+	public void testMaxIntervalForFarHosts() {
+		/* 1000 m gap and 10 m/s; can't meet within the max interval */
+		utils.createHost(new PathMovement(5, new Coord(0, 0),
+				new Coord(2000, 0)), null);
+		utils.createHost(new PathMovement(5, new Coord(1010, 0),
+				new Coord(0, 0)), null);
+		AdaptiveInterval ai = createSelector();
+
+		assertEquals(MAX_INTERVAL, ai.getInterval(), DELTA);
+	}
+
+	public void testMinIntervalForCloseHosts() {
+		/* 1 m gap at 5 m/s would give 0.2 s */
+		utils.createHost(new PathMovement(5, new Coord(0, 0),
+				new Coord(100, 0)), null);
+		utils.createHost(new Coord(RANGE + 1, 0));
+		AdaptiveInterval ai = createSelector();
+
+		assertEquals(MIN_INTERVAL, ai.getInterval(), DELTA);
+	}
+
+	public void testMinIntervalBeforeFirstPaths() {
+		utils.createHost(new PathMovement(5, new Coord(0, 0),
+				new Coord(100, 0)), null);
+		utils.createHost(new Coord(500, 500));
+		/* no move yet; the moving host's speed is not known */
+		AdaptiveInterval ai = new AdaptiveInterval(utils.getAllHosts(),
+				MIN_INTERVAL, MAX_INTERVAL, true);
+
+		assertEquals(MIN_INTERVAL, ai.getInterval(), DELTA);
+	}
+
+	public void testGapOfApproachingHosts() {
+		/* 50 m apart: 40 m gap to the range at 4 + 1 m/s */
+		utils.createHost(new PathMovement(4, new Coord(0, 0),
+				new Coord(100, 0)), null);
+		utils.createHost(new PathMovement(1, new Coord(50, 0),
+				new Coord(50, 100)), null);
+		/* a far away static host doesn't limit the interval */
+		utils.createHost(new Coord(300, 300));
+		AdaptiveInterval ai = createSelector();
+
+		assertEquals(8.0, ai.getInterval(), DELTA);
+
+		/* the closer the hosts get, the shorter the interval */
+		SimClock.getInstance().setTime(4);
+		for (DTNHost h : utils.getAllHosts()) {
+			h.move(4);
+		}
+		double gap = utils.getAllHosts().get(0).getLocation().distance(
+				utils.getAllHosts().get(1).getLocation()) - RANGE;
+		assertEquals(gap / 5, ai.getInterval(), DELTA);
+		assertTrue(ai.getInterval() < 8.0);
+	}
+
+	public void testGapOfSeparatingHosts() {
+		/* 4 m apart: 6 m to go out of range at 2 m/s */
+		utils.createHost(new Coord(0, 0));
+		utils.createHost(new PathMovement(2, new Coord(0, 4),
+				new Coord(0, 100)), null);
+		AdaptiveInterval ai = createSelector();
+
+		assertEquals(3.0, ai.getInterval(), DELTA);
+	}
+
+	public void testSmallerRangeLimits() {
+		/* the hosts of a TestUtils share the range */
+		TestUtils longRange = new TestUtils(null, null, new TestSettings());
+		longRange.setTransmitRange(2 * RANGE);
+		DTNHost h1 = longRange.createHost(new PathMovement(5, new Coord(0,
+				0), new Coord(100, 0)), null);
+		utils.createHost(new Coord(60, 0));
+		utils.getAllHosts().add(0, h1);
+		AdaptiveInterval ai = createSelector();
+
+		/* 50 m gap to the smaller range at 5 m/s */
+		assertEquals(10.0, ai.getInterval(), DELTA);
+	}
+
+	public void testContactsNotChecked() {
+		utils.createHost(new PathMovement(5, new Coord(0, 0),
+				new Coord(100, 0)), null);
+		utils.createHost(new Coord(RANGE + 1, 0));
+		for (DTNHost h : utils.getAllHosts()) {
+			h.move(0);
+		}
+		AdaptiveInterval ai = new AdaptiveInterval(utils.getAllHosts(),
+				MIN_INTERVAL, MAX_INTERVAL, false);
+
+		/* only transfers limit the interval */
+		assertEquals(MAX_INTERVAL, ai.getInterval(), DELTA);
+	}
+
+	public void testUpdateIntervalReport() throws Exception {
+		File outFile = File.createTempFile("uitest", ".tmp");
+		outFile.deleteOnExit();
+		String prefix = UpdateIntervalReport.class.getSimpleName() + ".";
+		TestSettings ts = new TestSettings();
+		ts.putSetting(prefix + Report.PRECISION_SETTING, "1");
+		ts.putSetting(prefix + UpdateIntervalReport.GRANULARITY, "0.5");
+		ts.putSetting(prefix + Report.OUTPUT_SETTING, outFile
+				.getAbsolutePath());
+		UpdateIntervalReport r = new UpdateIntervalReport();
+
+		double[] intervals = { 0.5, 8, 20, 1.5 };
+		for (double interval : intervals) {
+			SimClock.getInstance().advance(interval);
+			r.updated(null);
+		}
+		r.done();
+
+		BufferedReader reader = new BufferedReader(new FileReader(outFile));
+		reader.readLine(); // skip the scenario name
+		assertEquals("sim_time: 30.0", reader.readLine());
+		assertEquals("updates: 4", reader.readLine());
+		assertEquals("interval_min: 0.5", reader.readLine());
+		assertEquals("interval_max: 20.0", reader.readLine());
+		assertEquals("interval_avg: 7.5", reader.readLine());
+		assertEquals("0.5 1", reader.readLine());
+		assertEquals("1.5 1", reader.readLine());
+		assertEquals("8.0 1", reader.readLine());
+		assertEquals("20.0 1", reader.readLine());
+		assertNull(reader.readLine());
+		reader.close();
+	}
+}
@@ -50,6 +50,27 @@ public class AllTests {
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(ContactPredictorTest.class);
+		suite.addTestSuite(RouterSchedulerTest.class);
+		suite.addTestSuite(EventQueueSchedulerTest.class);
+		suite.addTestSuite(UpdateOrderTest.class);
+		suite.addTestSuite(MessageEventGeneratorTest.class);
+		suite.addTestSuite(DiscreteEventEngineTest.class);
+		suite.addTestSuite(SimulationContextTest.class);
+		suite.addTestSuite(ContactComponentsTest.class);
+		suite.addTestSuite(MovementCheckpointTest.class);
+		suite.addTestSuite(RecordedMovementTest.class);
+		suite.addTestSuite(SweepRunnerTest.class);
+		suite.addTestSuite(RunCacheTest.class);
+		suite.addTestSuite(ContactTraceTest.class);
+		suite.addTestSuite(RoutingVariantsTest.class);
+		suite.addTestSuite(ChangedHostsTest.class);
+		suite.addTestSuite(TimeWarpEngineTest.class);
+		suite.addTestSuite(DistributedRegionsTest.class);
+		suite.addTestSuite(DistributedWireTest.class);
+		suite.addTestSuite(DistributedCoordinatorTest.class);
+		suite.addTestSuite(AdaptiveIntervalTest.class);
 		// $JUnit-END$
 		return suite;
 	}
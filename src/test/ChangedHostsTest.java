@@ -0,0 +1,190 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import core.ChangedHosts;
+import core.Coord;
+import core.DTNHost;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * Tests for tracking the changed hosts and skipping the waiting hosts
+ */
+public class ChangedHostsTest extends TestCase {
+	private static final double AREA_SIZE = 100;
+	private static final int NROF_HOSTS = 20;
+	private static final double STEP = 1.0;
+
+	private SimClock clock;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+		SimClock.reset();
+		this.clock = SimClock.getInstance();
+	}
+
+	private List<DTNHost> createHosts() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			/* every other host is inactive for a while every 300 seconds */
+			utils.createHost(new WaitingMovement(i, (i % 2 == 0 ? 300 : 0)),
+					null);
+		}
+		return utils.getAllHosts();
+	}
+
+	public void testMovesLikeMovingEveryHost() {
+		List<DTNHost> refHosts = createHosts();
+		List<DTNHost> hosts = createHosts();
+		ChangedHosts tracker = new ChangedHosts(hosts);
+
+		for (int step = 0; step < 2000; step++) {
+			for (DTNHost h : refHosts) {
+				h.move(STEP);
+			}
+			tracker.moveHosts(STEP, null);
+			clock.advance(STEP);
+
+			for (int i = 0; i < NROF_HOSTS; i++) {
+				assertEquals("Host " + i + " at step " + step, refHosts.get(i)
+						.getLocation(), hosts.get(i).getLocation());
+			}
+		}
+
+		int nrofRefChecks = 0;
+		int nrofChecks = 0;
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			nrofRefChecks += ((WaitingMovement) refHosts.get(i).getMovement())
+					.nrofActivenessChecks;
+			nrofChecks += ((WaitingMovement) hosts.get(i).getMovement())
+					.nrofActivenessChecks;
+		}
+		/* waiting and inactive hosts aren't moved */
+		assertTrue(nrofChecks < nrofRefChecks / 2);
+	}
+
+	public void testOnlyChangedHostsAreReported() {
+		List<DTNHost> hosts = createHosts();
+		ChangedHosts tracker = new ChangedHosts(hosts);
+		assertEquals(NROF_HOSTS, tracker.startCheck().size());
+		assertEquals(0, tracker.startCheck().size());
+		for (DTNHost h : hosts) {
+			assertTrue(h.isStatic());
+		}
+
+		DTNHost h1 = hosts.get(3);
+		DTNHost h2 = hosts.get(5);
+		h1.setLocation(new Coord(1, 1));
+		List<DTNHost> changed = tracker.startCheck();
+		assertEquals(1, changed.size());
+		assertSame(h1, changed.get(0));
+		assertFalse(h1.isStatic());
+
+		/* a host stays changed for the check that follows the change */
+		h1.forceConnection(h2, true);
+		assertFalse(h2.isStatic());
+		changed = tracker.startCheck();
+		assertEquals(2, changed.size());
+		assertSame(h1, changed.get(0));
+		assertSame(h2, changed.get(1));
+		assertEquals(0, tracker.startCheck().size());
+		assertTrue(h1.isStatic() && h2.isStatic());
+	}
+
+	public void testActivenessChangesAreReported() {
+		List<DTNHost> hosts = createHosts();
+		ChangedHosts tracker = new ChangedHosts(hosts);
+		tracker.startCheck();
+
+		/* the even hosts become inactive after 250 seconds */
+		clock.setTime(250);
+		assertEquals(0, tracker.startCheck().size());
+		clock.setTime(250.5);
+		List<DTNHost> changed = tracker.startCheck();
+		assertEquals(NROF_HOSTS / 2, changed.size());
+		for (DTNHost h : changed) {
+			assertEquals(0, hosts.indexOf(h) % 2);
+		}
+		clock.setTime(299);
+		assertEquals(0, tracker.startCheck().size());
+		clock.setTime(300);
+		assertEquals(NROF_HOSTS / 2, tracker.startCheck().size());
+	}
+
+	/**
+	 * Movement model that moves to random points and waits at them. If the
+	 * period is set, the host is inactive during the last 50 seconds of every
+	 * period. Counts the activeness checks, i.e., the moves.
+	 */
+	private static class WaitingMovement extends MovementModel {
+		private static final double INACTIVE_TIME = 50;
+		private int seed;
+		private Random rng;
+		private double period;
+		private int nrofActivenessChecks;
+
+		public WaitingMovement(int seed, double period) {
+			this.seed = seed;
+			this.rng = new Random(seed);
+			this.period = period;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return randomCoord();
+		}
+
+		private Coord randomCoord() {
+			return new Coord(rng.nextDouble() * AREA_SIZE, rng.nextDouble()
+					* AREA_SIZE);
+		}
+
+		@Override
+		public boolean isActive() {
+			this.nrofActivenessChecks++;
+			if (this.period == 0) {
+				return true;
+			}
+			double t = SimClock.getTime() % this.period;
+			return t <= this.period - INACTIVE_TIME;
+		}
+
+		@Override
+		public double nextActivenessChange() {
+			if (this.period == 0) {
+				return Double.MAX_VALUE;
+			}
+			double time = SimClock.getTime();
+			double start = time - time % this.period;
+			double end = start + this.period - INACTIVE_TIME;
+			return (time <= end ? end : start + this.period);
+		}
+
+		@Override
+		public Path getPath() {
+			Path p = new Path(1 + rng.nextDouble());
+			p.addWaypoint(randomCoord());
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return SimClock.getTime() + rng.nextDouble() * 400;
+		}
+
+		@Override
+		public WaitingMovement replicate() {
+			return new WaitingMovement(seed, period);
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import core.ChangedHosts;
+import core.ConnectivityGrid;
+import core.Coord;
+import core.DTNHost;
+import core.FlatConnectivityGrid;
+import core.MultiLevelGrid;
+import core.SimScenario;
+import core.SparseConnectivityGrid;
+import core.SpatialIndex;
+import core.SweepAndPrune;
+import core.World;
+
+/**
+ * Compares the running times of the connection algorithms 2, 3, 4, 6, 7 and
+ * 8 (see {@link World#CON_ALG_S}) on hosts that walk randomly in a world of
+ * the size of the Helsinki map. In the "crowded" scenario some of the hosts
+ * stay close to a single spot (like people at a tram stop) while the rest are
+ * spread over the whole map. In the "long_range" scenario some of the hosts
+ * have a ten times longer range than the others (like trams). In the
+ * "waiting" scenario only one in ten hosts moves (the crowded ones wait) and
+ * algorithm 2 is also run with the changed hosts tracked ("2s", see
+ * {@link World#SKIP_STATIC_PAIRS_S}), like it is in the uniform scenario to
+ * show the cost of the tracking when all hosts move. Only the connection
+ * checks are timed; moving the hosts and tearing down the connections are
+ * the same for all the algorithms. Usage:
+ * <BR>
+ * <CODE>ConnectivityBenchmark [nrofHosts [nrofCrowded [nrofSteps]]]</CODE>
+ * <BR>
+ * The number of long range hosts is the same as the number of crowded hosts.
+ */
+public class ConnectivityBenchmark {
+	private static final int WORLD_SIZE_X = 4500;
+	private static final int WORLD_SIZE_Y = 3400;
+	private static final double RANGE = 10;
+	private static final double LONG_RANGE = 100;
+	/** radius of the crowded spot */
+	private static final double CROWD_RADIUS = 20;
+	/** largest movement of a host on a step (about walking speed) */
+	private static final double STEP = 1.5;
+	private static final long SEED = 42;
+
+	private int nrofHosts;
+	private int nrofSteps;
+
+	private ConnectivityBenchmark(int nrofHosts, int nrofSteps) {
+		this.nrofHosts = nrofHosts;
+		this.nrofSteps = nrofSteps;
+	}
+
+	/**
+	 * Creates the hosts; the first nrofCrowded of them are at the crowded spot
+	 * and the first nrofLongRange have the long range
+	 */
+	private List<DTNHost> createHosts(int nrofCrowded, int nrofLongRange) {
+		Random rng = new Random(SEED);
+		/* the hosts of a TestUtils share the range */
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		utils.setTransmitRange(RANGE);
+		TestUtils longUtils = new TestUtils(null, null, new TestSettings());
+		longUtils.setTransmitRange(LONG_RANGE);
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i = 0; i < this.nrofHosts; i++) {
+			Coord c;
+			if (i < nrofCrowded) {
+				c = new Coord(WORLD_SIZE_X / 2 + (rng.nextDouble() * 2 - 1)
+						* CROWD_RADIUS, WORLD_SIZE_Y / 2
+						+ (rng.nextDouble() * 2 - 1) * CROWD_RADIUS);
+			} else {
+				c = new Coord(rng.nextDouble() * WORLD_SIZE_X, rng
+						.nextDouble() * WORLD_SIZE_Y);
+			}
+			hosts.add((i < nrofLongRange ? longUtils : utils).createHost(c));
+		}
+		return hosts;
+	}
+
+	/**
+	 * Runs the steps with one algorithm and prints its time and the number of
+	 * connections it found. The first nrofWaiting hosts don't move.
+	 */
+	private void run(String scenario, int algorithm, boolean trackChanges,
+			int nrofCrowded, int nrofLongRange, int nrofWaiting) {
+		List<DTNHost> hosts = createHosts(nrofCrowded, nrofLongRange);
+		int cellSize = (int) (nrofLongRange > 0 ? LONG_RANGE : RANGE)
+				* World.DEF_CON_CELL_SIZE_MULT;
+		ConnectivityGrid grid = null;
+		SpatialIndex index;
+		if (algorithm == 2 || algorithm == 3) {
+			grid = new ConnectivityGrid(WORLD_SIZE_X, WORLD_SIZE_Y, cellSize);
+			index = grid;
+		} else if (algorithm == 4) {
+			index = new FlatConnectivityGrid(WORLD_SIZE_X, WORLD_SIZE_Y,
+					cellSize);
+		} else if (algorithm == 6) {
+			index = new SweepAndPrune(WORLD_SIZE_X, WORLD_SIZE_Y);
+		} else if (algorithm == 7) {
+			index = new MultiLevelGrid(WORLD_SIZE_X, WORLD_SIZE_Y,
+					World.DEF_CON_CELL_SIZE_MULT);
+		} else {
+			index = new SparseConnectivityGrid(cellSize);
+		}
+		index.addNodes(hosts);
+		ChangedHosts tracker = (trackChanges ? new ChangedHosts(hosts) : null);
+
+		Random rng = new Random(SEED + 1);
+		long nanos = 0;
+		long nrofConnections = 0;
+		for (int step = 0; step < this.nrofSteps; step++) {
+			for (int i = nrofWaiting; i < hosts.size(); i++) {
+				DTNHost host = hosts.get(i);
+				Coord c = host.getLocation();
+				double x = c.getX() + (rng.nextDouble() * 2 - 1) * STEP;
+				double y = c.getY() + (rng.nextDouble() * 2 - 1) * STEP;
+				x = Math.max(0, Math.min(x, WORLD_SIZE_X));
+				y = Math.max(0, Math.min(y, WORLD_SIZE_Y));
+				host.setLocation(new Coord(x, y));
+				if (grid != null) {
+					grid.updateLocation(host);
+				}
+			}
+			for (int i = 0; i < hosts.size(); i++) {
+				hosts.get(i).updateConnections();
+			}
+
+			long start = System.nanoTime();
+			if (tracker != null) {
+				grid.connectToNodesNear(tracker.startCheck());
+			} else if (algorithm == 2) {
+				for (int i = 0; i < hosts.size(); i++) {
+					grid.connectToNearNodes(hosts.get(i));
+				}
+			} else {
+				index.connectAllNearNodes();
+			}
+			nanos += System.nanoTime() - start;
+
+			for (int i = 0; i < hosts.size(); i++) {
+				nrofConnections += hosts.get(i).getConnections().size();
+			}
+		}
+
+		System.out.println(scenario + " " + algorithm
+				+ (trackChanges ? "s " : " ")
+				+ String.format("%.3f", nanos / 1e6 / this.nrofSteps) + " "
+				+ nrofConnections / 2);
+	}
+
+	/**
+	 * Runs the benchmark
+	 *
+	 * @param args
+	 *            Number of hosts, number of crowded hosts and number of steps
+	 *            (optional)
+	 */
+	public static void main(String[] args) {
+		int nrofHosts = (args.length > 0 ? Integer.parseInt(args[0]) : 1000);
+		int nrofCrowded = (args.length > 1 ? Integer.parseInt(args[1]) : 200);
+		int nrofSteps = (args.length > 2 ? Integer.parseInt(args[2]) : 500);
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+
+		ConnectivityBenchmark benchmark = new ConnectivityBenchmark(nrofHosts,
+				nrofSteps);
+		int[] algorithms = { 2, 3, 4, 6, 7, 8 };
+		System.out.println("scenario algorithm ms_per_step connections");
+		for (int round = 0; round < 2; round++) { // first round warms up
+			for (int algorithm : algorithms) {
+				benchmark.run("uniform", algorithm, false, 0, 0, 0);
+			}
+			benchmark.run("uniform", 2, true, 0, 0, 0);
+			for (int algorithm : algorithms) {
+				benchmark.run("crowded", algorithm, false, nrofCrowded, 0, 0);
+			}
+			for (int algorithm : algorithms) {
+				benchmark.run("long_range", algorithm, false, 0, nrofCrowded,
+						0);
+			}
+			int nrofWaiting = nrofHosts - nrofHosts / 10;
+			for (int algorithm : algorithms) {
+				benchmark.run("waiting", algorithm, false, nrofCrowded, 0,
+						nrofWaiting);
+			}
+			benchmark.run("waiting", 2, true, nrofCrowded, 0, nrofWaiting);
+		}
+	}
+}
@@ -0,0 +1,501 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.ChangedHosts;
+import core.ConnectionListener;
+import core.ConnectivityGrid;
+import core.Connection;
+import core.Coord;
+import core.DTNHost;
+import core.FlatConnectivityGrid;
+import core.MultiLevelGrid;
+import core.NeighborListGrid;
+import core.SimScenario;
+import core.SparseConnectivityGrid;
+import core.SpatialIndex;
+import core.SweepAndPrune;
+import core.WorkerPool;
+
+/**
+ * Tests that the different connectivity grids find the same connections.
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final int WORLD_SIZE = 200;
+	private static final int CELL_SIZE = 20;
+	private static final int NROF_HOSTS = 150;
+	private static final double RANGE = 10;
+
+	private List<Coord> locations;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+
+		Random rng = new Random(42);
+		this.locations = new ArrayList<Coord>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			locations.add(new Coord(rng.nextDouble() * WORLD_SIZE,
+					rng.nextDouble() * WORLD_SIZE));
+		}
+		/* a pair exactly at the range and pairs on the cell borders */
+		locations.add(new Coord(CELL_SIZE - 1, CELL_SIZE - 1));
+		locations.add(new Coord(CELL_SIZE - 1, CELL_SIZE - 1 + RANGE));
+		locations.add(new Coord(2 * CELL_SIZE + 1, CELL_SIZE + 1));
+		locations.add(new Coord(2 * CELL_SIZE - 1, CELL_SIZE - 1));
+	}
+
+	private List<DTNHost> createHosts() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		utils.setTransmitRange(RANGE);
+		for (Coord c : locations) {
+			utils.createHost(c.clone());
+		}
+		return utils.getAllHosts();
+	}
+
+	public void testFlatGridFindsSameConnections() {
+		List<DTNHost> gridHosts = createHosts();
+		ConnectivityGrid grid = new ConnectivityGrid(WORLD_SIZE, WORLD_SIZE,
+				CELL_SIZE);
+		grid.addNodes(gridHosts);
+		grid.connectAllNearNodes();
+
+		List<DTNHost> flatHosts = createHosts();
+		FlatConnectivityGrid flatGrid = new FlatConnectivityGrid(WORLD_SIZE,
+				WORLD_SIZE, CELL_SIZE);
+		flatGrid.addNodes(flatHosts);
+		flatGrid.connectAllNearNodes();
+
+		int nrofConnections = 0;
+		for (int i = 0; i < gridHosts.size(); i++) {
+			List<Integer> expected = peersOf(gridHosts.get(i), gridHosts);
+			assertEquals(expected, peersOf(flatHosts.get(i), flatHosts));
+			nrofConnections += expected.size();
+		}
+		assertTrue(nrofConnections > 0);
+
+		/* all the connections are already up; nothing changes */
+		flatGrid.connectAllNearNodes();
+		for (int i = 0; i < gridHosts.size(); i++) {
+			assertEquals(peersOf(gridHosts.get(i), gridHosts),
+					peersOf(flatHosts.get(i), flatHosts));
+		}
+	}
+
+	public void testFlatGridFollowsMovedNodes() {
+		List<DTNHost> hosts = createHosts();
+		FlatConnectivityGrid flatGrid = new FlatConnectivityGrid(WORLD_SIZE,
+				WORLD_SIZE, CELL_SIZE);
+		flatGrid.addNodes(hosts);
+
+		DTNHost h1 = hosts.get(0);
+		DTNHost h2 = hosts.get(1);
+		h1.setLocation(new Coord(WORLD_SIZE - 1, WORLD_SIZE - 1));
+		h2.setLocation(new Coord(WORLD_SIZE - 5, WORLD_SIZE - 5));
+		flatGrid.connectAllNearNodes();
+
+		assertTrue(peersOf(h1, hosts).contains(1));
+		assertTrue(peersOf(h2, hosts).contains(0));
+	}
+
+	public void testNeighborListFollowsMovingNodes() {
+		List<DTNHost> flatHosts = createHosts();
+		FlatConnectivityGrid flatGrid = new FlatConnectivityGrid(WORLD_SIZE,
+				WORLD_SIZE, CELL_SIZE);
+		flatGrid.addNodes(flatHosts);
+
+		List<DTNHost> listHosts = createHosts();
+		NeighborListGrid listGrid = new NeighborListGrid(WORLD_SIZE,
+				WORLD_SIZE, CELL_SIZE, 4);
+		listGrid.addNodes(listHosts);
+
+		followMovingNodes(flatHosts, flatGrid, listHosts, listGrid, 1, 100);
+
+		/* the list was not rebuilt on every step */
+		assertTrue(listGrid.getNrofRebuilds() > 1);
+		assertTrue(listGrid.getNrofRebuilds() < 100);
+	}
+
+	public void testNeighborListRebuildsAtHalfSkin() {
+		double skin = 4;
+		List<DTNHost> hosts = createHosts();
+		NeighborListGrid listGrid = new NeighborListGrid(WORLD_SIZE,
+				WORLD_SIZE, CELL_SIZE, skin);
+		listGrid.addNodes(hosts);
+		DTNHost host = hosts.get(0);
+		host.setLocation(new Coord(WORLD_SIZE / 2, WORLD_SIZE / 2));
+		listGrid.connectAllNearNodes();
+		assertEquals(1, listGrid.getNrofRebuilds());
+
+		/* just under half of the skin from the latest rebuild */
+		host.setLocation(new Coord(WORLD_SIZE / 2 + skin / 2 - 0.001,
+				WORLD_SIZE / 2));
+		listGrid.connectAllNearNodes();
+		assertEquals(1, listGrid.getNrofRebuilds());
+		host.setLocation(new Coord(WORLD_SIZE / 2, WORLD_SIZE / 2 - skin / 2
+				+ 0.001));
+		listGrid.connectAllNearNodes();
+		assertEquals(1, listGrid.getNrofRebuilds());
+
+		/* just over half of the skin */
+		host.setLocation(new Coord(WORLD_SIZE / 2 + skin / 2 + 0.001,
+				WORLD_SIZE / 2));
+		listGrid.connectAllNearNodes();
+		assertEquals(2, listGrid.getNrofRebuilds());
+
+		/* distances are measured from the location of the latest rebuild */
+		host.setLocation(new Coord(WORLD_SIZE / 2 + skin - 0.001,
+				WORLD_SIZE / 2));
+		listGrid.connectAllNearNodes();
+		assertEquals(2, listGrid.getNrofRebuilds());
+	}
+
+	public void testSweepAndPruneFollowsMovingNodes() {
+		List<DTNHost> flatHosts = createHosts();
+		FlatConnectivityGrid flatGrid = new FlatConnectivityGrid(WORLD_SIZE,
+				WORLD_SIZE, CELL_SIZE);
+		flatGrid.addNodes(flatHosts);
+
+		List<DTNHost> sapHosts = createHosts();
+		SweepAndPrune sap = new SweepAndPrune(WORLD_SIZE, WORLD_SIZE);
+		sap.addNodes(sapHosts);
+
+		int nrofConnections = followMovingNodes(flatHosts, flatGrid,
+				sapHosts, sap, 2, 100);
+		assertTrue(nrofConnections > 0);
+
+		/*
+		 * the order was repaired with fewer swaps than finding the pairs from
+		 * scratch would need, and only a fraction of the pairs overlap
+		 */
+		assertTrue(sap.getNrofSwaps() < sap.getNrofOverlappingPairs());
+		assertTrue(sap.getNrofOverlappingPairs() < sapHosts.size()
+				* sapHosts.size() / 4);
+	}
+
+	public void testMultiLevelGridWithDifferentRanges() {
+		List<DTNHost> flatHosts = createMixedRangeHosts();
+		FlatConnectivityGrid flatGrid = new FlatConnectivityGrid(WORLD_SIZE,
+				WORLD_SIZE, (int) (4 * RANGE));
+		flatGrid.addNodes(flatHosts);
+
+		List<DTNHost> levelHosts = createMixedRangeHosts();
+		MultiLevelGrid levelGrid = new MultiLevelGrid(WORLD_SIZE, WORLD_SIZE, 1);
+		levelGrid.addNodes(levelHosts);
+
+		int nrofConnections = followMovingNodes(flatHosts, flatGrid,
+				levelHosts, levelGrid, 5, 20);
+		assertTrue(nrofConnections > 0);
+		/* cells of 5, 10, 20 and 40 meters */
+		assertEquals(4, levelGrid.getNrofLevels());
+	}
+
+	public void testSparseGridFindsSameConnections() {
+		List<DTNHost> flatHosts = createHosts();
+		FlatConnectivityGrid flatGrid = new FlatConnectivityGrid(WORLD_SIZE,
+				WORLD_SIZE, CELL_SIZE);
+		flatGrid.addNodes(flatHosts);
+		flatGrid.connectAllNearNodes();
+
+		/* far away from the origin and partly on negative coordinates */
+		double offset = 1e7;
+		List<DTNHost> sparseHosts = createHosts();
+		for (DTNHost h : sparseHosts) {
+			Coord c = h.getLocation();
+			h.setLocation(new Coord(c.getX() + offset, c.getY() - offset
+					/ 2));
+		}
+		SparseConnectivityGrid sparseGrid = new SparseConnectivityGrid(
+				CELL_SIZE);
+		sparseGrid.addNodes(sparseHosts);
+		sparseGrid.connectAllNearNodes();
+
+		for (int i = 0; i < flatHosts.size(); i++) {
+			assertEquals(peersOf(flatHosts.get(i), flatHosts),
+					peersOf(sparseHosts.get(i), sparseHosts));
+		}
+		assertTrue(sparseGrid.getNrofOccupiedCells() <= sparseHosts.size());
+
+		/* cells follow the moved nodes */
+		DTNHost h1 = sparseHosts.get(0);
+		DTNHost h2 = sparseHosts.get(1);
+		h1.setLocation(new Coord(-offset, -offset));
+		h2.setLocation(new Coord(-offset + 1, -offset - 1));
+		sparseGrid.connectAllNearNodes();
+		assertTrue(peersOf(h1, sparseHosts).contains(1));
+		assertTrue(peersOf(h2, sparseHosts).contains(0));
+	}
+
+	public void testStaticHostsKeepSameConnections() {
+		List<DTNHost> hosts = createHosts();
+		ConnectivityGrid grid = new ConnectivityGrid(WORLD_SIZE, WORLD_SIZE,
+				CELL_SIZE);
+		grid.addNodes(hosts);
+		ChangedHosts tracker = new ChangedHosts(hosts);
+		List<DTNHost> refHosts = createHosts();
+		FlatConnectivityGrid refGrid = new FlatConnectivityGrid(WORLD_SIZE,
+				WORLD_SIZE, CELL_SIZE);
+		refGrid.addNodes(refHosts);
+
+		assertEquals(hosts.size(), checkConnections(tracker, hosts, grid,
+				refHosts, refGrid));
+		/* nothing has changed; all hosts are static on the second check */
+		assertEquals(0, checkConnections(tracker, hosts, grid, refHosts,
+				refGrid));
+		for (DTNHost h : hosts) {
+			assertTrue(h.isStatic());
+		}
+
+		/* a moved host is connected to the static ones near it */
+		DTNHost h1 = hosts.get(0);
+		assertFalse(h1.getConnections().isEmpty());
+		Coord far = new Coord(WORLD_SIZE - 1, 1);
+		h1.setLocation(far);
+		grid.updateLocation(h1);
+		refHosts.get(0).setLocation(far.clone());
+		assertTrue(checkConnections(tracker, hosts, grid, refHosts, refGrid)
+				< hosts.size() / 4);
+		assertFalse(h1.isStatic());
+
+		/* so is a connection that was forced down between static hosts */
+		checkConnections(tracker, hosts, grid, refHosts, refGrid);
+		DTNHost h2 = null;
+		DTNHost h3 = null;
+		for (DTNHost h : hosts) {
+			if (!h.getConnections().isEmpty()) {
+				h2 = h;
+				h3 = h.getConnections().get(0).getOtherNode(h);
+				break;
+			}
+		}
+		assertTrue(h2.isStatic() && h3.isStatic());
+		h2.forceConnection(h3, false);
+		assertFalse(h2.isStatic());
+		checkConnections(tracker, hosts, grid, refHosts, refGrid);
+		assertTrue(peersOf(h2, hosts).contains(h3.getAddress()
+				- hosts.get(0).getAddress()));
+	}
+
+	public void testConcurrentScanGivesSameEvents() {
+		List<List<String>> single = connectionEvents(0, 10);
+		List<List<String>> oneThread = connectionEvents(1, 10);
+		List<List<String>> fourThreads = connectionEvents(4, 10);
+		assertEquals(oneThread, fourThreads);
+
+		int nrofUps = 0;
+		for (int step = 0; step < single.size(); step++) {
+			/* pairs come up in (lower address, higher address) order */
+			String previous = "";
+			for (String e : fourThreads.get(step)) {
+				if (e.startsWith("up")) {
+					assertTrue(previous + " before " + e,
+							previous.compareTo(e) < 0);
+					previous = e;
+					nrofUps++;
+				}
+			}
+
+			/*
+			 * algorithm 2 connects the hosts in address order but the peers
+			 * of a host in the order of the cells; the same events in the
+			 * same order once sorted by the pairs' addresses
+			 */
+			List<String> expected = new ArrayList<String>(single.get(step));
+			Collections.sort(expected);
+			List<String> events = new ArrayList<String>(fourThreads.get(step));
+			Collections.sort(events);
+			assertEquals(expected, events);
+		}
+		assertTrue(nrofUps > NROF_HOSTS);
+	}
+
+	/**
+	 * Moves a set of hosts randomly for a number of steps and records the
+	 * connection events of every step
+	 * 
+	 * @param nrofThreads
+	 *            How many worker threads
+	 *            {@link ConnectivityGrid#connectAllNearNodes(WorkerPool)}
+	 *            uses or 0 for connecting the hosts one by one with
+	 *            {@link ConnectivityGrid#connectToNearNodes(DTNHost)}
+	 *            (algorithm 2)
+	 * @param nrofSteps
+	 *            Number of steps
+	 * @return The events of every step as "up/down lower higher" strings
+	 *         with the addresses relative to the first host (zero padded)
+	 */
+	private List<List<String>> connectionEvents(int nrofThreads,
+			int nrofSteps) {
+		final List<String> events = new ArrayList<String>();
+		final List<DTNHost> hosts = new ArrayList<DTNHost>();
+		ConnectionListener cl = new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				events.add("up " + pairOf(host1, host2));
+			}
+
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				events.add("down " + pairOf(host1, host2));
+			}
+
+			private String pairOf(DTNHost host1, DTNHost host2) {
+				int first = hosts.get(0).getAddress();
+				return String.format("%04d %04d", host1.getAddress() - first,
+						host2.getAddress() - first);
+			}
+		};
+		List<ConnectionListener> cls = new ArrayList<ConnectionListener>();
+		cls.add(cl);
+		TestUtils utils = new TestUtils(cls, null, new TestSettings());
+		utils.setTransmitRange(RANGE);
+		for (Coord c : locations) {
+			hosts.add(utils.createHost(c.clone()));
+		}
+
+		ConnectivityGrid grid = new ConnectivityGrid(WORLD_SIZE, WORLD_SIZE,
+				CELL_SIZE);
+		grid.addNodes(hosts);
+		WorkerPool workers = (nrofThreads > 0 ? new WorkerPool(nrofThreads)
+				: null);
+		Random rng = new Random(7);
+		List<List<String>> stepEvents = new ArrayList<List<String>>();
+		for (int step = 0; step < nrofSteps; step++) {
+			for (DTNHost h : hosts) {
+				Coord c = h.getLocation();
+				double x = c.getX() + (rng.nextDouble() * 2 - 1) * 5;
+				double y = c.getY() + (rng.nextDouble() * 2 - 1) * 5;
+				x = Math.max(0, Math.min(x, WORLD_SIZE - 1));
+				y = Math.max(0, Math.min(y, WORLD_SIZE - 1));
+				h.setLocation(new Coord(x, y));
+				grid.updateLocation(h);
+			}
+			for (DTNHost h : hosts) {
+				h.updateConnections();
+			}
+			if (workers != null) {
+				grid.connectAllNearNodes(workers);
+			} else {
+				for (DTNHost h : hosts) {
+					grid.connectToNearNodes(h);
+				}
+			}
+			stepEvents.add(new ArrayList<String>(events));
+			events.clear();
+		}
+		return stepEvents;
+	}
+
+	/**
+	 * Connects the hosts that are near the changed hosts and all the
+	 * reference hosts and checks that they have the same connections
+	 * 
+	 * @return The number of hosts whose near nodes were connected
+	 */
+	private int checkConnections(ChangedHosts tracker, List<DTNHost> hosts,
+			ConnectivityGrid grid, List<DTNHost> refHosts,
+			FlatConnectivityGrid refGrid) {
+		int nrofTurns = grid.connectToNodesNear(tracker.startCheck());
+		refGrid.connectAllNearNodes();
+		for (int i = 0; i < hosts.size(); i++) {
+			hosts.get(i).updateConnections();
+			refHosts.get(i).updateConnections();
+		}
+		for (int i = 0; i < hosts.size(); i++) {
+			assertEquals(peersOf(refHosts.get(i), refHosts), peersOf(hosts
+					.get(i), hosts));
+		}
+		return nrofTurns;
+	}
+
+	/**
+	 * Moves two identical sets of hosts randomly for a number of steps and
+	 * checks that the tested index finds the same connections as the
+	 * reference index after every step
+	 *
+	 * @param refHosts
+	 *            The hosts of the reference index
+	 * @param refIndex
+	 *            The reference index
+	 * @param hosts
+	 *            The hosts of the tested index
+	 * @param index
+	 *            The tested index
+	 * @param maxStep
+	 *            Largest movement of a host along each axis on a step
+	 * @param nrofSteps
+	 *            Number of steps
+	 * @return the number of connections (both ends) summed over the steps
+	 */
+	private int followMovingNodes(List<DTNHost> refHosts,
+			SpatialIndex refIndex, List<DTNHost> hosts, SpatialIndex index,
+			double maxStep, int nrofSteps) {
+		Random rng = new Random(7);
+		int nrofConnections = 0;
+		for (int step = 0; step < nrofSteps; step++) {
+			for (int i = 0; i < refHosts.size(); i++) {
+				Coord c = refHosts.get(i).getLocation();
+				double x = c.getX() + (rng.nextDouble() * 2 - 1) * maxStep;
+				double y = c.getY() + (rng.nextDouble() * 2 - 1) * maxStep;
+				x = Math.max(0, Math.min(x, WORLD_SIZE - 1));
+				y = Math.max(0, Math.min(y, WORLD_SIZE - 1));
+				refHosts.get(i).setLocation(new Coord(x, y));
+				hosts.get(i).setLocation(new Coord(x, y));
+			}
+			for (int i = 0; i < refHosts.size(); i++) {
+				refHosts.get(i).updateConnections();
+				hosts.get(i).updateConnections();
+			}
+			refIndex.connectAllNearNodes();
+			index.connectAllNearNodes();
+
+			for (int i = 0; i < refHosts.size(); i++) {
+				List<Integer> expected = peersOf(refHosts.get(i), refHosts);
+				assertEquals(expected, peersOf(hosts.get(i), hosts));
+				nrofConnections += expected.size();
+			}
+		}
+		return nrofConnections;
+	}
+
+	/**
+	 * Creates hosts with ranges of half, one and four times {@link #RANGE}
+	 */
+	private List<DTNHost> createMixedRangeHosts() {
+		/* the hosts of a TestUtils share the range */
+		double[] ranges = { RANGE / 2, RANGE, 4 * RANGE };
+		TestUtils[] utils = new TestUtils[ranges.length];
+		for (int i = 0; i < ranges.length; i++) {
+			utils[i] = new TestUtils(null, null, new TestSettings());
+			utils[i].setTransmitRange(ranges[i]);
+		}
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i = 0; i < locations.size(); i++) {
+			int u = (i % 10 == 0 ? 2 : i % 2);
+			hosts.add(utils[u].createHost(locations.get(i).clone()));
+		}
+		return hosts;
+	}
+
+	/**
+	 * Returns the indexes of the given host's peers (relative to the first
+	 * host of the same set of hosts) in increasing order
+	 */
+	private List<Integer> peersOf(DTNHost host, List<DTNHost> hosts) {
+		int firstAddress = hosts.get(0).getAddress();
+		List<Integer> peers = new ArrayList<Integer>();
+		for (Connection c : host.getConnections()) {
+			peers.add(c.getOtherNode(host).getAddress() - firstAddress);
+		}
+		Collections.sort(peers);
+		return peers;
+	}
+}
@@ -0,0 +1,109 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.ConnectionListener;
+import core.ContactComponents;
+import core.Coord;
+import core.DTNHost;
+import core.ListenerEventRecorder;
+import core.MessageListener;
+import core.NetworkLayer;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * Tests for the ContactComponents and the ListenerEventRecorder used for
+ * updating the hosts concurrently
+ */
+public class ContactComponentsTest extends TestCase {
+	private static final int NROF_HOSTS = 6;
+	private List<DTNHost> hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		NetworkLayer.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+		TestUtils utils = new TestUtils(new ArrayList<ConnectionListener>(),
+				new ArrayList<MessageListener>(), new TestSettings());
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			utils.createHost(new Coord(i, 0));
+		}
+		hosts = utils.getAllHosts();
+
+		/* components {0, 1, 2}, {3} and {4, 5} */
+		hosts.get(0).connect(hosts.get(1));
+		hosts.get(2).connect(hosts.get(1));
+		hosts.get(4).connect(hosts.get(5));
+	}
+
+	public void testComponents() {
+		ContactComponents cc = new ContactComponents(hosts);
+		cc.compute(new int[] { 5, 3, 1, 0, 4, 2 });
+
+		assertEquals(3, cc.getNrofComponents());
+		assertTrue(cc.inSameComponent(0, 2));
+		assertTrue(cc.inSameComponent(5, 4));
+		assertFalse(cc.inSameComponent(2, 3));
+		assertFalse(cc.inSameComponent(0, 4));
+
+		/* components in order of appearance, hosts in the given order */
+		int[] starts = { 0, 2, 3, 6 };
+		int[] grouped = { 5, 4, 3, 1, 0, 2 };
+		for (int c = 0; c <= cc.getNrofComponents(); c++) {
+			assertEquals(starts[c], cc.getStart(c));
+		}
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			assertEquals(grouped[i], cc.getHost(i));
+		}
+	}
+
+	public void testComponentsFollowConnections() {
+		ContactComponents cc = new ContactComponents(hosts);
+		hosts.get(3).connect(hosts.get(2));
+		cc.compute(new int[] { 0, 1, 2, 3, 4, 5 });
+		assertEquals(2, cc.getNrofComponents());
+		assertTrue(cc.inSameComponent(0, 3));
+		assertEquals(4, cc.getStart(1));
+	}
+
+	public void testRecordedEventsAreReplayedInHostOrder() {
+		ListenerEventRecorder recorder = new ListenerEventRecorder(NROF_HOSTS);
+		final List<String> events = new ArrayList<String>();
+		ConnectionListener cl = new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				events.add("up " + host1.getAddress() + host2.getAddress());
+			}
+
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				events.add("down " + host1.getAddress() + host2.getAddress());
+			}
+		};
+		List<ConnectionListener> cls = new ArrayList<ConnectionListener>();
+		cls.add(cl);
+		List<MessageListener> mls = new ArrayList<MessageListener>();
+
+		recorder.setCurrentHost(4);
+		recorder.hostsConnected(hosts.get(4), hosts.get(5));
+		recorder.setCurrentHost(1);
+		recorder.hostsDisconnected(hosts.get(1), hosts.get(0));
+		recorder.hostsConnected(hosts.get(1), hosts.get(2));
+		assertEquals(0, events.size());
+
+		recorder.replay(1, cls, mls);
+		recorder.replay(4, cls, mls);
+		recorder.replay(1, cls, mls); // already replayed
+
+		assertEquals(3, events.size());
+		assertEquals("down 10", events.get(0));
+		assertEquals("up 12", events.get(1));
+		assertEquals("up 45", events.get(2));
+	}
+}
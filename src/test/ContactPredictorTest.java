@@ -0,0 +1,160 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import core.ConnectionListener;
+import core.ContactPredictor;
+import core.Coord;
+import core.DTNHost;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * Tests for the exact contact time solving of {@link ContactPredictor}
+ */
+public class ContactPredictorTest extends TestCase {
+	private static final double DELTA = 0.000001;
+	private static final double RANGE = 10;
+
+	private TestUtils utils;
+	private List<Double> upTimes;
+	private List<Double> downTimes;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+
+		this.upTimes = new ArrayList<Double>();
+		this.downTimes = new ArrayList<Double>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				upTimes.add(SimClock.getTime());
+			}
+
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				downTimes.add(SimClock.getTime());
+			}
+		});
+
+		this.utils = new TestUtils(cl, null, new TestSettings());
+		utils.setTransmitRange(RANGE);
+	}
+
+	/**
+	 * Moves the hosts for one interval and processes all the contact events
+	 */
+	private void runInterval(ContactPredictor cp, double interval) {
+		double start = SimClock.getTime();
+		for (DTNHost h : utils.getAllHosts()) {
+			h.move(interval);
+		}
+		cp.predict(start, start + interval);
+		while (cp.nextEventTime() <= start + interval) {
+			SimClock.getInstance().setTime(cp.nextEventTime());
+			cp.processNextEvent();
+		}
+		SimClock.getInstance().setTime(start + interval);
+	}
+
+	public void testContactWithinInterval() {
+		/* passes the other host's range between x=40 and x=60 */
+		utils.createHost(new PathMovement(5, new Coord(0, 0),
+				new Coord(100, 0)), null);
+		utils.createHost(new Coord(50, 0));
+		ContactPredictor cp = new ContactPredictor(utils.getAllHosts());
+
+		runInterval(cp, 20);
+
+		assertEquals(1, upTimes.size());
+		assertEquals(1, downTimes.size());
+		assertEquals(8.0, upTimes.get(0), DELTA);
+		assertEquals(12.0, downTimes.get(0), DELTA);
+	}
+
+	public void testContactOverWaypoints() {
+		/* turns north at (40,0); reaches the range at x=35 (t=7) */
+		utils.createHost(new PathMovement(5, new Coord(0, 0),
+				new Coord(40, 0), new Coord(40, 100)), null);
+		utils.createHost(new Coord(45, 0));
+		ContactPredictor cp = new ContactPredictor(utils.getAllHosts());
+
+		runInterval(cp, 5);
+		assertEquals(0, upTimes.size());
+		runInterval(cp, 5);
+		assertEquals(1, upTimes.size());
+		assertEquals(7.0, upTimes.get(0), DELTA);
+
+		/* 25 + (5 * (t-8))^2 = 100 */
+		assertEquals(1, downTimes.size());
+		assertEquals(8 + Math.sqrt(3), downTimes.get(0), DELTA);
+	}
+
+	public void testNoEventsWhenOutOfRange() {
+		utils.createHost(new PathMovement(1, new Coord(0, 0),
+				new Coord(0, 50)), null);
+		utils.createHost(new Coord(30, 0));
+		ContactPredictor cp = new ContactPredictor(utils.getAllHosts());
+
+		runInterval(cp, 100);
+		assertEquals(0, upTimes.size());
+		assertEquals(Double.MAX_VALUE, cp.nextEventTime());
+	}
+
+	/**
+	 * Movement model that moves along a single path and then stays still
+	 */
+	static class PathMovement extends MovementModel {
+		private double speed;
+		private Coord[] points;
+		private boolean pathGiven;
+
+		public PathMovement(double speed, Coord... points) {
+			this.speed = speed;
+			this.points = points;
+			this.pathGiven = false;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return points[0].clone();
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public Path getPath() {
+			if (pathGiven) {
+				return null;
+			}
+			Path p = new Path(speed);
+			for (int i = 1; i < points.length; i++) {
+				p.addWaypoint(points[i].clone());
+			}
+			pathGiven = true;
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return (pathGiven ? Double.MAX_VALUE : 0);
+		}
+
+		@Override
+		public PathMovement replicate() {
+			return new PathMovement(speed, points);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.ConnectionListener;
+import core.ContactTrace;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkLayer;
+import core.SettingsError;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * Tests for recording and replaying contact traces with ContactTrace
+ */
+public class ContactTraceTest extends TestCase {
+	private static final int NROF_HOSTS = 3;
+
+	private File trace;
+	private SimClock clock;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+		trace = File.createTempFile("contacts", ".trc");
+	}
+
+	protected void tearDown() throws Exception {
+		trace.delete();
+		super.tearDown();
+	}
+
+	private List<DTNHost> createHosts(ConnectionListener listener) {
+		NetworkLayer.reset();
+		List<ConnectionListener> listeners = new ArrayList<ConnectionListener>();
+		if (listener != null) {
+			listeners.add(listener);
+		}
+		TestUtils utils = new TestUtils(listeners, null, new TestSettings());
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			hosts.add(utils.createHost(new Coord(0, 0)));
+		}
+		return hosts;
+	}
+
+	/**
+	 * Records a trace where h0 and h1 connect at time 1, h1 connects to h2
+	 * at time 2 and h0 tears down its connection to h1 at time 3 both
+	 * before and after the connection phase that reconnects them
+	 */
+	private void recordTrace() {
+		ContactTrace.Recorder recorder = new ContactTrace.Recorder(trace
+				.getPath(), NROF_HOSTS);
+		List<DTNHost> hosts = createHosts(recorder);
+
+		clock.setTime(1);
+		recorder.connectPhase(1);
+		hosts.get(0).forceConnection(hosts.get(1), true);
+		clock.setTime(2);
+		recorder.connectPhase(2);
+		hosts.get(1).forceConnection(hosts.get(2), true);
+		clock.setTime(3);
+		hosts.get(0).forceConnection(hosts.get(1), false);
+		recorder.connectPhase(3);
+		hosts.get(0).forceConnection(hosts.get(1), true);
+		hosts.get(0).forceConnection(hosts.get(1), false);
+		recorder.close();
+		clock.setTime(0);
+	}
+
+	public void testReplayCreatesAndDestroysConnections() {
+		recordTrace();
+		List<DTNHost> hosts = createHosts(null);
+		DTNHost h0 = hosts.get(0);
+		DTNHost h1 = hosts.get(1);
+		DTNHost h2 = hosts.get(2);
+		ContactTrace replay = new ContactTrace(trace.getPath(), hosts);
+
+		replay.connect(1);
+		assertEquals(1, h0.getConnections().size());
+		assertEquals(h1, h0.getConnections().get(0).getOtherNode(h0));
+
+		replay.connect(2);
+		assertEquals(2, h1.getConnections().size());
+
+		/* the first tear down happens before the connection phase */
+		replay.advance(3);
+		assertEquals(1, h0.getConnections().size());
+		replay.disconnect(h0);
+		assertEquals(0, h0.getConnections().size());
+
+		replay.connect(3);
+		assertEquals(1, h0.getConnections().size());
+		replay.disconnect(h1); // not torn down by h1
+		assertEquals(1, h0.getConnections().size());
+		replay.disconnect(h0);
+		assertEquals(0, h0.getConnections().size());
+		assertEquals(1, h2.getConnections().size());
+		replay.close();
+	}
+
+	public void testWrongNumberOfHosts() {
+		recordTrace();
+		List<DTNHost> hosts = createHosts(null);
+		hosts.remove(NROF_HOSTS - 1);
+		try {
+			new ContactTrace(trace.getPath(), hosts);
+			fail("Trace of another number of hosts was accepted");
+		} catch (SettingsError e) {
+			// expected
+		}
+	}
+}
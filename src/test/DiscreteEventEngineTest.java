@@ -0,0 +1,149 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import test.ContactPredictorTest.PathMovement;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.DiscreteEventEngine;
+import core.NetworkLayer;
+import core.RouterScheduler;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * Tests for the {@link DiscreteEventEngine}
+ */
+public class DiscreteEventEngineTest extends TestCase {
+	private static final double DELTA = 0.000001;
+	private static final double RANGE = 10;
+	private static final int WORLD_SIZE = 100;
+
+	private TestUtils utils;
+	private List<Double> upTimes;
+	private List<Double> downTimes;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		NetworkLayer.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+
+		this.upTimes = new ArrayList<Double>();
+		this.downTimes = new ArrayList<Double>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				upTimes.add(SimClock.getTime());
+			}
+
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				downTimes.add(SimClock.getTime());
+			}
+		});
+
+		this.utils = new TestUtils(cl, null, new TestSettings());
+		utils.setTransmitRange(RANGE);
+	}
+
+	private DiscreteEventEngine createEngine() {
+		List<DTNHost> hosts = utils.getAllHosts();
+		return new DiscreteEventEngine(hosts, new RouterScheduler(hosts, true),
+				1, true, WORLD_SIZE, WORLD_SIZE, (int) (2 * RANGE));
+	}
+
+	/**
+	 * Processes all events until the given time
+	 */
+	private void runUntil(DiscreteEventEngine engine, double endTime) {
+		while (engine.nextEventTime() <= endTime) {
+			SimClock.getInstance().setTime(engine.nextEventTime());
+			engine.processNextEvent();
+		}
+		SimClock.getInstance().setTime(endTime);
+		engine.finishInterval();
+	}
+
+	public void testContactTimes() {
+		/* passes the other host's range between x=40 and x=60 */
+		utils.createHost(new PathMovement(5, new Coord(0, 0),
+				new Coord(100, 0)), null);
+		utils.createHost(new Coord(50, 0));
+		DiscreteEventEngine engine = createEngine();
+
+		runUntil(engine, 100);
+
+		assertEquals(1, upTimes.size());
+		assertEquals(1, downTimes.size());
+		assertEquals(8.0, upTimes.get(0), DELTA);
+		assertEquals(12.0, downTimes.get(0), DELTA);
+		assertEquals(100.0, utils.getAllHosts().get(0).getLocation().getX(),
+				DELTA);
+	}
+
+	public void testContactOverWaypoints() {
+		/* turns north at (40,0); in range from x=35 (t=7) to t=8+sqrt(3) */
+		utils.createHost(new PathMovement(5, new Coord(0, 0),
+				new Coord(40, 0), new Coord(40, 100)), null);
+		utils.createHost(new Coord(45, 0));
+		DiscreteEventEngine engine = createEngine();
+
+		runUntil(engine, 5);
+		assertEquals(0, upTimes.size());
+		assertEquals(25.0, utils.getAllHosts().get(0).getLocation().getX(),
+				DELTA);
+
+		runUntil(engine, 100);
+		assertEquals(1, upTimes.size());
+		assertEquals(7.0, upTimes.get(0), DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(8 + Math.sqrt(3), downTimes.get(0), DELTA);
+	}
+
+	public void testOnlyNearbyPairsAreSolved() {
+		int nrofStatic = 40;
+		Coord[] waypoints = new Coord[nrofStatic + 1];
+		for (int i = 0; i <= nrofStatic; i++) {
+			waypoints[i] = new Coord(i * 100, 500);
+		}
+		/* passes every static host with waypoints between them */
+		utils.createHost(new PathMovement(10, waypoints), null);
+		for (int i = 0; i < nrofStatic; i++) {
+			utils.createHost(new Coord(i * 100 + 50, 500));
+		}
+		List<DTNHost> hosts = utils.getAllHosts();
+		DiscreteEventEngine engine = new DiscreteEventEngine(hosts,
+				new RouterScheduler(hosts, true), 1, true, 5000, 1000,
+				(int) (5 * RANGE));
+
+		runUntil(engine, 1000);
+		assertEquals(nrofStatic, upTimes.size());
+		assertEquals(nrofStatic, downTimes.size());
+		/* in range of the first host from x=40 and of the last until x=3960 */
+		assertEquals(4.0, upTimes.get(0), DELTA);
+		assertEquals(396.0, downTimes.get(nrofStatic - 1), DELTA);
+
+		/* all pairs would be solved on every movement change without grid */
+		int nrofMoves = (nrofStatic + 1) + (nrofStatic + 1);
+		assertTrue(engine.getNrofSolvedPairs() < nrofMoves * nrofStatic / 4);
+	}
+
+	public void testHostsInRangeAtStart() {
+		utils.createHost(new Coord(0, 0));
+		utils.createHost(new Coord(5, 0));
+		utils.createHost(new Coord(50, 0));
+		DiscreteEventEngine engine = createEngine();
+
+		runUntil(engine, 10);
+		assertEquals(1, upTimes.size());
+		assertEquals(0.0, upTimes.get(0), DELTA);
+		assertEquals(Double.MAX_VALUE, engine.nextEventTime());
+	}
+}
@@ -0,0 +1,163 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import core.AnonymousGroupManager;
+import core.ConnectionListener;
+import core.DTNHost;
+import core.DistributedCoordinator;
+import core.Message;
+import core.MessageListener;
+import core.NetworkLayer;
+import core.SimClock;
+import core.SimScenario;
+import core.SimulationContext;
+import core.World;
+
+/**
+ * Tests that a distributed run over loopback gives the same listener events
+ * as a run of one JVM with parallel movement. The workers are started as
+ * separate JVMs with the class path of the tests.
+ */
+public class DistributedCoordinatorTest extends TestCase {
+	private static final String OPT_NS = World.SETTINGS_NS + ".";
+
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		String sns = SimScenario.SCENARIO_NS + ".";
+		String ans = SimScenario.ANONYMITY_NS + ".";
+		String gns = SimScenario.GROUP_NS + ".";
+
+		ts = new TestSettings();
+		ts.putSetting(sns + SimScenario.NAME_S, "distributed-test");
+		ts.putSetting(sns + SimScenario.END_TIME_S, "300");
+		ts.putSetting(sns + SimScenario.UP_INT_S, "0.5");
+		ts.putSetting(ans + SimScenario.ANONYMITY_ON, "false");
+		ts.putSetting(ans + SimScenario.ANONYMITY_GROUPS, "1");
+		ts.putSetting(ans + SimScenario.ANONYMITY_THRESHOLD, "1");
+		ts.putSetting(ans + SimScenario.ANONYMITY_SYSTEM,
+				SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT);
+		ts.putSetting(gns + SimScenario.GROUP_ID_S, "n");
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "30");
+		ts.putSetting(gns + SimScenario.MOVEMENT_MODEL_S, "RandomWaypoint");
+		ts.putSetting(gns + SimScenario.ROUTER_S, "EpidemicRouter");
+		ts.putSetting(gns + SimScenario.TRANSMIT_RANGE_S, "25");
+		ts.putSetting(gns + SimScenario.TRANSMIT_SPEED_S, "250k");
+		ts.putSetting(gns + "bufferSize", "5M");
+		ts.putSetting(gns + "waitTime", "0, 10");
+		ts.putSetting(gns + "speed", "2, 8");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "."
+				+ MovementModel.WORLD_SIZE, "300, 300");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "."
+				+ MovementModel.RNG_SEED, "1");
+		ts.putSetting("Events.nrof", "1");
+		ts.putSetting("Events1.class", "MessageEventGenerator");
+		ts.putSetting("Events1.interval", "5, 10");
+		ts.putSetting("Events1.size", "50k, 100k");
+		ts.putSetting("Events1.hosts", "0, 30");
+		ts.putSetting("Events1.prefix", "M");
+		ts.putSetting("Report.nrofReports", "0");
+		ts.putSetting(OPT_NS + World.PARALLEL_MOVEMENT_S, "true");
+	}
+
+	protected void tearDown() throws Exception {
+		SimulationContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	/**
+	 * Runs the scenario in a new simulation context like the text UI does
+	 * and returns the listener events as lines
+	 */
+	private List<String> runScenario() {
+		SimulationContext.setCurrent(new SimulationContext());
+		SimClock.reset();
+		NetworkLayer.reset();
+		Message.reset();
+		MovementModel.reset();
+		AnonymousGroupManager.resetGroups();
+
+		final List<String> lines = new ArrayList<String>();
+		SimScenario scen = new SimScenario();
+		scen.addConnectionListener(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				lines.add(SimClock.getTime() + " up " + host1 + " " + host2);
+			}
+
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				lines.add(SimClock.getTime() + " down " + host1 + " " + host2);
+			}
+		});
+		scen.addMessageListener(new MessageListener() {
+			public void newMessage(Message m) {
+				lines.add(SimClock.getTime() + " new " + m);
+			}
+
+			public void messageTransferStarted(Message m, DTNHost from,
+					DTNHost to) {
+				lines.add(SimClock.getTime() + " start " + m + " " + from + " "
+						+ to);
+			}
+
+			public void messageDeleted(Message m, DTNHost where,
+					boolean dropped) {
+				lines.add(SimClock.getTime() + " delete " + m + " " + where
+						+ " " + dropped);
+			}
+
+			public void messageTransferAborted(Message m, DTNHost from,
+					DTNHost to) {
+				lines.add(SimClock.getTime() + " abort " + m + " " + from + " "
+						+ to);
+			}
+
+			public void messageTransferred(Message m, DTNHost from,
+					DTNHost to, boolean firstDelivery) {
+				lines.add(SimClock.getTime() + " relay " + m + " " + from + " "
+						+ to + " " + firstDelivery);
+			}
+		});
+		AnonymousGroupManager.defineGroups();
+		scen.createHosts();
+		World world = new World(scen);
+		try {
+			while (SimClock.getTime() < scen.getEndTime()) {
+				world.update();
+			}
+		} finally {
+			world.done();
+		}
+		return lines;
+	}
+
+	public void testSameEventsAsParallelMovement() {
+		List<String> expected = runScenario();
+		assertTrue(expected.size() > 0);
+
+		ts.putSetting(OPT_NS + World.DISTRIBUTED_S, "true");
+		ts.putSetting(OPT_NS + World.DISTRIBUTED_REGIONS_S, "2, 2");
+		ts.putSetting(OPT_NS + World.DISTRIBUTED_WORKER_MEMORY_S, "128");
+		List<String> distributed = runScenario();
+		DistributedCoordinator coordinator = DistributedCoordinator
+				.getCurrent();
+
+		assertEquals(4, coordinator.getNrofWorkers());
+		assertEquals(600, coordinator.getNrofTicks());
+		/* hosts met across the region borders and moved between workers */
+		assertTrue(coordinator.getNrofPairs() > 0);
+		assertTrue(coordinator.getNrofMigrations() > 0);
+		assertTrue(coordinator.getNrofMigratedHosts() > 0);
+		/* the events include the routers' log lines */
+		assertTrue(coordinator.getNrofEvents() >= expected.size());
+		assertEquals(expected, distributed);
+	}
+}
@@ -0,0 +1,74 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import junit.framework.TestCase;
+import core.DistributedRegions;
+
+/**
+ * Tests for splitting the world into the regions of a distributed run
+ */
+public class DistributedRegionsTest extends TestCase {
+	private static final double RANGE = 10;
+	/** 2 columns and 2 rows of 100x50 regions */
+	private DistributedRegions regions;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.regions = new DistributedRegions(200, 100, 2, 2, RANGE);
+	}
+
+	public void testRegionOf() {
+		assertEquals(4, regions.size());
+		assertEquals(0, regions.regionOf(10, 10));
+		assertEquals(1, regions.regionOf(150, 10));
+		assertEquals(2, regions.regionOf(10, 60));
+		assertEquals(3, regions.regionOf(199, 99));
+		assertEquals(1, regions.regionOf(100, 0));
+	}
+
+	public void testOutsideWorldBelongsToNearestRegion() {
+		assertEquals(0, regions.regionOf(-5, -5));
+		assertEquals(1, regions.regionOf(250, -5));
+		assertEquals(2, regions.regionOf(-5, 150));
+		assertEquals(3, regions.regionOf(250, 150));
+	}
+
+	public void testHaloNearInnerBorders() {
+		assertFalse(regions.isInHalo(0, 50, 20));
+		assertTrue(regions.isInHalo(0, 90, 20));
+		assertTrue(regions.isInHalo(0, 50, 40));
+		assertFalse(regions.isInHalo(3, 150, 80));
+		assertTrue(regions.isInHalo(3, 110, 80));
+		assertTrue(regions.isInHalo(3, 150, 55));
+	}
+
+	public void testNoHaloAtOuterEdges() {
+		assertFalse(regions.isInHalo(0, 0, 20));
+		assertFalse(regions.isInHalo(0, 50, 0));
+		assertFalse(regions.isInHalo(3, 200, 80));
+		assertFalse(regions.isInHalo(3, 150, 100));
+	}
+
+	public void testOutsideRegionIsInHalo() {
+		assertTrue(regions.isInHalo(0, 150, 20));
+		assertTrue(regions.isInHalo(3, 10, 10));
+	}
+
+	public void testBounds() {
+		double[] b = regions.getBounds(0);
+		assertEquals(Double.NEGATIVE_INFINITY, b[0]);
+		assertEquals(Double.NEGATIVE_INFINITY, b[1]);
+		assertEquals(100.0, b[2]);
+		assertEquals(50.0, b[3]);
+
+		b = regions.getBounds(3);
+		assertEquals(100.0, b[0]);
+		assertEquals(50.0, b[1]);
+		assertEquals(Double.POSITIVE_INFINITY, b[2]);
+		assertEquals(Double.POSITIVE_INFINITY, b[3]);
+	}
+}
@@ -0,0 +1,237 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+import core.AnonymousGroupManager;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.DistributedWire;
+import core.Message;
+import core.MessageListener;
+import core.NetworkLayer;
+import core.SimClock;
+import core.SimScenario;
+import core.TimeWarpRecorder;
+
+/**
+ * Tests for the binary protocol between the coordinator and the workers of
+ * a distributed run
+ */
+public class DistributedWireTest extends TestCase {
+	private TimeWarpRecorder recorder;
+	private List<DTNHost> hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		NetworkLayer.reset();
+		Message.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT);
+		SimScenario.setNumAnonGroups(1);
+		AnonymousGroupManager.resetGroups();
+		AnonymousGroupManager.defineGroups();
+
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		for (int i = 0; i < 3; i++) {
+			utils.createHost(new Coord(i, 0));
+		}
+		this.hosts = utils.getAllHosts();
+		this.recorder = new TimeWarpRecorder(this.hosts);
+	}
+
+	protected void tearDown() throws Exception {
+		this.recorder.setSink(null);
+		super.tearDown();
+	}
+
+	/**
+	 * Records some events of two ticks in the order a worker could record
+	 * them and returns them
+	 */
+	private List<TimeWarpRecorder.Event> recordEvents() {
+		List<TimeWarpRecorder.Event> events =
+			new ArrayList<TimeWarpRecorder.Event>();
+		TimeWarpRecorder.Sink sink = new TimeWarpRecorder.Sink();
+		sink.setEvents(events);
+		recorder.setSink(sink);
+		DTNHost h0 = hosts.get(0);
+		DTNHost h1 = hosts.get(1);
+		DTNHost h2 = hosts.get(2);
+
+		SimClock.getInstance().setTime(1.5);
+		sink.setKey(2, 1, 0, 0, 0);
+		Message m = new Message(h1, h2, "M1", 100);
+		recorder.messageTransferred(m, h1, h2, true);
+		sink.setKey(1, 0, 0, -1, 0);
+		recorder.hostsConnected(h0, h1);
+		sink.setKey(0, 0, 0, 0, 0);
+		recorder.newMessage(m);
+		recorder.messageTransferStarted(m, h1, h2);
+
+		SimClock.getInstance().setTime(2.0);
+		sink.setKey(2, 0, 0, 0, 0);
+		recorder.messageDeleted(m, h2, false);
+		recorder.hostsDisconnected(h2, h1);
+		recorder.messageTransferAborted(m, h0, h1);
+		sink.setEvents(null);
+		return events;
+	}
+
+	/**
+	 * Gives events to a listener that writes them as lines
+	 */
+	private static List<String> replay(List<TimeWarpRecorder.Event> events) {
+		final List<String> lines = new ArrayList<String>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				lines.add(SimClock.getTime() + " up " + host1 + " " + host2);
+			}
+
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				lines.add(SimClock.getTime() + " down " + host1 + " " + host2);
+			}
+		});
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(new MessageListener() {
+			public void newMessage(Message m) {
+				lines.add(SimClock.getTime() + " new " + m + " " + m.getSize()
+						+ " " + m.getFrom() + " " + m.getTo());
+			}
+
+			public void messageTransferStarted(Message m, DTNHost from,
+					DTNHost to) {
+				lines.add(SimClock.getTime() + " start " + m + " " + from + " "
+						+ to);
+			}
+
+			public void messageDeleted(Message m, DTNHost where,
+					boolean dropped) {
+				lines.add(SimClock.getTime() + " delete " + m + " " + where
+						+ " " + dropped);
+			}
+
+			public void messageTransferAborted(Message m, DTNHost from,
+					DTNHost to) {
+				lines.add(SimClock.getTime() + " abort " + m + " " + from + " "
+						+ to);
+			}
+
+			public void messageTransferred(Message m, DTNHost from,
+					DTNHost to, boolean firstDelivery) {
+				lines.add(SimClock.getTime() + " relay " + m + " " + from + " "
+						+ to + " " + firstDelivery);
+			}
+		});
+		TimeWarpRecorder.replay(events, cl, ml);
+		return lines;
+	}
+
+	public void testEventsRoundTrip() throws IOException {
+		List<TimeWarpRecorder.Event> events = recordEvents();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(events.size());
+		for (TimeWarpRecorder.Event e : events) {
+			e.write(out, hosts);
+		}
+		out.close();
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		List<TimeWarpRecorder.Event> read =
+			new ArrayList<TimeWarpRecorder.Event>();
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			read.add(TimeWarpRecorder.Event.read(in, hosts));
+		}
+		assertEquals(-1, in.read());
+
+		assertEquals(events.size(), read.size());
+		for (int i = 0; i < events.size(); i++) {
+			assertEquals(0, events.get(i).compareTo(read.get(i)));
+		}
+		/* the keys survive, so the read events sort to the same order */
+		Collections.sort(events);
+		Collections.reverse(read);
+		Collections.sort(read);
+		List<String> expected = replay(events);
+		assertEquals(expected, replay(read));
+		assertEquals(events.size(), expected.size());
+		assertEquals("1.5 up " + hosts.get(0) + " " + hosts.get(1),
+				expected.get(2));
+		assertEquals("2.0 delete M1 " + hosts.get(2) + " false",
+				expected.get(3));
+	}
+
+	public void testMessagesOverLoopback() throws IOException {
+		AtomicLong sent = new AtomicLong();
+		AtomicLong received = new AtomicLong();
+		ServerSocket server = new ServerSocket(0, 1, InetAddress
+				.getLoopbackAddress());
+		Socket client = new Socket(InetAddress.getLoopbackAddress(), server
+				.getLocalPort());
+		Socket accepted = server.accept();
+		server.close();
+		try {
+			DataOutputStream out = DistributedWire.output(client, sent);
+			DataInputStream in = DistributedWire.input(accepted, received);
+
+			out.writeByte(DistributedWire.TICK);
+			out.writeInt(7);
+			out.writeByte(DistributedWire.HALO);
+			out.writeInt(1);
+			out.writeInt(42);
+			out.writeDouble(12.5);
+			out.writeDouble(-3.25);
+			out.writeDouble(10);
+			out.writeInt(40);
+			assertEquals(0, sent.get()); // buffered until flushed
+			out.flush();
+			int length = 1 + 4 + 1 + 4 + (4 + 3 * 8 + 4);
+			assertEquals(length, sent.get());
+
+			DistributedWire.expect(in, DistributedWire.TICK);
+			assertEquals(7, in.readInt());
+			DistributedWire.expect(in, DistributedWire.HALO);
+			assertEquals(1, in.readInt());
+			assertEquals(42, in.readInt());
+			assertEquals(12.5, in.readDouble());
+			assertEquals(-3.25, in.readDouble());
+			assertEquals(10.0, in.readDouble());
+			assertEquals(40, in.readInt());
+			assertEquals(length, received.get());
+		} finally {
+			client.close();
+			accepted.close();
+		}
+	}
+
+	public void testUnexpectedMessageFails() throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				new byte[] { DistributedWire.SKIP }));
+		try {
+			DistributedWire.expect(in, DistributedWire.GHOSTS);
+			fail("Expected message " + DistributedWire.GHOSTS + " was read "
+					+ "from a " + DistributedWire.SKIP);
+		} catch (IOException e) {
+			// the protocol is out of step
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import input.EventQueue;
+import input.EventQueueScheduler;
+import input.ExternalEvent;
+import input.ScheduledUpdatesQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the EventQueueScheduler
+ */
+public class EventQueueSchedulerTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private EventQueueScheduler eqs;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		eqs = new EventQueueScheduler();
+	}
+
+	public void testEventsInTimeOrder() {
+		eqs.addQueue(new ListQueue(1, 4, 6), false);
+		eqs.addQueue(new ListQueue(2, 3), false);
+		eqs.addQueue(new ListQueue(5), false);
+
+		double[] expected = { 1, 2, 3, 4, 5, 6 };
+		for (double time : expected) {
+			EventQueue q = eqs.nextQueue();
+			assertEquals(time, eqs.nextEventsTime());
+			assertEquals(time, q.nextEvent().getTime());
+		}
+
+		assertNotNull(eqs.nextQueue());
+		assertEquals(MAX, eqs.nextEventsTime());
+	}
+
+	public void testTiesGoToFirstQueue() {
+		ListQueue q1 = new ListQueue(1, 2);
+		ListQueue q2 = new ListQueue(1, 2);
+		eqs.addQueue(q1, false);
+		eqs.addQueue(q2, false);
+
+		assertSame(q1, eqs.nextQueue());
+		q1.nextEvent();
+		assertSame(q2, eqs.nextQueue());
+		q2.nextEvent();
+		assertSame(q1, eqs.nextQueue());
+	}
+
+	public void testVolatileQueue() {
+		ScheduledUpdatesQueue suq = new ScheduledUpdatesQueue();
+		ListQueue q = new ListQueue(3, 5);
+		eqs.addQueue(suq, true);
+		eqs.addQueue(q, false);
+
+		assertSame(q, eqs.nextQueue());
+		suq.addUpdate(3);
+		assertSame(suq, eqs.nextQueue()); // earlier queue wins the tie
+		suq.nextEvent();
+		assertSame(q, eqs.nextQueue());
+		q.nextEvent();
+		suq.addUpdate(4);
+		assertSame(suq, eqs.nextQueue());
+		assertEquals(4.0, eqs.nextEventsTime());
+	}
+
+	public void testSameOrderAsLinearScan() {
+		Random rng = new Random(42);
+		List<ListQueue> queues = new ArrayList<ListQueue>();
+		List<ListQueue> copies = new ArrayList<ListQueue>();
+		for (int i = 0; i < 20; i++) {
+			double[] times = new double[rng.nextInt(30)];
+			double time = 0;
+			for (int j = 0; j < times.length; j++) {
+				time += rng.nextInt(3); // also events at the same time
+				times[j] = time;
+			}
+			queues.add(new ListQueue(times));
+			copies.add(new ListQueue(times));
+			eqs.addQueue(queues.get(i), false);
+		}
+
+		while (true) {
+			/* the queue with the earliest event; first one on ties */
+			int best = 0;
+			for (int i = 1; i < copies.size(); i++) {
+				if (copies.get(i).nextEventsTime() < copies.get(best)
+						.nextEventsTime()) {
+					best = i;
+				}
+			}
+
+			EventQueue q = eqs.nextQueue();
+			assertEquals(copies.get(best).nextEventsTime(),
+					eqs.nextEventsTime());
+			if (eqs.nextEventsTime() == MAX) {
+				break;
+			}
+			assertSame(queues.get(best), q);
+			q.nextEvent();
+			copies.get(best).nextEvent();
+		}
+	}
+
+	/** Event queue that gives out events at the given times */
+	private class ListQueue implements EventQueue {
+		private List<Double> times;
+
+		public ListQueue(double... times) {
+			this.times = new ArrayList<Double>();
+			for (double t : times) {
+				this.times.add(t);
+			}
+		}
+
+		public ExternalEvent nextEvent() {
+			if (times.size() == 0) {
+				return new ExternalEvent(MAX);
+			}
+			return new ExternalEvent(times.remove(0));
+		}
+
+		public double nextEventsTime() {
+			return (times.size() > 0 ? times.get(0) : MAX);
+		}
+	}
+}
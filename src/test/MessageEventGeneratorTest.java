@@ -0,0 +1,78 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import input.MessageEventGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import core.SettingsError;
+
+/**
+ * Tests for the MessageEventGenerator's checkpoint state
+ */
+public class MessageEventGeneratorTest extends TestCase {
+	private static final String NS = "Events1";
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(NS + "." + MessageEventGenerator.MESSAGE_SIZE_S,
+				"500,1000");
+		ts.putSetting(NS + "." + MessageEventGenerator.MESSAGE_INTERVAL_S,
+				"25,35");
+		ts.putSetting(NS + "." + MessageEventGenerator.HOST_RANGE_S, "0,20");
+		ts.putSetting(NS + "." + MessageEventGenerator.MESSAGE_ID_PREFIX_S,
+				"M");
+	}
+
+	private MessageEventGenerator newGenerator() {
+		return new MessageEventGenerator(new TestSettings(NS));
+	}
+
+	private byte[] write(MessageEventGenerator meg) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		meg.writeState(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	public void testRestoredGeneratorCreatesSameEvents() throws IOException {
+		MessageEventGenerator meg = newGenerator();
+		for (int i = 0; i < 10; i++) {
+			meg.nextEvent();
+		}
+		byte[] state = write(meg);
+
+		MessageEventGenerator restored = newGenerator();
+		restored.readState(new DataInputStream(new ByteArrayInputStream(state)));
+
+		assertEquals(meg.nextEventsTime(), restored.nextEventsTime());
+		for (int i = 0; i < 20; i++) {
+			assertEquals(meg.nextEvent().toString(), restored.nextEvent()
+					.toString());
+			assertEquals(meg.nextEventsTime(), restored.nextEventsTime());
+		}
+	}
+
+	public void testDifferentPrefixIsRejected() throws IOException {
+		byte[] state = write(newGenerator());
+
+		ts.putSetting(NS + "." + MessageEventGenerator.MESSAGE_ID_PREFIX_S,
+				"N");
+		try {
+			newGenerator().readState(
+					new DataInputStream(new ByteArrayInputStream(state)));
+			fail("Different prefix accepted");
+		} catch (SettingsError e) {
+			// expected
+		}
+	}
+}
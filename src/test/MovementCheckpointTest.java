@@ -0,0 +1,109 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkLayer;
+import core.SimClock;
+import core.SimRandom;
+import core.SimScenario;
+
+/**
+ * Tests for saving and restoring the movement state (SimRandom and the
+ * state written by the hosts and movement models)
+ */
+public class MovementCheckpointTest extends TestCase {
+	private static final int NROF_STEPS = 500;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		NetworkLayer.reset();
+		MovementModel.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+	}
+
+	public void testSimRandomGivesSameValuesAsRandom() {
+		for (long seed = 0; seed < 10; seed++) {
+			Random r = new Random(seed);
+			SimRandom sr = new SimRandom(seed);
+			for (int i = 0; i < 100; i++) {
+				assertEquals(r.nextInt(), sr.nextInt());
+				assertEquals(r.nextInt(17), sr.nextInt(17));
+				assertEquals(r.nextDouble(), sr.nextDouble());
+				assertEquals(r.nextLong(), sr.nextLong());
+				assertEquals(r.nextGaussian(), sr.nextGaussian());
+				assertEquals(r.nextBoolean(), sr.nextBoolean());
+			}
+			r.setSeed(seed + 100);
+			sr.setSeed(seed + 100);
+			assertEquals(r.nextDouble(), sr.nextDouble());
+		}
+	}
+
+	public void testSimRandomStateIsRestored() throws Exception {
+		SimRandom sr = new SimRandom(42);
+		sr.nextGaussian(); // leaves the second gaussian pending
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		sr.writeState(new DataOutputStream(bytes));
+
+		double[] values = { sr.nextGaussian(), sr.nextDouble(), sr.nextInt() };
+
+		SimRandom restored = new SimRandom(0);
+		restored.readState(new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())));
+		assertEquals(values[0], restored.nextGaussian());
+		assertEquals(values[1], restored.nextDouble());
+		assertEquals(values[2], (double) restored.nextInt());
+	}
+
+	public void testHostContinuesFromRestoredState() throws Exception {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		RandomWaypoint proto = new RandomWaypoint(new TestSettings());
+		DTNHost original = utils.createHost(proto, "o");
+		DTNHost restored = utils.createHost(proto, "r");
+		assertTrue(original.getMovement().isCheckpointable());
+
+		double time = 0;
+		for (int i = 0; i < NROF_STEPS; i++) {
+			SimClock.getInstance().setTime(time += 0.5);
+			original.move(0.5);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		MovementModel.writeCommonState(out);
+		original.writeMovementState(out);
+		double checkpointTime = time;
+
+		Coord[] locations = new Coord[NROF_STEPS];
+		for (int i = 0; i < NROF_STEPS; i++) {
+			SimClock.getInstance().setTime(time += 0.5);
+			original.move(0.5);
+			locations[i] = original.getLocation().clone();
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		MovementModel.readCommonState(in);
+		restored.readMovementState(in);
+		time = checkpointTime;
+		for (int i = 0; i < NROF_STEPS; i++) {
+			SimClock.getInstance().setTime(time += 0.5);
+			restored.move(0.5);
+			assertEquals(locations[i], restored.getLocation());
+		}
+	}
+}
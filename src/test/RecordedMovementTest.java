@@ -0,0 +1,106 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import movement.RecordedMovement;
+import core.Coord;
+import core.DTNHost;
+import core.MovementRecorder;
+import core.NetworkLayer;
+import core.SettingsError;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * Tests for recording movement with MovementRecorder and replaying it with
+ * RecordedMovement
+ */
+public class RecordedMovementTest extends TestCase {
+	private static final int NROF_HOSTS = 3;
+	private static final int NROF_STEPS = 2000;
+	private static final double STEP = 0.5;
+
+	private File recording;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		NetworkLayer.reset();
+		MovementModel.reset();
+		RecordedMovement.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+		recording = File.createTempFile("movement", ".rec");
+	}
+
+	protected void tearDown() throws Exception {
+		recording.delete();
+		super.tearDown();
+	}
+
+	public void testReplayMovesLikeRecorded() throws Exception {
+		TestSettings ts = new TestSettings();
+		ts.putSetting("Group." + SimScenario.GROUP_ID_S, "n");
+		ts.putSetting("Group." + MovementModel.WAIT_TIME, "0,20");
+		ts.putSetting(RecordedMovement.RECORDED_MOVEMENT_NS + "."
+				+ RecordedMovement.FILE_S, recording.getPath());
+
+		TestUtils utils = new TestUtils(null, null, ts);
+		utils.setGroupId("n");
+		ts.setNameSpace("Group");
+		RandomWaypoint proto = new RandomWaypoint(ts);
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			hosts.add(utils.createHost(proto, null));
+		}
+
+		MovementRecorder recorder = new MovementRecorder(hosts);
+		Coord[][] locations = move(hosts);
+		recorder.write(recording.getPath());
+
+		RecordedMovement replayProto = new RecordedMovement(ts);
+		List<DTNHost> replayed = new ArrayList<DTNHost>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			replayed.add(utils.createHost(replayProto, null));
+		}
+
+		SimClock.reset();
+		Coord[][] replayedLocations = move(replayed);
+		for (int i = 0; i < NROF_STEPS; i++) {
+			for (int j = 0; j < NROF_HOSTS; j++) {
+				assertEquals(locations[i][j], replayedLocations[i][j]);
+			}
+		}
+
+		try {
+			utils.createHost(replayProto, null);
+			fail("Host without a recording was created");
+		} catch (SettingsError e) {
+			// ok
+		}
+	}
+
+	/**
+	 * Moves the hosts and returns their locations after every step
+	 */
+	private Coord[][] move(List<DTNHost> hosts) {
+		Coord[][] locations = new Coord[NROF_STEPS][hosts.size()];
+		double time = 0;
+		for (int i = 0; i < NROF_STEPS; i++) {
+			SimClock.getInstance().setTime(time += STEP);
+			for (int j = 0; j < hosts.size(); j++) {
+				hosts.get(j).move(STEP);
+				locations[i][j] = hosts.get(j).getLocation().clone();
+			}
+		}
+		return locations;
+	}
+}
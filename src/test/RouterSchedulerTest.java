@@ -0,0 +1,136 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.AnonymousGroupManager;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.NetworkLayer;
+import core.RouterScheduler;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * Tests for the event-driven router updates of {@link RouterScheduler}
+ */
+public class RouterSchedulerTest extends TestCase {
+	private static final int TRANSMIT_SPEED = 10;
+	private static final int TTL = 5;
+
+	private MessageChecker mc;
+	private SimClock clock;
+	private RouterScheduler scheduler;
+	private TestUtils utils;
+	private DTNHost h0;
+	private DTNHost h1;
+	private DTNHost h2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		NetworkLayer.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT);
+		SimScenario.setNumAnonGroups(1);
+		AnonymousGroupManager.resetGroups();
+		AnonymousGroupManager.defineGroups();
+		this.clock = SimClock.getInstance();
+		this.mc = new MessageChecker();
+
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MessageRouter.MSG_TTL_S, "" + TTL);
+		ts.putSetting(MessageRouter.B_SIZE_S, "100");
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(mc);
+
+		this.utils = new TestUtils(cl, ml, ts);
+		utils.setTransmitSpeed(TRANSMIT_SPEED);
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		this.h0 = utils.createHost(new Coord(0, 0), "h0");
+		this.h1 = utils.createHost(new Coord(0, 0), "h1");
+		this.h2 = utils.createHost(new Coord(0, 0), "h2");
+
+		this.scheduler = new RouterScheduler(utils.getAllHosts(), false);
+		cl.add(scheduler);
+		ml.add(scheduler);
+	}
+
+	private void updateAllHosts() {
+		scheduler.wakeDueHosts(SimClock.getTime());
+		for (DTNHost host : utils.getAllHosts()) {
+			scheduler.update(host, true);
+		}
+	}
+
+	public void testTransferIsFinishedOnTime() {
+		updateAllHosts();
+		h0.createNewMessage(new Message(h0, h2, "M1", 50));
+		h0.connect(h1);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_CREATE, mc.getLastType());
+
+		updateAllHosts();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_START, mc.getLastType());
+		/* 50 bytes at 10 Bps; done when less than one byte is remaining */
+		assertTrue(h0.getRouter().getNextTimedUpdate() < 4.9);
+		assertTrue(h0.getRouter().getNextTimedUpdate() > 4.89);
+
+		clock.setTime(4.5);
+		updateAllHosts();
+		assertFalse(mc.next());
+
+		clock.setTime(5);
+		updateAllHosts();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+		assertEquals(h1, mc.getLastTo());
+	}
+
+	public void testNewNeighborGetsMessages() {
+		h0.createNewMessage(new Message(h0, h2, "M1", 10));
+		updateAllHosts();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_CREATE, mc.getLastType());
+		assertFalse(mc.next());
+
+		/* nothing happens while the hosts are idle */
+		clock.setTime(10);
+		updateAllHosts();
+		assertFalse(mc.next());
+
+		h0.connect(h2);
+		updateAllHosts();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_START, mc.getLastType());
+		assertEquals(h2, mc.getLastTo());
+	}
+
+	public void testExpiredMessagesAreDropped() {
+		h0.createNewMessage(new Message(h0, h2, "M1", 10));
+		updateAllHosts();
+		assertTrue(mc.next());
+
+		/* TTL is in minutes and it is checked once a minute */
+		clock.setTime(TTL * 60 - 90);
+		updateAllHosts();
+		assertFalse(mc.next());
+
+		clock.setTime(TTL * 60);
+		updateAllHosts();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		assertEquals("M1", mc.getLastMsg().getId());
+	}
+}
@@ -0,0 +1,139 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.ConnectionListener;
+import core.ContactTrace;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkLayer;
+import core.RoutingVariants;
+import core.Settings;
+import core.SimClock;
+import core.SimScenario;
+import core.SimulationContext;
+
+/**
+ * Tests for sharing a contact trace between routing variants
+ */
+public class RoutingVariantsTest extends TestCase {
+	private static final int NROF_HOSTS = 4;
+	private static final int NROF_STEPS = 100;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+		Settings.setRunIndex(0);
+		RoutingVariants.start(0);
+	}
+
+	protected void tearDown() throws Exception {
+		RoutingVariants.stop();
+		super.tearDown();
+	}
+
+	private static List<DTNHost> createHosts(ConnectionListener listener) {
+		NetworkLayer.reset();
+		List<ConnectionListener> listeners = new ArrayList<ConnectionListener>();
+		if (listener != null) {
+			listeners.add(listener);
+		}
+		TestUtils utils = new TestUtils(listeners, null, new TestSettings());
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			hosts.add(utils.createHost(new Coord(0, 0)));
+		}
+		return hosts;
+	}
+
+	public void testRecordingRun() {
+		RoutingVariants variants = RoutingVariants.getCurrent();
+		assertTrue(variants.isRecordingRun());
+		Settings.setRunIndex(1);
+		assertFalse(variants.isRecordingRun());
+	}
+
+	public void testReplaysAfterRecordingEnded() throws Exception {
+		RoutingVariants variants = RoutingVariants.getCurrent();
+		byte[] data = new byte[100000]; // larger than the stream buffers
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 31);
+		}
+		OutputStream out = variants.getTraceOutput();
+		out.write(data, 0, 10);
+		out.write(data, 10, data.length - 10);
+		out.close();
+
+		/* every replaying run reads the whole trace from the start */
+		for (int run = 0; run < 2; run++) {
+			InputStream in = variants.getTraceInput();
+			byte[] read = new byte[data.length];
+			int n = 0;
+			for (int r; (r = in.read(read, n, read.length - n)) > 0;) {
+				n += r;
+			}
+			assertEquals(data.length, n);
+			assertTrue(Arrays.equals(data, read));
+			assertEquals(-1, in.read());
+			in.close();
+		}
+	}
+
+	public void testReplayWhileRecording() throws Exception {
+		final RoutingVariants variants = RoutingVariants.getCurrent();
+		final boolean[][] recorded = new boolean[NROF_STEPS][NROF_HOSTS];
+
+		/* the recording run connects host 0 to the others in turns */
+		Thread recording = new Thread() {
+			public void run() {
+				SimulationContext.setCurrent(new SimulationContext());
+				SimScenario.setAnonymitySystem(
+						SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
+				ContactTrace.Recorder recorder = new ContactTrace.Recorder(
+						variants.getTraceOutput(), "test", NROF_HOSTS);
+				try {
+					List<DTNHost> hosts = createHosts(recorder);
+					SimClock clock = SimClock.getInstance();
+					DTNHost h0 = hosts.get(0);
+					for (int i = 0; i < NROF_STEPS; i++) {
+						clock.setTime(i);
+						DTNHost other = hosts.get(1 + i % (NROF_HOSTS - 1));
+						h0.forceConnection(hosts.get(1 + (i + NROF_HOSTS - 2)
+								% (NROF_HOSTS - 1)), false);
+						recorder.connectPhase(i);
+						h0.forceConnection(other, true);
+						recorded[i][other.getAddress()] = true;
+					}
+				} finally {
+					recorder.close(); // the replay doesn't wait forever
+				}
+			}
+		};
+		recording.start();
+
+		List<DTNHost> hosts = createHosts(null);
+		ContactTrace replay = new ContactTrace(variants.getTraceInput(),
+				"test", hosts);
+		DTNHost h0 = hosts.get(0);
+		for (int i = 0; i < NROF_STEPS; i++) {
+			replay.advance(i);
+			replay.disconnect(h0);
+			replay.connect(i);
+			assertEquals(1, h0.getConnections().size());
+			DTNHost other = h0.getConnections().get(0).getOtherNode(h0);
+			assertTrue(recorded[i][other.getAddress()]);
+		}
+		recording.join();
+		replay.close();
+	}
+}
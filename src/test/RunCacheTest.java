@@ -0,0 +1,103 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+import core.RunCache;
+
+/**
+ * Tests for the keys and entries of the run result cache
+ */
+public class RunCacheTest extends TestCase {
+	private File tmpDir;
+	private RunCache cache;
+	private SortedMap<String, String> settings;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		tmpDir = File.createTempFile("runcache", "");
+		tmpDir.delete();
+		tmpDir.mkdir();
+		cache = new RunCache(new File(tmpDir, "cache").getPath());
+
+		settings = new TreeMap<String, String>();
+		settings.put("Scenario.name", "test");
+		settings.put("MovementModel.rngSeed", "1");
+		settings.put("Report.reportDir", "reports/");
+	}
+
+	protected void tearDown() throws Exception {
+		delete(tmpDir);
+		super.tearDown();
+	}
+
+	public void testKeys() throws Exception {
+		String key = cache.getKey(settings);
+		assertEquals(key, cache.getKey(new TreeMap<String, String>(settings)));
+
+		settings.put("Report.reportDir", "other/");
+		settings.put("Sweep.nrofWorkers", "4");
+		assertEquals(key, cache.getKey(settings));
+
+		settings.put("MovementModel.rngSeed", "2");
+		assertFalse(key.equals(cache.getKey(settings)));
+	}
+
+	public void testInputFileContentsAffectKey() throws Exception {
+		File input = new File(tmpDir, "map.wkt");
+		write(input, "LINESTRING (0 0, 10 10)");
+		settings.put("MapBasedMovement.mapFile1", input.getPath());
+		String key = cache.getKey(settings);
+
+		write(input, "LINESTRING (0 0, 10 20)");
+		assertFalse(key.equals(cache.getKey(settings)));
+	}
+
+	public void testEntries() throws Exception {
+		String key = cache.getKey(settings);
+		assertFalse(cache.contains(key));
+
+		File runDir = new File(tmpDir, "run");
+		runDir.mkdir();
+		write(new File(runDir, "test_MessageStatsReport.txt"), "created: 5");
+		write(new File(runDir, "output.txt"), "Run 1/1");
+		cache.put(key, settings, runDir, "output.txt");
+		assertTrue(cache.contains(key));
+		assertEquals(1, cache.getKeys().size());
+		assertEquals("1", cache.getSettings(key).get("MovementModel.rngSeed"));
+		assertNull(cache.getSettings(key).get("Report.reportDir"));
+
+		File copyDir = new File(tmpDir, "copy");
+		cache.get(key, copyDir);
+		assertTrue(new File(copyDir, "test_MessageStatsReport.txt").isFile());
+		assertFalse(new File(copyDir, "output.txt").exists());
+		assertFalse(new File(copyDir, RunCache.ENTRY_FILE).exists());
+
+		cache.invalidate(key);
+		assertFalse(cache.contains(key));
+		assertEquals(0, cache.getKeys().size());
+	}
+
+	private void write(File file, String contents) throws Exception {
+		FileWriter out = new FileWriter(file);
+		out.write(contents);
+		out.close();
+	}
+
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				delete(f);
+			}
+		}
+		file.delete();
+	}
+}
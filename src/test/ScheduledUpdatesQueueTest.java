@@ -4,6 +4,12 @@
  */
 package test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 import core.SimClock;
 import input.ScheduledUpdatesQueue;
 import junit.framework.TestCase;
@@ -107,4 +113,23 @@ public class ScheduledUpdatesQueueTest extends TestCase {
 		assertEquals(5.0, suq.nextEvent().getTime());
 		assertEquals(8.0, suq.nextEvent().getTime());
 	}
+
+	public void testRestoredUpdates() throws IOException {
+		suq.addUpdate(4);
+		suq.addUpdate(1.5);
+		suq.addUpdate(10);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		suq.writeState(new DataOutputStream(bytes));
+
+		ScheduledUpdatesQueue restored = new ScheduledUpdatesQueue();
+		restored.addUpdate(99); // replaced by the restored updates
+		restored.readState(new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())));
+
+		assertEquals(1.5, restored.nextEvent().getTime());
+		assertEquals(4.0, restored.nextEvent().getTime());
+		assertEquals(10.0, restored.nextEvent().getTime());
+		assertEquals(MAX, restored.nextEventsTime());
+	}
 }
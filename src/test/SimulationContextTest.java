@@ -0,0 +1,96 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import junit.framework.TestCase;
+import core.AnonymousGroupManager;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.NetworkLayer;
+import core.SimClock;
+import core.SimScenario;
+import core.SimulationContext;
+
+/**
+ * Tests that simulations in different {@link SimulationContext}s don't
+ * affect each other
+ */
+public class SimulationContextTest extends TestCase {
+
+	protected void tearDown() throws Exception {
+		SimulationContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	/**
+	 * Creates two hosts and a message in the current context and returns
+	 * their addresses and the message's unique ID
+	 */
+	private int[] createSimulation(double time) {
+		SimClock.reset();
+		NetworkLayer.reset();
+		Message.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT);
+		SimScenario.setNumAnonGroups(1);
+		AnonymousGroupManager.resetGroups();
+		AnonymousGroupManager.defineGroups();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost(new Coord(0, 0));
+		DTNHost h2 = utils.createHost(new Coord(0, 0));
+		SimClock.getInstance().setTime(time);
+		Message m = new Message(h1, h2, "M", 1);
+		return new int[] { h1.getAddress(), h2.getAddress(), m.getUniqueId() };
+	}
+
+	public void testContextsAreIndependent() {
+		SimulationContext c1 = new SimulationContext();
+		SimulationContext c2 = new SimulationContext();
+
+		SimulationContext.setCurrent(c1);
+		int[] ids1 = createSimulation(10);
+		SimulationContext.setCurrent(c2);
+		SimClock.reset();
+		assertEquals(0.0, SimClock.getTime());
+		int[] ids2 = createSimulation(20);
+
+		assertEquals(0, ids1[0]);
+		assertEquals(1, ids1[1]);
+		assertEquals(0, ids1[2]);
+		assertEquals(0, ids2[0]);
+		assertEquals(1, ids2[1]);
+		assertEquals(0, ids2[2]);
+
+		assertEquals(20.0, SimClock.getTime());
+		SimulationContext.setCurrent(c1);
+		assertEquals(10.0, SimClock.getTime());
+		assertEquals(SimScenario.ANONYMITY_SYSTEM_THRESHOLDPIVOT, SimScenario
+				.getAnonymitySystem());
+		/* both simulations have their own group with their own hosts */
+		assertEquals(2, AnonymousGroupManager.getDefinedGroups().get("g0")
+				.getMemberSet().size());
+	}
+
+	public void testThreadsUseTheirOwnContext() throws Exception {
+		final SimulationContext context = new SimulationContext();
+		final double[] seen = new double[2];
+		SimClock.getInstance().setTime(5);
+
+		Thread t = new Thread() {
+			public void run() {
+				seen[0] = SimClock.getTime(); // default context
+				SimulationContext.setCurrent(context);
+				SimClock.getInstance().setTime(42);
+				seen[1] = SimClock.getTime();
+			}
+		};
+		t.start();
+		t.join();
+
+		assertEquals(5.0, seen[0]);
+		assertEquals(42.0, seen[1]);
+		assertEquals(5.0, SimClock.getTime());
+	}
+}
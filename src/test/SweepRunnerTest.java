@@ -0,0 +1,96 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import core.SettingsError;
+import core.SweepRunner;
+
+/**
+ * Tests for expanding the run arrays to sweep runs and resuming sweeps
+ */
+public class SweepRunnerTest extends TestCase {
+	private File sweepDir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		ts.putSetting("Group.bufferSize", "[1M; 2M; 5M]");
+		ts.putSetting("MovementModel.rngSeed", "[1;2]");
+		ts.putSetting("Sweep.nrofRetries", "[0;1]");
+
+		sweepDir = File.createTempFile("sweep", "");
+		sweepDir.delete();
+		sweepDir.mkdir();
+	}
+
+	protected void tearDown() throws Exception {
+		new File(sweepDir, SweepRunner.MANIFEST_FILE).delete();
+		sweepDir.delete();
+		super.tearDown();
+	}
+
+	private SweepRunner newRunner() {
+		return new SweepRunner(sweepDir.getPath(), new ArrayList<String>(), 1);
+	}
+
+	public void testRunValues() {
+		SweepRunner sr = newRunner();
+		assertEquals(6, sr.getNrofRuns());
+		assertEquals(1, sr.getNrofWorkers());
+
+		String[][] expected = { { "1M", "1" }, { "1M", "2" }, { "2M", "1" },
+				{ "2M", "2" }, { "5M", "1" }, { "5M", "2" } };
+		for (int run = 0; run < expected.length; run++) {
+			Map<String, String> values = sr.getRunValues(run);
+			assertEquals(2, values.size());
+			assertEquals(expected[run][0], values.get("Group.bufferSize"));
+			assertEquals(expected[run][1], values.get("MovementModel.rngSeed"));
+		}
+		assertEquals("run0005", sr.getRunName(5));
+		assertEquals(6, sr.getPendingRuns().size());
+	}
+
+	public void testDoneRunsAreSkipped() throws Exception {
+		writeManifest("run0000\tdone\tGroup.bufferSize=1M\t"
+				+ "MovementModel.rngSeed=1\n"
+				+ "run0003\tfailed\tGroup.bufferSize=2M\t"
+				+ "MovementModel.rngSeed=2\n"
+				+ "run0004\tdone\tGroup.bufferSize=5M\t"
+				+ "MovementModel.rngSeed=1\n" + "run0005\tdo");
+
+		List<Integer> pending = newRunner().getPendingRuns();
+		assertEquals(4, pending.size());
+		assertFalse(pending.contains(0));
+		assertTrue(pending.contains(3));
+		assertFalse(pending.contains(4));
+		assertTrue(pending.contains(5));
+	}
+
+	public void testDifferentSweepIsNotResumed() throws Exception {
+		writeManifest("run0000\tdone\tGroup.bufferSize=10M\t"
+				+ "MovementModel.rngSeed=1\n");
+
+		try {
+			newRunner().getPendingRuns();
+			fail("Different sweep's results were accepted");
+		} catch (SettingsError e) {
+			// ok
+		}
+	}
+
+	private void writeManifest(String contents) throws Exception {
+		FileWriter out = new FileWriter(new File(sweepDir,
+				SweepRunner.MANIFEST_FILE));
+		out.write(contents);
+		out.close();
+	}
+}
@@ -0,0 +1,85 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import junit.framework.TestCase;
+import core.TimeWarpEngine;
+import core.TimeWarpEngine.Halo;
+
+/**
+ * Tests for finding the coupled logical processes of the TimeWarpEngine
+ */
+public class TimeWarpEngineTest extends TestCase {
+	private static final int NROF_LPS = 3;
+	private static final double RANGE = 10;
+
+	public void testHostsWithinRangeCouple() {
+		Halo[] halos = new Halo[NROF_LPS];
+		halos[0] = new Halo(0, 1);
+		halos[0].add(0, 95, 50, RANGE, 0);
+		halos[1] = new Halo(1, 1);
+		halos[1].add(1, 104, 50, RANGE, 1);
+		halos[2] = new Halo(2, 1);
+		halos[2].add(2, 201, 50, RANGE, 2);
+
+		boolean[][] coupled = TimeWarpEngine.findCoupled(halos, NROF_LPS,
+				RANGE);
+		assertTrue(coupled[0][1]);
+		assertTrue(coupled[1][0]);
+		assertFalse(coupled[1][2]);
+		assertFalse(coupled[0][2]);
+	}
+
+	public void testSmallerRangeDecides() {
+		Halo[] halos = new Halo[NROF_LPS];
+		halos[0] = new Halo(0, 1);
+		halos[0].add(0, 95, 50, RANGE, 0);
+		halos[1] = new Halo(1, 1);
+		halos[1].add(1, 104, 50, 5, 1);
+
+		boolean[][] coupled = TimeWarpEngine.findCoupled(halos, NROF_LPS,
+				RANGE);
+		assertFalse(coupled[0][1]);
+	}
+
+	public void testExactRangeCouples() {
+		Halo[] halos = new Halo[NROF_LPS];
+		halos[0] = new Halo(0, 1);
+		halos[0].add(0, 96, 50, RANGE, 0);
+		halos[1] = new Halo(1, 1);
+		halos[1].add(1, 102, 58, RANGE, 1);
+
+		boolean[][] coupled = TimeWarpEngine.findCoupled(halos, NROF_LPS,
+				RANGE);
+		assertTrue(coupled[0][1]);
+	}
+
+	public void testHostOutsideItsStripCouples() {
+		Halo[] halos = new Halo[NROF_LPS];
+		halos[0] = new Halo(0, 1);
+		halos[0].add(0, 250, 50, RANGE, 2);
+
+		/* the other LP hasn't published its halo */
+		boolean[][] coupled = TimeWarpEngine.findCoupled(halos, NROF_LPS,
+				RANGE);
+		assertTrue(coupled[0][2]);
+		assertTrue(coupled[2][0]);
+		assertFalse(coupled[0][1]);
+	}
+
+	public void testMissingHalosDontCouple() {
+		Halo[] halos = new Halo[NROF_LPS];
+		halos[1] = new Halo(1, 1);
+		halos[1].add(1, 104, 50, RANGE, 1);
+
+		boolean[][] coupled = TimeWarpEngine.findCoupled(halos, NROF_LPS,
+				RANGE);
+		for (int p = 0; p < NROF_LPS; p++) {
+			for (int q = 0; q < NROF_LPS; q++) {
+				assertFalse(coupled[p][q]);
+			}
+		}
+	}
+}
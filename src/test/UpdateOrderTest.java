@@ -0,0 +1,93 @@
+/* 
+ * Copyright 2009 Rob Jansen
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.UpdateOrder;
+
+/**
+ * Tests for the UpdateOrder
+ */
+public class UpdateOrderTest extends TestCase {
+
+	public void testSameOrderAsCollectionsShuffle() {
+		int[] sizes = { 1, 2, 16, 100, 1000 };
+		for (int size : sizes) {
+			UpdateOrder uo = new UpdateOrder(size);
+			List<Integer> list = new ArrayList<Integer>();
+			for (int i = 0; i < size; i++) {
+				list.add(i);
+			}
+
+			for (int seed = 0; seed < 50; seed++) {
+				uo.shuffle(seed);
+				Collections.shuffle(list, new Random(seed));
+				for (int i = 0; i < size; i++) {
+					assertEquals(list.get(i).intValue(), uo.get(i));
+				}
+			}
+		}
+	}
+
+	public void testLazyOrderIsPermutation() {
+		int size = 100;
+		UpdateOrder uo = new UpdateOrder(size);
+		int[] first = new int[size];
+
+		for (int round = 0; round < 2; round++) {
+			boolean[] seen = new boolean[size];
+			uo.startLazy(7);
+			for (int i = 0; i < size; i++) {
+				assertTrue(uo.hasNext());
+				int index = uo.next();
+				assertFalse(seen[index]);
+				seen[index] = true;
+				if (round == 0) {
+					first[i] = index;
+				}
+			}
+			assertFalse(uo.hasNext());
+		}
+
+		/* same seed from a different start order gives a different order */
+		boolean differs = false;
+		uo.startLazy(7);
+		for (int i = 0; i < size; i++) {
+			differs |= (uo.next() != first[i]);
+		}
+		assertTrue(differs);
+	}
+
+	public void testRestoredOrderShufflesTheSame() throws IOException {
+		int size = 50;
+		UpdateOrder uo = new UpdateOrder(size);
+		uo.shuffle(1);
+		uo.shuffle(2);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		uo.writeState(new DataOutputStream(bytes));
+
+		UpdateOrder restored = new UpdateOrder(size);
+		restored.readState(new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())));
+
+		/* the shuffle is done in place, so the result depends on the state */
+		uo.shuffle(3);
+		restored.shuffle(3);
+		for (int i = 0; i < size; i++) {
+			assertEquals(uo.get(i), restored.get(i));
+		}
+	}
+}
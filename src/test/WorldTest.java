@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import input.EventQueue;
+import input.ExternalEvent;
 import core.*;
 
 /**
@@ -23,12 +24,15 @@ public class WorldTest extends TestCase {
 	private int worldSizeX = 100;
 	private int worldSizeY = 100;
 	private double upInterval = 0.1;
+	private double endTime = 100;
 	private List<TestDTNHost> hosts;
 	private List<EventQueue> eQueues;
 
 	protected void setUp() throws Exception {
 		super.setUp();
 		SimClock.reset();
+		NetworkLayer.reset();
+		SimScenario.setAnonymitySystem(SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
 
 		this.eQueues = new ArrayList<EventQueue>();
 		this.hosts = new ArrayList<TestDTNHost>();
@@ -40,6 +44,14 @@ public class WorldTest extends TestCase {
 			this.hosts.add(new TestDTNHost(comBus));
 		}
 
+		/* the hosts' routers re-initialize the test settings */
+		TestSettings ts = new TestSettings();
+		String ans = SimScenario.ANONYMITY_NS + ".";
+		ts.putSetting(ans + SimScenario.ANONYMITY_ON, "false");
+		ts.putSetting(ans + SimScenario.ANONYMITY_GROUPS, "1");
+		ts.putSetting(ans + SimScenario.ANONYMITY_THRESHOLD, "1");
+		ts.putSetting(ans + SimScenario.ANONYMITY_SYSTEM,
+				SimScenario.ANONYMITY_SYSTEM_RANDOMPIVOT);
 		this.world = new World(new TestScenario());
 	}
 
@@ -85,6 +97,83 @@ public class WorldTest extends TestCase {
 
 	}
 
+	public void testOnlyAccessedHostsAreUpdatedAfterEvents() {
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		events.add(new AccessEvent(0.05, 2));
+		events.add(new AccessEvent(0.05, 2));
+		events.add(new AccessEvent(0.05, 3));
+		eQueues.add(new ListQueue(events));
+		this.world = new World(new TestScenario());
+
+		world.update();
+		assertEquals(0.1, SimClock.getTime(), TIME_DELTA);
+		for (int i = 0; i < hosts.size(); i++) {
+			/* one update after the batch of events and one at the end */
+			int expected = (i == 2 || i == 3 ? 2 : 1);
+			assertEquals(expected, hosts.get(i).nrofUpdate);
+		}
+	}
+
+	public void testAdaptiveIntervalEndsAtEventsAndEnd() {
+		TestSettings ts = new TestSettings(World.SETTINGS_NS);
+		ts.putSetting(World.SETTINGS_NS + "." + World.ADAPTIVE_INTERVAL_S,
+				"true");
+		ts.putSetting(World.SETTINGS_NS + "." + World.MAX_UPDATE_INTERVAL_S,
+				"5");
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		events.add(new AccessEvent(2.3, 2));
+		eQueues.add(new ListQueue(events));
+		this.endTime = 7.7;
+		this.world = new World(new TestScenario());
+
+		/* the hosts don't move; cut at the event */
+		world.update();
+		assertEquals(2.3, SimClock.getTime(), TIME_DELTA);
+		assertEquals(2.3, hosts.get(2).lastUpdate, TIME_DELTA);
+		/* the longest interval */
+		world.update();
+		assertEquals(7.3, SimClock.getTime(), TIME_DELTA);
+		/* cut at the end of the simulation */
+		world.update();
+		assertEquals(7.7, SimClock.getTime(), TIME_DELTA);
+		/* never shorter than the scenario's update interval */
+		world.update();
+		assertEquals(7.8, SimClock.getTime(), TIME_DELTA);
+	}
+
+	/** Event that only accesses one host of the world */
+	private class AccessEvent extends ExternalEvent {
+		private static final long serialVersionUID = 1L;
+		private int address;
+
+		public AccessEvent(double time, int address) {
+			super(time);
+			this.address = address;
+		}
+
+		public void processEvent(World world) {
+			world.getNodeByAddress(address);
+		}
+	}
+
+	/** Event queue that gives out the events of a (sorted) list */
+	private class ListQueue implements EventQueue {
+		private List<ExternalEvent> events;
+
+		public ListQueue(List<ExternalEvent> events) {
+			this.events = events;
+		}
+
+		public ExternalEvent nextEvent() {
+			return events.remove(0);
+		}
+
+		public double nextEventsTime() {
+			return (events.size() > 0 ? events.get(0).getTime()
+					: Double.MAX_VALUE);
+		}
+	}
+
 	/** Dummy scenario for providing test values for the World */
 	private class TestScenario extends core.SimScenario {
 		public TestScenario() {
@@ -102,6 +191,10 @@ public class WorldTest extends TestCase {
 			return upInterval;
 		}
 
+		public double getEndTime() {
+			return endTime;
+		}
+
 		public List<UpdateListener> getUpdateListeners() {
 			return new ArrayList<UpdateListener>();
 		}
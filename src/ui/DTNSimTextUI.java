@@ -15,6 +15,24 @@ public class DTNSimTextUI extends DTNSimUI {
 	/** How often the UI view is updated (milliseconds) */
 	public static final long UI_UP_INTERVAL = 60000;
 
+	/**
+	 * Constructor.
+	 */
+	public DTNSimTextUI() {
+		super();
+	}
+
+	/**
+	 * Constructor for resuming a simulation from a checkpoint (see
+	 * {@link DTNSimUI#DTNSimUI(String)})
+	 * 
+	 * @param resumeFile
+	 *            The checkpoint file
+	 */
+	public DTNSimTextUI(String resumeFile) {
+		super(resumeFile);
+	}
+
 	protected void runSim() {
 		double simTime = SimClock.getTime();
 		double endTime = scen.getEndTime();
@@ -33,6 +51,9 @@ public class DTNSimTextUI extends DTNSimUI {
 				return;
 			}
 			simTime = SimClock.getTime();
+			if (simTime < endTime) {
+				writeCheckpointIfDue();
+			}
 			this.update(false);
 		}
 
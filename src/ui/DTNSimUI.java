@@ -4,6 +4,7 @@
  */
 package ui;
 
+import java.io.File;
 import java.util.Vector;
 
 
@@ -11,10 +12,14 @@ import report.AnonymousGroupReport;
 import report.Report;
 import core.AnonymousGroupManager;
 import core.ConnectionListener;
+import core.DistributedWorker;
 import core.MessageListener;
+import core.MovementCheckpoint;
 import core.MovementListener;
+import core.MovementRecorder;
 import core.Settings;
 import core.SettingsError;
+import core.SimCheckpoint;
 import core.SimClock;
 import core.SimError;
 import core.SimScenario;
@@ -43,6 +48,41 @@ public abstract class DTNSimUI {
 	 */
 	public static final String MM_WARMUP_S = movement.MovementModel.MOVEMENT_MODEL_NS
 			+ ".warmup";
+	/**
+	 * Movement model warmup checkpoint file -setting id ({@value} ). If the
+	 * file exists, the hosts' movement state after the warmup is read from it
+	 * instead of running the warmup; otherwise the state is written to it
+	 * after the warmup. See {@link core.MovementCheckpoint}.
+	 */
+	public static final String MM_CHECKPOINT_S = movement.MovementModel.MOVEMENT_MODEL_NS
+			+ ".warmupCheckpoint";
+
+	/**
+	 * Movement recording file -setting id ({@value} ). If set, the movement
+	 * of all hosts (including the warmup) is recorded and written to the file
+	 * at the end of the simulation. The recording can be replayed with
+	 * {@link movement.RecordedMovement}. See {@link core.MovementRecorder}.
+	 */
+	public static final String MM_RECORD_S = movement.MovementModel.MOVEMENT_MODEL_NS
+			+ ".recordFile";
+
+	/**
+	 * Simulation checkpoint file -setting id ({@value} ). If set, the state
+	 * of the whole simulation is written to the file every
+	 * {@link #CHECKPOINT_INTERVAL_S} simulated seconds (the previous
+	 * checkpoint is replaced). The simulation can be resumed from the
+	 * checkpoint with {@link core.DTNSim#RESUME_FLAG}. See
+	 * {@link core.SimCheckpoint}.
+	 */
+	public static final String CHECKPOINT_S = SimScenario.SCENARIO_NS
+			+ ".checkpointFile";
+	/**
+	 * Simulation checkpoint interval -setting id ({@value} ). How many
+	 * simulated seconds there are between the checkpoints written to
+	 * {@link #CHECKPOINT_S}. Required if the checkpoint file is set.
+	 */
+	public static final String CHECKPOINT_INTERVAL_S = SimScenario.SCENARIO_NS
+			+ ".checkpointInterval";
 
 	/** report class' package name */
 	private static final String REPORT_PAC = "report.";
@@ -59,11 +99,36 @@ public abstract class DTNSimUI {
 	protected SimScenario scen;
 	/** simtime of last UI update */
 	protected double lastUpdate;
+	/** recorder of the movement (or null if movement is not recorded) */
+	private MovementRecorder movementRecorder;
+	/** file where the movement recording is written to */
+	private String movementRecordFile;
+	/** checkpoint file to resume the simulation from (or null) */
+	private String resumeFile;
+	/** file where the checkpoints are written to (or null) */
+	private File checkpointFile;
+	/** simulated time between the checkpoints */
+	private double checkpointInterval;
+	/** simulated time when the next checkpoint is written */
+	private double nextCheckpoint;
 
 	/**
 	 * Constructor.
 	 */
 	public DTNSimUI() {
+		this(null);
+	}
+
+	/**
+	 * Constructor for resuming a simulation from a checkpoint written by a
+	 * simulation with the same settings (see {@link #CHECKPOINT_S}). The
+	 * movement warmup is not run when resuming.
+	 * 
+	 * @param resumeFile
+	 *            The checkpoint file or null to start from the beginning
+	 */
+	public DTNSimUI(String resumeFile) {
+		this.resumeFile = resumeFile;
 		this.lastUpdate = 0;
 		this.reports = new Vector<Report>();
 		this.simDone = false;
@@ -93,8 +158,12 @@ public abstract class DTNSimUI {
 			settings = new Settings();
 			this.scen = new SimScenario();
 
-			// add reports
-			for (int i = 1, n = settings.getInt(NROF_REPORT_S); i <= n; i++) {
+			// add reports (the coordinator writes a distributed run's reports)
+			int nrofReports = settings.getInt(NROF_REPORT_S);
+			if (DistributedWorker.getCurrent() != null) {
+				nrofReports = 0;
+			}
+			for (int i = 1; i <= nrofReports; i++) {
 				String reportClass = settings.getSetting(REPORT_S + i);
 				addReport((Report) settings.createObject(REPORT_PAC
 						+ reportClass));
@@ -114,7 +183,46 @@ public abstract class DTNSimUI {
 			this.scen.createHosts();
 			this.world = new World(this.scen);
 
-			world.warmupMovementModel(warmupTime);
+			if (settings.contains(MM_RECORD_S)) {
+				if (settings.contains(MM_CHECKPOINT_S)) {
+					throw new SettingsError("Movement can't be recorded when "
+							+ "a warmup checkpoint is used (" + MM_RECORD_S
+							+ " and " + MM_CHECKPOINT_S + ")");
+				}
+				this.movementRecordFile = settings.getSetting(MM_RECORD_S);
+				this.movementRecorder = new MovementRecorder(world.getHosts());
+			}
+
+			if (this.resumeFile != null) {
+				if (this.movementRecorder != null) {
+					throw new SettingsError("Movement can't be recorded when "
+							+ "a simulation is resumed (" + MM_RECORD_S + ")");
+				}
+				SimCheckpoint.read(world, new File(this.resumeFile));
+				this.lastUpdate = SimClock.getTime();
+				for (Report r : this.reports) {
+					r.resumed(world.getHosts());
+				}
+			} else if (settings.contains(MM_CHECKPOINT_S)) {
+				MovementCheckpoint.warmup(world, warmupTime,
+						settings.getSetting(MM_CHECKPOINT_S));
+			} else {
+				world.warmupMovementModel(warmupTime);
+			}
+
+			if (settings.contains(CHECKPOINT_S)) {
+				this.checkpointFile = new File(settings
+						.getSetting(CHECKPOINT_S));
+				this.checkpointInterval = settings
+						.getDouble(CHECKPOINT_INTERVAL_S);
+				if (this.checkpointInterval <= 0) {
+					throw new SettingsError("Invalid value for "
+							+ CHECKPOINT_INTERVAL_S);
+				}
+				world.checkCheckpointable();
+				this.nextCheckpoint = SimClock.getTime()
+						+ this.checkpointInterval;
+			}
 		} catch (SettingsError se) {
 			System.err.println("Can't start: error in configuration file(s)");
 			System.err.println(se.getMessage());
@@ -126,6 +234,22 @@ public abstract class DTNSimUI {
 		}
 	}
 
+	/**
+	 * Writes a checkpoint of the simulation if the checkpoint interval has
+	 * passed since the previous one (see {@link #CHECKPOINT_S}). Must be
+	 * called between the world updates.
+	 */
+	protected void writeCheckpointIfDue() {
+		if (this.checkpointFile == null
+				|| SimClock.getTime() < this.nextCheckpoint) {
+			return;
+		}
+		SimCheckpoint.write(this.world, this.checkpointFile);
+		while (this.nextCheckpoint <= SimClock.getTime()) {
+			this.nextCheckpoint += this.checkpointInterval;
+		}
+	}
+
 	/**
 	 * Runs maintenance jobs that are needed before exiting.
 	 */
@@ -138,6 +262,11 @@ public abstract class DTNSimUI {
 		}
 		//reset and clear the defined groups for next sim run
 		AnonymousGroupManager.resetGroups();
+		this.world.done();
+
+		if (this.movementRecorder != null) {
+			this.movementRecorder.write(this.movementRecordFile);
+		}
 	}
 
 	/**